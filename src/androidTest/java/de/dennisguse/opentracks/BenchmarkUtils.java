@@ -0,0 +1,107 @@
+package de.dennisguse.opentracks;
+
+import android.os.Debug;
+import android.util.Log;
+
+import org.junit.Assert;
+
+import java.util.Locale;
+
+/**
+ * Utilities for the benchmarks: runs a measured computation and counts the allocations of the current thread.
+ * <p>
+ * Usage: implement a {@link Benchmark} and run it with {@link #measure(String, String, String, int, int, Benchmark)}; it warms up, measures the duration and the allocations, and reports them to logcat.
+ * As a counter that does not count would let every allocation-free claim pass, a benchmark also measures a baseline known to allocate and checks it with {@link #assertAllocCounting(int)}.
+ */
+public class BenchmarkUtils {
+
+    // Prevents the computations from being optimized away
+    private static double sink;
+
+    private BenchmarkUtils() {
+    }
+
+    /**
+     * A measured computation.
+     */
+    public interface Benchmark {
+
+        /**
+         * Runs one iteration.
+         *
+         * @param iteration the iteration (counted from 0 for the warm-up and the measured iterations)
+         * @return a result of the computation (e.g., the computed value); summed up, so the computation is not optimized away
+         */
+        double run(int iteration) throws Exception;
+    }
+
+    /**
+     * Runs a benchmark: the warm-up iterations, then the measured iterations with allocation counting.
+     * Reports the duration and the allocations per iteration to logcat.
+     *
+     * @param tag              the log tag
+     * @param name             the name of the benchmark
+     * @param unit             what an iteration is (e.g., "call")
+     * @param warmupIterations the number of warm-up iterations
+     * @param iterations       the number of measured iterations
+     * @param benchmark        the benchmark
+     * @return the number of allocations of the measured iterations
+     */
+    public static int measure(String tag, String name, String unit, int warmupIterations, int iterations, Benchmark benchmark) throws Exception {
+        double result = 0.0;
+        for (int i = 0; i < warmupIterations; i++) {
+            result += benchmark.run(i);
+        }
+
+        startAllocCounting();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            result += benchmark.run(i);
+        }
+        long duration = System.nanoTime() - start;
+        int allocations = stopAllocCounting();
+
+        sink += result;
+        Log.i(tag, String.format(Locale.US, "%s: %s/%s, %.1f allocations/%s (%s)", name, formatDuration((double) duration / iterations), unit, (double) allocations / iterations, unit, sink));
+        return allocations;
+    }
+
+    /**
+     * Resets and starts counting the allocations of the current thread.
+     */
+    @SuppressWarnings("deprecation")
+    public static void startAllocCounting() {
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+    }
+
+    /**
+     * Stops counting.
+     *
+     * @return the number of allocations of the current thread since {@link #startAllocCounting()}
+     */
+    @SuppressWarnings("deprecation")
+    public static int stopAllocCounting() {
+        Debug.stopAllocCounting();
+        return Debug.getThreadAllocCount();
+    }
+
+    /**
+     * Asserts that the allocations of a baseline known to allocate were counted; i.e., that the allocation counting works on this device.
+     *
+     * @param allocations the counted allocations of the baseline
+     */
+    public static void assertAllocCounting(int allocations) {
+        Assert.assertTrue("Allocation counting is not supported", allocations > 0);
+    }
+
+    private static String formatDuration(double durationNs) {
+        if (durationNs < 1E4) {
+            return String.format(Locale.US, "%.1f ns", durationNs);
+        }
+        if (durationNs < 1E7) {
+            return String.format(Locale.US, "%.1f us", durationNs / 1E3);
+        }
+        return String.format(Locale.US, "%.1f ms", durationNs / 1E6);
+    }
+}
@@ -0,0 +1,181 @@
+package de.dennisguse.opentracks;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.util.Log;
+import android.view.View;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.dennisguse.opentracks.content.SamplingBuffer;
+
+/**
+ * Benchmark of {@link ChartView} for a long track (50k data points): building the geometry, adding data points while recording, drawing frames while scrolling and scrubbing.
+ * Reports ms per geometry, per new data point, per frame and per scrubber update to logcat.
+ * Verifies that drawing a frame does not allocate and that adding a data point allocates less than rebuilding the geometry (and that the allocations of building the geometry are counted).
+ */
+@RunWith(AndroidJUnit4.class)
+public class ChartViewBenchmarkTest {
+
+    private static final String TAG = ChartViewBenchmarkTest.class.getSimpleName();
+
+    private static final int NUM_POINTS = 50000;
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 720;
+    private static final int ZOOM_LEVEL = 4;
+
+    private static final int WARMUP_ITERATIONS = 10;
+    private static final int GEOMETRY_ITERATIONS = 20;
+    private static final int FRAMES = 600;
+    private static final int NEW_DATA_POINTS = 1000;
+    private static final int SCRUBBER_UPDATES = 1000;
+    // Pixels scrolled per frame
+    private static final int SCROLL_STEP = 13;
+
+    private ChartView chartView;
+
+    @Before
+    public void setUp() {
+        chartView = new ChartView(ApplicationProvider.getApplicationContext());
+        chartView.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY), View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        chartView.layout(0, 0, WIDTH, HEIGHT);
+
+        SamplingBuffer dataPoints = new SamplingBuffer(ChartView.NUM_SERIES + 1);
+        for (int i = 0; i < NUM_POINTS; i++) {
+            dataPoints.add(createDataPoint(i));
+        }
+        chartView.addDataPoints(dataPoints);
+        for (int i = 1; i < ZOOM_LEVEL; i++) {
+            chartView.zoomIn();
+        }
+    }
+
+    @Test
+    public void benchmarkBuildGeometry() {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            rebuildGeometry();
+        }
+
+        BenchmarkUtils.startAllocCounting();
+        long start = System.nanoTime();
+        for (int i = 0; i < GEOMETRY_ITERATIONS; i++) {
+            rebuildGeometry();
+        }
+        long duration = System.nanoTime() - start;
+        int allocations = BenchmarkUtils.stopAllocCounting();
+
+        Log.i(TAG, String.format("build geometry: %.2f ms/geometry, %d allocations/geometry", duration / 1000000.0 / GEOMETRY_ITERATIONS, allocations / GEOMETRY_ITERATIONS));
+        BenchmarkUtils.assertAllocCounting(allocations);
+    }
+
+    @Test
+    public void benchmarkAddDataPoint() {
+        // Baseline: rebuilding the geometry
+        BenchmarkUtils.startAllocCounting();
+        rebuildGeometry();
+        int rebuildAllocations = BenchmarkUtils.stopAllocCounting();
+        BenchmarkUtils.assertAllocCounting(rebuildAllocations);
+
+        SamplingBuffer dataPoints = new SamplingBuffer(ChartView.NUM_SERIES + 1);
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            dataPoints.clear();
+            dataPoints.add(createDataPoint(NUM_POINTS + i));
+            chartView.addDataPoints(dataPoints);
+            chartView.buildGeometry();
+        }
+
+        // Like while recording: one data point per update
+        double[][] newDataPoints = new double[NEW_DATA_POINTS][];
+        for (int i = 0; i < NEW_DATA_POINTS; i++) {
+            newDataPoints[i] = createDataPoint(NUM_POINTS + WARMUP_ITERATIONS + i);
+        }
+        BenchmarkUtils.startAllocCounting();
+        long start = System.nanoTime();
+        for (int i = 0; i < NEW_DATA_POINTS; i++) {
+            dataPoints.clear();
+            dataPoints.add(newDataPoints[i]);
+            chartView.addDataPoints(dataPoints);
+            chartView.buildGeometry();
+        }
+        long duration = System.nanoTime() - start;
+        int allocations = BenchmarkUtils.stopAllocCounting();
+
+        Log.i(TAG, String.format("add data point: %.3f ms/data point, %.1f allocations/data point (rebuild: %d allocations)", duration / 1000000.0 / NEW_DATA_POINTS, (double) allocations / NEW_DATA_POINTS, rebuildAllocations));
+        // Only the open chunk is built again.
+        Assert.assertTrue(allocations / NEW_DATA_POINTS < rebuildAllocations);
+    }
+
+    @Test
+    public void benchmarkScrolling() {
+        // Baseline: building the geometry allocates.
+        BenchmarkUtils.startAllocCounting();
+        chartView.buildGeometry();
+        BenchmarkUtils.assertAllocCounting(BenchmarkUtils.stopAllocCounting());
+
+        Bitmap bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        int maxScrollX = (ZOOM_LEVEL - 1) * (WIDTH / 2);
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            chartView.scrollTo(i * SCROLL_STEP, 0);
+            chartView.draw(canvas);
+        }
+
+        long maxFrameDuration = 0;
+        BenchmarkUtils.startAllocCounting();
+        long start = System.nanoTime();
+        for (int i = 0; i < FRAMES; i++) {
+            long frameStart = System.nanoTime();
+            chartView.scrollTo((i * SCROLL_STEP) % maxScrollX, 0);
+            chartView.draw(canvas);
+            maxFrameDuration = Math.max(maxFrameDuration, System.nanoTime() - frameStart);
+        }
+        long duration = System.nanoTime() - start;
+        int allocations = BenchmarkUtils.stopAllocCounting();
+
+        Log.i(TAG, String.format("scrolling: %.2f ms/frame, max %.2f ms/frame, %d allocations", duration / 1000000.0 / FRAMES, maxFrameDuration / 1000000.0, allocations));
+        Assert.assertEquals(0, allocations);
+        bitmap.recycle();
+    }
+
+    @Test
+    public void benchmarkScrubbing() {
+        chartView.buildGeometry();
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            chartView.scrubTo(i * SCROLL_STEP);
+        }
+
+        // Like the motion events while scrubbing over the visible range
+        long start = System.nanoTime();
+        for (int i = 0; i < SCRUBBER_UPDATES; i++) {
+            chartView.scrubTo((i * SCROLL_STEP) % WIDTH);
+        }
+        long duration = System.nanoTime() - start;
+
+        Log.i(TAG, String.format("scrubbing: %.3f ms/update", duration / 1000000.0 / SCRUBBER_UPDATES));
+    }
+
+    private void rebuildGeometry() {
+        // Zooming invalidates the geometry.
+        chartView.zoomOut();
+        chartView.zoomIn();
+        chartView.buildGeometry();
+    }
+
+    private static double[] createDataPoint(int i) {
+        double[] dataPoint = new double[ChartView.NUM_SERIES + 1];
+        dataPoint[0] = i * 0.01;
+        dataPoint[ChartView.ELEVATION_SERIES + 1] = 500.0 + 100.0 * Math.sin(i * 0.001);
+        dataPoint[ChartView.SPEED_SERIES + 1] = 20.0 + 5.0 * Math.sin(i * 0.01) + (i % 97 == 0 ? 10.0 : 0.0);
+        dataPoint[ChartView.PACE_SERIES + 1] = 60.0 / dataPoint[ChartView.SPEED_SERIES + 1];
+        dataPoint[ChartView.HEART_RATE_SERIES + 1] = 140.0 + 20.0 * Math.sin(i * 0.002);
+        dataPoint[ChartView.CADENCE_SERIES + 1] = Double.NaN;
+        dataPoint[ChartView.POWER_SERIES + 1] = Double.NaN;
+        return dataPoint;
+    }
+}
@@ -57,6 +57,7 @@ public class CustomContentProviderTest {
         Assert.assertTrue(hasTable(TracksColumns.TABLE_NAME));
         Assert.assertTrue(hasTable(TrackPointsColumns.TABLE_NAME));
         Assert.assertTrue(hasTable(WaypointsColumns.TABLE_NAME));
+        Assert.assertTrue(hasTable(SplitsColumns.TABLE_NAME));
     }
 
     /**
@@ -67,6 +68,23 @@ public class CustomContentProviderTest {
         Assert.assertTrue(customContentProvider.onCreate(context));
     }
 
+    /**
+     * Tests {@link CustomContentProvider#createTrackPointsChangeUri(Long, long, long)}.
+     */
+    @Test
+    public void testTrackPointsChangeUri() {
+        Uri uri = CustomContentProvider.createTrackPointsChangeUri(3L, 10L, 20L);
+
+        Assert.assertEquals(TrackPointsColumns.CONTENT_URI.getPath(), uri.getPath());
+        Assert.assertEquals(3L, CustomContentProvider.getChangeParameter(uri, CustomContentProvider.CHANGE_TRACKID));
+        Assert.assertEquals(10L, CustomContentProvider.getChangeParameter(uri, CustomContentProvider.CHANGE_FIRST_TRACKPOINT_ID));
+        Assert.assertEquals(20L, CustomContentProvider.getChangeParameter(uri, CustomContentProvider.CHANGE_LAST_TRACKPOINT_ID));
+
+        // Unknown
+        Assert.assertEquals(-1L, CustomContentProvider.getChangeParameter(TrackPointsColumns.CONTENT_URI, CustomContentProvider.CHANGE_TRACKID));
+        Assert.assertEquals(-1L, CustomContentProvider.getChangeParameter(null, CustomContentProvider.CHANGE_TRACKID));
+    }
+
     /**
      * Tests {@link CustomContentProvider#getType(Uri)}.
      */
@@ -77,6 +95,30 @@ public class CustomContentProviderTest {
         Assert.assertEquals(WaypointsColumns.CONTENT_TYPE, customContentProvider.getType(WaypointsColumns.CONTENT_URI));
     }
 
+    /**
+     * Tests {@link DatabaseHelper#onUpgrade(SQLiteDatabase, int, int)} from version 23.
+     */
+    @Test
+    public void testOnUpgrade_addsSensorStatisticsColumns() {
+        setupUpgrade(23);
+
+        Assert.assertTrue(hasColumn(TracksColumns.TABLE_NAME, TracksColumns.HEARTRATEZONES));
+        Assert.assertTrue(hasColumn(TracksColumns.TABLE_NAME, TracksColumns.CADENCEDISTRIBUTION));
+        Assert.assertTrue(hasColumn(TracksColumns.TABLE_NAME, TracksColumns.NORMALIZEDPOWER));
+        Assert.assertTrue(hasColumn(TracksColumns.TABLE_NAME, TracksColumns.HEARTRATEDRIFT));
+    }
+
+    /**
+     * Tests {@link DatabaseHelper#onUpgrade(SQLiteDatabase, int, int)} from version 24.
+     */
+    @Test
+    public void testOnUpgrade_createsSplitsTable() {
+        setupUpgrade(24);
+
+        Assert.assertTrue(hasTable(SplitsColumns.TABLE_NAME));
+        Assert.assertTrue(hasColumn(SplitsColumns.TABLE_NAME, SplitsColumns.AVGHEARTRATE));
+    }
+
     /**
      * Creates a table, containing one column.
      *
@@ -135,6 +177,7 @@ public class CustomContentProviderTest {
         dropTable(TracksColumns.TABLE_NAME);
         dropTable(TrackPointsColumns.TABLE_NAME);
         dropTable(WaypointsColumns.TABLE_NAME);
+        dropTable(SplitsColumns.TABLE_NAME);
         createTable(TracksColumns.TABLE_NAME);
         createTable(TrackPointsColumns.TABLE_NAME);
         createTable(WaypointsColumns.TABLE_NAME);
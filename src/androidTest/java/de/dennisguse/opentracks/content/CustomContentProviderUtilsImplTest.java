@@ -512,6 +512,35 @@ public class CustomContentProviderUtilsImplTest {
                 .getDescription());
     }
 
+    /**
+     * Tests the method {@link ContentProviderUtilsImpl#replaceWaypoints(String, String[], List)}.
+     */
+    @Test
+    public void testReplaceWaypoints() {
+        long trackId = System.currentTimeMillis();
+        for (String category : new String[]{"lap", "lap", "other"}) {
+            Waypoint waypoint = new Waypoint();
+            waypoint.setTrackId(trackId);
+            waypoint.setCategory(category);
+            providerUtils.insertWaypoint(waypoint);
+        }
+
+        List<Waypoint> waypoints = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Waypoint waypoint = new Waypoint();
+            waypoint.setTrackId(trackId);
+            waypoint.setCategory("lap");
+            waypoints.add(waypoint);
+        }
+        providerUtils.replaceWaypoints(WaypointsColumns.TRACKID + "=? AND " + WaypointsColumns.CATEGORY + "=?", new String[]{Long.toString(trackId), "lap"}, waypoints);
+
+        // The 2 laps are replaced by 3 laps; the other waypoint is kept.
+        Assert.assertEquals(4, providerUtils.getWaypointCount(trackId));
+        try (Cursor cursor = providerUtils.getWaypointCursor(WaypointsColumns.TRACKID + "=? AND " + WaypointsColumns.CATEGORY + "=?", new String[]{Long.toString(trackId), "lap"}, null, -1)) {
+            Assert.assertEquals(3, cursor.getCount());
+        }
+    }
+
     /**
      * Tests the method {@link ContentProviderUtilsImpl#getFirstWaypointId(long)}.
      */
@@ -723,6 +752,38 @@ public class CustomContentProviderUtilsImplTest {
         Assert.assertEquals(11, providerUtils.getTrackPointCursor(trackId, -1L, 1000, false).getCount());
     }
 
+    /**
+     * Tests the method {@link ContentProviderUtilsImpl#updateTrackPointAltitudes(long, long[], double[], int)}.
+     */
+    @Test
+    public void testUpdateTrackPointAltitudes() {
+        long trackId = System.currentTimeMillis();
+        Track track = getTrack(trackId, 10);
+        insertTrackWithLocations(track);
+
+        long[] trackPointIds = new long[10];
+        double[] altitudes = new double[10];
+        try (Cursor cursor = providerUtils.getTrackPointCursor(trackId, -1L, 1000, false)) {
+            for (int i = 0; cursor.moveToNext(); i++) {
+                trackPointIds[i] = cursor.getLong(cursor.getColumnIndexOrThrow(TrackPointsColumns._ID));
+                altitudes[i] = 1000.0 + i;
+            }
+        }
+        // Only the first 5 track points
+        providerUtils.updateTrackPointAltitudes(trackId, trackPointIds, altitudes, 5);
+
+        try (LocationIterator locationIterator = providerUtils.getTrackPointLocationIterator(trackId, -1L, false, ContentProviderUtils.DEFAULT_LOCATION_FACTORY)) {
+            for (int i = 0; i < 10; i++) {
+                Location location = locationIterator.next();
+                if (i < 5) {
+                    Assert.assertEquals(1000.0 + i, location.getAltitude(), 0.01);
+                } else {
+                    Assert.assertEquals(i * ALTITUDE_INTERVAL, location.getAltitude(), 0.01);
+                }
+            }
+        }
+    }
+
     /**
      * Tests the method {@link ContentProviderUtilsImpl#getFirstTrackPointId(long)}.
      */
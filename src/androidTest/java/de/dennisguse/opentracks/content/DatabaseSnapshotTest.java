@@ -0,0 +1,304 @@
+package de.dennisguse.opentracks.content;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import de.dennisguse.opentracks.content.CustomContentProvider.DatabaseHelper;
+
+/**
+ * Tests {@link DatabaseSnapshot}.
+ */
+public class DatabaseSnapshotTest {
+
+    private static final String DATABASE_NAME = "snapshot-test.db";
+
+    // More than one copy step
+    private static final int TRACK_POINTS = 25000;
+
+    private final Context context = ApplicationProvider.getApplicationContext();
+    private SQLiteDatabase db;
+    private File file;
+
+    private long trackId1;
+    private long trackId2;
+
+    @Before
+    public void setUp() {
+        context.deleteDatabase(DATABASE_NAME);
+        db = new DatabaseHelper(context, DATABASE_NAME).getWritableDatabase();
+        file = new File(context.getCacheDir(), "snapshot.db");
+        SQLiteDatabase.deleteDatabase(file);
+
+        trackId1 = insertTrack("track1", TRACK_POINTS);
+        trackId2 = insertTrack("track2", 10);
+        insertWaypoint(trackId2);
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+        context.deleteDatabase(DATABASE_NAME);
+        SQLiteDatabase.deleteDatabase(file);
+    }
+
+    @Test
+    public void testWrite_full() {
+        Assert.assertTrue(new DatabaseSnapshot(db, file, new HashMap<Long, Long>()).write());
+
+        SQLiteDatabase snapshot = openSnapshot();
+        try {
+            Assert.assertEquals(CustomContentProvider.DATABASE_VERSION, snapshot.getVersion());
+            Assert.assertEquals(2, DatabaseUtils.queryNumEntries(snapshot, TracksColumns.TABLE_NAME));
+            Assert.assertEquals(TRACK_POINTS + 10, DatabaseUtils.queryNumEntries(snapshot, TrackPointsColumns.TABLE_NAME));
+            Assert.assertEquals(1, DatabaseUtils.queryNumEntries(snapshot, WaypointsColumns.TABLE_NAME));
+            assertSameRows(TrackPointsColumns.TABLE_NAME, snapshot);
+            assertSameRows(TracksColumns.TABLE_NAME, snapshot);
+
+            Map<Long, long[]> state = getState(snapshot);
+            Assert.assertEquals(2, state.size());
+            Assert.assertEquals(TRACK_POINTS, state.get(trackId1)[1]);
+            Assert.assertEquals(1, state.get(trackId1)[2]);
+            Assert.assertEquals(10, state.get(trackId2)[1]);
+            Assert.assertEquals(1, state.get(trackId2)[2]);
+        } finally {
+            snapshot.close();
+        }
+
+        // The connection can be used as before
+        Assert.assertEquals(0, DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM sqlite_temp_master", null));
+        Assert.assertEquals(1, db.getAttachedDbs().size());
+    }
+
+    @Test
+    public void testWrite_incremental() {
+        Assert.assertTrue(new DatabaseSnapshot(db, file, new HashMap<Long, Long>()).write());
+        Map<Long, Long> fingerprints = getFingerprints();
+        SQLiteDatabase.deleteDatabase(file);
+
+        // Unchanged
+        Assert.assertTrue(new DatabaseSnapshot(db, file, fingerprints).write());
+        Assert.assertEquals(fingerprints, getFingerprints());
+        SQLiteDatabase snapshot = openSnapshot();
+        try {
+            Assert.assertEquals(0, DatabaseUtils.queryNumEntries(snapshot, TracksColumns.TABLE_NAME));
+            Assert.assertEquals(0, DatabaseUtils.queryNumEntries(snapshot, TrackPointsColumns.TABLE_NAME));
+        } finally {
+            snapshot.close();
+        }
+        SQLiteDatabase.deleteDatabase(file);
+
+        // A track point added to track 2 and the name of track 1 changed
+        insertTrackPoint(trackId2, 11);
+        ContentValues values = new ContentValues();
+        values.put(TracksColumns.NAME, "changed");
+        db.update(TracksColumns.TABLE_NAME, values, TracksColumns._ID + "=" + trackId1, null);
+        long trackId3 = insertTrack("track3", 5);
+        Assert.assertTrue(new DatabaseSnapshot(db, file, fingerprints).write());
+        snapshot = openSnapshot();
+        try {
+            Assert.assertEquals(3, DatabaseUtils.queryNumEntries(snapshot, TracksColumns.TABLE_NAME));
+            Assert.assertEquals(TRACK_POINTS + 11 + 5, DatabaseUtils.queryNumEntries(snapshot, TrackPointsColumns.TABLE_NAME));
+            Assert.assertEquals(3, getState(snapshot).size());
+        } finally {
+            snapshot.close();
+        }
+        Assert.assertNotEquals(fingerprints.get(trackId1), getFingerprints().get(trackId1));
+        Assert.assertNotEquals(fingerprints.get(trackId2), getFingerprints().get(trackId2));
+        SQLiteDatabase.deleteDatabase(file);
+
+        // Track 1 deleted
+        fingerprints = getFingerprints();
+        db.delete(TrackPointsColumns.TABLE_NAME, TrackPointsColumns.TRACKID + "=" + trackId1, null);
+        db.delete(TracksColumns.TABLE_NAME, TracksColumns._ID + "=" + trackId1, null);
+        Assert.assertTrue(new DatabaseSnapshot(db, file, fingerprints).write());
+        snapshot = openSnapshot();
+        try {
+            Assert.assertEquals(0, DatabaseUtils.queryNumEntries(snapshot, TracksColumns.TABLE_NAME));
+            Map<Long, long[]> state = getState(snapshot);
+            Assert.assertEquals(2, state.size());
+            Assert.assertFalse(state.containsKey(trackId1));
+            Assert.assertTrue(state.containsKey(trackId3));
+        } finally {
+            snapshot.close();
+        }
+    }
+
+    /**
+     * Tests that restoring a full snapshot and then an incremental snapshot restores the state of the incremental snapshot.
+     */
+    @Test
+    public void testRestore() {
+        File incrementalFile = new File(context.getCacheDir(), "snapshot-incremental.db");
+        File restoreFile = new File(context.getCacheDir(), "snapshot-restore.db");
+        SQLiteDatabase.deleteDatabase(incrementalFile);
+        SQLiteDatabase.deleteDatabase(restoreFile);
+        try {
+            Assert.assertTrue(new DatabaseSnapshot(db, file, new HashMap<Long, Long>()).write());
+            Map<Long, Long> fingerprints = getFingerprints();
+
+            // Track 1 deleted, a track point added to track 2, and track 3 added
+            db.delete(TrackPointsColumns.TABLE_NAME, TrackPointsColumns.TRACKID + "=" + trackId1, null);
+            db.delete(TracksColumns.TABLE_NAME, TracksColumns._ID + "=" + trackId1, null);
+            insertTrackPoint(trackId2, 11);
+            insertTrack("track3", 5);
+            Assert.assertTrue(new DatabaseSnapshot(db, incrementalFile, fingerprints).write());
+
+            // Merge like DatabaseBackup
+            SQLiteDatabase restored = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READWRITE | SQLiteDatabase.NO_LOCALIZED_COLLATORS);
+            try {
+                Assert.assertTrue(new DatabaseSnapshot(restored, incrementalFile).restore());
+                Assert.assertEquals(2, getState(restored).size());
+                for (String table : new String[]{TracksColumns.TABLE_NAME, TrackPointsColumns.TABLE_NAME, WaypointsColumns.TABLE_NAME}) {
+                    assertSameRows(table, restored);
+                }
+            } finally {
+                restored.close();
+            }
+
+            // Changes after the backup are replaced
+            Assert.assertTrue(new DatabaseSnapshot(db, restoreFile, new HashMap<Long, Long>()).write());
+            insertTrack("track4", 3);
+            db.delete(WaypointsColumns.TABLE_NAME, null, null);
+            ContentValues values = new ContentValues();
+            values.put(TracksColumns.NAME, "changed");
+            db.update(TracksColumns.TABLE_NAME, values, TracksColumns._ID + "=" + trackId2, null);
+
+            Assert.assertTrue(new DatabaseSnapshot(db, restoreFile).restore());
+            SQLiteDatabase snapshot = SQLiteDatabase.openDatabase(restoreFile.getPath(), null, SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.NO_LOCALIZED_COLLATORS);
+            try {
+                for (String table : new String[]{TracksColumns.TABLE_NAME, TrackPointsColumns.TABLE_NAME, WaypointsColumns.TABLE_NAME}) {
+                    assertSameRows(table, snapshot);
+                }
+            } finally {
+                snapshot.close();
+            }
+
+            // The connection can be used as before
+            Assert.assertEquals(0, DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM sqlite_temp_master", null));
+            Assert.assertEquals(1, db.getAttachedDbs().size());
+        } finally {
+            SQLiteDatabase.deleteDatabase(incrementalFile);
+            SQLiteDatabase.deleteDatabase(restoreFile);
+        }
+    }
+
+    @Test
+    public void testRestore_otherVersion() {
+        Assert.assertTrue(new DatabaseSnapshot(db, file, new HashMap<Long, Long>()).write());
+        SQLiteDatabase snapshot = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READWRITE | SQLiteDatabase.NO_LOCALIZED_COLLATORS);
+        try {
+            snapshot.setVersion(CustomContentProvider.DATABASE_VERSION - 1);
+        } finally {
+            snapshot.close();
+        }
+        insertTrack("track3", 5);
+
+        // The columns may differ; so, the database is unchanged.
+        Assert.assertFalse(new DatabaseSnapshot(db, file).restore());
+        Assert.assertEquals(3, DatabaseUtils.queryNumEntries(db, TracksColumns.TABLE_NAME));
+    }
+
+    @Test
+    public void testWrite_fileExists() {
+        Assert.assertTrue(new DatabaseSnapshot(db, file, new HashMap<Long, Long>()).write());
+        Assert.assertFalse(new DatabaseSnapshot(db, file, new HashMap<Long, Long>()).write());
+    }
+
+    private long insertTrack(String name, int numberOfTrackPoints) {
+        ContentValues values = new ContentValues();
+        values.put(TracksColumns.NAME, name);
+        values.put(TracksColumns.STARTTIME, 1000L);
+        long trackId = db.insert(TracksColumns.TABLE_NAME, null, values);
+
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < numberOfTrackPoints; i++) {
+                insertTrackPoint(trackId, i);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return trackId;
+    }
+
+    private void insertTrackPoint(long trackId, int i) {
+        ContentValues values = new ContentValues();
+        values.put(TrackPointsColumns.TRACKID, trackId);
+        values.put(TrackPointsColumns.LATITUDE, 48000000 + i);
+        values.put(TrackPointsColumns.LONGITUDE, 11000000 + i);
+        values.put(TrackPointsColumns.TIME, 1000L + i * 1000L);
+        values.put(TrackPointsColumns.ALTITUDE, 500.5 + i);
+        values.put(TrackPointsColumns.SPEED, 1.5f);
+        db.insert(TrackPointsColumns.TABLE_NAME, null, values);
+    }
+
+    private void insertWaypoint(long trackId) {
+        ContentValues values = new ContentValues();
+        values.put(WaypointsColumns.TRACKID, trackId);
+        values.put(WaypointsColumns.NAME, "marker");
+        db.insert(WaypointsColumns.TABLE_NAME, null, values);
+    }
+
+    private SQLiteDatabase openSnapshot() {
+        return SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.NO_LOCALIZED_COLLATORS);
+    }
+
+    /**
+     * Gets the fingerprints of the snapshot.
+     */
+    private Map<Long, Long> getFingerprints() {
+        SQLiteDatabase snapshot = openSnapshot();
+        try {
+            Map<Long, Long> fingerprints = new HashMap<>();
+            for (Map.Entry<Long, long[]> entry : getState(snapshot).entrySet()) {
+                fingerprints.put(entry.getKey(), entry.getValue()[0]);
+            }
+            return fingerprints;
+        } finally {
+            snapshot.close();
+        }
+    }
+
+    /**
+     * Gets the fingerprint, the number of track points, and whether included by track id.
+     */
+    private static Map<Long, long[]> getState(SQLiteDatabase snapshot) {
+        Map<Long, long[]> state = new HashMap<>();
+        try (Cursor cursor = snapshot.query(DatabaseSnapshot.STATE_TABLE, new String[]{DatabaseSnapshot.STATE_TRACKID, DatabaseSnapshot.STATE_FINGERPRINT, DatabaseSnapshot.STATE_NUMPOINTS, DatabaseSnapshot.STATE_INCLUDED}, null, null, null, null, null)) {
+            while (cursor.moveToNext()) {
+                state.put(cursor.getLong(0), new long[]{cursor.getLong(1), cursor.getLong(2), cursor.getLong(3)});
+            }
+        }
+        return state;
+    }
+
+    private void assertSameRows(String table, SQLiteDatabase snapshot) {
+        try (Cursor expected = db.query(table, null, null, null, null, null, "_id");
+             Cursor actual = snapshot.query(table, null, null, null, null, null, "_id")) {
+            Assert.assertArrayEquals(expected.getColumnNames(), actual.getColumnNames());
+            Assert.assertEquals(expected.getCount(), actual.getCount());
+            while (expected.moveToNext()) {
+                Assert.assertTrue(actual.moveToNext());
+                for (int i = 0; i < expected.getColumnCount(); i++) {
+                    Assert.assertEquals(expected.getType(i), actual.getType(i));
+                    Assert.assertEquals(expected.getString(i), actual.getString(i));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package de.dennisguse.opentracks.content;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.dennisguse.opentracks.BenchmarkUtils;
+
+/**
+ * Benchmark of {@link Downsampler} for a long track (500k track points) drawn into a chart.
+ * Reports ms per call to logcat and verifies that the downsampling does not allocate once warmed up (and that the allocations of a new downsampler are counted).
+ */
+@RunWith(AndroidJUnit4.class)
+public class DownsamplerBenchmarkTest {
+
+    private static final String TAG = DownsamplerBenchmarkTest.class.getSimpleName();
+
+    private static final int NUM_POINTS = 500000;
+    // A chart of a phone zoomed in twice
+    private static final int NUM_COLUMNS = 2000;
+
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int ITERATIONS = 10;
+
+    @Test
+    public void benchmarkLargestTriangleThreeBuckets() throws Exception {
+        benchmark(Downsampler.Mode.LARGEST_TRIANGLE_THREE_BUCKETS);
+    }
+
+    @Test
+    public void benchmarkMinMax() throws Exception {
+        benchmark(Downsampler.Mode.MIN_MAX);
+    }
+
+    private void benchmark(Downsampler.Mode mode) throws Exception {
+        final SamplingBuffer data = createData();
+
+        // A new downsampler allocates its arrays.
+        BenchmarkUtils.startAllocCounting();
+        final Downsampler downsampler = new Downsampler(mode);
+        downsampler.downsample(data, 1, 0, NUM_POINTS, NUM_COLUMNS);
+        BenchmarkUtils.assertAllocCounting(BenchmarkUtils.stopAllocCounting());
+
+        int allocations = BenchmarkUtils.measure(TAG, "Downsampler " + mode, "call", WARMUP_ITERATIONS, ITERATIONS, new BenchmarkUtils.Benchmark() {
+            @Override
+            public double run(int iteration) {
+                downsampler.downsample(data, 1, 0, NUM_POINTS, NUM_COLUMNS);
+                return downsampler.getValue(downsampler.size() - 1);
+            }
+        });
+        Assert.assertEquals(0, allocations);
+    }
+
+    private static SamplingBuffer createData() {
+        SamplingBuffer data = new SamplingBuffer(2);
+        double[] row = new double[2];
+        for (int i = 0; i < NUM_POINTS; i++) {
+            row[0] = i * 10.0;
+            row[1] = 500.0 + 100.0 * Math.sin(i * 0.0001) + (i % 97 == 0 ? 50.0 : 0.0);
+            data.add(row);
+        }
+        return data;
+    }
+}
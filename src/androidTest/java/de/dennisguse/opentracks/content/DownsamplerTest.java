@@ -0,0 +1,152 @@
+package de.dennisguse.opentracks.content;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link Downsampler}: the drawn points need to look like the full resolution data.
+ */
+public class DownsamplerTest extends TestCase {
+
+    private static final int NUM_POINTS = 10000;
+    private static final int NUM_COLUMNS = 100;
+    private static final int SPIKE = 4321;
+
+    private SamplingBuffer data;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        data = new SamplingBuffer(2);
+        for (int i = 0; i < NUM_POINTS; i++) {
+            data.add(new double[]{i, i == SPIKE ? 1000.0 : 100.0 * Math.sin(i * 0.001)});
+        }
+    }
+
+    /**
+     * Tests that the min and max of each pixel column are kept.
+     */
+    public void testMinMax_keepsColumnExtremes() {
+        Downsampler downsampler = new Downsampler(Downsampler.Mode.MIN_MAX);
+
+        downsampler.downsample(data, 1, 0, NUM_POINTS, NUM_COLUMNS);
+
+        assertTrue(downsampler.size() <= 2 * NUM_COLUMNS);
+        double columnsPerX = NUM_COLUMNS / (NUM_POINTS - 1.0);
+        double[] expectedMin = new double[NUM_COLUMNS];
+        double[] expectedMax = new double[NUM_COLUMNS];
+        double[] actualMin = new double[NUM_COLUMNS];
+        double[] actualMax = new double[NUM_COLUMNS];
+        for (int i = 0; i < NUM_COLUMNS; i++) {
+            expectedMin[i] = Double.POSITIVE_INFINITY;
+            expectedMax[i] = Double.NEGATIVE_INFINITY;
+            actualMin[i] = Double.POSITIVE_INFINITY;
+            actualMax[i] = Double.NEGATIVE_INFINITY;
+        }
+        for (int row = 0; row < NUM_POINTS; row++) {
+            int column = Math.min(NUM_COLUMNS - 1, (int) (data.getX(row) * columnsPerX));
+            expectedMin[column] = Math.min(expectedMin[column], data.getValue(row, 1));
+            expectedMax[column] = Math.max(expectedMax[column], data.getValue(row, 1));
+        }
+        int previousRow = -1;
+        for (int i = 0; i < downsampler.size(); i++) {
+            int row = downsampler.getRow(i);
+            assertTrue(row >= previousRow);
+            previousRow = row;
+            int column = Math.min(NUM_COLUMNS - 1, (int) (data.getX(row) * columnsPerX));
+            actualMin[column] = Math.min(actualMin[column], downsampler.getValue(i));
+            actualMax[column] = Math.max(actualMax[column], downsampler.getValue(i));
+        }
+        for (int i = 0; i < NUM_COLUMNS; i++) {
+            assertEquals(expectedMin[i], actualMin[i], 0.0);
+            assertEquals(expectedMax[i], actualMax[i], 0.0);
+        }
+    }
+
+    /**
+     * Tests that the extremes of merged rows are used.
+     */
+    public void testMinMax_mergedRows() {
+        data.halve();
+        data.halve();
+
+        Downsampler downsampler = new Downsampler(Downsampler.Mode.MIN_MAX);
+        downsampler.downsample(data, 1, 0, data.size(), NUM_COLUMNS);
+
+        assertEquals(1000.0, getMax(downsampler), 0.0);
+    }
+
+    public void testLargestTriangleThreeBuckets_numPoints() {
+        Downsampler downsampler = new Downsampler(Downsampler.Mode.LARGEST_TRIANGLE_THREE_BUCKETS);
+
+        downsampler.downsample(data, 1, 0, NUM_POINTS, NUM_COLUMNS);
+
+        assertEquals(NUM_COLUMNS, downsampler.size());
+        assertEquals(0, downsampler.getRow(0));
+        assertEquals(NUM_POINTS - 1, downsampler.getRow(NUM_COLUMNS - 1));
+        for (int i = 1; i < downsampler.size(); i++) {
+            assertTrue(downsampler.getRow(i) > downsampler.getRow(i - 1));
+        }
+    }
+
+    public void testLargestTriangleThreeBuckets_keepsSpike() {
+        Downsampler downsampler = new Downsampler(Downsampler.Mode.LARGEST_TRIANGLE_THREE_BUCKETS);
+
+        downsampler.downsample(data, 1, 0, NUM_POINTS, NUM_COLUMNS);
+
+        assertEquals(1000.0, getMax(downsampler), 0.0);
+    }
+
+    /**
+     * Tests that the line through the selected points is close to the full resolution data.
+     */
+    public void testLargestTriangleThreeBuckets_shape() {
+        SamplingBuffer sine = new SamplingBuffer(2);
+        for (int i = 0; i < NUM_POINTS; i++) {
+            sine.add(new double[]{i, 100.0 * Math.sin(i * 0.001)});
+        }
+        Downsampler downsampler = new Downsampler(Downsampler.Mode.LARGEST_TRIANGLE_THREE_BUCKETS);
+
+        downsampler.downsample(sine, 1, 0, NUM_POINTS, NUM_COLUMNS);
+
+        int segment = 0;
+        for (int row = 0; row < NUM_POINTS; row++) {
+            while (downsampler.getRow(segment + 1) < row) {
+                segment++;
+            }
+            int row1 = downsampler.getRow(segment);
+            int row2 = downsampler.getRow(segment + 1);
+            double interpolated = downsampler.getValue(segment) + (downsampler.getValue(segment + 1) - downsampler.getValue(segment)) * (row - row1) / (row2 - row1);
+            // Less than 1% of the amplitude
+            assertEquals(sine.getValue(row, 1), interpolated, 1.0);
+        }
+    }
+
+    public void testLargestTriangleThreeBuckets_fewPoints() {
+        data.add(new double[]{NUM_POINTS, Double.NaN});
+        Downsampler downsampler = new Downsampler(Downsampler.Mode.LARGEST_TRIANGLE_THREE_BUCKETS);
+
+        downsampler.downsample(data, 1, NUM_POINTS - 10, NUM_POINTS + 1, NUM_COLUMNS);
+
+        // All points with a value
+        assertEquals(10, downsampler.size());
+        assertEquals(NUM_POINTS - 1, downsampler.getRow(9));
+    }
+
+    public void testDownsample_noValues() {
+        SamplingBuffer empty = new SamplingBuffer(2);
+        empty.add(new double[]{0, Double.NaN});
+        Downsampler downsampler = new Downsampler(Downsampler.Mode.MIN_MAX);
+
+        downsampler.downsample(empty, 1, 0, 1, NUM_COLUMNS);
+
+        assertEquals(0, downsampler.size());
+    }
+
+    private static double getMax(Downsampler downsampler) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < downsampler.size(); i++) {
+            max = Math.max(max, downsampler.getValue(i));
+        }
+        return max;
+    }
+}
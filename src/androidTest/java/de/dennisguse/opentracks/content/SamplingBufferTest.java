@@ -0,0 +1,203 @@
+package de.dennisguse.opentracks.content;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link SamplingBuffer}.
+ */
+public class SamplingBufferTest extends TestCase {
+
+    private SamplingBuffer samplingBuffer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        samplingBuffer = new SamplingBuffer(3);
+    }
+
+    public void testAdd_growsCapacity() {
+        for (int i = 0; i < 1000; i++) {
+            samplingBuffer.add(new double[]{i, 2 * i, Double.NaN});
+        }
+
+        assertEquals(1000, samplingBuffer.size());
+        assertEquals(999.0, samplingBuffer.getX(999), 0.0);
+        assertEquals(1998.0, samplingBuffer.getValue(999, 1), 0.0);
+        assertTrue(Double.isNaN(samplingBuffer.getValue(999, 2)));
+        assertEquals(1, samplingBuffer.getCount(999));
+    }
+
+    /**
+     * Tests that the x values keep their precision (e.g., the time in ms of a long track) and the values are stored as floats.
+     */
+    public void testAdd_precision() {
+        samplingBuffer.add(new double[]{86400000.0 + 1.0, 0.1, 123.5});
+
+        assertEquals(86400001.0, samplingBuffer.getX(0), 0.0);
+        assertEquals(0.1, samplingBuffer.getValue(0, 1), 1e-6);
+        assertEquals(123.5, samplingBuffer.getValue(0, 2), 0.0);
+    }
+
+    public void testGetRow() {
+        samplingBuffer.add(new double[]{1, 2, Double.NaN});
+        samplingBuffer.merge(new double[]{2, 4, 6});
+        double[] row = new double[3];
+
+        samplingBuffer.getRow(0, row);
+
+        assertEquals(1.0, row[0], 0.0);
+        assertEquals(3.0, row[1], 0.0);
+        assertEquals(6.0, row[2], 0.0);
+    }
+
+    public void testGetNearestRow() {
+        assertEquals(-1, samplingBuffer.getNearestRow(0.0));
+        for (int i = 0; i < 100; i++) {
+            samplingBuffer.add(new double[]{i * 10.0, i, i});
+        }
+
+        assertEquals(0, samplingBuffer.getNearestRow(-5.0));
+        assertEquals(0, samplingBuffer.getNearestRow(4.0));
+        assertEquals(1, samplingBuffer.getNearestRow(6.0));
+        assertEquals(42, samplingBuffer.getNearestRow(420.0));
+        assertEquals(99, samplingBuffer.getNearestRow(5000.0));
+    }
+
+    public void testMerge() {
+        samplingBuffer.add(new double[]{0, 1, Double.NaN});
+        samplingBuffer.merge(new double[]{1, 5, 10});
+        samplingBuffer.merge(new double[]{2, 3, 20});
+
+        assertEquals(1, samplingBuffer.size());
+        // x of the first row
+        assertEquals(0.0, samplingBuffer.getX(0), 0.0);
+        assertEquals(3.0, samplingBuffer.getValue(0, 1), 0.0);
+        assertEquals(1.0, samplingBuffer.getMin(0, 1), 0.0);
+        assertEquals(5.0, samplingBuffer.getMax(0, 1), 0.0);
+        // NaN is ignored
+        assertEquals(10.0, samplingBuffer.getMin(0, 2), 0.0);
+        assertEquals(20.0, samplingBuffer.getMax(0, 2), 0.0);
+        assertEquals(3, samplingBuffer.getCount(0));
+    }
+
+    public void testMerge_empty() {
+        samplingBuffer.merge(new double[]{0, 1, 2});
+
+        assertEquals(1, samplingBuffer.size());
+        assertEquals(1, samplingBuffer.getCount(0));
+    }
+
+    public void testHalve() {
+        samplingBuffer.add(new double[]{0, 1, 10});
+        samplingBuffer.add(new double[]{1, 3, Double.NaN});
+        samplingBuffer.add(new double[]{2, 5, 20});
+        samplingBuffer.add(new double[]{3, 7, 40});
+        samplingBuffer.add(new double[]{4, 9, 50});
+
+        samplingBuffer.halve();
+
+        assertEquals(3, samplingBuffer.size());
+        // x of the first row of a bucket
+        assertEquals(0.0, samplingBuffer.getX(0), 0.0);
+        assertEquals(2.0, samplingBuffer.getX(1), 0.0);
+        assertEquals(4.0, samplingBuffer.getX(2), 0.0);
+
+        assertEquals(2.0, samplingBuffer.getValue(0, 1), 0.0);
+        assertEquals(1.0, samplingBuffer.getMin(0, 1), 0.0);
+        assertEquals(3.0, samplingBuffer.getMax(0, 1), 0.0);
+        // NaN is ignored
+        assertEquals(10.0, samplingBuffer.getValue(0, 2), 0.0);
+
+        assertEquals(30.0, samplingBuffer.getValue(1, 2), 0.0);
+        assertEquals(20.0, samplingBuffer.getMin(1, 2), 0.0);
+        assertEquals(40.0, samplingBuffer.getMax(1, 2), 0.0);
+
+        // The odd row is kept
+        assertEquals(9.0, samplingBuffer.getValue(2, 1), 0.0);
+        assertEquals(1, samplingBuffer.getCount(2));
+    }
+
+    /**
+     * Tests that the mean of a sparse column (e.g., heart rate) is weighted by its non-NaN values and not by the number of rows.
+     */
+    public void testHalve_sparseColumn() {
+        samplingBuffer.add(new double[]{0, 1, 100});
+        samplingBuffer.add(new double[]{1, 1, Double.NaN});
+        samplingBuffer.add(new double[]{2, 1, Double.NaN});
+        samplingBuffer.add(new double[]{3, 1, Double.NaN});
+        samplingBuffer.add(new double[]{4, 1, 130});
+        samplingBuffer.add(new double[]{5, 1, 160});
+        samplingBuffer.add(new double[]{6, 1, Double.NaN});
+        samplingBuffer.add(new double[]{7, 1, 170});
+
+        samplingBuffer.halve();
+        samplingBuffer.halve();
+        samplingBuffer.halve();
+
+        assertEquals(1, samplingBuffer.size());
+        assertEquals(8, samplingBuffer.getCount(0));
+        assertEquals(1.0, samplingBuffer.getValue(0, 1), 0.0);
+        // The mean of 100, 130, 160 and 170
+        assertEquals(140.0, samplingBuffer.getValue(0, 2), 0.0);
+        assertEquals(100.0, samplingBuffer.getMin(0, 2), 0.0);
+        assertEquals(170.0, samplingBuffer.getMax(0, 2), 0.0);
+    }
+
+    public void testHalve_pointSampled() {
+        samplingBuffer.setPointSampled(2);
+        for (int i = 0; i < 8; i++) {
+            samplingBuffer.add(new double[]{i, i, 10 * i});
+        }
+
+        samplingBuffer.halve();
+        samplingBuffer.halve();
+
+        assertEquals(2, samplingBuffer.size());
+        assertEquals(1.5, samplingBuffer.getValue(0, 1), 0.0);
+        // The value of the first row like the x value
+        assertEquals(40.0, samplingBuffer.getValue(1, 2), 0.0);
+        assertEquals(40.0, samplingBuffer.getMin(1, 2), 0.0);
+        assertEquals(70.0, samplingBuffer.getMax(1, 2), 0.0);
+    }
+
+    /**
+     * Tests that all sampled rows cover the same number of rows.
+     */
+    public void testSample() {
+        for (int i = 0; i < 100; i++) {
+            samplingBuffer.sample(new double[]{i, 1, 1}, 10);
+        }
+
+        // Every 16th row
+        assertEquals(7, samplingBuffer.size());
+        for (int i = 0; i < 6; i++) {
+            assertEquals(16.0 * i, samplingBuffer.getX(i), 0.0);
+            assertEquals(16, samplingBuffer.getCount(i));
+        }
+        assertEquals(4, samplingBuffer.getCount(6));
+    }
+
+    public void testHalve_keepsExtremes() {
+        int n = 1024;
+        for (int i = 0; i < n; i++) {
+            // One spike
+            samplingBuffer.add(new double[]{i, i == 333 ? 1000.0 : 1.0, -i});
+        }
+
+        while (samplingBuffer.size() > 4) {
+            samplingBuffer.halve();
+        }
+
+        assertEquals(4, samplingBuffer.size());
+        assertEquals(1000.0, samplingBuffer.getMax(1, 1), 0.0);
+        assertEquals(1.0, samplingBuffer.getMin(1, 1), 0.0);
+        assertEquals(-(n - 1.0), samplingBuffer.getMin(3, 2), 0.0);
+        assertEquals(n / 4, samplingBuffer.getCount(0));
+        // The count-weighted mean of all values
+        double mean = 0.0;
+        for (int i = 0; i < 4; i++) {
+            mean += samplingBuffer.getValue(i, 2) * samplingBuffer.getCount(i);
+        }
+        assertEquals(-(n - 1.0) / 2.0, mean / n, 1e-9);
+    }
+}
@@ -0,0 +1,125 @@
+package de.dennisguse.opentracks.content;
+
+import android.content.Context;
+import android.location.Location;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.dennisguse.opentracks.content.sensor.SensorDataSet;
+
+/**
+ * Tests for {@link TrackPointCache}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TrackPointCacheTest {
+
+    private static final long TRACK_ID = 1L;
+
+    private final Context context = ApplicationProvider.getApplicationContext();
+    private ContentProviderUtils contentProviderUtils;
+    private TrackPointCache trackPointCache;
+
+    @Before
+    public void setUp() {
+        contentProviderUtils = ContentProviderUtils.Factory.get(context);
+        contentProviderUtils.deleteAllTracks(context);
+        trackPointCache = new TrackPointCache(100);
+    }
+
+    @Test
+    public void testGetTrackPoints() {
+        insertTrack(TRACK_ID, 10);
+
+        TrackPointCache.Snapshot snapshot = trackPointCache.getTrackPoints(contentProviderUtils, TRACK_ID);
+
+        Assert.assertEquals(10, snapshot.size());
+        Assert.assertEquals(37.0009, snapshot.getLatitude(9), 1e-6);
+        Assert.assertEquals(20.0f, snapshot.getAltitude(9), 0.0f);
+        Assert.assertEquals(139.0f, snapshot.getHeartRate(9), 0.0f);
+        Assert.assertTrue(Float.isNaN(snapshot.getPower(9)));
+        Assert.assertTrue(snapshot.getDistance(9) > snapshot.getDistance(8));
+
+        Location location = snapshot.createLocation(9);
+        Assert.assertEquals(snapshot.getTime(9), location.getTime());
+        Assert.assertEquals(20.0, location.getAltitude(), 0.0);
+    }
+
+    @Test
+    public void testGetTrackPoints_cached() {
+        insertTrack(TRACK_ID, 10);
+
+        TrackPointCache.Snapshot first = trackPointCache.getTrackPoints(contentProviderUtils, TRACK_ID);
+        TrackPointCache.Snapshot second = trackPointCache.getTrackPoints(contentProviderUtils, TRACK_ID);
+
+        Assert.assertSame(first, second);
+    }
+
+    @Test
+    public void testGetTrackPoints_appended() {
+        insertTrack(TRACK_ID, 10);
+        TrackPointCache.Snapshot first = trackPointCache.getTrackPoints(contentProviderUtils, TRACK_ID);
+
+        contentProviderUtils.insertTrackPoint(createLocation(10), TRACK_ID);
+        trackPointCache.notifyTrackPointsInserted(TRACK_ID);
+        TrackPointCache.Snapshot second = trackPointCache.getTrackPoints(contentProviderUtils, TRACK_ID);
+
+        // The first snapshot is unchanged.
+        Assert.assertEquals(10, first.size());
+        Assert.assertEquals(11, second.size());
+        Assert.assertEquals(first.getId(9), second.getId(9));
+        Assert.assertTrue(second.getId(10) > second.getId(9));
+        Assert.assertEquals(10, second.getIndex(second.getId(9) + 1));
+    }
+
+    @Test
+    public void testEvict() {
+        insertTrack(TRACK_ID, 60);
+        insertTrack(TRACK_ID + 1, 60);
+
+        trackPointCache.getTrackPoints(contentProviderUtils, TRACK_ID);
+        trackPointCache.getTrackPoints(contentProviderUtils, TRACK_ID + 1);
+
+        // The least recently used track is dropped.
+        Assert.assertFalse(trackPointCache.contains(TRACK_ID));
+        Assert.assertTrue(trackPointCache.contains(TRACK_ID + 1));
+    }
+
+    @Test
+    public void testInvalidate() {
+        insertTrack(TRACK_ID, 10);
+        trackPointCache.getTrackPoints(contentProviderUtils, TRACK_ID);
+
+        trackPointCache.invalidate(TRACK_ID);
+
+        Assert.assertFalse(trackPointCache.contains(TRACK_ID));
+    }
+
+    private void insertTrack(long trackId, int numPoints) {
+        Track track = new Track();
+        track.setId(trackId);
+        track.setName("Test: " + trackId);
+        contentProviderUtils.insertTrack(track);
+
+        Location[] locations = new Location[numPoints];
+        for (int i = 0; i < numPoints; i++) {
+            locations[i] = createLocation(i);
+        }
+        contentProviderUtils.bulkInsertTrackPoint(locations, numPoints, trackId);
+    }
+
+    private static Location createLocation(int i) {
+        SensorDataSetLocation location = new SensorDataSetLocation("test");
+        location.setLatitude(37.0 + i / 10000.0);
+        location.setLongitude(57.0);
+        location.setAltitude(i * 2.0 + 2.0);
+        location.setTime(i * 1000L);
+        location.setSensorDataSet(new SensorDataSet(130.0f + i, SensorDataSet.DATA_UNAVAILABLE));
+        return location;
+    }
+}
@@ -0,0 +1,133 @@
+package de.dennisguse.opentracks.fragments;
+
+import junit.framework.TestCase;
+
+import de.dennisguse.opentracks.content.SamplingBuffer;
+
+/**
+ * Tests the delta of {@link ChartComparisonLoader}.
+ */
+public class ChartComparisonLoaderTest extends TestCase {
+
+    /**
+     * Tests that a faster track (less time for the same distance) is ahead.
+     */
+    public void testComputeDelta_byDistance_ahead() {
+        // 1 km per 300 s and 1 km per 250 s
+        SamplingBuffer reference = createTrack(5, 1.0, 300000.0);
+        SamplingBuffer track = createTrack(5, 1.0, 250000.0);
+
+        SamplingBuffer delta = ChartComparisonLoader.computeDelta(reference, track, true);
+
+        assertEquals(5, delta.size());
+        for (int i = 0; i < delta.size(); i++) {
+            assertEquals(i * 1.0, delta.getX(i), 0.0);
+            assertEquals(i * 50000.0, delta.getValue(i, 1), 0.01);
+        }
+    }
+
+    /**
+     * Tests that a slower track (less distance in the same time) is behind.
+     */
+    public void testComputeDelta_byTime_behind() {
+        // 60 s per 0.3 km and 60 s per 0.25 km
+        SamplingBuffer reference = createTrack(5, 60000.0, 0.3);
+        SamplingBuffer track = createTrack(5, 60000.0, 0.25);
+
+        SamplingBuffer delta = ChartComparisonLoader.computeDelta(reference, track, false);
+
+        assertEquals(5, delta.size());
+        for (int i = 0; i < delta.size(); i++) {
+            assertEquals(-i * 0.05, delta.getValue(i, 1), 0.0001);
+        }
+    }
+
+    /**
+     * Tests that the reference is interpolated between its data points.
+     */
+    public void testComputeDelta_interpolated() {
+        // At 0, 2, 4 km
+        SamplingBuffer reference = createTrack(3, 2.0, 600000.0);
+        // At 0, 1, 2, 3, 4 km
+        SamplingBuffer track = createTrack(5, 1.0, 300000.0);
+
+        SamplingBuffer delta = ChartComparisonLoader.computeDelta(reference, track, true);
+
+        assertEquals(5, delta.size());
+        for (int i = 0; i < delta.size(); i++) {
+            assertEquals(0.0, delta.getValue(i, 1), 0.01);
+        }
+    }
+
+    /**
+     * Tests that the data points beyond the reference are skipped.
+     */
+    public void testComputeDelta_beyondReference() {
+        SamplingBuffer reference = createTrack(3, 1.0, 300000.0);
+        SamplingBuffer track = createTrack(10, 1.0, 300000.0);
+
+        SamplingBuffer delta = ChartComparisonLoader.computeDelta(reference, track, true);
+
+        assertEquals(3, delta.size());
+        assertEquals(2.0, delta.getX(2), 0.0);
+    }
+
+    /**
+     * Tests that identical tracks of different length (halved a different number of times) have no delta.
+     */
+    public void testComputeDelta_halvedDifferently() {
+        // 10 m per 3 s
+        SamplingBuffer reference = createHalvedTrack(3000, 0.01, 3000.0);
+        SamplingBuffer track = createHalvedTrack(9000, 0.01, 3000.0);
+
+        SamplingBuffer delta = ChartComparisonLoader.computeDelta(reference, track, true);
+
+        assertTrue(delta.size() > 0);
+        for (int i = 0; i < delta.size(); i++) {
+            assertEquals(0.0, delta.getValue(i, 1), 2.0);
+        }
+    }
+
+    public void testComputeDelta_emptyReference() {
+        SamplingBuffer reference = new SamplingBuffer(ChartComparisonLoader.NUM_COLUMNS);
+        SamplingBuffer track = createTrack(10, 1.0, 300000.0);
+
+        assertTrue(ChartComparisonLoader.computeDelta(reference, track, true).isEmpty());
+    }
+
+    /**
+     * Creates a track with the other axis proportional to the x value.
+     *
+     * @param numDataPoints the number of data points
+     * @param xStep         the x value between data points
+     * @param otherAxisStep the value of the other axis between data points
+     */
+    /**
+     * Creates a track like {@link ChartComparisonLoader} loads it: sampled into at most {@link ChartComparisonLoader#MAX_DATA_POINTS} data points.
+     *
+     * @param numDataPoints the number of data points
+     * @param xStep         the x value between data points
+     * @param otherAxisStep the value of the other axis between data points
+     */
+    private static SamplingBuffer createHalvedTrack(int numDataPoints, double xStep, double otherAxisStep) {
+        SamplingBuffer track = ChartComparisonLoader.newTrackData();
+        double[] row = new double[ChartComparisonLoader.NUM_COLUMNS];
+        for (int i = 0; i < numDataPoints; i++) {
+            row[0] = i * xStep;
+            row[ChartComparisonLoader.OTHER_AXIS_COLUMN] = i * otherAxisStep;
+            track.sample(row, ChartComparisonLoader.MAX_DATA_POINTS);
+        }
+        return track;
+    }
+
+    private static SamplingBuffer createTrack(int numDataPoints, double xStep, double otherAxisStep) {
+        SamplingBuffer track = new SamplingBuffer(ChartComparisonLoader.NUM_COLUMNS);
+        double[] row = new double[ChartComparisonLoader.NUM_COLUMNS];
+        for (int i = 0; i < numDataPoints; i++) {
+            row[0] = i * xStep;
+            row[ChartComparisonLoader.OTHER_AXIS_COLUMN] = i * otherAxisStep;
+            track.add(row);
+        }
+        return track;
+    }
+}
@@ -0,0 +1,146 @@
+package de.dennisguse.opentracks.io.file;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Tests for {@link NativeFormat}.
+ */
+public class NativeFormatTest extends TestCase {
+
+    private static final long[] LONGS = {0L, 1L, -1L, 63L, 64L, -64L, -65L, 127L, 128L, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+
+    public void testBlocks() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        NativeFormat.Output output = new NativeFormat.Output(outputStream);
+        output.writeHeader();
+        for (long value : LONGS) {
+            output.writeZigZag(value);
+            output.writeLong(value);
+        }
+        output.writeDouble(-0.0);
+        output.writeDouble(Double.NaN);
+        output.writeInt(-2);
+        output.writeString("Zürich 😀");
+        output.writeBytes(new byte[]{1, 2, 3});
+        output.endBlock(NativeFormat.BLOCK_TRACK);
+
+        // A block larger than the initial buffers
+        for (int i = 0; i < 100000; i++) {
+            output.writeVarLong(i);
+        }
+        output.endBlock(NativeFormat.BLOCK_TRACK_POINTS);
+        output.endBlock(NativeFormat.BLOCK_END);
+
+        NativeFormat.Input input = new NativeFormat.Input(new ByteArrayInputStream(outputStream.toByteArray()));
+        assertEquals(NativeFormat.VERSION, input.readHeader());
+        assertEquals(NativeFormat.BLOCK_TRACK, input.nextBlock());
+        for (long value : LONGS) {
+            assertEquals(value, input.readZigZag());
+            assertEquals(value, input.readLong());
+        }
+        assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(input.readDouble()));
+        assertTrue(Double.isNaN(input.readDouble()));
+        assertEquals(-2, input.readInt());
+        assertEquals("Zürich 😀", input.readString());
+        assertTrue(Arrays.equals(new byte[]{1, 2, 3}, input.readBytes()));
+        try {
+            input.readByte();
+            fail();
+        } catch (IOException e) {
+            // Expected: end of block
+        }
+
+        assertEquals(NativeFormat.BLOCK_TRACK_POINTS, input.nextBlock());
+        for (int i = 0; i < 100000; i++) {
+            assertEquals(i, input.readVarLong());
+        }
+        assertEquals(NativeFormat.BLOCK_END, input.nextBlock());
+    }
+
+    public void testSetByte() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        NativeFormat.Output output = new NativeFormat.Output(outputStream);
+        output.writeHeader();
+        int position = output.position();
+        output.writeByte(0);
+        output.writeVarLong(300);
+        output.setByte(position, 42);
+        output.endBlock(NativeFormat.BLOCK_SPLITS);
+
+        NativeFormat.Input input = new NativeFormat.Input(new ByteArrayInputStream(outputStream.toByteArray()));
+        input.readHeader();
+        assertEquals(NativeFormat.BLOCK_SPLITS, input.nextBlock());
+        assertEquals(42, input.readByte());
+        assertEquals(300, input.readVarLong());
+    }
+
+    /**
+     * Tests that a changed byte is detected by the checksum.
+     */
+    public void testNextBlock_invalidChecksum() throws IOException {
+        byte[] bytes = createFile();
+        // A byte of the payload of the first block
+        bytes[bytes.length - 4 - 6 - 5] ^= 1;
+        NativeFormat.Input input = new NativeFormat.Input(new ByteArrayInputStream(bytes));
+        input.readHeader();
+        try {
+            input.nextBlock();
+            fail();
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    public void testNextBlock_truncated() throws IOException {
+        byte[] bytes = createFile();
+        NativeFormat.Input input = new NativeFormat.Input(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 8)));
+        input.readHeader();
+        try {
+            input.nextBlock();
+            fail();
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    public void testReadHeader_invalid() {
+        byte[] bytes = createFile();
+        // Later version
+        bytes[4] = NativeFormat.VERSION + 1;
+        try {
+            new NativeFormat.Input(new ByteArrayInputStream(bytes)).readHeader();
+            fail();
+        } catch (IOException e) {
+            // Expected
+        }
+
+        try {
+            new NativeFormat.Input(new ByteArrayInputStream("<?xml version".getBytes())).readHeader();
+            fail();
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Creates a file of a block with 5 bytes and an empty end block.
+     */
+    private static byte[] createFile() {
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            NativeFormat.Output output = new NativeFormat.Output(outputStream);
+            output.writeHeader();
+            output.writeString("abcd");
+            output.endBlock(NativeFormat.BLOCK_TRACK);
+            output.endBlock(NativeFormat.BLOCK_END);
+            return outputStream.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
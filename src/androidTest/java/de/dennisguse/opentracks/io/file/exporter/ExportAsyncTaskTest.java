@@ -0,0 +1,139 @@
+package de.dennisguse.opentracks.io.file.exporter;
+
+import android.content.Context;
+import android.location.Location;
+import android.location.LocationManager;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import de.dennisguse.opentracks.content.ContentProviderUtils;
+import de.dennisguse.opentracks.content.Track;
+import de.dennisguse.opentracks.io.file.TrackFileFormat;
+
+/**
+ * Tests the concurrent export of {@link ExportAsyncTask}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ExportAsyncTaskTest {
+
+    private static final int NUM_TRACKS = 8;
+    private static final int NUM_POINTS = 1000;
+
+    private final Context context = ApplicationProvider.getApplicationContext();
+    private ContentProviderUtils contentProviderUtils;
+    private File directory;
+
+    @Before
+    public void setUp() {
+        contentProviderUtils = ContentProviderUtils.Factory.get(context);
+        contentProviderUtils.deleteAllTracks(context);
+        directory = new File(context.getCacheDir(), "export_test");
+        deleteDirectory();
+        directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        contentProviderUtils.deleteAllTracks(context);
+        deleteDirectory();
+    }
+
+    /**
+     * Tests that tracks with the same name exported concurrently get unique files and that the progress completes.
+     */
+    @Test
+    public void testExport_sameName() {
+        for (int i = 0; i < NUM_TRACKS; i++) {
+            insertTrack("Test");
+        }
+        TestExportAsyncTask exportAsyncTask = new TestExportAsyncTask(context, directory);
+
+        Assert.assertTrue(exportAsyncTask.doInBackground());
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+
+        File[] files = directory.listFiles();
+        Assert.assertEquals(NUM_TRACKS, files.length);
+        Set<String> fileNames = new HashSet<>();
+        for (File file : files) {
+            Assert.assertTrue(file.length() > 0);
+            fileNames.add(file.getName());
+        }
+        Assert.assertTrue(fileNames.contains("Test.gpx"));
+        Assert.assertTrue(fileNames.contains("Test(" + (NUM_TRACKS - 1) + ").gpx"));
+
+        List<int[]> progress = exportAsyncTask.getProgress();
+        Assert.assertFalse(progress.isEmpty());
+        int[] last = progress.get(progress.size() - 1);
+        Assert.assertEquals(last[1], last[0]);
+        for (int i = 1; i < progress.size(); i++) {
+            Assert.assertTrue(progress.get(i)[0] >= progress.get(i - 1)[0]);
+        }
+    }
+
+    private void insertTrack(String name) {
+        Track track = new Track();
+        track.setName(name);
+        track.setNumberOfPoints(NUM_POINTS);
+        long trackId = Long.parseLong(contentProviderUtils.insertTrack(track).getLastPathSegment());
+
+        Location[] locations = new Location[NUM_POINTS];
+        for (int i = 0; i < NUM_POINTS; i++) {
+            Location location = new Location(LocationManager.GPS_PROVIDER);
+            location.setLatitude(47.0 + i / 10000.0);
+            location.setLongitude(8.0);
+            location.setAltitude(500.0);
+            location.setTime(1500000000000L + i * 1000L);
+            locations[i] = location;
+        }
+        contentProviderUtils.bulkInsertTrackPoint(locations, NUM_POINTS, trackId);
+    }
+
+    private void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * Records the published progress (on the UI thread).
+     */
+    private static class TestExportAsyncTask extends ExportAsyncTask {
+
+        private final List<int[]> progress = new ArrayList<>();
+
+        TestExportAsyncTask(Context context, File directory) {
+            super(context, TrackFileFormat.GPX, directory);
+        }
+
+        @Override
+        protected void onProgressUpdate(Integer... values) {
+            synchronized (progress) {
+                progress.add(new int[]{values[0], values[1]});
+            }
+        }
+
+        List<int[]> getProgress() {
+            synchronized (progress) {
+                return new ArrayList<>(progress);
+            }
+        }
+    }
+}
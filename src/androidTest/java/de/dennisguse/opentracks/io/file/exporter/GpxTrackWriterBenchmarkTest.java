@@ -0,0 +1,174 @@
+package de.dennisguse.opentracks.io.file.exporter;
+
+import android.location.Location;
+import android.location.LocationManager;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.text.NumberFormat;
+import java.util.Locale;
+import java.util.Random;
+
+import de.dennisguse.opentracks.BenchmarkUtils;
+import de.dennisguse.opentracks.util.StringUtils;
+
+/**
+ * Benchmark of writing the track points of a large track with {@link GpxTrackWriter} compared to the former {@link PrintWriter} and {@link NumberFormat} implementation.
+ * Reports ms per track to logcat; verifies that the output is the same and that writing does (nearly) not allocate.
+ */
+@RunWith(AndroidJUnit4.class)
+public class GpxTrackWriterBenchmarkTest {
+
+    private static final String TAG = GpxTrackWriterBenchmarkTest.class.getSimpleName();
+
+    private static final int WARMUP_ITERATIONS = 2;
+    private static final int ITERATIONS = 5;
+    private static final int NUM_LOCATIONS = 200000;
+
+    // Only the flushes of the output buffer and the cached dates may allocate
+    private static final int MAX_ALLOCATIONS = 1000;
+
+    private static final OutputStream NULL_OUTPUT_STREAM = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private final Location[] locations = createLocations();
+
+    @Test
+    public void writeLocation_sameOutput() throws Exception {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        LegacyGpxTrackWriter legacyGpxTrackWriter = new LegacyGpxTrackWriter(expected);
+        for (Location location : locations) {
+            legacyGpxTrackWriter.writeLocation(location);
+        }
+        legacyGpxTrackWriter.close();
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        writeLocations(actual);
+
+        Assert.assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+    }
+
+    @Test
+    public void benchmarkLegacyGpxTrackWriter() throws Exception {
+        int allocations = measure("PrintWriter", new BenchmarkUtils.Benchmark() {
+            @Override
+            public double run(int iteration) {
+                writeLocationsLegacy();
+                return 0;
+            }
+        });
+        // PrintWriter and NumberFormat allocate; so, the counting works.
+        BenchmarkUtils.assertAllocCounting(allocations);
+    }
+
+    @Test
+    public void benchmarkGpxTrackWriter() throws Exception {
+        int allocations = measure("GpxTrackWriter", new BenchmarkUtils.Benchmark() {
+            @Override
+            public double run(int iteration) {
+                writeLocations(NULL_OUTPUT_STREAM);
+                return 0;
+            }
+        });
+        Assert.assertTrue(allocations < ITERATIONS * MAX_ALLOCATIONS);
+    }
+
+    private void writeLocations(OutputStream outputStream) {
+        GpxTrackWriter gpxTrackWriter = new GpxTrackWriter("benchmark");
+        gpxTrackWriter.prepare(outputStream);
+        for (Location location : locations) {
+            gpxTrackWriter.writeLocation(location);
+        }
+        gpxTrackWriter.close();
+    }
+
+    private void writeLocationsLegacy() {
+        LegacyGpxTrackWriter legacyGpxTrackWriter = new LegacyGpxTrackWriter(NULL_OUTPUT_STREAM);
+        for (Location location : locations) {
+            legacyGpxTrackWriter.writeLocation(location);
+        }
+        legacyGpxTrackWriter.close();
+    }
+
+    /**
+     * Creates a track with a point per second.
+     */
+    private static Location[] createLocations() {
+        Random random = new Random(1);
+        Location[] locations = new Location[NUM_LOCATIONS];
+        double latitude = 47.0;
+        double longitude = 8.0;
+        double altitude = 500.0;
+        for (int i = 0; i < locations.length; i++) {
+            latitude += (random.nextDouble() - 0.5) * 0.0002;
+            longitude += (random.nextDouble() - 0.5) * 0.0002;
+            altitude += random.nextDouble() - 0.5;
+
+            Location location = new Location(LocationManager.GPS_PROVIDER);
+            // Like stored in the database: E6 and float
+            location.setLatitude((int) (latitude * 1E6) / 1E6);
+            location.setLongitude((int) (longitude * 1E6) / 1E6);
+            if (i % 10 != 0) {
+                location.setAltitude((float) altitude);
+            }
+            location.setTime(1500000000000L + i * 1000L);
+            locations[i] = location;
+        }
+        return locations;
+    }
+
+    private static int measure(String name, BenchmarkUtils.Benchmark benchmark) throws Exception {
+        return BenchmarkUtils.measure(TAG, name, "track", WARMUP_ITERATIONS, ITERATIONS, benchmark);
+    }
+
+    /**
+     * The track point output of {@link GpxTrackWriter} before {@link XmlOutput}.
+     */
+    private static class LegacyGpxTrackWriter {
+
+        private static final NumberFormat ELEVATION_FORMAT = NumberFormat.getInstance(Locale.US);
+        private static final NumberFormat COORDINATE_FORMAT = NumberFormat.getInstance(Locale.US);
+
+        static {
+            ELEVATION_FORMAT.setMaximumFractionDigits(1);
+            ELEVATION_FORMAT.setGroupingUsed(false);
+
+            COORDINATE_FORMAT.setMaximumFractionDigits(6);
+            COORDINATE_FORMAT.setMaximumIntegerDigits(3);
+            COORDINATE_FORMAT.setGroupingUsed(false);
+        }
+
+        private final PrintWriter printWriter;
+
+        LegacyGpxTrackWriter(OutputStream outputStream) {
+            printWriter = new PrintWriter(outputStream);
+        }
+
+        void writeLocation(Location location) {
+            printWriter.println("<trkpt lat=\"" + COORDINATE_FORMAT.format(location.getLatitude()) + "\" lon=\"" + COORDINATE_FORMAT.format(location.getLongitude()) + "\">");
+            if (location.hasAltitude()) {
+                printWriter.println("<ele>" + ELEVATION_FORMAT.format(location.getAltitude()) + "</ele>");
+            }
+            printWriter.println("<time>" + StringUtils.formatDateTimeIso8601(location.getTime()) + "</time>");
+            printWriter.println("</trkpt>");
+        }
+
+        void close() {
+            printWriter.flush();
+        }
+    }
+}
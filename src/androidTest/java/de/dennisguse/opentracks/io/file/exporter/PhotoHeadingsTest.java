@@ -0,0 +1,99 @@
+package de.dennisguse.opentracks.io.file.exporter;
+
+import android.location.Location;
+import android.location.LocationManager;
+
+import junit.framework.TestCase;
+
+import de.dennisguse.opentracks.util.GeodesyUtils;
+
+/**
+ * Tests for {@link PhotoHeadings}.
+ */
+public class PhotoHeadingsTest extends TestCase {
+
+    private static final long START_TIME = 1000000L;
+
+    /**
+     * Tests that the view location is {@link PhotoHeadings#VIEW_DISTANCE} track points before the photo.
+     */
+    public void testGetHeading() {
+        PhotoHeadings photoHeadings = new PhotoHeadings(new long[]{time(20), time(15)});
+        addTrackPoints(photoHeadings, 0, 30);
+
+        Location photo = createLocation(time(20), 1.0, 1.0);
+        assertEquals(GeodesyUtils.bearing(latitude(20 - PhotoHeadings.VIEW_DISTANCE), longitude(20 - PhotoHeadings.VIEW_DISTANCE), 1.0, 1.0), photoHeadings.getHeading(photo));
+
+        photo = createLocation(time(15), 1.0, 1.0);
+        assertEquals(GeodesyUtils.bearing(latitude(15 - PhotoHeadings.VIEW_DISTANCE), longitude(15 - PhotoHeadings.VIEW_DISTANCE), 1.0, 1.0), photoHeadings.getHeading(photo));
+    }
+
+    /**
+     * Tests that the view location is the first track point if there are fewer track points before the photo.
+     */
+    public void testGetHeading_start() {
+        PhotoHeadings photoHeadings = new PhotoHeadings(new long[]{time(3)});
+        addTrackPoints(photoHeadings, 0, 30);
+
+        Location photo = createLocation(time(3), 1.0, 1.0);
+        assertEquals(GeodesyUtils.bearing(latitude(0), longitude(0), 1.0, 1.0), photoHeadings.getHeading(photo));
+    }
+
+    /**
+     * Tests that the last track point at the time of the photo is used and that the times need not be ordered.
+     */
+    public void testGetHeading_unordered() {
+        PhotoHeadings photoHeadings = new PhotoHeadings(new long[]{time(25), time(5)});
+        addTrackPoints(photoHeadings, 0, 30);
+        // Same time as track point 5
+        photoHeadings.addTrackPoint(time(5), 2.0, 2.0);
+
+        Location photo = createLocation(time(5), 1.0, 1.0);
+        assertEquals(GeodesyUtils.bearing(latitude(30 - PhotoHeadings.VIEW_DISTANCE), longitude(30 - PhotoHeadings.VIEW_DISTANCE), 1.0, 1.0), photoHeadings.getHeading(photo));
+
+        photo = createLocation(time(25), 1.0, 1.0);
+        assertEquals(GeodesyUtils.bearing(latitude(25 - PhotoHeadings.VIEW_DISTANCE), longitude(25 - PhotoHeadings.VIEW_DISTANCE), 1.0, 1.0), photoHeadings.getHeading(photo));
+    }
+
+    /**
+     * Tests that the bearing of the photo is used if there is no track point at its time.
+     */
+    public void testGetHeading_noTrackPoint() {
+        PhotoHeadings photoHeadings = new PhotoHeadings(new long[]{time(40)});
+        addTrackPoints(photoHeadings, 0, 30);
+
+        Location photo = createLocation(time(40), 1.0, 1.0);
+        photo.setBearing(42.0f);
+        assertEquals(42.0f, photoHeadings.getHeading(photo));
+
+        photo = createLocation(time(10) + 1, 1.0, 1.0);
+        photo.setBearing(43.0f);
+        assertEquals(43.0f, photoHeadings.getHeading(photo));
+    }
+
+    private static void addTrackPoints(PhotoHeadings photoHeadings, int start, int end) {
+        for (int i = start; i < end; i++) {
+            photoHeadings.addTrackPoint(time(i), latitude(i), longitude(i));
+        }
+    }
+
+    private static long time(int i) {
+        return START_TIME + i * 1000L;
+    }
+
+    private static double latitude(int i) {
+        return 48.0 + i * 0.001;
+    }
+
+    private static double longitude(int i) {
+        return 11.0 + i * 0.002;
+    }
+
+    private static Location createLocation(long time, double latitude, double longitude) {
+        Location location = new Location(LocationManager.GPS_PROVIDER);
+        location.setTime(time);
+        location.setLatitude(latitude);
+        location.setLongitude(longitude);
+        return location;
+    }
+}
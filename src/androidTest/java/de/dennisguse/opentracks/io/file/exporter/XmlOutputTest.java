@@ -0,0 +1,128 @@
+package de.dennisguse.opentracks.io.file.exporter;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintWriter;
+import java.text.NumberFormat;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import de.dennisguse.opentracks.util.StringUtils;
+
+/**
+ * Tests that {@link XmlOutput} writes the same bytes as a {@link PrintWriter} with the formatting used before (i.e., {@link NumberFormat}, {@link Double#toString(double)}, and {@link StringUtils}).
+ */
+public class XmlOutputTest extends TestCase {
+
+    private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    private final XmlOutput xmlOutput = new XmlOutput(outputStream);
+
+    public void testPrint() throws Exception {
+        String[] texts = {"", "<trkseg>", "Zürich", "© € 😀", "unpaired \uD800 surrogate"};
+        for (String text : texts) {
+            xmlOutput.println(text);
+            assertOutput(text + "\n");
+        }
+        xmlOutput.print(-123);
+        xmlOutput.print(Integer.MIN_VALUE);
+        assertOutput("-123" + Integer.MIN_VALUE);
+    }
+
+    public void testPrintCData() throws Exception {
+        String[] texts = {"", "hello", "hello]]>there", "]]>]]>", "Zürich 😀 ]]"};
+        for (String text : texts) {
+            xmlOutput.printCData(text);
+            assertOutput(StringUtils.formatCData(text));
+        }
+        xmlOutput.printlnCDataElement("name", "a]]>b");
+        assertOutput("<name>" + StringUtils.formatCData("a]]>b") + "</name>\n");
+    }
+
+    public void testPrintTime() throws Exception {
+        long[] times = {0L, -1L, 12345L, 1500000000123L};
+        for (long time : times) {
+            xmlOutput.printTime(time);
+            assertOutput(StringUtils.formatDateTimeIso8601(time));
+        }
+    }
+
+    /**
+     * Tests that the coordinates and elevations are formatted like the {@link NumberFormat}s of the {@link GpxTrackWriter} before.
+     */
+    public void testPrintDouble() throws Exception {
+        NumberFormat coordinateFormat = createNumberFormat(6);
+        NumberFormat elevationFormat = createNumberFormat(1);
+
+        double[] values = {0.0, -0.0, 1.0, -1.0, 0.5, 0.25, 2.5, 47.123456, -122.084095, 180.0, 1e-7, -1e-7, 0.0000005, 0.0000015, 500.25, 1234.56789};
+        for (double value : values) {
+            assertPrintDouble(coordinateFormat, value, 6);
+            assertPrintDouble(elevationFormat, value, 1);
+        }
+
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            // Like the track points: coordinates in E6 and altitudes as float
+            assertPrintDouble(coordinateFormat, (random.nextInt(360000000) - 180000000) / 1E6, 6);
+            assertPrintDouble(elevationFormat, (float) (random.nextDouble() * 9000.0 - 500.0), 1);
+            assertPrintDouble(elevationFormat, random.nextDouble() * 9000.0 - 500.0, 1);
+        }
+    }
+
+    /**
+     * Tests that the KML coordinates and sensor values are formatted like {@link Double#toString(double)} and {@link Float#toString(float)} before.
+     */
+    public void testPrintShortest() throws Exception {
+        double[] values = {0.0, -0.0, 1.0, -1.0, 0.001, 0.00099, 1e7, 9999999.5, 47.123456, -122.084095, 1e-10, 1e20, Double.NaN, Double.NEGATIVE_INFINITY};
+        for (double value : values) {
+            assertPrintShortest(value);
+            assertPrintShortest((float) value);
+        }
+
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            assertPrintShortest((random.nextInt(360000000) - 180000000) / 1E6);
+            assertPrintShortest((double) (float) (random.nextDouble() * 9000.0 - 500.0));
+            assertPrintShortest((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(14) - 4));
+            assertPrintShortest((float) (random.nextDouble() * 250.0));
+        }
+    }
+
+    private void assertPrintDouble(NumberFormat numberFormat, double value, int maxFractionDigits) throws Exception {
+        xmlOutput.printDouble(value, maxFractionDigits);
+        assertOutput(numberFormat.format(value));
+    }
+
+    private void assertPrintShortest(double value) throws Exception {
+        xmlOutput.printShortest(value);
+        assertOutput(Double.toString(value));
+    }
+
+    private void assertPrintShortest(float value) throws Exception {
+        xmlOutput.printShortest(value);
+        assertOutput(Float.toString(value));
+    }
+
+    /**
+     * Asserts that the output is the same as the output of a {@link PrintWriter}.
+     */
+    private void assertOutput(String expected) throws Exception {
+        ByteArrayOutputStream expectedOutputStream = new ByteArrayOutputStream();
+        PrintWriter printWriter = new PrintWriter(expectedOutputStream);
+        printWriter.print(expected);
+        printWriter.flush();
+
+        xmlOutput.flush();
+        assertEquals(expected, expectedOutputStream.toString("UTF-8"), outputStream.toString("UTF-8"));
+        assertTrue(expected, Arrays.equals(expectedOutputStream.toByteArray(), outputStream.toByteArray()));
+        outputStream.reset();
+    }
+
+    private static NumberFormat createNumberFormat(int maxFractionDigits) {
+        NumberFormat numberFormat = NumberFormat.getInstance(Locale.US);
+        numberFormat.setMaximumFractionDigits(maxFractionDigits);
+        numberFormat.setGroupingUsed(false);
+        return numberFormat;
+    }
+}
@@ -0,0 +1,175 @@
+package de.dennisguse.opentracks.io.file.importer;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import de.dennisguse.opentracks.BenchmarkUtils;
+import de.dennisguse.opentracks.util.StringUtils;
+
+/**
+ * Benchmark of parsing the track points of a large GPX file (50 MB): the SAX path (Strings per callback, trimmed and parsed) against the {@link XmlTokenizer} (parsed from the char buffers).
+ * Reports ms and allocations per file to logcat and verifies that the {@link XmlTokenizer} does not allocate per track point (and that the allocations of the SAX path are counted).
+ */
+@RunWith(AndroidJUnit4.class)
+public class GpxFileTrackImporterBenchmarkTest {
+
+    private static final String TAG = GpxFileTrackImporterBenchmarkTest.class.getSimpleName();
+
+    // About 100 bytes per track point
+    private static final int NUM_POINTS = 500000;
+    private static final int WARMUP_ITERATIONS = 1;
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = ApplicationProvider.getApplicationContext();
+        file = new File(context.getCacheDir(), TAG + ".gpx");
+        if (!file.exists()) {
+            createFile(file);
+        }
+    }
+
+    @Test
+    public void benchmarkSax() throws Exception {
+        int allocations = BenchmarkUtils.measure(TAG, "SAX", "file", WARMUP_ITERATIONS, 1, new BenchmarkUtils.Benchmark() {
+            @Override
+            public double run(int iteration) throws Exception {
+                return parseSax();
+            }
+        });
+        BenchmarkUtils.assertAllocCounting(allocations);
+    }
+
+    @Test
+    public void benchmarkXmlTokenizer() throws Exception {
+        int allocations = BenchmarkUtils.measure(TAG, "XmlTokenizer", "file", WARMUP_ITERATIONS, 1, new BenchmarkUtils.Benchmark() {
+            @Override
+            public double run(int iteration) throws Exception {
+                return parseXmlTokenizer();
+            }
+        });
+        // Only the buffers and the names
+        BenchmarkUtils.assertAllocCounting(allocations);
+        Assert.assertTrue(allocations < NUM_POINTS / 100);
+    }
+
+    /**
+     * Parses like the SAX importers: a String per text callback (concatenated), trimmed, and parsed.
+     * Asserts that all track points were parsed.
+     *
+     * @return the sum of the parsed values
+     */
+    private double parseSax() throws Exception {
+        final int[] numPoints = new int[1];
+        final double[] sum = new double[1];
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(file))) {
+            SAXParserFactory.newInstance().newSAXParser().parse(inputStream, new DefaultHandler() {
+                private String content;
+
+                @Override
+                public void characters(char[] ch, int start, int length) {
+                    String newContent = new String(ch, start, length);
+                    content = content == null ? newContent : content + newContent;
+                }
+
+                @Override
+                public void startElement(String uri, String localName, String tag, Attributes attributes) {
+                    if (tag.equals("trkpt")) {
+                        sum[0] += Double.parseDouble(attributes.getValue("lat")) + Double.parseDouble(attributes.getValue("lon"));
+                    }
+                }
+
+                @Override
+                public void endElement(String uri, String localName, String tag) {
+                    switch (tag) {
+                        case "ele":
+                            sum[0] += Double.parseDouble(content.trim());
+                            break;
+                        case "time":
+                            sum[0] += StringUtils.getTime(content.trim());
+                            break;
+                        case "trkpt":
+                            numPoints[0]++;
+                            break;
+                    }
+                    content = null;
+                }
+            });
+        }
+        Assert.assertEquals(NUM_POINTS, numPoints[0]);
+        return sum[0];
+    }
+
+    /**
+     * Parses like the {@link GpxFileTrackImporter}.
+     * Asserts that all track points were parsed.
+     *
+     * @return the sum of the parsed values
+     */
+    private double parseXmlTokenizer() throws Exception {
+        int numPoints = 0;
+        double sum = 0.0;
+        try (InputStream inputStream = new FileInputStream(file)) {
+            XmlTokenizer tokenizer = new XmlTokenizer(inputStream);
+            int eventType;
+            while ((eventType = tokenizer.next()) != XmlTokenizer.END_DOCUMENT) {
+                if (eventType == XmlTokenizer.START_TAG) {
+                    if (tokenizer.getName().equals("trkpt")) {
+                        int lat = tokenizer.getAttributeIndex("lat");
+                        int lon = tokenizer.getAttributeIndex("lon");
+                        sum += StringUtils.parseDouble(tokenizer.getAttributeCharacters(), tokenizer.getAttributeValueStart(lat), tokenizer.getAttributeValueLength(lat))
+                                + StringUtils.parseDouble(tokenizer.getAttributeCharacters(), tokenizer.getAttributeValueStart(lon), tokenizer.getAttributeValueLength(lon));
+                    }
+                } else if (eventType == XmlTokenizer.END_TAG) {
+                    switch (tokenizer.getName()) {
+                        case "ele":
+                            sum += StringUtils.parseDouble(tokenizer.getTextCharacters(), 0, tokenizer.getTextLength());
+                            break;
+                        case "time":
+                            sum += StringUtils.getTime(tokenizer.getTextCharacters(), 0, tokenizer.getTextLength());
+                            break;
+                        case "trkpt":
+                            numPoints++;
+                            break;
+                    }
+                }
+            }
+        }
+        Assert.assertEquals(NUM_POINTS, numPoints);
+        return sum;
+    }
+
+    private static void createFile(File file) throws Exception {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"))) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<gpx version=\"1.1\" creator=\"OpenTracks\">\n<trk><name><![CDATA[Benchmark]]></name><trkseg>\n");
+            long time = 1500000000000L;
+            for (int i = 0; i < NUM_POINTS; i++) {
+                writer.write(String.format(Locale.US, "<trkpt lat=\"%.6f\" lon=\"%.6f\">\n<ele>%.1f</ele>\n<time>%s</time>\n</trkpt>\n",
+                        47.0 + 0.01 * Math.sin(i * 0.001), 8.0 + 0.01 * Math.cos(i * 0.001), 500.0 + 100.0 * Math.sin(i * 0.0001), StringUtils.formatDateTimeIso8601(time + i * 1000L)));
+            }
+            writer.write("</trkseg></trk>\n</gpx>\n");
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package de.dennisguse.opentracks.io.file.importer;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Tests for {@link ImportWriter}.
+ */
+public class ImportWriterTest extends TestCase {
+
+    private static final int NUM_THREADS = 4;
+    private static final int NUM_WRITES = 1000;
+
+    public void testExecute_direct() {
+        final Thread thread = Thread.currentThread();
+        final boolean[] executed = new boolean[1];
+
+        ImportWriter.DIRECT.execute(new Runnable() {
+            @Override
+            public void run() {
+                executed[0] = Thread.currentThread() == thread;
+            }
+        });
+
+        assertTrue(executed[0]);
+    }
+
+    /**
+     * Tests that the writes of each thread are committed in order and that all are committed when closed.
+     */
+    public void testExecute_ordered() throws Exception {
+        final ImportWriter importWriter = new ImportWriter(8);
+        final List<Integer> writes = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch latch = new CountDownLatch(NUM_THREADS);
+
+        for (int i = 0; i < NUM_THREADS; i++) {
+            final int threadIndex = i;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < NUM_WRITES; j++) {
+                        final int write = threadIndex * NUM_WRITES + j;
+                        importWriter.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                writes.add(write);
+                            }
+                        });
+                    }
+                    latch.countDown();
+                }
+            }).start();
+        }
+        latch.await();
+        importWriter.close();
+
+        assertEquals(NUM_THREADS * NUM_WRITES, writes.size());
+        int[] last = new int[NUM_THREADS];
+        for (int i = 0; i < NUM_THREADS; i++) {
+            last[i] = -1;
+        }
+        for (int write : writes) {
+            int threadIndex = write / NUM_WRITES;
+            assertTrue(write > last[threadIndex]);
+            last[threadIndex] = write;
+        }
+    }
+
+    /**
+     * Tests that a call waits for the writes before.
+     */
+    public void testCall() {
+        ImportWriter importWriter = new ImportWriter(8);
+        final int[] count = new int[1];
+        for (int i = 0; i < NUM_WRITES; i++) {
+            importWriter.execute(new Runnable() {
+                @Override
+                public void run() {
+                    count[0]++;
+                }
+            });
+        }
+
+        int result = importWriter.call(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return count[0];
+            }
+        });
+        importWriter.close();
+
+        assertEquals(NUM_WRITES, result);
+    }
+
+    public void testCall_exception() {
+        ImportWriter importWriter = new ImportWriter(8);
+        try {
+            importWriter.call(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    throw new IllegalStateException();
+                }
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected
+        } finally {
+            importWriter.close();
+        }
+    }
+
+    /**
+     * Tests that the failure of a queued write is thrown by the next flush of its thread (once).
+     */
+    public void testFlush_exception() {
+        ImportWriter importWriter = new ImportWriter(8);
+        try {
+            importWriter.execute(new Runnable() {
+                @Override
+                public void run() {
+                    throw new IllegalStateException();
+                }
+            });
+            try {
+                importWriter.flush();
+                fail();
+            } catch (IllegalStateException e) {
+                // Expected
+            }
+            importWriter.flush();
+        } finally {
+            importWriter.close();
+        }
+    }
+
+    /**
+     * Tests that the failure of a queued write is thrown by the next execute of its thread only.
+     */
+    public void testExecute_exception() throws Exception {
+        final ImportWriter importWriter = new ImportWriter(8);
+        try {
+            importWriter.execute(new Runnable() {
+                @Override
+                public void run() {
+                    throw new IllegalStateException();
+                }
+            });
+            final boolean[] failed = new boolean[1];
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        importWriter.flush();
+                    } catch (RuntimeException e) {
+                        failed[0] = true;
+                    }
+                }
+            });
+            thread.start();
+            thread.join();
+            assertFalse(failed[0]);
+
+            try {
+                importWriter.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                    }
+                });
+                fail();
+            } catch (IllegalStateException e) {
+                // Expected
+            }
+        } finally {
+            importWriter.close();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package de.dennisguse.opentracks.io.file.importer;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import de.dennisguse.opentracks.content.ContentProviderUtils;
+import de.dennisguse.opentracks.content.Track;
+import de.dennisguse.opentracks.io.file.TrackFileFormat;
+import de.dennisguse.opentracks.util.StringUtils;
+
+/**
+ * Benchmark of exporting and importing a large track as GPX compared to the native format (.otrk).
+ * Reports the file sizes and the throughput (track points per second) to logcat and verifies that the native file is smaller and imports all track points.
+ */
+@RunWith(AndroidJUnit4.class)
+public class NativeFormatBenchmarkTest {
+
+    private static final String TAG = NativeFormatBenchmarkTest.class.getSimpleName();
+
+    private static final int NUM_POINTS = 100000;
+    private static final int WARMUP_ITERATIONS = 1;
+
+    private final Context context = ApplicationProvider.getApplicationContext();
+    private final ContentProviderUtils contentProviderUtils = ContentProviderUtils.Factory.get(context);
+
+    private final List<Long> trackIds = new ArrayList<>();
+    private Track track;
+
+    @Before
+    public void setUp() throws IOException {
+        long trackId = new GpxFileTrackImporter(context).importFile(new ByteArrayInputStream(createGpx()));
+        Assert.assertNotEquals(-1L, trackId);
+        trackIds.add(trackId);
+        track = contentProviderUtils.getTrack(trackId);
+    }
+
+    @After
+    public void tearDown() {
+        for (long trackId : trackIds) {
+            contentProviderUtils.deleteTrack(context, trackId);
+        }
+    }
+
+    @Test
+    public void benchmarkGpxAndNative() {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            importTrack(TrackFileFormat.GPX, exportTrack(TrackFileFormat.GPX));
+            importTrack(TrackFileFormat.OPENTRACKS_BINARY, exportTrack(TrackFileFormat.OPENTRACKS_BINARY));
+        }
+
+        byte[] gpx = benchmark(TrackFileFormat.GPX);
+        byte[] otrk = benchmark(TrackFileFormat.OPENTRACKS_BINARY);
+
+        Log.i(TAG, String.format(Locale.US, "otrk/gpx size: %.2f", (double) otrk.length / gpx.length));
+        Assert.assertTrue(otrk.length < gpx.length);
+    }
+
+    /**
+     * Exports and imports the track; reports the size and the throughput.
+     *
+     * @return the exported file
+     */
+    private byte[] benchmark(TrackFileFormat trackFileFormat) {
+        long start = System.nanoTime();
+        byte[] bytes = exportTrack(trackFileFormat);
+        long exportDuration = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        long trackId = importTrack(trackFileFormat, bytes);
+        long importDuration = System.nanoTime() - start;
+
+        Assert.assertEquals(track.getNumberOfPoints(), contentProviderUtils.getTrack(trackId).getNumberOfPoints());
+        Log.i(TAG, String.format(Locale.US, "%s: %.1f bytes/track point, export %.0f track points/s, import %.0f track points/s",
+                trackFileFormat.getExtension(), (double) bytes.length / NUM_POINTS, NUM_POINTS * 1E9 / exportDuration, NUM_POINTS * 1E9 / importDuration));
+        return bytes;
+    }
+
+    private byte[] exportTrack(TrackFileFormat trackFileFormat) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        Assert.assertTrue(trackFileFormat.newTrackExporter(context, new Track[]{track}, null).writeTrack(context, outputStream));
+        return outputStream.toByteArray();
+    }
+
+    private long importTrack(TrackFileFormat trackFileFormat, byte[] bytes) {
+        TrackImporter trackImporter = trackFileFormat == TrackFileFormat.GPX ? new GpxFileTrackImporter(context) : new NativeTrackImporter(context, ImportWriter.DIRECT);
+        long trackId = trackImporter.importFile(new ByteArrayInputStream(bytes));
+        Assert.assertNotEquals(-1L, trackId);
+        trackIds.add(trackId);
+        return trackId;
+    }
+
+    private static byte[] createGpx() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(outputStream, "UTF-8")) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<gpx version=\"1.1\" creator=\"OpenTracks\">\n<trk><name><![CDATA[Benchmark]]></name><trkseg>\n");
+            long time = 1500000000000L;
+            for (int i = 0; i < NUM_POINTS; i++) {
+                writer.write(String.format(Locale.US, "<trkpt lat=\"%.6f\" lon=\"%.6f\">\n<ele>%.1f</ele>\n<time>%s</time>\n</trkpt>\n",
+                        47.0 + 0.01 * Math.sin(i * 0.001), 8.0 + 0.01 * Math.cos(i * 0.001), 500.0 + 100.0 * Math.sin(i * 0.0001), StringUtils.formatDateTimeIso8601(time + i * 1000L)));
+            }
+            writer.write("</trkseg></trk>\n</gpx>\n");
+        }
+        return outputStream.toByteArray();
+    }
+}
@@ -0,0 +1,138 @@
+package de.dennisguse.opentracks.io.file.importer;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+
+/**
+ * Tests for {@link XmlTokenizer}.
+ */
+public class XmlTokenizerTest extends TestCase {
+
+    public void testNext_elements() throws Exception {
+        XmlTokenizer tokenizer = new XmlTokenizer(new StringReader("<?xml version=\"1.0\"?>\n<!-- comment --><gpx><trk><name>Track</name><trkseg/></trk></gpx>"));
+
+        assertEquals(XmlTokenizer.TEXT, tokenizer.next());
+        assertEquals("\n", tokenizer.getText());
+        assertStartTag(tokenizer, "gpx");
+        assertStartTag(tokenizer, "trk");
+        assertStartTag(tokenizer, "name");
+        assertEquals(XmlTokenizer.TEXT, tokenizer.next());
+        assertEquals("Track", tokenizer.getText());
+        assertEndTag(tokenizer, "name");
+        // The text of the element is kept for its end tag.
+        assertEquals("Track", tokenizer.getText());
+        assertStartTag(tokenizer, "trkseg");
+        assertEndTag(tokenizer, "trkseg");
+        assertEquals(0, tokenizer.getTextLength());
+        assertEndTag(tokenizer, "trk");
+        assertEndTag(tokenizer, "gpx");
+        assertEquals(XmlTokenizer.END_DOCUMENT, tokenizer.next());
+    }
+
+    public void testNext_attributes() throws Exception {
+        XmlTokenizer tokenizer = new XmlTokenizer(new StringReader("<trkpt lat=\"47.5\" lon = '8.25' name=\"a &amp; b&#x21;\"/>"));
+
+        assertStartTag(tokenizer, "trkpt");
+        assertEquals(0, tokenizer.getAttributeIndex("lat"));
+        assertEquals(1, tokenizer.getAttributeIndex("lon"));
+        assertEquals(-1, tokenizer.getAttributeIndex("ele"));
+        assertEquals("47.5", tokenizer.getAttributeValue("lat"));
+        assertEquals("8.25", tokenizer.getAttributeValue("lon"));
+        assertEquals("a & b!", tokenizer.getAttributeValue("name"));
+        assertNull(tokenizer.getAttributeValue("ele"));
+        assertEndTag(tokenizer, "trkpt");
+    }
+
+    public void testNext_text() throws Exception {
+        XmlTokenizer tokenizer = new XmlTokenizer(new StringReader("<desc>&lt;a&gt; <![CDATA[<b> & ]]]]><!-- c -->&quot;&apos;&#169;&#x1F600;\r\n</desc>"));
+
+        assertStartTag(tokenizer, "desc");
+        assertEquals(XmlTokenizer.TEXT, tokenizer.next());
+        assertEquals("<a> <b> & ]]\"'\u00A9\uD83D\uDE00\n", tokenizer.getText());
+        assertEndTag(tokenizer, "desc");
+    }
+
+    public void testNext_prefixAndDoctype() throws Exception {
+        XmlTokenizer tokenizer = new XmlTokenizer(new StringReader("<!DOCTYPE kml [<!ENTITY x \"y>\">]><kml><gx:Track/></kml>"));
+
+        assertStartTag(tokenizer, "kml");
+        assertStartTag(tokenizer, "gx:Track");
+        assertEndTag(tokenizer, "gx:Track");
+        assertEndTag(tokenizer, "kml");
+        assertEquals(XmlTokenizer.END_DOCUMENT, tokenizer.next());
+    }
+
+    /**
+     * Tests that the names are cached.
+     */
+    public void testGetName_cached() throws Exception {
+        XmlTokenizer tokenizer = new XmlTokenizer(new StringReader("<a><trkpt/><trkpt/></a>"));
+
+        tokenizer.next();
+        tokenizer.next();
+        String name = tokenizer.getName();
+        tokenizer.next();
+        tokenizer.next();
+
+        assertSame(name, tokenizer.getName());
+    }
+
+    public void testNext_encoding() throws Exception {
+        String xml = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><name>München</name>";
+        XmlTokenizer tokenizer = new XmlTokenizer(new ByteArrayInputStream(xml.getBytes("ISO-8859-1")));
+
+        assertStartTag(tokenizer, "name");
+        tokenizer.next();
+        assertEquals("München", tokenizer.getText());
+    }
+
+    public void testNext_byteOrderMark() throws Exception {
+        byte[] xml = "\uFEFF<name>München</name>".getBytes("UTF-8");
+        XmlTokenizer tokenizer = new XmlTokenizer(new ByteArrayInputStream(xml));
+
+        assertStartTag(tokenizer, "name");
+        tokenizer.next();
+        assertEquals("München", tokenizer.getText());
+    }
+
+    public void testNext_unexpectedEndTag() throws Exception {
+        assertInvalid("<gpx><trk></gpx>");
+    }
+
+    public void testNext_unexpectedEnd() throws Exception {
+        assertInvalid("<gpx><trk></trk>");
+        assertInvalid("<gpx><trk lat=\"1");
+        assertInvalid("<gpx><!-- comment");
+    }
+
+    public void testNext_invalidReference() throws Exception {
+        assertInvalid("<gpx>&unknown;</gpx>");
+        assertInvalid("<gpx>&#xZZ;</gpx>");
+    }
+
+    private static void assertStartTag(XmlTokenizer tokenizer, String name) throws Exception {
+        assertEquals(XmlTokenizer.START_TAG, tokenizer.next());
+        assertEquals(name, tokenizer.getName());
+    }
+
+    private static void assertEndTag(XmlTokenizer tokenizer, String name) throws Exception {
+        assertEquals(XmlTokenizer.END_TAG, tokenizer.next());
+        assertEquals(name, tokenizer.getName());
+    }
+
+    private static void assertInvalid(String xml) throws Exception {
+        XmlTokenizer tokenizer = new XmlTokenizer(new StringReader(xml));
+        try {
+            while (tokenizer.next() != XmlTokenizer.END_DOCUMENT) {
+                // Parse until the error
+            }
+            fail("Invalid XML parsed: " + xml);
+        } catch (SAXException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package de.dennisguse.opentracks.stats;
+
+import android.hardware.SensorManager;
+import android.location.Location;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link BarometricElevationProcessor}.
+ */
+public class BarometricElevationProcessorTest extends TestCase {
+
+    private static final float PRESSURE = 950.0f;
+
+    private static final long ONE_SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private BarometricElevationProcessor elevationProcessor;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        elevationProcessor = new BarometricElevationProcessor(null);
+    }
+
+    public void testNoPressure() {
+        assertTrue(Double.isNaN(elevationProcessor.getElevation(createLocation(0, 500.0))));
+    }
+
+    public void testOldPressure() {
+        elevationProcessor.addPressure(PRESSURE, 0);
+        assertTrue(Double.isNaN(elevationProcessor.getElevation(createLocation(BarometricElevationProcessor.MAX_PRESSURE_AGE_NANOS + 1, 500.0))));
+    }
+
+    public void testNoGpsAltitude() {
+        elevationProcessor.addPressure(PRESSURE, 0);
+        // Offset unknown
+        assertTrue(Double.isNaN(elevationProcessor.getElevation(createLocation(0, Double.NaN))));
+    }
+
+    public void testCalibratedWithGps() {
+        double barometricElevation = SensorManager.getAltitude(SensorManager.PRESSURE_STANDARD_ATMOSPHERE, PRESSURE);
+        double trueElevation = barometricElevation + 100.0;
+
+        // Noisy GPS altitude (+-20 m) at constant pressure
+        Random random = new Random(42);
+        double elevation = Double.NaN;
+        for (int i = 0; i < 1000; i++) {
+            long time = i * ONE_SECOND_NANOS;
+            elevationProcessor.addPressure(PRESSURE, time);
+            elevation = elevationProcessor.getElevation(createLocation(time, trueElevation + (random.nextDouble() - 0.5) * 40.0));
+        }
+        assertEquals(trueElevation, elevation, 3.0);
+    }
+
+    public void testClockDifference() {
+        // The GPS time differs from the system time; only the elapsed realtime is compared.
+        elevationProcessor.addPressure(PRESSURE, 100 * ONE_SECOND_NANOS);
+        Location location = createLocation(100 * ONE_SECOND_NANOS, 500.0);
+        location.setTime(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(5));
+        assertFalse(Double.isNaN(elevationProcessor.getElevation(location)));
+    }
+
+    public void testFollowsPressureChanges() {
+        elevationProcessor.addPressure(PRESSURE, 0);
+        double start = elevationProcessor.getElevation(createLocation(0, 500.0));
+
+        // Climb: pressure decreases; GPS altitude is not available
+        float lowerPressure = PRESSURE - 10.0f;
+        for (int i = 1; i <= 100; i++) {
+            elevationProcessor.addPressure(lowerPressure, i * ONE_SECOND_NANOS / 10);
+        }
+        double end = elevationProcessor.getElevation(createLocation(10 * ONE_SECOND_NANOS, Double.NaN));
+
+        double expectedDifference = SensorManager.getAltitude(SensorManager.PRESSURE_STANDARD_ATMOSPHERE, lowerPressure) - SensorManager.getAltitude(SensorManager.PRESSURE_STANDARD_ATMOSPHERE, PRESSURE);
+        assertEquals(expectedDifference, end - start, 0.5);
+    }
+
+    private static Location createLocation(long elapsedRealtimeNanos, double altitude) {
+        Location location = new Location("test");
+        location.setLatitude(45.0);
+        location.setLongitude(35.0);
+        location.setElapsedRealtimeNanos(elapsedRealtimeNanos);
+        if (!Double.isNaN(altitude)) {
+            location.setAltitude(altitude);
+        }
+        return location;
+    }
+}
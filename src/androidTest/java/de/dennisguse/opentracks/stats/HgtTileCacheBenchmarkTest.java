@@ -0,0 +1,116 @@
+package de.dennisguse.opentracks.stats;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+import de.dennisguse.opentracks.BenchmarkUtils;
+
+/**
+ * Benchmark of {@link HgtTileCache#getElevation(double, double)} on SRTM3 tiles (1201x1201).
+ * Reports ns per looked up point to logcat and verifies that lookups within a tile do not allocate (and that the allocations of mapping a tile are counted).
+ */
+@RunWith(AndroidJUnit4.class)
+public class HgtTileCacheBenchmarkTest {
+
+    private static final String TAG = HgtTileCacheBenchmarkTest.class.getSimpleName();
+
+    private static final int SRTM3_SIZE = 1201;
+
+    private static final int WARMUP_ITERATIONS = 10000;
+    private static final int ITERATIONS = 200000;
+
+    // Consecutive track points: about 10 m apart
+    private static final double STEP = 0.0001;
+
+    private final Context context = ApplicationProvider.getApplicationContext();
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = new File(context.getCacheDir(), "hgt_benchmark");
+        directory.mkdirs();
+        HgtTileCacheTest.writeTile(new File(directory, "N47E008.hgt"), SRTM3_SIZE, false);
+        HgtTileCacheTest.writeTile(new File(directory, "N47E009.hgt"), SRTM3_SIZE, false);
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void benchmarkSameTile() throws Exception {
+        final HgtTileCache tileCache = new HgtTileCache(directory, HgtTileCache.DEFAULT_MAX_TILES);
+        int allocations = measure("same tile", new BenchmarkUtils.Benchmark() {
+            @Override
+            public double run(int iteration) {
+                return tileCache.getElevation(47.1 + (iteration % 1000) * STEP, 8.1 + (iteration % 1000) * STEP);
+            }
+        });
+        Assert.assertEquals(0, allocations);
+    }
+
+    @Test
+    public void benchmarkSameTile_mappedInBackground() throws Exception {
+        // Like while recording
+        final HgtTileCache tileCache = new HgtTileCache(directory, HgtTileCache.DEFAULT_MAX_TILES);
+        final Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        int allocations = measure("same tile (mapped in background)", new BenchmarkUtils.Benchmark() {
+            @Override
+            public double run(int iteration) {
+                return tileCache.getElevation(47.1 + (iteration % 1000) * STEP, 8.1 + (iteration % 1000) * STEP, executor);
+            }
+        });
+        Assert.assertEquals(0, allocations);
+    }
+
+    @Test
+    public void benchmarkAlternatingTiles() throws Exception {
+        // Worst case: every lookup switches the tile (cache hit)
+        final HgtTileCache tileCache = new HgtTileCache(directory, HgtTileCache.DEFAULT_MAX_TILES);
+        measure("alternating tiles", new BenchmarkUtils.Benchmark() {
+            @Override
+            public double run(int iteration) {
+                return tileCache.getElevation(47.5, iteration % 2 == 0 ? 8.99 : 9.01);
+            }
+        });
+    }
+
+    @Test
+    public void benchmarkColdTile() throws Exception {
+        // Cost of mapping a tile
+        int allocations = BenchmarkUtils.measure(TAG, "cold tile", "tile", 0, 100, new BenchmarkUtils.Benchmark() {
+            @Override
+            public double run(int iteration) {
+                HgtTileCache tileCache = new HgtTileCache(directory, HgtTileCache.DEFAULT_MAX_TILES);
+                return tileCache.getElevation(47.5, 8.5);
+            }
+        });
+        // Mapping a tile allocates.
+        BenchmarkUtils.assertAllocCounting(allocations);
+    }
+
+    private static int measure(String name, BenchmarkUtils.Benchmark benchmark) throws Exception {
+        return BenchmarkUtils.measure(TAG, name, "point", WARMUP_ITERATIONS, ITERATIONS, benchmark);
+    }
+}
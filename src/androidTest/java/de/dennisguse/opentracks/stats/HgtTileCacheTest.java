@@ -0,0 +1,148 @@
+package de.dennisguse.opentracks.stats;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Tests for {@link HgtTileCache}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class HgtTileCacheTest {
+
+    // A small grid: 0.1 degree spacing
+    private static final int SIZE = 11;
+
+    private final Context context = ApplicationProvider.getApplicationContext();
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = new File(context.getCacheDir(), "hgt_test");
+        directory.mkdirs();
+        // Elevation increases by 10 m per row to the south and 1 m per column to the east.
+        writeTile(new File(directory, "N47E008.hgt"), SIZE, false);
+        writeTile(new File(directory, "S01W001.hgt"), SIZE, true);
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testGetFileName() {
+        Assert.assertEquals("N47E008.hgt", HgtTileCache.getFileName(47, 8));
+        Assert.assertEquals("S01W001.hgt", HgtTileCache.getFileName(-1, -1));
+        Assert.assertEquals("N00W180.hgt", HgtTileCache.getFileName(0, -180));
+    }
+
+    @Test
+    public void testGetElevation_gridPoints() {
+        HgtTileCache tileCache = new HgtTileCache(directory, HgtTileCache.DEFAULT_MAX_TILES);
+
+        // North-west corner: row 0, column 0
+        Assert.assertEquals(0.0, tileCache.getElevation(48.0 - 1e-9, 8.0), 0.001);
+        // South-east corner: row 10, column 10
+        Assert.assertEquals(110.0, tileCache.getElevation(47.0, 9.0 - 1e-9), 0.001);
+        // Row 3, column 2
+        Assert.assertEquals(32.0, tileCache.getElevation(47.7, 8.2), 0.001);
+    }
+
+    @Test
+    public void testGetElevation_interpolated() {
+        HgtTileCache tileCache = new HgtTileCache(directory, HgtTileCache.DEFAULT_MAX_TILES);
+
+        // Between rows 3 and 4, columns 2 and 3
+        Assert.assertEquals(37.5, tileCache.getElevation(47.65, 8.25), 0.001);
+    }
+
+    @Test
+    public void testGetElevation_void() {
+        HgtTileCache tileCache = new HgtTileCache(directory, HgtTileCache.DEFAULT_MAX_TILES);
+
+        // The southern tile has no data in its first column.
+        Assert.assertTrue(Double.isNaN(tileCache.getElevation(-0.5, -1.0)));
+        // Only the eastern grid points are used.
+        Assert.assertEquals(51.0, tileCache.getElevation(-0.5, -0.95), 0.001);
+    }
+
+    @Test
+    public void testGetElevation_missingTile() {
+        HgtTileCache tileCache = new HgtTileCache(directory, HgtTileCache.DEFAULT_MAX_TILES);
+
+        Assert.assertTrue(Double.isNaN(tileCache.getElevation(10.5, 10.5)));
+        // Still available after a missing tile
+        Assert.assertEquals(32.0, tileCache.getElevation(47.7, 8.2), 0.001);
+    }
+
+    @Test
+    public void testGetElevation_evictedTileIsReloaded() {
+        HgtTileCache tileCache = new HgtTileCache(directory, 1);
+
+        Assert.assertEquals(32.0, tileCache.getElevation(47.7, 8.2), 0.001);
+        Assert.assertEquals(51.0, tileCache.getElevation(-0.5, -0.95), 0.001);
+        Assert.assertEquals(32.0, tileCache.getElevation(47.7, 8.2), 0.001);
+    }
+
+    @Test
+    public void testGetElevation_mappedInBackground() {
+        HgtTileCache tileCache = new HgtTileCache(directory, HgtTileCache.DEFAULT_MAX_TILES);
+        final List<Runnable> tasks = new ArrayList<>();
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        };
+
+        // Not mapped yet
+        Assert.assertTrue(Double.isNaN(tileCache.getElevation(47.7, 8.2, executor)));
+        Assert.assertTrue(Double.isNaN(tileCache.getElevation(47.7, 8.2, executor)));
+        Assert.assertEquals(1, tasks.size());
+
+        tasks.get(0).run();
+        Assert.assertEquals(32.0, tileCache.getElevation(47.7, 8.2, executor), 0.001);
+
+        // Mapped before clear(): dropped
+        tileCache.preload(-0.5, -0.95, executor);
+        tileCache.clear();
+        tasks.get(1).run();
+        Assert.assertTrue(Double.isNaN(tileCache.getElevation(-0.5, -0.95, executor)));
+        Assert.assertEquals(3, tasks.size());
+    }
+
+    @Test
+    public void testHasTiles() {
+        Assert.assertTrue(new HgtTileCache(directory, HgtTileCache.DEFAULT_MAX_TILES).hasTiles());
+        Assert.assertFalse(new HgtTileCache(new File(directory, "none"), HgtTileCache.DEFAULT_MAX_TILES).hasTiles());
+    }
+
+    static void writeTile(File file, int size, boolean voidFirstColumn) throws IOException {
+        try (DataOutputStream outputStream = new DataOutputStream(new FileOutputStream(file))) {
+            for (int row = 0; row < size; row++) {
+                for (int column = 0; column < size; column++) {
+                    outputStream.writeShort(voidFirstColumn && column == 0 ? HgtTileCache.VOID : row * 10 + column);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package de.dennisguse.opentracks.stats;
+
+import android.location.Location;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import de.dennisguse.opentracks.content.SensorDataSetLocation;
+import de.dennisguse.opentracks.content.sensor.SensorDataSet;
+import de.dennisguse.opentracks.services.TrackRecordingService;
+import de.dennisguse.opentracks.util.UnitConversions;
+
+/**
+ * Tests for {@link IntervalDetector}.
+ */
+public class IntervalDetectorTest extends TestCase {
+
+    private static final float WORK_SPEED = 5.0f;
+    private static final float REST_SPEED = 2.0f;
+
+    // Tolerance for the detected start of an interval
+    private static final long MAX_TIME_ERROR = 2 * IntervalDetector.BIN_DURATION;
+
+    private final Random random = new Random(42);
+
+    private IntervalDetector intervalDetector;
+    private List<Interval> intervals;
+    private long seconds;
+    private double distance;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        intervalDetector = new IntervalDetector(IntervalDetector.Signal.SPEED);
+        intervals = new ArrayList<>();
+        seconds = 0;
+        distance = 0.0;
+    }
+
+    public void testConstantSpeed_noIntervals() {
+        addLocations(600, 3.0f, 0.3f);
+        intervals.addAll(intervalDetector.finish());
+
+        assertTrue(intervals.isEmpty());
+    }
+
+    public void testWorkRestIntervals() {
+        // 5 x (120 s work, 60 s rest)
+        for (int i = 0; i < 5; i++) {
+            addLocations(120, WORK_SPEED, 0.3f);
+            addLocations(60, REST_SPEED, 0.3f);
+        }
+        intervals.addAll(intervalDetector.finish());
+
+        assertEquals(10, intervals.size());
+        for (int i = 0; i < intervals.size(); i++) {
+            Interval interval = intervals.get(i);
+            boolean work = i % 2 == 0;
+            assertEquals(work ? Interval.Type.WORK : Interval.Type.REST, interval.getType());
+            assertEquals(i / 2 + 1, interval.getNumber());
+
+            long expectedStart = (i / 2 * 180 + (work ? 0 : 120)) * UnitConversions.ONE_SECOND;
+            assertEquals(expectedStart, interval.getTripStatistics().getStartTime(), MAX_TIME_ERROR);
+            long expectedDuration = (work ? 120 : 60) * UnitConversions.ONE_SECOND;
+            assertEquals(expectedDuration, interval.getTripStatistics().getTotalTime(), 2 * MAX_TIME_ERROR);
+            assertTrue(interval.getStopTrackPointId() > interval.getStartTrackPointId());
+        }
+    }
+
+    public void testSmallChanges_noIntervals() {
+        // 10% change is below the minimal relative change.
+        for (int i = 0; i < 5; i++) {
+            addLocations(120, 4.0f, 0.05f);
+            addLocations(120, 3.6f, 0.05f);
+        }
+        intervals.addAll(intervalDetector.finish());
+
+        assertTrue(intervals.isEmpty());
+    }
+
+    public void testPowerSignal() {
+        intervalDetector = new IntervalDetector(IntervalDetector.Signal.POWER);
+        addLocations(120, 3.0f, 0.3f, 300.0f);
+        addLocations(120, 3.0f, 0.3f, 100.0f);
+        addLocations(120, 3.0f, 0.3f, 300.0f);
+        intervals.addAll(intervalDetector.finish());
+
+        assertEquals(3, intervals.size());
+        assertEquals(Interval.Type.WORK, intervals.get(0).getType());
+        assertEquals(Interval.Type.REST, intervals.get(1).getType());
+        assertEquals(Interval.Type.WORK, intervals.get(2).getType());
+    }
+
+    public void testPause_resetsWindows() {
+        addLocations(120, WORK_SPEED, 0.3f);
+        Location pause = new Location("test");
+        pause.setLatitude(TrackRecordingService.PAUSE_LATITUDE);
+        pause.setLongitude(0);
+        pause.setTime(seconds * UnitConversions.ONE_SECOND);
+        intervals.addAll(intervalDetector.addLocation(pause, seconds, new TripStatistics()));
+        seconds += 300;
+        addLocations(120, WORK_SPEED, 0.3f);
+        intervals.addAll(intervalDetector.finish());
+
+        assertTrue(intervals.isEmpty());
+    }
+
+    private void addLocations(int count, float speed, float noise) {
+        addLocations(count, speed, noise, SensorDataSet.DATA_UNAVAILABLE);
+    }
+
+    /**
+     * Adds one location per second.
+     */
+    private void addLocations(int count, float speed, float noise, float power) {
+        for (int i = 0; i < count; i++) {
+            float value = speed + noise * (float) random.nextGaussian();
+            SensorDataSetLocation location = new SensorDataSetLocation("test");
+            location.setLatitude(45.0);
+            location.setLongitude(35.0);
+            location.setSpeed(value);
+            location.setTime(seconds * UnitConversions.ONE_SECOND);
+            if (!Float.isNaN(power)) {
+                location.setSensorDataSet(new SensorDataSet(SensorDataSet.DATA_UNAVAILABLE, SensorDataSet.DATA_UNAVAILABLE, power + 10.0f * (float) random.nextGaussian()));
+            }
+            distance += value;
+
+            TripStatistics tripStatistics = new TripStatistics();
+            tripStatistics.setStartTime(0L);
+            tripStatistics.setStopTime(seconds * UnitConversions.ONE_SECOND);
+            tripStatistics.setTotalDistance(distance);
+            tripStatistics.setTotalTime(seconds * UnitConversions.ONE_SECOND);
+            tripStatistics.setMovingTime(seconds * UnitConversions.ONE_SECOND);
+
+            intervals.addAll(intervalDetector.addLocation(location, seconds, tripStatistics));
+            seconds++;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package de.dennisguse.opentracks.stats;
+
+import android.location.Location;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.dennisguse.opentracks.util.GeodesyUtils;
+import de.dennisguse.opentracks.util.UnitConversions;
+
+/**
+ * Tests for {@link LapDetector}.
+ */
+public class LapDetectorTest extends TestCase {
+
+    private static final double LATITUDE = 47.0;
+    private static final double LONGITUDE = 8.0;
+    private static final double METERS_PER_DEGREE = GeodesyUtils.MEAN_EARTH_RADIUS * Math.PI / 180.0;
+
+    // Distance (m) between two locations
+    private static final double STEP = 5.0;
+
+    private static final double CIRCUIT_RADIUS = 100.0;
+    private static final double CIRCUIT_LENGTH = 2 * Math.PI * CIRCUIT_RADIUS;
+
+    private LapDetector lapDetector;
+    private List<Interval> laps;
+    private long trackPointId;
+    private double distance;
+    private double lastEast;
+    private double lastNorth;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        lapDetector = new LapDetector();
+        laps = new ArrayList<>();
+        trackPointId = 0;
+        distance = 0.0;
+        lastEast = Double.NaN;
+        lastNorth = Double.NaN;
+    }
+
+    public void testCircuit() {
+        // Warm-up: 300 m to the east
+        for (double east = -300.0; east < 0.0; east += STEP) {
+            addLocation(east, 0.0);
+        }
+        // 3.2 laps counterclockwise starting at (0, 0) heading east
+        int steps = (int) (3.2 * CIRCUIT_LENGTH / STEP);
+        for (int i = 0; i <= steps; i++) {
+            double angle = i * STEP / CIRCUIT_RADIUS;
+            addLocation(CIRCUIT_RADIUS * Math.sin(angle), CIRCUIT_RADIUS * (1.0 - Math.cos(angle)));
+        }
+
+        assertTrue(lapDetector.hasLapStart());
+        assertEquals(3, laps.size());
+        for (int i = 0; i < laps.size(); i++) {
+            Interval lap = laps.get(i);
+            assertEquals(Interval.Type.LAP, lap.getType());
+            assertEquals(i + 1, lap.getNumber());
+            assertEquals(CIRCUIT_LENGTH, lap.getTripStatistics().getTotalDistance(), 2 * LapDetector.LAP_RADIUS);
+        }
+    }
+
+    public void testOutAndBack_noLaps() {
+        for (double east = 0.0; east < 1000.0; east += STEP) {
+            addLocation(east, 0.0);
+        }
+        for (double east = 1000.0; east >= 0.0; east -= STEP) {
+            addLocation(east, 2.0);
+        }
+
+        assertFalse(lapDetector.hasLapStart());
+        assertTrue(laps.isEmpty());
+    }
+
+    public void testLongTrack_boundedGrid() {
+        // 400 km straight; more cells than the grid capacity.
+        int count = (int) (400000 / (STEP * 4));
+        for (int i = 0; i < count; i++) {
+            addLocation(i * STEP * 4, 0.0);
+            assertTrue(lapDetector.getCellCount() <= LapDetector.GRID_CAPACITY / 2);
+        }
+        assertTrue(laps.isEmpty());
+    }
+
+    private void addLocation(double east, double north) {
+        Location location = new Location("test");
+        location.setLatitude(LATITUDE + north / METERS_PER_DEGREE);
+        location.setLongitude(LONGITUDE + east / (METERS_PER_DEGREE * Math.cos(Math.toRadians(LATITUDE))));
+        location.setTime(trackPointId * UnitConversions.ONE_SECOND);
+
+        if (!Double.isNaN(lastEast)) {
+            distance += Math.hypot(east - lastEast, north - lastNorth);
+        }
+        lastEast = east;
+        lastNorth = north;
+
+        TripStatistics tripStatistics = new TripStatistics();
+        tripStatistics.setStartTime(0L);
+        tripStatistics.setTotalDistance(distance);
+        tripStatistics.setTotalTime(location.getTime());
+        tripStatistics.setMovingTime(location.getTime());
+
+        laps.addAll(lapDetector.addLocation(location, trackPointId, tripStatistics));
+        trackPointId++;
+    }
+}
@@ -0,0 +1,125 @@
+package de.dennisguse.opentracks.stats;
+
+import android.location.Location;
+
+import junit.framework.TestCase;
+
+import de.dennisguse.opentracks.content.SensorDataSetLocation;
+import de.dennisguse.opentracks.content.sensor.SensorDataSet;
+import de.dennisguse.opentracks.services.TrackRecordingService;
+import de.dennisguse.opentracks.util.UnitConversions;
+
+/**
+ * Tests for {@link SensorStatisticsUpdater}.
+ */
+public class SensorStatisticsUpdaterTest extends TestCase {
+
+    private static final int MAX_HEART_RATE = 200;
+
+    private SensorStatisticsUpdater sensorStatisticsUpdater;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        sensorStatisticsUpdater = new SensorStatisticsUpdater(MAX_HEART_RATE);
+    }
+
+    public void testEmpty() {
+        SensorStatistics sensorStatistics = sensorStatisticsUpdater.getSensorStatistics();
+        assertFalse(sensorStatistics.hasHeartRate());
+        assertFalse(sensorStatistics.hasCadence());
+        assertFalse(sensorStatistics.hasPower());
+        assertTrue(Double.isNaN(sensorStatistics.getHeartRateDrift()));
+        assertEquals(0.0, sensorStatistics.getTrainingLoad());
+    }
+
+    public void testHeartRateZones() {
+        // 10 s in zone 1 (100 bpm), 20 s in zone 4 (170 bpm)
+        addLocation(0, 100, 0, 0, 0);
+        addLocation(10, 170, 0, 0, 0);
+        addLocation(30, 170, 0, 0, 0);
+
+        SensorStatistics sensorStatistics = sensorStatisticsUpdater.getSensorStatistics();
+        assertEquals(10 * UnitConversions.ONE_SECOND, sensorStatistics.getHeartRateZoneTime(0));
+        assertEquals(20 * UnitConversions.ONE_SECOND, sensorStatistics.getHeartRateZoneTime(3));
+        assertEquals((10 * 1 + 20 * 4) / 60.0, sensorStatistics.getTrainingLoad(), 0.0001);
+    }
+
+    public void testCadenceDistribution() {
+        addLocation(0, 0, 85, 0, 0);
+        addLocation(5, 0, 150, 0, 0);
+        addLocation(10, 0, 150, 0, 0);
+
+        SensorStatistics sensorStatistics = sensorStatisticsUpdater.getSensorStatistics();
+        assertEquals(5 * UnitConversions.ONE_SECOND, sensorStatistics.getCadenceTime(SensorStatistics.getCadenceBucket(85)));
+        assertEquals(5 * UnitConversions.ONE_SECOND, sensorStatistics.getCadenceTime(SensorStatistics.NUM_CADENCE_BUCKETS - 1));
+    }
+
+    public void testNormalizedPower_constant() {
+        for (int i = 0; i <= 120; i++) {
+            addLocation(i, 0, 0, 200, 0);
+        }
+
+        SensorStatistics sensorStatistics = sensorStatisticsUpdater.getSensorStatistics();
+        assertEquals(200.0, sensorStatistics.getNormalizedPower(), 0.0001);
+    }
+
+    public void testNormalizedPower_variableIsHigherThanAverage() {
+        for (int i = 0; i <= 600; i++) {
+            addLocation(i, 0, 0, (i / 60) % 2 == 0 ? 100 : 300, 0);
+        }
+
+        SensorStatistics sensorStatistics = sensorStatisticsUpdater.getSensorStatistics();
+        assertTrue(sensorStatistics.getNormalizedPower() > 200.0);
+    }
+
+    public void testNormalizedPower_pauseResetsWindow() {
+        addLocation(0, 0, 0, 200, 0);
+        addLocation(10, 0, 0, 200, 0);
+        addPause(11);
+        addLocation(20, 0, 0, 200, 0);
+        addLocation(30, 0, 0, 200, 0);
+
+        // Only 20 s of power: window of 30 s is never filled.
+        assertFalse(sensorStatisticsUpdater.getSensorStatistics().hasPower());
+    }
+
+    public void testHeartRateDrift() {
+        int seconds = 30 * 60;
+        // Constant speed, heart rate increases from 140 to 160 bpm.
+        for (int i = 0; i <= seconds; i++) {
+            addLocation(i, i < seconds / 2 ? 140 : 160, 0, 0, 5);
+        }
+
+        // (5/140 - 5/160) / (5/140) = 12.5%
+        assertEquals(12.5, sensorStatisticsUpdater.getSensorStatistics().getHeartRateDrift(), 0.1);
+    }
+
+    public void testHeartRateDrift_notEnoughData() {
+        for (int i = 0; i <= 60; i++) {
+            addLocation(i, 140, 0, 0, 5);
+        }
+
+        assertTrue(Double.isNaN(sensorStatisticsUpdater.getSensorStatistics().getHeartRateDrift()));
+    }
+
+    private void addLocation(long seconds, float heartRate, float cadence, float power, float speed) {
+        SensorDataSetLocation location = new SensorDataSetLocation("test");
+        location.setLatitude(45.0);
+        location.setLongitude(35.0);
+        location.setTime(seconds * UnitConversions.ONE_SECOND);
+        if (speed > 0) {
+            location.setSpeed(speed);
+        }
+        location.setSensorDataSet(new SensorDataSet(heartRate > 0 ? heartRate : SensorDataSet.DATA_UNAVAILABLE, cadence > 0 ? cadence : SensorDataSet.DATA_UNAVAILABLE, power > 0 ? power : SensorDataSet.DATA_UNAVAILABLE));
+        sensorStatisticsUpdater.addLocation(location);
+    }
+
+    private void addPause(long seconds) {
+        Location location = new Location("test");
+        location.setLatitude(TrackRecordingService.PAUSE_LATITUDE);
+        location.setLongitude(0);
+        location.setTime(seconds * UnitConversions.ONE_SECOND);
+        sensorStatisticsUpdater.addLocation(location);
+    }
+}
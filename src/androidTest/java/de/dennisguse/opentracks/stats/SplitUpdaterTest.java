@@ -0,0 +1,130 @@
+package de.dennisguse.opentracks.stats;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.dennisguse.opentracks.content.SensorDataSetLocation;
+import de.dennisguse.opentracks.content.Split;
+import de.dennisguse.opentracks.content.sensor.SensorDataSet;
+import de.dennisguse.opentracks.util.UnitConversions;
+
+/**
+ * Tests for {@link SplitUpdater}.
+ */
+public class SplitUpdaterTest extends TestCase {
+
+    // 5 m/s, 1 location per second, 1 m elevation gain per second
+    private static final double SPEED = 5.0;
+
+    private SplitUpdater splitUpdater;
+    private List<Split> splits;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        splitUpdater = new SplitUpdater();
+        splits = new ArrayList<>();
+    }
+
+    public void testNoSplit() {
+        for (int i = 0; i < 100; i++) {
+            addLocation(i, 0);
+        }
+        assertTrue(splits.isEmpty());
+    }
+
+    public void testKilometerSplits() {
+        // 2100 m
+        for (int i = 0; i <= 420; i++) {
+            addLocation(i, 0);
+        }
+
+        List<Split> kilometerSplits = getSplits(true);
+        assertEquals(2, kilometerSplits.size());
+        for (int i = 0; i < kilometerSplits.size(); i++) {
+            Split split = kilometerSplits.get(i);
+            assertEquals(i + 1, split.getNumber());
+            assertEquals(SplitUpdater.KILOMETER, split.getDistance());
+            assertEquals(200 * UnitConversions.ONE_SECOND, split.getMovingTime());
+            assertEquals(200 * UnitConversions.ONE_SECOND, split.getTotalTime());
+            assertEquals(200.0, split.getElevationGain(), 0.01);
+            assertEquals(SPEED, split.getAverageMovingSpeed(), 0.01);
+            assertFalse(split.hasAverageHeartRate());
+        }
+
+        List<Split> mileSplits = getSplits(false);
+        assertEquals(1, mileSplits.size());
+        assertEquals(SplitUpdater.MILE / SPEED * UnitConversions.ONE_SECOND, mileSplits.get(0).getMovingTime(), 1.0);
+    }
+
+    public void testBoundaryIsInterpolated() {
+        // One location every 3 s: 15 m per location; boundary at 1000 m is between 990 m and 1005 m.
+        for (int i = 0; i <= 201; i += 3) {
+            addLocation(i, 0);
+        }
+
+        List<Split> kilometerSplits = getSplits(true);
+        assertEquals(1, kilometerSplits.size());
+        assertEquals(200 * UnitConversions.ONE_SECOND, kilometerSplits.get(0).getMovingTime());
+    }
+
+    public void testAverageHeartRate() {
+        // 100 s at 100 bpm, 100 s at 150 bpm
+        for (int i = 0; i <= 200; i++) {
+            addLocation(i, i < 100 ? 100 : 150);
+        }
+
+        List<Split> kilometerSplits = getSplits(true);
+        assertEquals(1, kilometerSplits.size());
+        assertTrue(kilometerSplits.get(0).hasAverageHeartRate());
+        assertEquals(125.0, kilometerSplits.get(0).getAverageHeartRate(), 0.5);
+    }
+
+    public void testContinueAfterCompletedSplits() {
+        for (int i = 0; i <= 210; i++) {
+            addLocation(i, 0);
+        }
+        List<Split> kilometerSplits = getSplits(true);
+        assertEquals(1, kilometerSplits.size());
+
+        // Restart: continue after the completed splits
+        splitUpdater = new SplitUpdater(kilometerSplits, getSplits(false));
+        splits.clear();
+        for (int i = 211; i <= 420; i++) {
+            addLocation(i, 0);
+        }
+
+        kilometerSplits = getSplits(true);
+        assertEquals(1, kilometerSplits.size());
+        assertEquals(2, kilometerSplits.get(0).getNumber());
+        assertEquals(200 * UnitConversions.ONE_SECOND, kilometerSplits.get(0).getMovingTime());
+    }
+
+    private List<Split> getSplits(boolean metric) {
+        List<Split> result = new ArrayList<>();
+        for (Split split : splits) {
+            if (split.isMetric() == metric) {
+                result.add(split);
+            }
+        }
+        return result;
+    }
+
+    private void addLocation(long seconds, float heartRate) {
+        SensorDataSetLocation location = new SensorDataSetLocation("test");
+        location.setLatitude(45.0);
+        location.setLongitude(35.0);
+        location.setTime(seconds * UnitConversions.ONE_SECOND);
+        location.setSensorDataSet(new SensorDataSet(heartRate > 0 ? heartRate : SensorDataSet.DATA_UNAVAILABLE, SensorDataSet.DATA_UNAVAILABLE, SensorDataSet.DATA_UNAVAILABLE));
+
+        TripStatistics tripStatistics = new TripStatistics();
+        tripStatistics.setTotalDistance(seconds * SPEED);
+        tripStatistics.setTotalTime(seconds * UnitConversions.ONE_SECOND);
+        tripStatistics.setMovingTime(seconds * UnitConversions.ONE_SECOND);
+        tripStatistics.setTotalElevationGain(seconds);
+
+        splits.addAll(splitUpdater.addLocation(location, tripStatistics));
+    }
+}
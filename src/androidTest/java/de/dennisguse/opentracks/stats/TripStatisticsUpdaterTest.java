@@ -0,0 +1,141 @@
+package de.dennisguse.opentracks.stats;
+
+import android.location.Location;
+
+import junit.framework.TestCase;
+
+import de.dennisguse.opentracks.services.TrackRecordingService;
+import de.dennisguse.opentracks.util.UnitConversions;
+
+/**
+ * Tests for {@link TripStatisticsUpdater}.
+ */
+public class TripStatisticsUpdaterTest extends TestCase {
+
+    private static final int MIN_RECORDING_DISTANCE = 5;
+
+    /**
+     * Tests that a copy continues exactly like the original.
+     */
+    public void testCopy() {
+        TripStatisticsUpdater tripStatisticsUpdater = new TripStatisticsUpdater(0L);
+        for (int i = 0; i < 100; i++) {
+            tripStatisticsUpdater.addLocation(createLocation(i), MIN_RECORDING_DISTANCE);
+        }
+
+        TripStatisticsUpdater copy = new TripStatisticsUpdater(tripStatisticsUpdater);
+        for (int i = 100; i < 300; i++) {
+            Location location = i == 200 ? createPause(i) : createLocation(i);
+            tripStatisticsUpdater.addLocation(location, MIN_RECORDING_DISTANCE);
+            copy.addLocation(location, MIN_RECORDING_DISTANCE);
+
+            TripStatistics expected = tripStatisticsUpdater.getTripStatistics();
+            TripStatistics actual = copy.getTripStatistics();
+            assertEquals(expected.getTotalDistance(), actual.getTotalDistance(), 0.0);
+            assertEquals(expected.getTotalTime(), actual.getTotalTime());
+            assertEquals(expected.getMovingTime(), actual.getMovingTime());
+            assertEquals(expected.getTotalElevationGain(), actual.getTotalElevationGain(), 0.0);
+            assertEquals(tripStatisticsUpdater.getSmoothedElevation(), copy.getSmoothedElevation(), 0.0);
+            assertEquals(tripStatisticsUpdater.getSmoothedSpeed(), copy.getSmoothedSpeed(), 0.0);
+        }
+    }
+
+    /**
+     * Tests that the original is not changed by the copy.
+     */
+    public void testCopy_independent() {
+        TripStatisticsUpdater tripStatisticsUpdater = new TripStatisticsUpdater(0L);
+        for (int i = 0; i < 100; i++) {
+            tripStatisticsUpdater.addLocation(createLocation(i), MIN_RECORDING_DISTANCE);
+        }
+        double distance = tripStatisticsUpdater.getTripStatistics().getTotalDistance();
+        double elevation = tripStatisticsUpdater.getSmoothedElevation();
+
+        TripStatisticsUpdater copy = new TripStatisticsUpdater(tripStatisticsUpdater);
+        for (int i = 100; i < 200; i++) {
+            copy.addLocation(createLocation(i), MIN_RECORDING_DISTANCE);
+        }
+
+        assertEquals(distance, tripStatisticsUpdater.getTripStatistics().getTotalDistance(), 0.0);
+        assertEquals(elevation, tripStatisticsUpdater.getSmoothedElevation(), 0.0);
+        assertTrue(copy.getTripStatistics().getTotalDistance() > distance);
+    }
+
+    /**
+     * Tests that a reused instance continues exactly like the original after {@link TripStatisticsUpdater#set(TripStatisticsUpdater)}.
+     */
+    public void testSet() {
+        TripStatisticsUpdater tripStatisticsUpdater = new TripStatisticsUpdater(0L);
+        for (int i = 0; i < 100; i++) {
+            tripStatisticsUpdater.addLocation(createLocation(i), MIN_RECORDING_DISTANCE);
+        }
+        // Has a state of its own before
+        TripStatisticsUpdater reused = new TripStatisticsUpdater(1000L);
+        for (int i = 0; i < 50; i++) {
+            reused.addLocation(createLocation(i * 3), MIN_RECORDING_DISTANCE);
+        }
+
+        reused.set(tripStatisticsUpdater);
+        for (int i = 100; i < 300; i++) {
+            Location location = i == 200 ? createPause(i) : createLocation(i);
+            tripStatisticsUpdater.addLocation(location, MIN_RECORDING_DISTANCE);
+            reused.addLocation(location, MIN_RECORDING_DISTANCE);
+
+            TripStatistics expected = tripStatisticsUpdater.getTripStatistics();
+            TripStatistics actual = reused.getTripStatistics();
+            assertEquals(expected.getStartTime(), actual.getStartTime());
+            assertEquals(expected.getTotalDistance(), actual.getTotalDistance(), 0.0);
+            assertEquals(expected.getTotalTime(), actual.getTotalTime());
+            assertEquals(expected.getMovingTime(), actual.getMovingTime());
+            assertEquals(expected.getTotalElevationGain(), actual.getTotalElevationGain(), 0.0);
+            assertEquals(tripStatisticsUpdater.getSmoothedElevation(), reused.getSmoothedElevation(), 0.0);
+            assertEquals(tripStatisticsUpdater.getSmoothedSpeed(), reused.getSmoothedSpeed(), 0.0);
+        }
+    }
+
+    /**
+     * Tests that adding the values of a track point is the same as adding its location.
+     */
+    public void testAddTrackPoint() {
+        TripStatisticsUpdater expected = new TripStatisticsUpdater(0L);
+        TripStatisticsUpdater actual = new TripStatisticsUpdater(0L);
+        for (int i = 0; i < 300; i++) {
+            Location location = i == 150 ? createPause(i) : createLocation(i);
+            if (i % 7 == 0) {
+                location.removeSpeed();
+            }
+            expected.addLocation(location, MIN_RECORDING_DISTANCE);
+            actual.addTrackPoint(location.getTime(), location.getLatitude(), location.getLongitude(),
+                    location.hasAltitude() ? location.getAltitude() : Double.NaN,
+                    location.hasSpeed() ? location.getSpeed() : Float.NaN, MIN_RECORDING_DISTANCE);
+
+            assertEquals(expected.getTripStatistics().getTotalDistance(), actual.getTotalDistance(), 0.0);
+            assertEquals(expected.getTripStatistics().getTotalTime(), actual.getTotalTime());
+            assertEquals(expected.getTripStatistics().getMovingTime(), actual.getTripStatistics().getMovingTime());
+            assertEquals(expected.getSmoothedElevation(), actual.getSmoothedElevation(), 0.0);
+            assertEquals(expected.getSmoothedSpeed(), actual.getSmoothedSpeed(), 0.0);
+        }
+    }
+
+    /**
+     * Creates a location; 1 location per second, about 10 m apart, changing elevation and speed.
+     */
+    private static Location createLocation(int i) {
+        Location location = new Location("test");
+        location.setLatitude(45.0 + i * 0.0001);
+        location.setLongitude(35.0);
+        location.setAltitude(100.0 + 10.0 * Math.sin(i * 0.1));
+        location.setSpeed(10.0f + (float) Math.cos(i * 0.1));
+        location.setAccuracy(5.0f);
+        location.setTime(i * UnitConversions.ONE_SECOND);
+        return location;
+    }
+
+    private static Location createPause(int i) {
+        Location location = new Location("test");
+        location.setLatitude(TrackRecordingService.PAUSE_LATITUDE);
+        location.setLongitude(0.0);
+        location.setTime(i * UnitConversions.ONE_SECOND);
+        return location;
+    }
+}
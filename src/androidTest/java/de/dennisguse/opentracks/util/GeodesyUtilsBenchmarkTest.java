@@ -0,0 +1,125 @@
+package de.dennisguse.opentracks.util;
+
+import android.location.Location;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.dennisguse.opentracks.BenchmarkUtils;
+
+/**
+ * Benchmark of {@link GeodesyUtils} compared to {@link Location#distanceTo(Location)}.
+ * Reports ns per call to logcat and verifies that the computations do not allocate (and that the allocations of the former {@code Location} based distance are counted).
+ */
+@RunWith(AndroidJUnit4.class)
+public class GeodesyUtilsBenchmarkTest {
+
+    private static final String TAG = GeodesyUtilsBenchmarkTest.class.getSimpleName();
+
+    private static final int WARMUP_ITERATIONS = 10000;
+    private static final int ITERATIONS = 200000;
+
+    // Consecutive track points: about 10 m apart
+    private static final double STEP = 0.0001;
+
+    @Test
+    public void benchmarkDistanceTo() throws Exception {
+        final Location location1 = new Location("test");
+        final Location location2 = new Location("test");
+        location1.setLatitude(47.0);
+        location2.setLatitude(47.0);
+        measure("Location.distanceTo", new BenchmarkUtils.Benchmark() {
+            @Override
+            public double run(int iteration) {
+                location1.setLongitude(iteration * STEP);
+                location2.setLongitude((iteration + 1) * STEP);
+                return location1.distanceTo(location2);
+            }
+        });
+    }
+
+    @Test
+    public void benchmarkLegacyDistance() throws Exception {
+        // Like the former LocationUtils.distance(): two temporary Locations per call
+        int allocations = measure("LocationUtils.distance (legacy)", new BenchmarkUtils.Benchmark() {
+            @Override
+            public double run(int iteration) {
+                return legacyDistance(47.0, iteration * STEP, 47.0, (iteration + 1) * STEP);
+            }
+        });
+        BenchmarkUtils.assertAllocCounting(allocations);
+    }
+
+    @Test
+    public void benchmarkDistance() throws Exception {
+        int allocations = measure("GeodesyUtils.distance", new BenchmarkUtils.Benchmark() {
+            @Override
+            public double run(int iteration) {
+                return GeodesyUtils.distance(47.0, iteration * STEP, 47.0, (iteration + 1) * STEP);
+            }
+        });
+        Assert.assertEquals(0, allocations);
+    }
+
+    @Test
+    public void benchmarkLocalScale() throws Exception {
+        final GeodesyUtils.LocalScale localScale = new GeodesyUtils.LocalScale();
+        int allocations = measure("GeodesyUtils.LocalScale.distance", new BenchmarkUtils.Benchmark() {
+            @Override
+            public double run(int iteration) {
+                return localScale.distance(47.0 + iteration * STEP * 0.1, iteration * STEP, 47.0 + (iteration + 1) * STEP * 0.1, (iteration + 1) * STEP);
+            }
+        });
+        Assert.assertEquals(0, allocations);
+    }
+
+    @Test
+    public void benchmarkVincenty() throws Exception {
+        int allocations = measure("GeodesyUtils.vincenty", new BenchmarkUtils.Benchmark() {
+            @Override
+            public double run(int iteration) {
+                return GeodesyUtils.vincenty(47.0, iteration * STEP, 47.0, (iteration + 1) * STEP);
+            }
+        });
+        Assert.assertEquals(0, allocations);
+    }
+
+    @Test
+    public void benchmarkHaversine() throws Exception {
+        int allocations = measure("GeodesyUtils.haversine", new BenchmarkUtils.Benchmark() {
+            @Override
+            public double run(int iteration) {
+                return GeodesyUtils.haversine(47.0, iteration * STEP, 47.0, (iteration + 1) * STEP);
+            }
+        });
+        Assert.assertEquals(0, allocations);
+    }
+
+    @Test
+    public void benchmarkBearing() throws Exception {
+        int allocations = measure("GeodesyUtils.bearing", new BenchmarkUtils.Benchmark() {
+            @Override
+            public double run(int iteration) {
+                return GeodesyUtils.bearing(47.0, iteration * STEP, 47.0 + STEP, (iteration + 1) * STEP);
+            }
+        });
+        Assert.assertEquals(0, allocations);
+    }
+
+    private static double legacyDistance(double latitude1, double longitude1, double latitude2, double longitude2) {
+        Location location1 = new Location("");
+        location1.setLatitude(latitude1);
+        location1.setLongitude(longitude1);
+        Location location2 = new Location("");
+        location2.setLatitude(latitude2);
+        location2.setLongitude(longitude2);
+        return location1.distanceTo(location2);
+    }
+
+    private static int measure(String name, BenchmarkUtils.Benchmark benchmark) throws Exception {
+        return BenchmarkUtils.measure(TAG, name, "call", WARMUP_ITERATIONS, ITERATIONS, benchmark);
+    }
+}
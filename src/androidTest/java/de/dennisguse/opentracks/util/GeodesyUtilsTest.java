@@ -0,0 +1,148 @@
+package de.dennisguse.opentracks.util;
+
+import android.location.Location;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+/**
+ * Tests for {@link GeodesyUtils} against Android's {@link Location#distanceTo(Location)}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class GeodesyUtilsTest {
+
+    private static final int NUMBER_OF_SAMPLES = 10000;
+
+    // Location.distanceTo returns a float; ignore differences below
+    private static final double MIN_ABSOLUTE_ERROR = 0.01;
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void testDistance_short() {
+        for (int i = 0; i < NUMBER_OF_SAMPLES; i++) {
+            double latitude = randomLatitude();
+            double longitude = randomLongitude();
+            assertDistance(latitude, longitude, latitude + randomDelta(0.001), longitude + randomDelta(0.001), GeodesyUtils.MAX_RELATIVE_ERROR);
+        }
+    }
+
+    @Test
+    public void testDistance_medium() {
+        for (int i = 0; i < NUMBER_OF_SAMPLES; i++) {
+            double latitude = randomLatitude();
+            double longitude = randomLongitude();
+            assertDistance(latitude, longitude, clampLatitude(latitude + randomDelta(0.2)), longitude + randomDelta(0.2), GeodesyUtils.MAX_RELATIVE_ERROR);
+        }
+    }
+
+    @Test
+    public void testDistance_long() {
+        for (int i = 0; i < NUMBER_OF_SAMPLES; i++) {
+            assertDistance(randomLatitude(), randomLongitude(), randomLatitude(), randomLongitude(), GeodesyUtils.MAX_RELATIVE_ERROR);
+        }
+    }
+
+    @Test
+    public void testDistance_acrossDateLine() {
+        assertDistance(10.0, 179.9999, 10.0, -179.9999, GeodesyUtils.MAX_RELATIVE_ERROR);
+    }
+
+    @Test
+    public void testDistance_nearPole() {
+        assertDistance(89.9, 10.0, 89.9, 10.05, GeodesyUtils.MAX_RELATIVE_ERROR);
+        assertDistance(-89.95, 0.0, -89.95, 180.0, GeodesyUtils.MAX_RELATIVE_ERROR);
+    }
+
+    @Test
+    public void testDistance_samePoint() {
+        Assert.assertEquals(0.0, GeodesyUtils.distance(45.0, 7.0, 45.0, 7.0), 0.0);
+        Assert.assertEquals(0.0, GeodesyUtils.vincenty(45.0, 7.0, 45.0, 7.0), 0.0);
+    }
+
+    @Test
+    public void testHaversine() {
+        for (int i = 0; i < NUMBER_OF_SAMPLES; i++) {
+            double latitude1 = randomLatitude();
+            double longitude1 = randomLongitude();
+            double latitude2 = randomLatitude();
+            double longitude2 = randomLongitude();
+            double expected = distanceTo(latitude1, longitude1, latitude2, longitude2);
+            Assert.assertEquals(expected, GeodesyUtils.haversine(latitude1, longitude1, latitude2, longitude2), Math.max(MIN_ABSOLUTE_ERROR, expected * GeodesyUtils.MAX_RELATIVE_ERROR_HAVERSINE));
+        }
+    }
+
+    @Test
+    public void testLocalScale() {
+        GeodesyUtils.LocalScale localScale = new GeodesyUtils.LocalScale();
+        double latitude = 47.0;
+        double longitude = 8.0;
+        // A track heading north-east
+        for (int i = 0; i < NUMBER_OF_SAMPLES; i++) {
+            double nextLatitude = latitude + random.nextDouble() * 0.0001;
+            double nextLongitude = longitude + random.nextDouble() * 0.0001;
+            double expected = distanceTo(latitude, longitude, nextLatitude, nextLongitude);
+            Assert.assertEquals(expected, localScale.distance(latitude, longitude, nextLatitude, nextLongitude), Math.max(MIN_ABSOLUTE_ERROR, expected * GeodesyUtils.MAX_RELATIVE_ERROR));
+            latitude = nextLatitude;
+            longitude = nextLongitude;
+        }
+    }
+
+    @Test
+    public void testBearing() {
+        for (int i = 0; i < NUMBER_OF_SAMPLES; i++) {
+            double latitude = randomLatitude();
+            double longitude = randomLongitude();
+            double nextLatitude = clampLatitude(latitude + randomDelta(0.01));
+            double nextLongitude = longitude + randomDelta(0.01);
+
+            Location location1 = createLocation(latitude, longitude);
+            Location location2 = createLocation(nextLatitude, nextLongitude);
+            if (location1.distanceTo(location2) < 1) {
+                continue;
+            }
+            double expected = location1.bearingTo(location2);
+            double actual = GeodesyUtils.bearing(latitude, longitude, nextLatitude, nextLongitude);
+            double difference = Math.abs(expected - actual);
+            Assert.assertTrue("expected " + expected + " but was " + actual, Math.min(difference, 360 - difference) < 0.5);
+        }
+    }
+
+    private void assertDistance(double latitude1, double longitude1, double latitude2, double longitude2, double maxRelativeError) {
+        double expected = distanceTo(latitude1, longitude1, latitude2, longitude2);
+        double actual = GeodesyUtils.distance(latitude1, longitude1, latitude2, longitude2);
+        Assert.assertEquals(expected, actual, Math.max(MIN_ABSOLUTE_ERROR, expected * maxRelativeError));
+    }
+
+    private double randomLatitude() {
+        return (random.nextDouble() - 0.5) * 179.0;
+    }
+
+    private double randomLongitude() {
+        return (random.nextDouble() - 0.5) * 360.0;
+    }
+
+    private double randomDelta(double max) {
+        return (random.nextDouble() - 0.5) * 2.0 * max;
+    }
+
+    private static double clampLatitude(double latitude) {
+        return Math.max(-89.9, Math.min(89.9, latitude));
+    }
+
+    private static double distanceTo(double latitude1, double longitude1, double latitude2, double longitude2) {
+        return createLocation(latitude1, longitude1).distanceTo(createLocation(latitude2, longitude2));
+    }
+
+    private static Location createLocation(double latitude, double longitude) {
+        Location location = new Location("test");
+        location.setLatitude(latitude);
+        location.setLongitude(longitude);
+        return location;
+    }
+}
@@ -0,0 +1,106 @@
+package de.dennisguse.opentracks.util;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import de.dennisguse.opentracks.BenchmarkUtils;
+
+/**
+ * Benchmark of the ISO 8601 formatting and parsing of {@link StringUtils} compared to {@link SimpleDateFormat}.
+ * Reports ns per call to logcat and verifies that formatting and parsing from chars do not allocate.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StringUtilsBenchmarkTest {
+
+    private static final String TAG = StringUtilsBenchmarkTest.class.getSimpleName();
+
+    private static final int WARMUP_ITERATIONS = 10000;
+    private static final int ITERATIONS = 200000;
+
+    // Consecutive track points: 1 s apart
+    private static final long START_TIME = 1500000000000L;
+    private static final long STEP = 1000L;
+
+    @Test
+    public void benchmarkSimpleDateFormat_format() throws Exception {
+        final SimpleDateFormat simpleDateFormat = createSimpleDateFormat();
+        int allocations = measure("SimpleDateFormat.format", new BenchmarkUtils.Benchmark() {
+            @Override
+            public double run(int iteration) {
+                return simpleDateFormat.format(START_TIME + iteration * STEP).length();
+            }
+        });
+        // SimpleDateFormat allocates; so, the counting works.
+        BenchmarkUtils.assertAllocCounting(allocations);
+    }
+
+    @Test
+    public void benchmarkFormatDateTimeIso8601() throws Exception {
+        final char[] chars = new char[StringUtils.ISO_8601_DATE_TIME_MAX_LENGTH];
+        int allocations = measure("StringUtils.formatDateTimeIso8601", new BenchmarkUtils.Benchmark() {
+            @Override
+            public double run(int iteration) {
+                // Within a day; so, the date is cached.
+                return StringUtils.formatDateTimeIso8601(START_TIME + (iteration % 60000) * STEP, chars, 0);
+            }
+        });
+        Assert.assertEquals(0, allocations);
+    }
+
+    @Test
+    public void benchmarkSimpleDateFormat_parse() throws Exception {
+        final SimpleDateFormat simpleDateFormat = createSimpleDateFormat();
+        final String[] xmlDateTimes = createXmlDateTimes();
+        int allocations = measure("SimpleDateFormat.parse", new BenchmarkUtils.Benchmark() {
+            @Override
+            public double run(int iteration) {
+                return simpleDateFormat.parse(xmlDateTimes[iteration % xmlDateTimes.length], new ParsePosition(0)).getTime();
+            }
+        });
+        // SimpleDateFormat allocates; so, the counting works.
+        BenchmarkUtils.assertAllocCounting(allocations);
+    }
+
+    @Test
+    public void benchmarkGetTime() throws Exception {
+        String[] xmlDateTimes = createXmlDateTimes();
+        final char[][] chars = new char[xmlDateTimes.length][];
+        for (int i = 0; i < xmlDateTimes.length; i++) {
+            chars[i] = xmlDateTimes[i].toCharArray();
+        }
+        int allocations = measure("StringUtils.getTime", new BenchmarkUtils.Benchmark() {
+            @Override
+            public double run(int iteration) {
+                char[] xmlDateTime = chars[iteration % chars.length];
+                return StringUtils.getTime(xmlDateTime, 0, xmlDateTime.length);
+            }
+        });
+        Assert.assertEquals(0, allocations);
+    }
+
+    private static SimpleDateFormat createSimpleDateFormat() {
+        SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        simpleDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return simpleDateFormat;
+    }
+
+    private static String[] createXmlDateTimes() {
+        String[] xmlDateTimes = new String[1000];
+        for (int i = 0; i < xmlDateTimes.length; i++) {
+            xmlDateTimes[i] = StringUtils.formatDateTimeIso8601(START_TIME + i * STEP);
+        }
+        return xmlDateTimes;
+    }
+
+    private static int measure(String name, BenchmarkUtils.Benchmark benchmark) throws Exception {
+        return BenchmarkUtils.measure(TAG, name, "call", WARMUP_ITERATIONS, ITERATIONS, benchmark);
+    }
+}
@@ -25,7 +25,11 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.Random;
 import java.util.TimeZone;
 
 /**
@@ -159,6 +163,164 @@ public class StringUtilsTest {
         assertGetTime("2010-05-04T03:02:01.8-05:30", 2010, 5, 4, 8, 32, 1, 800);
     }
 
+    /**
+     * Tests that {@link StringUtils#getTime(char[], int, int)} is the same as {@link StringUtils#getTime(String)}.
+     */
+    @Test
+    public void testGetTime_chars() {
+        String[] xmlDateTimes = {"2010-05-04T03:02:01", "2010-05-04T03:02:01Z", "2010-05-04T03:02:01.3529Z", "2010-05-04T03:02:01+10:30",
+                "2010-05-04T03:02:01.5791+03:00", "2010-05-04T03:02:01.8-05:30", "1969-12-31T23:59:59.999Z", "2000-02-29T12:00:00Z"};
+        for (String xmlDateTime : xmlDateTimes) {
+            // With surrounding chars
+            char[] chars = (" <" + xmlDateTime + "\n>").toCharArray();
+            Assert.assertEquals(xmlDateTime, StringUtils.getTime(xmlDateTime), StringUtils.getTime(chars, 2, xmlDateTime.length() + 1));
+        }
+    }
+
+    @Test
+    public void testGetTime_charsInvalid() {
+        String[] xmlDateTimes = {"invalid", "2010-05-04", "2010-05-04T03:02:01.", "2010-05-04T03:02:01+15:00", "2010-13-04T03:02:01Z", "2010-05-04T03:02:01ZZ"};
+        for (String xmlDateTime : xmlDateTimes) {
+            try {
+                StringUtils.getTime(xmlDateTime.toCharArray(), 0, xmlDateTime.length());
+                Assert.fail(xmlDateTime);
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    /**
+     * Tests {@link StringUtils#getTime(String)} with the extended forms of XML date times.
+     */
+    @Test
+    public void testGetTime_extended() {
+        Assert.assertEquals(StringUtils.getTime("2010-05-05T00:00:00Z"), StringUtils.getTime("2010-05-04T24:00:00Z"));
+        Assert.assertEquals(StringUtils.getTime("2010-05-05T00:00:00Z"), StringUtils.getTime("2010-05-04T24:00:00.000Z"));
+        Assert.assertEquals(253402300800000L, StringUtils.getTime("10000-01-01T00:00:00Z"));
+        Assert.assertEquals(-62135596800000L, StringUtils.getTime("0001-01-01T00:00:00Z"));
+
+        String[] xmlDateTimes = {"2010-05-04T24:00:01Z", "2010-05-04T24:00:00.001Z", "10-05-04T03:02:01Z", "2010-5-4T3:2:1Z", " ", ""};
+        for (String xmlDateTime : xmlDateTimes) {
+            try {
+                StringUtils.getTime(xmlDateTime);
+                Assert.fail(xmlDateTime);
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    /**
+     * Tests that {@link StringUtils#formatDateTimeIso8601(long)} is the same as {@link SimpleDateFormat} (Gregorian calendar) and that {@link StringUtils#getTime(String)} parses it.
+     */
+    @Test
+    public void testFormatDateTimeIso8601_conformance() {
+        SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        simpleDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        // Around the epoch, the day boundaries, and the leap days
+        long[] times = {0L, -1L, 1L, 86399999L, 86400000L, -86400000L, -86400001L, 951782400000L, 951868799999L, 4107542400000L, 253402300799999L};
+        for (long time : times) {
+            assertFormatDateTimeIso8601(simpleDateFormat, time);
+        }
+        // From 1653 to 2286
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            assertFormatDateTimeIso8601(simpleDateFormat, (long) ((random.nextDouble() - 0.5) * 2e13));
+        }
+        // Consecutive track points
+        for (long time = 1500000000000L; time < 1500000000000L + 2 * 86400000L; time += 9973L) {
+            assertFormatDateTimeIso8601(simpleDateFormat, time);
+        }
+    }
+
+    @Test
+    public void testFormatDateTimeIso8601_charsAndStringBuilder() {
+        char[] chars = new char[2 + StringUtils.ISO_8601_DATE_TIME_MAX_LENGTH];
+        int end = StringUtils.formatDateTimeIso8601(1500000000123L, chars, 2);
+        Assert.assertEquals("2017-07-14T02:40:00.123Z", new String(chars, 2, end - 2));
+
+        StringBuilder stringBuilder = new StringBuilder("<time>");
+        StringUtils.formatDateTimeIso8601(1500000000123L, stringBuilder);
+        Assert.assertEquals("<time>2017-07-14T02:40:00.123Z", stringBuilder.toString());
+
+        // Years beyond four digits
+        end = StringUtils.formatDateTimeIso8601(Long.MAX_VALUE, chars, 0);
+        Assert.assertEquals(Long.MAX_VALUE, StringUtils.getTime(chars, 0, end));
+    }
+
+    /**
+     * Tests that formatting and parsing concurrently (of different days) is correct.
+     */
+    @Test
+    public void testFormatDateTimeIso8601_concurrent() throws Exception {
+        final int numThreads = 4;
+        final boolean[] failed = new boolean[numThreads];
+        Thread[] threads = new Thread[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            final int threadIndex = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    char[] chars = new char[StringUtils.ISO_8601_DATE_TIME_MAX_LENGTH];
+                    // Each thread is at another day
+                    long time = 1500000000000L + threadIndex * 86400000L * 100;
+                    for (int j = 0; j < 100000; j++) {
+                        time += 12345L * (j % 3);
+                        String expected = StringUtils.formatDateTimeIso8601(time);
+                        int end = StringUtils.formatDateTimeIso8601(time, chars, 0);
+                        if (!expected.equals(new String(chars, 0, end)) || StringUtils.getTime(chars, 0, end) != time) {
+                            failed[threadIndex] = true;
+                            return;
+                        }
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (int i = 0; i < numThreads; i++) {
+            threads[i].join();
+            Assert.assertFalse(failed[i]);
+        }
+    }
+
+    /**
+     * Tests that {@link StringUtils#parseDouble(char[], int, int)} is the same as {@link Double#parseDouble(String)}.
+     */
+    @Test
+    public void testParseDouble() {
+        String[] values = {"0", "-0", "1.", ".5", "+3.25", " 12.5\n", "47.123456", "-122.0839", "1e5", "1E-5", "123.456e-20", "1e22", "1e23",
+                "0.1", "0.000123456789012345", "9007199254740993", "1.7976931348623157E308", "4.9E-324", "NaN", "-Infinity"};
+        for (String value : values) {
+            Assert.assertEquals(value, Double.parseDouble(value), StringUtils.parseDouble(value.toCharArray(), 0, value.length()), 0.0);
+        }
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            String value = Double.toString((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(20) - 10));
+            Assert.assertEquals(value, Double.parseDouble(value), StringUtils.parseDouble(value.toCharArray(), 0, value.length()), 0.0);
+        }
+    }
+
+    @Test
+    public void testParseDouble_invalid() {
+        String[] values = {"", " ", ".", "1e", "abc", "1.2.3", "--1"};
+        for (String value : values) {
+            try {
+                StringUtils.parseDouble(value.toCharArray(), 0, value.length());
+                Assert.fail(value);
+            } catch (NumberFormatException e) {
+                // Expected
+            }
+        }
+    }
+
+    private static void assertFormatDateTimeIso8601(SimpleDateFormat simpleDateFormat, long time) {
+        String xmlDateTime = StringUtils.formatDateTimeIso8601(time);
+        Assert.assertEquals(simpleDateFormat.format(new Date(time)), xmlDateTime);
+        Assert.assertEquals(xmlDateTime, time, StringUtils.getTime(xmlDateTime));
+    }
+
     /**
      * Asserts the {@link StringUtils#getTime(String)} returns the expected values.
      *
@@ -37,6 +37,7 @@ import de.dennisguse.opentracks.stats.ExtremityMonitor;
 class ChartValueSeries {
 
     private static final float STROKE_WIDTH = 2f;
+    private static final int COMPARISON_ALPHA = 0x80;
 
     private final int absoluteMin;
     private final int absoluteMax;
@@ -45,11 +46,11 @@ class ChartValueSeries {
     private final int imperialTitleId;
     private final Paint fillPaint;
     private final Paint strokePaint;
+    private final Paint comparisonPaint;
     private final Paint titlePaint;
     private final Paint markerPaint;
     private final ExtremityMonitor extremityMonitor;
     private final NumberFormat numberFormat;
-    private final Path path;
 
     private int interval = 1;
     private int minMarkerValue = 0;
@@ -99,9 +100,12 @@ class ChartValueSeries {
         // Set stroke paint thickness
         strokePaint.setStrokeWidth(STROKE_WIDTH);
 
+        // The compared tracks are drawn lighter.
+        comparisonPaint = new Paint(strokePaint);
+        comparisonPaint.setAlpha(COMPARISON_ALPHA);
+
         extremityMonitor = new ExtremityMonitor();
         numberFormat = NumberFormat.getIntegerInstance();
-        path = new Path();
     }
 
     /**
@@ -137,20 +141,25 @@ class ChartValueSeries {
     }
 
     /**
-     * Gets the path.
+     * Draws the series on canvas.
+     *
+     * @param canvas the canvas
+     * @param fill   the filled area
+     * @param lines  the line segments (x0, y0, x1, y1, ...); see {@link Canvas#drawLines(float[], Paint)}
      */
-    Path getPath() {
-        return path;
+    void draw(Canvas canvas, Path fill, float[] lines) {
+        canvas.drawPath(fill, fillPaint);
+        canvas.drawLines(lines, strokePaint);
     }
 
     /**
-     * Draws the path on canvas.
+     * Draws the series of a compared track on canvas (without filled area).
      *
      * @param canvas the canvas
+     * @param lines  the line segments (x0, y0, x1, y1, ...); see {@link Canvas#drawLines(float[], Paint)}
      */
-    void drawPath(Canvas canvas) {
-        canvas.drawPath(path, fillPaint);
-        canvas.drawPath(path, strokePaint);
+    void drawComparison(Canvas canvas, float[] lines) {
+        canvas.drawLines(lines, comparisonPaint);
     }
 
     /**
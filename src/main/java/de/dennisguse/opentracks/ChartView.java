@@ -18,6 +18,7 @@ package de.dennisguse.opentracks;
 
 import android.content.Context;
 import android.content.Intent;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.DashPathEffect;
@@ -27,15 +28,26 @@ import android.graphics.Paint.Style;
 import android.graphics.Path;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.view.HapticFeedbackConstants;
 import android.view.MotionEvent;
 import android.view.VelocityTracker;
 import android.view.View;
 import android.view.ViewConfiguration;
+import android.view.ViewParent;
 import android.widget.Scroller;
 
+import androidx.annotation.VisibleForTesting;
+
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import de.dennisguse.opentracks.content.Downsampler;
+import de.dennisguse.opentracks.content.SamplingBuffer;
 import de.dennisguse.opentracks.content.Waypoint;
 import de.dennisguse.opentracks.stats.ExtremityMonitor;
 import de.dennisguse.opentracks.util.IntentUtils;
@@ -68,24 +80,57 @@ public class ChartView extends View {
     private static final int MIN_ZOOM_LEVEL = 1;
     private static final int MAX_ZOOM_LEVEL = 10;
 
-    private static final NumberFormat X_NUMBER_FORMAT = NumberFormat.getIntegerInstance();
-    private static final NumberFormat X_FRACTION_FORMAT = NumberFormat.getNumberInstance();
     private static final int BORDER = 8;
     private static final int SPACER = 4;
     private static final int Y_AXIS_OFFSET = 16;
 
-    static {
-        X_FRACTION_FORMAT.setMaximumFractionDigits(1);
-        X_FRACTION_FORMAT.setMinimumFractionDigits(1);
-    }
+    // The radius of the dots of the scrubber (dp)
+    private static final float SCRUBBER_DOT_RADIUS = 3f;
+
+    private static final int FOREGROUND_LAYER_STATE_SIZE = 10 + 3 * NUM_SERIES;
+
+    // The max number of vertices of the open (last) chunk of a series; rebuilt for new data points.
+    private static final int CHUNK_SIZE = 256;
+    // The range of the scale (x and y) of a geometry to the current scale; outside it is rebuilt.
+    private static final float MIN_GEOMETRY_SCALE = 0.5f;
+    private static final float MAX_GEOMETRY_SCALE = 2f;
+    // The depth of the filled areas below the graph area (in y ranges); so, they reach the x axis if scaled.
+    private static final int FILL_DEPTH = 10;
+
+    // Used in the geometry thread only
+    private final NumberFormat xNumberFormat = NumberFormat.getIntegerInstance();
+    private final NumberFormat xFractionFormat = NumberFormat.getNumberInstance();
 
     private final ChartValueSeries[] series = new ChartValueSeries[NUM_SERIES];
-    private final ArrayList<double[]> chartData = new ArrayList<>();
+    private final SamplingBuffer chartData = new SamplingBuffer(NUM_SERIES + 1);
+    // The data point being added; guarded by chartData
+    private final double[] dataPoint = new double[NUM_SERIES + 1];
+    private final Downsampler[] downsamplers = new Downsampler[NUM_SERIES];
+    // The vertices (x0, y0, x1, y1, ...) of a series and their rows in chartData (-1 if not) while building the geometry; guarded by chartData
+    private float[] vertices = new float[2 * CHUNK_SIZE];
+    private int[] vertexRows = new int[CHUNK_SIZE];
+    // Per series: the first row of the open chunk (-1 if the geometry can not be appended) and the last vertex of the other chunks (NaN if none); guarded by chartData
+    private final int[] openRows = new int[NUM_SERIES];
+    private final float[] sealedVertices = new float[2 * NUM_SERIES];
+    // Full resolution data points between detailMinX and detailMaxX (if zoomed in); null if not available
+    private SamplingBuffer detailData = null;
+    private double detailMinX;
+    private double detailMaxX;
+    private OnVisibleRangeChangedListener onVisibleRangeChangedListener;
+    // Other tracks to compare with and their delta to the selected track; guarded by chartData
+    private SamplingBuffer[] comparisonData = new SamplingBuffer[0];
+    private SamplingBuffer[] comparisonDeltas = new SamplingBuffer[0];
+    private double maxDelta = 0.0;
+    private final Downsampler deltaDownsampler = new Downsampler(Downsampler.Mode.MIN_MAX);
+    // Sorted by x value with their x values (for binary search); guarded by waypoints
     private final ArrayList<Waypoint> waypoints = new ArrayList<>();
+    private double[] waypointXValues = new double[16];
     private final ExtremityMonitor xExtremityMonitor = new ExtremityMonitor();
     private final Paint axisPaint;
     private final Paint xAxisMarkerPaint;
     private final Paint gridPaint;
+    private final Paint deltaPaint;
+    private final Paint deltaTextPaint;
     private final Drawable pointer;
     private final int markerWidth;
     private final int markerHeight;
@@ -93,6 +138,36 @@ public class ChartView extends View {
     private double maxX = 1.0;
     private VelocityTracker velocityTracker = null;
     private float lastMotionEventX = -1;
+    private float downMotionEventX = -1;
+    private final int touchSlop;
+
+    // Scrubbing: after a long press, the values of all series at the touch position are shown (UI thread only)
+    private final Runnable startScrubbing = new Runnable() {
+        @Override
+        public void run() {
+            scrubbing = true;
+            ViewParent parent = getParent();
+            if (parent != null) {
+                parent.requestDisallowInterceptTouchEvent(true);
+            }
+            performHapticFeedback(HapticFeedbackConstants.LONG_PRESS);
+            updateScrubber(lastMotionEventX);
+        }
+    };
+    private boolean scrubbing = false;
+    private boolean scrubberVisible = false;
+    private double scrubberXValue;
+    private final double[] scrubberValues = new double[NUM_SERIES];
+    // The readout: the x value and the value of each series
+    private final String[] scrubberLabels = new String[NUM_SERIES + 1];
+    private final int[] scrubberLabelColors = new int[NUM_SERIES + 1];
+    private int numScrubberLabels = 0;
+    private final NumberFormat scrubberFormat = NumberFormat.getNumberInstance();
+    private final Paint scrubberPaint;
+    private final Paint scrubberDotPaint;
+    private final Paint scrubberTextPaint;
+    private final Paint scrubberBackgroundPaint;
+    private final float scrubberDotRadius;
     private int zoomLevel = 1;
 
     private int leftBorder = BORDER;
@@ -112,6 +187,31 @@ public class ChartView extends View {
     private boolean reportSpeed = true;
     private boolean showPointer = false;
 
+    // The scrolling content (data series, x axis grid and markers); built in a background thread (see #updateGeometry()).
+    private volatile Geometry geometry = null;
+    private final Object geometryLock = new Object();
+    private HandlerThread geometryThread = null;
+    private Handler geometryHandler = null;
+    private boolean geometryPending = false;
+    // True if the geometry needs to be rebuilt (not just appended to)
+    private final AtomicBoolean geometryInvalid = new AtomicBoolean(true);
+    private boolean attached = false;
+    private final Runnable buildGeometryRunnable = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (geometryLock) {
+                geometryPending = false;
+            }
+            buildGeometry();
+        }
+    };
+
+    // The fixed parts (y axis grid, series titles, axes); only redrawn if its state (scale, units, etc.) changes.
+    private Bitmap foregroundLayer = null;
+    private boolean foregroundLayerValid = false;
+    private final int[] foregroundLayerState = new int[FOREGROUND_LAYER_STATE_SIZE];
+    private final int[] newForegroundLayerState = new int[FOREGROUND_LAYER_STATE_SIZE];
+
     /**
      * Constructor.
      *
@@ -169,6 +269,14 @@ public class ChartView extends View {
                 R.color.chart_power_fill,
                 R.color.chart_power_border);
 
+        for (int i = 0; i < NUM_SERIES; i++) {
+            // Elevation is smooth: keep its shape with one point per pixel column; keep every spike of the other series.
+            downsamplers[i] = new Downsampler(i == ELEVATION_SERIES ? Downsampler.Mode.LARGEST_TRIANGLE_THREE_BUCKETS : Downsampler.Mode.MIN_MAX);
+        }
+
+        xFractionFormat.setMaximumFractionDigits(1);
+        xFractionFormat.setMinimumFractionDigits(1);
+
         float scale = context.getResources().getDisplayMetrics().density;
 
         axisPaint = new Paint();
@@ -186,6 +294,35 @@ public class ChartView extends View {
         gridPaint.setAntiAlias(false);
         gridPaint.setPathEffect(new DashPathEffect(new float[]{3, 2}, 0));
 
+        deltaPaint = new Paint();
+        deltaPaint.setStyle(Style.STROKE);
+        deltaPaint.setColor(context.getResources().getColor(R.color.chart_delta_border));
+        deltaPaint.setAntiAlias(true);
+        deltaPaint.setStrokeWidth(2f);
+
+        deltaTextPaint = new Paint(axisPaint);
+        deltaTextPaint.setStyle(Style.FILL);
+        deltaTextPaint.setColor(deltaPaint.getColor());
+        deltaTextPaint.setTextAlign(Align.RIGHT);
+
+        scrubberPaint = new Paint(axisPaint);
+        scrubberPaint.setStrokeWidth(scale);
+
+        scrubberDotPaint = new Paint();
+        scrubberDotPaint.setStyle(Style.FILL);
+        scrubberDotPaint.setAntiAlias(true);
+        scrubberDotRadius = SCRUBBER_DOT_RADIUS * scale;
+
+        scrubberTextPaint = new Paint(axisPaint);
+        scrubberTextPaint.setStyle(Style.FILL);
+        scrubberTextPaint.setTextAlign(Align.LEFT);
+
+        scrubberBackgroundPaint = new Paint();
+        scrubberBackgroundPaint.setStyle(Style.FILL);
+        scrubberBackgroundPaint.setColor(Color.argb(0xDD, 0xFF, 0xFF, 0xFF));
+
+        scrubberFormat.setMaximumFractionDigits(1);
+
         Paint markerPaint = new Paint();
         markerPaint.setStyle(Style.STROKE);
         markerPaint.setColor(context.getResources().getColor(android.R.color.darker_gray));
@@ -203,6 +340,7 @@ public class ChartView extends View {
         waypointMarker.setBounds(0, 0, markerWidth, markerHeight);
 
         scroller = new Scroller(context);
+        touchSlop = ViewConfiguration.get(context).getScaledTouchSlop();
         setFocusable(true);
         setClickable(true);
         updateDimensions();
@@ -220,6 +358,44 @@ public class ChartView extends View {
      */
     public void setChartValueSeriesEnabled(int index, boolean enabled) {
         series[index].setEnabled(enabled);
+        updateGeometry();
+    }
+
+    /**
+     * Sets other tracks to compare with; drawn over the series of the selected track.
+     * Cleared by {@link #reset()}.
+     *
+     * @param dataPoints per track: the data points (like the data points of the selected track, aligned by x value)
+     * @param deltas     per track: x value and the delta to the selected track (time if by distance, distance if by time); positive if ahead
+     */
+    public void setComparisonDataPoints(SamplingBuffer[] dataPoints, SamplingBuffer[] deltas) {
+        synchronized (chartData) {
+            comparisonData = dataPoints;
+            comparisonDeltas = deltas;
+            // The axes need to include the other tracks.
+            for (SamplingBuffer data : dataPoints) {
+                if (!data.isEmpty()) {
+                    xExtremityMonitor.update(data.getX(data.size() - 1));
+                }
+                for (int row = 0; row < data.size(); row++) {
+                    for (int i = 0; i < series.length; i++) {
+                        double min = data.getMin(row, i + 1);
+                        if (!Double.isNaN(min)) {
+                            series[i].update(min);
+                            series[i].update(data.getMax(row, i + 1));
+                        }
+                    }
+                }
+            }
+            maxDelta = 0.0;
+            for (SamplingBuffer delta : deltas) {
+                for (int row = 0; row < delta.size(); row++) {
+                    maxDelta = Math.max(maxDelta, Math.max(Math.abs(delta.getMin(row, 1)), Math.abs(delta.getMax(row, 1))));
+                }
+            }
+            updateDimensions();
+            invalidateGeometry();
+        }
     }
 
     /**
@@ -230,6 +406,7 @@ public class ChartView extends View {
      */
     public void setChartByDistance(boolean value) {
         chartByDistance = value;
+        updateWaypointXValues();
     }
 
     /**
@@ -239,6 +416,7 @@ public class ChartView extends View {
      */
     public void setMetricUnits(boolean value) {
         metricUnits = value;
+        updateWaypointXValues();
     }
 
     /**
@@ -259,16 +437,57 @@ public class ChartView extends View {
         showPointer = value;
     }
 
+    /**
+     * Sets the listener to load the full resolution data points of the visible range if zoomed in.
+     *
+     * @param listener the listener (may be null)
+     */
+    public void setOnVisibleRangeChangedListener(OnVisibleRangeChangedListener listener) {
+        onVisibleRangeChangedListener = listener;
+    }
+
+    /**
+     * Sets the full resolution data points of a range; they replace the (sampled) data points within the range while zoomed in.
+     *
+     * @param minX       the min x value of the range
+     * @param maxX       the max x value of the range
+     * @param dataPoints the data points (ordered by x); null to clear
+     */
+    public void setDetailDataPoints(double minX, double maxX, SamplingBuffer dataPoints) {
+        synchronized (chartData) {
+            detailData = dataPoints;
+            detailMinX = minX;
+            detailMaxX = maxX;
+            invalidateGeometry();
+        }
+        postInvalidate();
+    }
+
     /**
      * Adds data points.
      *
-     * @param dataPoints an array of data points to be added
+     * @param dataPoints the data points to be added (one row per data point)
      */
-    public void addDataPoints(ArrayList<double[]> dataPoints) {
+    public void addDataPoints(SamplingBuffer dataPoints) {
+        addDataPoints(dataPoints, new BitSet());
+    }
+
+    /**
+     * Adds data points; some are merged into the previous data point (e.g., sampled out track points).
+     * So, their extremes are drawn without adding data points.
+     *
+     * @param dataPoints       the data points to be added (one row per data point; may be reused by the caller afterwards)
+     * @param mergedDataPoints the rows of the data points to merge into the previous data point
+     */
+    public void addDataPoints(SamplingBuffer dataPoints, BitSet mergedDataPoints) {
         synchronized (chartData) {
-            chartData.addAll(dataPoints);
             for (int i = 0; i < dataPoints.size(); i++) {
-                double[] dataPoint = dataPoints.get(i);
+                dataPoints.getRow(i, dataPoint);
+                if (mergedDataPoints.get(i)) {
+                    chartData.merge(dataPoint);
+                } else {
+                    chartData.add(dataPoint);
+                }
                 xExtremityMonitor.update(dataPoint[0]);
                 for (int j = 0; j < series.length; j++) {
                     if (!Double.isNaN(dataPoint[j + 1])) {
@@ -277,7 +496,18 @@ public class ChartView extends View {
                 }
             }
             updateDimensions();
-            updatePaths();
+            updateGeometry();
+        }
+    }
+
+    /**
+     * Halves the resolution of the data points; see {@link SamplingBuffer#halve()}.
+     * The extremities are kept.
+     */
+    public void halveDataPoints() {
+        synchronized (chartData) {
+            chartData.halve();
+            invalidateGeometry();
         }
     }
 
@@ -287,9 +517,14 @@ public class ChartView extends View {
     public void reset() {
         synchronized (chartData) {
             chartData.clear();
+            detailData = null;
+            comparisonData = new SamplingBuffer[0];
+            comparisonDeltas = new SamplingBuffer[0];
+            maxDelta = 0.0;
             xExtremityMonitor.reset();
             zoomLevel = 1;
             updateDimensions();
+            invalidateGeometry();
         }
     }
 
@@ -307,7 +542,57 @@ public class ChartView extends View {
      */
     public void addWaypoint(Waypoint waypoint) {
         synchronized (waypoints) {
-            waypoints.add(waypoint);
+            double xValue = getWaypointXValue(waypoint);
+            int size = waypoints.size();
+            // Usually appended; the waypoints are added in order of the track.
+            int index = Arrays.binarySearch(waypointXValues, 0, size, xValue);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            if (size == waypointXValues.length) {
+                waypointXValues = Arrays.copyOf(waypointXValues, size * 2);
+            }
+            System.arraycopy(waypointXValues, index, waypointXValues, index + 1, size - index);
+            waypointXValues[index] = xValue;
+            waypoints.add(index, waypoint);
+        }
+    }
+
+    /**
+     * Updates the x values of the waypoints (e.g., if the units changed).
+     * The order is kept: both the distance and the time are increasing along the track.
+     */
+    private void updateWaypointXValues() {
+        synchronized (waypoints) {
+            for (int i = 0; i < waypoints.size(); i++) {
+                waypointXValues[i] = getWaypointXValue(waypoints.get(i));
+            }
+        }
+    }
+
+    /**
+     * Gets the waypoint closest to a x position (binary search) or null if none is within markerWidth.
+     *
+     * @param x the x position
+     */
+    private Waypoint getNearestWaypoint(int x) {
+        synchronized (waypoints) {
+            int size = waypoints.size();
+            int index = Arrays.binarySearch(waypointXValues, 0, size, getXValue(x));
+            if (index < 0) {
+                index = -index - 1;
+            }
+            // The closest is either the one before or at the insertion point.
+            Waypoint nearestWaypoint = null;
+            int minDistance = markerWidth;
+            for (int i = Math.max(0, index - 1); i <= Math.min(size - 1, index); i++) {
+                int distance = Math.abs(getX(waypointXValues[i]) - x);
+                if (distance < minDistance) {
+                    minDistance = distance;
+                    nearestWaypoint = waypoints.get(i);
+                }
+            }
+            return nearestWaypoint;
         }
     }
 
@@ -340,8 +625,9 @@ public class ChartView extends View {
     public void zoomIn() {
         if (canZoomIn()) {
             zoomLevel++;
-            updatePaths();
+            invalidateGeometry();
             invalidate();
+            notifyVisibleRangeChanged();
         }
     }
 
@@ -358,8 +644,9 @@ public class ChartView extends View {
                 scrollX = maxWidth;
                 scrollTo(scrollX, 0);
             }
-            updatePaths();
+            invalidateGeometry();
             invalidate();
+            notifyVisibleRangeChanged();
         }
     }
 
@@ -391,6 +678,39 @@ public class ChartView extends View {
         scrollTo(scrollX, 0);
     }
 
+    @Override
+    protected void onScrollChanged(int l, int t, int oldl, int oldt) {
+        super.onScrollChanged(l, t, oldl, oldt);
+        notifyVisibleRangeChanged();
+    }
+
+    /**
+     * Notifies the {@link OnVisibleRangeChangedListener} if zoomed in and the visible range is not covered by the full resolution data points.
+     */
+    private void notifyVisibleRangeChanged() {
+        OnVisibleRangeChangedListener listener = onVisibleRangeChangedListener;
+        if (listener == null || effectiveWidth == 0) {
+            return;
+        }
+        double minX;
+        double maxX;
+        synchronized (chartData) {
+            if (zoomLevel == MIN_ZOOM_LEVEL) {
+                if (detailData != null) {
+                    detailData = null;
+                    invalidateGeometry();
+                }
+                return;
+            }
+            minX = getXValue(getScrollX() + leftBorder);
+            maxX = getXValue(getScrollX() + leftBorder + effectiveWidth);
+            if (detailData != null && detailMinX <= minX && maxX <= detailMaxX) {
+                return;
+            }
+        }
+        listener.onVisibleRangeChanged(minX, maxX, effectiveWidth);
+    }
+
     /**
      * Called by the parent to indicate that the mScrollX/Y values need to be
      * updated. Triggers a redraw during flinging.
@@ -422,8 +742,18 @@ public class ChartView extends View {
                     scroller.abortAnimation();
                 }
                 lastMotionEventX = x;
+                downMotionEventX = x;
+                postDelayed(startScrubbing, ViewConfiguration.getLongPressTimeout());
                 break;
             case MotionEvent.ACTION_MOVE:
+                if (scrubbing) {
+                    lastMotionEventX = x;
+                    updateScrubber(x);
+                    break;
+                }
+                if (Math.abs(x - downMotionEventX) > touchSlop) {
+                    removeCallbacks(startScrubbing);
+                }
                 if (lastMotionEventX == -1) {
                     break;
                 }
@@ -442,21 +772,15 @@ public class ChartView extends View {
                 }
                 break;
             case MotionEvent.ACTION_UP:
+                removeCallbacks(startScrubbing);
+                if (scrubbing) {
+                    stopScrubbing();
+                    break;
+                }
                 // Check if the y event is within markerHeight of the marker center
                 if (Math.abs(event.getY() - topBorder - spacer - markerHeight / 2) < markerHeight) {
-                    int minDistance = Integer.MAX_VALUE;
-                    Waypoint nearestWaypoint = null;
-                    synchronized (waypoints) {
-                        for (int i = 0; i < waypoints.size(); i++) {
-                            Waypoint waypoint = waypoints.get(i);
-                            int distance = Math.abs(getX(getWaypointXValue(waypoint)) - (int) event.getX() - getScrollX());
-                            if (distance < minDistance) {
-                                minDistance = distance;
-                                nearestWaypoint = waypoint;
-                            }
-                        }
-                    }
-                    if (nearestWaypoint != null && minDistance < markerWidth) {
+                    Waypoint nearestWaypoint = getNearestWaypoint((int) event.getX() + getScrollX());
+                    if (nearestWaypoint != null) {
                         Intent intent = IntentUtils.newIntent(getContext(), MarkerDetailActivity.class)
                                 .putExtra(MarkerDetailActivity.EXTRA_MARKER_ID, nearestWaypoint.getId());
                         getContext().startActivity(intent);
@@ -475,10 +799,67 @@ public class ChartView extends View {
                     velocityTracker = null;
                 }
                 break;
+            case MotionEvent.ACTION_CANCEL:
+                removeCallbacks(startScrubbing);
+                if (scrubbing) {
+                    stopScrubbing();
+                }
+                break;
         }
         return true;
     }
 
+    /**
+     * Moves the scrubber to a touch position: looks up the closest data point (binary search) and prepares the readout.
+     *
+     * @param touchX the x position of the touch event
+     */
+    private void updateScrubber(float touchX) {
+        int position = Math.max(leftBorder, Math.min(leftBorder + effectiveWidth, (int) touchX)) + getScrollX();
+        double xValue = getXValue(position);
+        synchronized (chartData) {
+            // The full resolution data points if available
+            SamplingBuffer data = detailData != null && detailMinX <= xValue && xValue <= detailMaxX ? detailData : chartData;
+            int row = data.getNearestRow(xValue);
+            scrubberVisible = row != -1;
+            if (scrubberVisible) {
+                scrubberXValue = data.getX(row);
+                for (int i = 0; i < series.length; i++) {
+                    scrubberValues[i] = series[i].isEnabled() ? data.getValue(row, i + 1) : Double.NaN;
+                }
+            }
+        }
+
+        if (scrubberVisible) {
+            numScrubberLabels = 0;
+            String xLabel = chartByDistance ? scrubberFormat.format(scrubberXValue) + " " + getXAxisLabel() : StringUtils.formatElapsedTime((long) scrubberXValue);
+            addScrubberLabel(xLabel, axisPaint.getColor());
+            for (int i = 0; i < series.length; i++) {
+                if (!Double.isNaN(scrubberValues[i])) {
+                    String title = getContext().getString(series[i].getTitleId(metricUnits));
+                    addScrubberLabel(title + ": " + scrubberFormat.format(scrubberValues[i]), series[i].getTitlePaint().getColor());
+                }
+            }
+        }
+        invalidate();
+    }
+
+    private void addScrubberLabel(String label, int color) {
+        scrubberLabels[numScrubberLabels] = label;
+        scrubberLabelColors[numScrubberLabels] = color;
+        numScrubberLabels++;
+    }
+
+    private void stopScrubbing() {
+        scrubbing = false;
+        scrubberVisible = false;
+        if (velocityTracker != null) {
+            velocityTracker.recycle();
+            velocityTracker = null;
+        }
+        invalidate();
+    }
+
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         updateEffectiveDimensionsIfChanged(
@@ -486,31 +867,76 @@ public class ChartView extends View {
         super.onMeasure(widthMeasureSpec, heightMeasureSpec);
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        synchronized (geometryLock) {
+            attached = true;
+        }
+        updateGeometry();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        synchronized (geometryLock) {
+            attached = false;
+            if (geometryThread != null) {
+                geometryThread.getLooper().quit();
+                geometryThread = null;
+                geometryHandler = null;
+            }
+            geometryPending = false;
+        }
+        if (foregroundLayer != null) {
+            foregroundLayer.recycle();
+            foregroundLayer = null;
+        }
+        removeCallbacks(startScrubbing);
+        scrubbing = false;
+        scrubberVisible = false;
+        super.onDetachedFromWindow();
+    }
+
+    /**
+     * Draws the prepared geometry and foreground layer; does not wait for new data points.
+     */
     @Override
     protected void onDraw(Canvas canvas) {
-        synchronized (chartData) {
+        Geometry localGeometry = geometry;
+        float scaleX = localGeometry != null && localGeometry.xScale > 0 && localGeometry.yRange > 0 ? (float) (getXScale() / localGeometry.xScale) : 0f;
 
-            canvas.save();
+        canvas.save();
 
-            canvas.drawColor(Color.WHITE);
+        canvas.drawColor(Color.WHITE);
 
+        if (scaleX > 0) {
             canvas.save();
 
             clipToGraphArea(canvas);
-            drawDataSeries(canvas);
-            drawGrid(canvas);
+            // Scale the geometry to the current x range (e.g., while recording or until rebuilt after zooming).
+            canvas.translate(leftBorder, 0);
+            canvas.scale(scaleX, 1f);
+            canvas.translate(-localGeometry.leftBorder, 0);
+            drawDataSeries(canvas, localGeometry);
+            drawDeltas(canvas, localGeometry);
+            canvas.drawLines(localGeometry.xAxisGridLines, gridPaint);
 
             canvas.restore();
 
-            drawSeriesTitles(canvas);
-            drawXAxis(canvas);
-            drawYAxis(canvas);
+            drawXAxisMarkers(canvas, localGeometry, scaleX);
+            drawDeltaMarkers(canvas, localGeometry);
+        }
 
-            canvas.restore();
+        drawForegroundLayer(canvas);
 
-            if (showPointer) {
-                drawPointer(canvas);
-            }
+        if (scrubberVisible) {
+            drawScrubber(canvas);
+        }
+
+        canvas.restore();
+
+        if (showPointer && scaleX > 0 && !Float.isNaN(localGeometry.pointerY)) {
+            drawPointer(canvas, localGeometry, scaleX);
         }
     }
 
@@ -528,35 +954,142 @@ public class ChartView extends View {
     /**
      * Draws the data series.
      *
-     * @param canvas the canvas
+     * @param canvas   the canvas
+     * @param geometry the geometry
      */
-    private void drawDataSeries(Canvas canvas) {
-        for (ChartValueSeries chartValueSeries : series) {
-            if (chartValueSeries.isEnabled() && chartValueSeries.hasData()) {
-                chartValueSeries.drawPath(canvas);
+    private void drawDataSeries(Canvas canvas, Geometry geometry) {
+        for (int i = 0; i < series.length; i++) {
+            ChartValueSeries chartValueSeries = series[i];
+            if (chartValueSeries.isEnabled() && (geometry.chunks[i].length > 0 || geometry.comparisonLines.length > 0)) {
+                canvas.save();
+                // Scale the geometry to the current y range of the series.
+                canvas.translate(0, getYOffset(geometry, i));
+                canvas.scale(1f, getYScale(geometry, i));
+                canvas.translate(0, -geometry.yTop);
+                for (Chunk chunk : geometry.chunks[i]) {
+                    chartValueSeries.draw(canvas, chunk.fill, chunk.lines);
+                }
+                for (float[][] comparisonLines : geometry.comparisonLines) {
+                    chartValueSeries.drawComparison(canvas, comparisonLines[i]);
+                }
+                canvas.restore();
             }
         }
     }
 
     /**
-     * Draws the grid.
+     * Draws the deltas of the compared tracks (centered at the zero line).
+     *
+     * @param canvas   the canvas
+     * @param geometry the geometry
+     */
+    private void drawDeltas(Canvas canvas, Geometry geometry) {
+        if (geometry.deltaLines.length == 0) {
+            return;
+        }
+        canvas.drawLines(geometry.deltaZeroLine, gridPaint);
+        for (float[] deltaLines : geometry.deltaLines) {
+            canvas.drawLines(deltaLines, deltaPaint);
+        }
+    }
+
+    /**
+     * Draws the markers of the max delta (ahead at the top, behind at the bottom) at the right of the visible graph area.
+     *
+     * @param canvas   the canvas
+     * @param geometry the geometry
+     */
+    private void drawDeltaMarkers(Canvas canvas, Geometry geometry) {
+        if (geometry.deltaLines.length == 0) {
+            return;
+        }
+        float x = getScrollX() + leftBorder + effectiveWidth - spacer;
+        canvas.drawText(geometry.deltaMaxMarker, x, geometry.yTop + deltaTextPaint.getTextSize(), deltaTextPaint);
+        canvas.drawText(geometry.deltaMinMarker, x, geometry.yTop + geometry.yRange - spacer, deltaTextPaint);
+    }
+
+    /**
+     * Draws the x axis markers.
+     *
+     * @param canvas   the canvas
+     * @param geometry the geometry
+     * @param scaleX   the scale of the geometry's x positions
+     */
+    private void drawXAxisMarkers(Canvas canvas, Geometry geometry, float scaleX) {
+        for (int i = 0; i < geometry.xAxisMarkers.length; i++) {
+            float x = leftBorder + (geometry.xAxisMarkerPositions[2 * i] - geometry.leftBorder) * scaleX;
+            canvas.drawText(geometry.xAxisMarkers[i], x, geometry.xAxisMarkerPositions[2 * i + 1], xAxisMarkerPaint);
+        }
+    }
+
+    /**
+     * Draws the foreground layer; redraws it if needed.
      *
      * @param canvas the canvas
      */
-    private void drawGrid(Canvas canvas) {
-        // X axis grid
-        ArrayList<Double> xAxisMarkerPositions = getXAxisMarkerPositions(getXAxisInterval());
-        for (int i = 0; i < xAxisMarkerPositions.size(); i++) {
-            int x = getX(xAxisMarkerPositions.get(i));
-            canvas.drawLine(x, topBorder, x, topBorder + effectiveHeight, gridPaint);
+    private void drawForegroundLayer(Canvas canvas) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        if (foregroundLayer == null || foregroundLayer.getWidth() != width || foregroundLayer.getHeight() != height) {
+            if (foregroundLayer != null) {
+                foregroundLayer.recycle();
+            }
+            foregroundLayer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            foregroundLayerValid = false;
+        }
+
+        getForegroundLayerState(newForegroundLayerState);
+        if (!foregroundLayerValid || !Arrays.equals(foregroundLayerState, newForegroundLayerState)) {
+            System.arraycopy(newForegroundLayerState, 0, foregroundLayerState, 0, FOREGROUND_LAYER_STATE_SIZE);
+            foregroundLayerValid = true;
+
+            foregroundLayer.eraseColor(Color.TRANSPARENT);
+            Canvas layerCanvas = new Canvas(foregroundLayer);
+            drawYAxisGrid(layerCanvas);
+            drawSeriesTitles(layerCanvas);
+            drawXAxis(layerCanvas);
+            drawYAxis(layerCanvas);
         }
-        // Y axis grid
-        float rightEdge = getX(maxX);
+        canvas.drawBitmap(foregroundLayer, getScrollX(), 0, null);
+    }
+
+    /**
+     * Gets everything the foreground layer depends on.
+     *
+     * @param state the state to fill in ({@link #FOREGROUND_LAYER_STATE_SIZE} values)
+     */
+    private void getForegroundLayerState(int[] state) {
+        int i = 0;
+        state[i++] = width;
+        state[i++] = height;
+        state[i++] = leftBorder;
+        state[i++] = topBorder;
+        state[i++] = bottomBorder;
+        state[i++] = rightBorder;
+        state[i++] = spacer;
+        state[i++] = yAxisOffset;
+        state[i++] = metricUnits ? 1 : 0;
+        state[i++] = chartByDistance ? 1 : 0;
+        for (int j = 0; j < series.length; j++) {
+            ChartValueSeries chartValueSeries = series[j];
+            state[i++] = chartValueSeries.isEnabled() && chartValueSeries.hasData() || allowIfEmpty(j) ? 1 : 0;
+            state[i++] = chartValueSeries.getInterval();
+            state[i++] = chartValueSeries.getMinMarkerValue();
+        }
+    }
+
+    /**
+     * Draws the y axis grid (on the foreground layer).
+     *
+     * @param canvas the canvas
+     */
+    private void drawYAxisGrid(Canvas canvas) {
         for (int i = 0; i <= Y_AXIS_INTERVALS; i++) {
             double percentage = (double) i / Y_AXIS_INTERVALS;
             int range = effectiveHeight - 2 * yAxisOffset;
             int y = topBorder + yAxisOffset + (int) (percentage * range);
-            canvas.drawLine(leftBorder, y, rightEdge, y, gridPaint);
+            canvas.drawLine(leftBorder, y, leftBorder + effectiveWidth, y, gridPaint);
         }
     }
 
@@ -576,7 +1109,7 @@ public class ChartView extends View {
                 count++;
                 String title = getContext().getString(chartValueSeries.getTitleId(metricUnits));
                 Paint paint = chartValueSeries.getTitlePaint();
-                int x = (int) (0.5 * width) + getScrollX();
+                int x = (int) (0.5 * width);
                 int y = topBorder - spacer - (lines - count) * (lineHeight + spacer);
                 canvas.drawText(title, x, y, paint);
             }
@@ -605,25 +1138,18 @@ public class ChartView extends View {
     }
 
     /**
-     * Draws the x axis.
+     * Draws the x axis (on the foreground layer); the markers are part of the geometry.
      *
      * @param canvas the canvas
      */
     private void drawXAxis(Canvas canvas) {
-        int x = getScrollX() + leftBorder;
+        int x = leftBorder;
         int y = topBorder + effectiveHeight;
         canvas.drawLine(x, y, x + effectiveWidth, y, axisPaint);
         String label = getXAxisLabel();
         Rect rect = getRect(axisPaint, label);
         int yOffset = rect.height() / 2;
         canvas.drawText(label, x + effectiveWidth + spacer, y + yOffset, axisPaint);
-
-        double interval = getXAxisInterval();
-        ArrayList<Double> markerPositions = getXAxisMarkerPositions(interval);
-        NumberFormat numberFormat = interval < 1 ? X_FRACTION_FORMAT : X_NUMBER_FORMAT;
-        for (int i = 0; i < markerPositions.size(); i++) {
-            drawXAxisMarker(canvas, markerPositions.get(i), numberFormat, spacer + yOffset);
-        }
     }
 
     /**
@@ -639,20 +1165,6 @@ public class ChartView extends View {
         }
     }
 
-    /**
-     * Draws a x axis marker.
-     *
-     * @param canvas       canvas
-     * @param value        value
-     * @param numberFormat the number format
-     * @param spacing      the spacing between x axis and marker
-     */
-    private void drawXAxisMarker(Canvas canvas, double value, NumberFormat numberFormat, int spacing) {
-        String marker = chartByDistance ? numberFormat.format(value) : StringUtils.formatElapsedTime((long) value);
-        Rect rect = getRect(xAxisMarkerPaint, marker);
-        canvas.drawText(marker, getX(value), topBorder + effectiveHeight + spacing + rect.height(), xAxisMarkerPaint);
-    }
-
     /**
      * Gets the x axis interval.
      */
@@ -687,12 +1199,12 @@ public class ChartView extends View {
     }
 
     /**
-     * Draws the y axis.
+     * Draws the y axis (on the foreground layer).
      *
      * @param canvas the canvas
      */
     private void drawYAxis(Canvas canvas) {
-        int x = getScrollX() + leftBorder;
+        int x = leftBorder;
         int y = topBorder;
         canvas.drawLine(x, y, x, y + effectiveHeight, axisPaint);
 
@@ -744,103 +1256,417 @@ public class ChartView extends View {
     }
 
     /**
-     * Draws the current pointer.
+     * Draws the scrubber: a vertical line, a dot on each series and the readout next to it.
      *
      * @param canvas the canvas
      */
-    private void drawPointer(Canvas canvas) {
-        int index = -1;
+    private void drawScrubber(Canvas canvas) {
+        int x = getX(scrubberXValue);
+        canvas.drawLine(x, topBorder, x, topBorder + effectiveHeight, scrubberPaint);
         for (int i = 0; i < series.length; i++) {
-            ChartValueSeries chartValueSeries = series[i];
-            if (chartValueSeries.isEnabled() && chartValueSeries.hasData()) {
-                index = i;
-                break;
+            if (!Double.isNaN(scrubberValues[i])) {
+                scrubberDotPaint.setColor(series[i].getTitlePaint().getColor());
+                canvas.drawCircle(x, getY(series[i], scrubberValues[i]), scrubberDotRadius, scrubberDotPaint);
             }
         }
-        if (index != -1 && chartData.size() > 0) {
-            int dx = getX(maxX) - pointer.getIntrinsicWidth() / 2;
-            int dy = getY(series[index], chartData.get(chartData.size() - 1)[index + 1])
-                    - pointer.getIntrinsicHeight();
-            canvas.translate(dx, dy);
-            pointer.draw(canvas);
+
+        float labelWidth = 0;
+        for (int i = 0; i < numScrubberLabels; i++) {
+            labelWidth = Math.max(labelWidth, scrubberTextPaint.measureText(scrubberLabels[i]));
+        }
+        float lineHeight = scrubberTextPaint.getFontSpacing();
+        // Right of the line; left if not enough space
+        float left = x + spacer;
+        if (left + labelWidth + 2 * spacer > getScrollX() + leftBorder + effectiveWidth) {
+            left = x - spacer - labelWidth - 2 * spacer;
+        }
+        float top = topBorder + spacer;
+        canvas.drawRect(left, top, left + labelWidth + 2 * spacer, top + numScrubberLabels * lineHeight + 2 * spacer, scrubberBackgroundPaint);
+        for (int i = 0; i < numScrubberLabels; i++) {
+            scrubberTextPaint.setColor(scrubberLabelColors[i]);
+            canvas.drawText(scrubberLabels[i], left + spacer, top + spacer + (i + 1) * lineHeight - scrubberTextPaint.descent(), scrubberTextPaint);
         }
     }
 
     /**
-     * Updates paths. The path needs to be updated any time after the data or the dimensions change.
+     * Draws the current pointer.
+     *
+     * @param canvas   the canvas
+     * @param geometry the geometry
+     * @param scaleX   the scale of the geometry's x positions
      */
-    private void updatePaths() {
-        synchronized (chartData) {
-            for (ChartValueSeries chartValueSeries : series) {
-                chartValueSeries.getPath().reset();
+    private void drawPointer(Canvas canvas, Geometry geometry, float scaleX) {
+        float x = leftBorder + (geometry.pointerX - geometry.leftBorder) * scaleX;
+        float y = getYOffset(geometry, geometry.pointerSeries) + getYScale(geometry, geometry.pointerSeries) * (geometry.pointerY - geometry.yTop);
+        canvas.translate(x - pointer.getIntrinsicWidth() / 2, y - pointer.getIntrinsicHeight());
+        pointer.draw(canvas);
+    }
+
+    /**
+     * Gets the y scale from a geometry's y positions of a series to the current ones; see {@link #getY(ChartValueSeries, double)}.
+     *
+     * @param geometry    the geometry
+     * @param seriesIndex the series index
+     */
+    private float getYScale(Geometry geometry, int seriesIndex) {
+        double spread = series[seriesIndex].getInterval() * Y_AXIS_INTERVALS;
+        double geometrySpread = geometry.intervals[seriesIndex] * Y_AXIS_INTERVALS;
+        return (float) (geometrySpread * (effectiveHeight - 2 * yAxisOffset) / (spread * geometry.yRange));
+    }
+
+    /**
+     * Gets the current y position of a geometry's {@link Geometry#yTop}; see {@link #getYScale(Geometry, int)}.
+     *
+     * @param geometry    the geometry
+     * @param seriesIndex the series index
+     */
+    private float getYOffset(Geometry geometry, int seriesIndex) {
+        ChartValueSeries chartValueSeries = series[seriesIndex];
+        double spread = chartValueSeries.getInterval() * Y_AXIS_INTERVALS;
+        double geometrySpread = geometry.intervals[seriesIndex] * Y_AXIS_INTERVALS;
+        int range = effectiveHeight - 2 * yAxisOffset;
+        return (float) (topBorder + yAxisOffset + range - range / spread * (geometry.minMarkerValues[seriesIndex] - chartValueSeries.getMinMarkerValue() + geometrySpread));
+    }
+
+    /**
+     * Rebuilds the geometry in the background thread; to be called after changes other than new data points.
+     */
+    private void invalidateGeometry() {
+        geometryInvalid.set(true);
+        updateGeometry();
+    }
+
+    /**
+     * Updates the geometry in the background thread.
+     * The geometry needs to be updated any time after the data or the dimensions change.
+     */
+    private void updateGeometry() {
+        Handler localHandler;
+        synchronized (geometryLock) {
+            if (!attached || geometryPending) {
+                // Built when attached
+                return;
             }
-            drawPaths();
-            closePaths();
+            geometryPending = true;
+            if (geometryThread == null) {
+                geometryThread = new HandlerThread(ChartView.class.getSimpleName());
+                geometryThread.start();
+                geometryHandler = new Handler(geometryThread.getLooper());
+            }
+            localHandler = geometryHandler;
         }
+        localHandler.post(buildGeometryRunnable);
     }
 
     /**
-     * Draws all paths.
+     * Shows the scrubber at a touch position (like after a long press).
+     *
+     * @param touchX the x position of the touch event
      */
-    private void drawPaths() {
-        boolean[] hasMoved = new boolean[series.length];
+    @VisibleForTesting
+    void scrubTo(float touchX) {
+        updateScrubber(touchX);
+    }
 
-        for (int i = 0; i < chartData.size(); i++) {
-            double[] dataPoint = chartData.get(i);
-            for (int j = 0; j < series.length; j++) {
-                double value = dataPoint[j + 1];
-                if (Double.isNaN(value)) {
-                    continue;
-                }
-                ChartValueSeries chartValueSeries = series[j];
-                Path path = chartValueSeries.getPath();
-                int x = getX(dataPoint[0]);
-                int y = getY(chartValueSeries, value);
-                if (!hasMoved[j]) {
-                    hasMoved[j] = true;
-                    path.moveTo(x, y);
-                } else {
-                    path.lineTo(x, y);
+    /**
+     * Builds the geometry and redraws.
+     * Only the new data points are added if possible; otherwise, the geometry is rebuilt.
+     * Blocks adding data points meanwhile, but not drawing.
+     */
+    @VisibleForTesting
+    void buildGeometry() {
+        Geometry newGeometry;
+        synchronized (chartData) {
+            Geometry oldGeometry = geometry;
+            if (geometryInvalid.getAndSet(false) || !canAppend(oldGeometry)) {
+                newGeometry = new Geometry(leftBorder, getXScale(), topBorder + yAxisOffset, effectiveHeight - 2 * yAxisOffset, series);
+                buildSeries(newGeometry);
+                buildComparisons(newGeometry);
+            } else {
+                newGeometry = new Geometry(oldGeometry);
+                for (int i = 0; i < series.length; i++) {
+                    Chunk[] chunks = oldGeometry.chunks[i];
+                    boolean hasOpenChunk = chunks.length > 0 && chunks[chunks.length - 1].open;
+                    newGeometry.chunks[i] = buildOpenChunk(newGeometry, i, hasOpenChunk ? Arrays.copyOf(chunks, chunks.length - 1) : chunks);
                 }
             }
+            buildXAxis(newGeometry);
+            buildPointer(newGeometry);
         }
+        geometry = newGeometry;
+        postInvalidate();
     }
 
     /**
-     * Closes all paths.
+     * Returns true if new data points can be added to a geometry; i.e., its scale is close enough to the current scale.
+     * Needs to be synchronized on chartData.
+     *
+     * @param geometry the geometry (may be null)
      */
-    private void closePaths() {
+    private boolean canAppend(Geometry geometry) {
+        if (geometry == null || geometry.xScale <= 0 || geometry.yRange <= 0 || effectiveHeight - 2 * yAxisOffset <= 0) {
+            return false;
+        }
+        if (detailData != null && !detailData.isEmpty() && zoomLevel > MIN_ZOOM_LEVEL) {
+            return false;
+        }
+        if (!isInGeometryScaleRange(getXScale() / geometry.xScale)) {
+            return false;
+        }
         for (int i = 0; i < series.length; i++) {
-            int first = getFirstPopulatedChartDataIndex(i);
+            if (openRows[i] == -1 || !isInGeometryScaleRange(getYScale(geometry, i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isInGeometryScaleRange(double scale) {
+        return scale >= MIN_GEOMETRY_SCALE && scale <= MAX_GEOMETRY_SCALE;
+    }
 
-            if (first != -1) {
-                int xCorner = getX(chartData.get(first)[0]);
-                int yCorner = topBorder + effectiveHeight;
-                ChartValueSeries chartValueSeries = series[i];
-                Path path = chartValueSeries.getPath();
-                // Bottom right corner
-                path.lineTo(getX(chartData.get(chartData.size() - 1)[0]), yCorner);
-                // Bottom left corner
-                path.lineTo(xCorner, yCorner);
-                // Top right corner
-                path.lineTo(xCorner, getY(chartValueSeries, chartData.get(first)[i + 1]));
+    /**
+     * Builds the chunks of all series.
+     * If available, the full resolution data points replace the (sampled) data points within their range; then, the geometry can not be appended.
+     *
+     * @param geometry the geometry
+     */
+    private void buildSeries(Geometry geometry) {
+        boolean hasDetail = detailData != null && !detailData.isEmpty() && zoomLevel > MIN_ZOOM_LEVEL;
+        if (!hasDetail) {
+            for (int i = 0; i < series.length; i++) {
+                openRows[i] = 0;
+                sealedVertices[2 * i] = Float.NaN;
+                sealedVertices[2 * i + 1] = Float.NaN;
+                geometry.chunks[i] = buildOpenChunk(geometry, i, new Chunk[0]);
             }
+            return;
+        }
+
+        int detailStart = 0;
+        while (detailStart < chartData.size() && chartData.getX(detailStart) < detailMinX) {
+            detailStart++;
+        }
+        int detailEnd = detailStart;
+        while (detailEnd < chartData.size() && chartData.getX(detailEnd) <= detailMaxX) {
+            detailEnd++;
+        }
+        for (int i = 0; i < series.length; i++) {
+            int numVertices = addVertices(geometry, i, chartData, 0, detailStart, 0);
+            numVertices = addVertices(geometry, i, detailData, 0, detailData.size(), numVertices);
+            numVertices = addVertices(geometry, i, chartData, detailEnd, chartData.size(), numVertices);
+            geometry.chunks[i] = numVertices > 0 ? new Chunk[]{new Chunk(vertices, numVertices, geometry.getFillBottom(), false)} : new Chunk[0];
+            openRows[i] = -1;
         }
     }
 
     /**
-     * Finds the index of the first data point containing data for a series.
-     * Returns -1 if no data point contains data for the series.
+     * Builds the open chunk of a series from the rows starting at {@link #openRows}.
+     * If it gets too large, its first part is sealed (not rebuilt anymore).
      *
-     * @param seriesIndex the series's index
+     * @param geometry     the geometry
+     * @param seriesIndex  the series index
+     * @param sealedChunks the sealed chunks
+     * @return all chunks
      */
-    private int getFirstPopulatedChartDataIndex(int seriesIndex) {
-        for (int i = 0; i < chartData.size(); i++) {
-            if (!Double.isNaN(chartData.get(i)[seriesIndex + 1])) {
-                return i;
+    private Chunk[] buildOpenChunk(Geometry geometry, int seriesIndex, Chunk[] sealedChunks) {
+        // Start at the last sealed vertex.
+        int numVertices = 0;
+        if (!Float.isNaN(sealedVertices[2 * seriesIndex])) {
+            vertices[0] = sealedVertices[2 * seriesIndex];
+            vertices[1] = sealedVertices[2 * seriesIndex + 1];
+            vertexRows[0] = -1;
+            numVertices = 1;
+        }
+        int offset = numVertices;
+        numVertices = addVertices(geometry, seriesIndex, chartData, openRows[seriesIndex], chartData.size(), numVertices);
+
+        Chunk[] chunks = sealedChunks;
+        if (numVertices > CHUNK_SIZE) {
+            // Seal the vertices before a row close to the end; the last row might still change (merged data points).
+            int split = numVertices - CHUNK_SIZE / 2;
+            while (split < numVertices && vertexRows[split] == vertexRows[split - 1]) {
+                split++;
+            }
+            if (split < numVertices && split > offset) {
+                chunks = Arrays.copyOf(chunks, chunks.length + 1);
+                chunks[chunks.length - 1] = new Chunk(vertices, split, geometry.getFillBottom(), false);
+                openRows[seriesIndex] = vertexRows[split];
+                sealedVertices[2 * seriesIndex] = vertices[2 * (split - 1)];
+                sealedVertices[2 * seriesIndex + 1] = vertices[2 * (split - 1) + 1];
+
+                // Continue at the last sealed vertex.
+                System.arraycopy(vertices, 2 * (split - 1), vertices, 0, 2 * (numVertices - split + 1));
+                System.arraycopy(vertexRows, split - 1, vertexRows, 0, numVertices - split + 1);
+                vertexRows[0] = -1;
+                offset = 1;
+                numVertices = numVertices - split + 1;
+            }
+        } else if (numVertices == offset) {
+            // No vertices yet; only the last row might still get a value.
+            openRows[seriesIndex] = Math.max(openRows[seriesIndex], chartData.size() - 1);
+        }
+
+        if (numVertices > offset) {
+            chunks = Arrays.copyOf(chunks, chunks.length + 1);
+            chunks[chunks.length - 1] = new Chunk(vertices, numVertices, geometry.getFillBottom(), true);
+        }
+        return chunks;
+    }
+
+    /**
+     * Adds the vertices of data points of a series to {@link #vertices}.
+     * The data points are downsampled to the pixel columns (see {@link Downsampler}).
+     *
+     * @param geometry    the geometry
+     * @param seriesIndex the series index
+     * @param data        the data points
+     * @param from        the first data point (inclusive)
+     * @param to          the last data point (exclusive)
+     * @param numVertices the number of vertices already added
+     * @return the number of vertices
+     */
+    private int addVertices(Geometry geometry, int seriesIndex, SamplingBuffer data, int from, int to, int numVertices) {
+        if (from >= to) {
+            return numVertices;
+        }
+        Downsampler downsampler = downsamplers[seriesIndex];
+        int numColumns = (int) ((data.getX(to - 1) - data.getX(from)) * geometry.xScale) + 1;
+        downsampler.downsample(data, seriesIndex + 1, from, to, numColumns);
+        if (vertexRows.length < numVertices + downsampler.size()) {
+            int capacity = Math.max(2 * vertexRows.length, numVertices + downsampler.size());
+            vertices = Arrays.copyOf(vertices, 2 * capacity);
+            vertexRows = Arrays.copyOf(vertexRows, capacity);
+        }
+        for (int i = 0; i < downsampler.size(); i++) {
+            int row = downsampler.getRow(i);
+            vertices[2 * numVertices] = geometry.getX(data.getX(row));
+            vertices[2 * numVertices + 1] = geometry.getY(seriesIndex, downsampler.getValue(i));
+            vertexRows[numVertices] = data == chartData ? row : -1;
+            numVertices++;
+        }
+        return numVertices;
+    }
+
+    /**
+     * Builds the lines of the compared tracks (all series) and their deltas.
+     * The delta is scaled to the graph area: the max delta at the top, the zero line in the middle.
+     *
+     * @param geometry the geometry
+     */
+    private void buildComparisons(Geometry geometry) {
+        geometry.comparisonLines = new float[comparisonData.length][][];
+        for (int track = 0; track < comparisonData.length; track++) {
+            SamplingBuffer data = comparisonData[track];
+            geometry.comparisonLines[track] = new float[NUM_SERIES][];
+            for (int i = 0; i < series.length; i++) {
+                int numVertices = addVertices(geometry, i, data, 0, data.size(), 0);
+                geometry.comparisonLines[track][i] = getLines(vertices, numVertices);
+            }
+        }
+
+        if (maxDelta <= 0.0) {
+            return;
+        }
+        float zeroY = geometry.yTop + geometry.yRange / 2f;
+        double deltaScale = geometry.yRange / 2.0 / maxDelta;
+        geometry.deltaLines = new float[comparisonDeltas.length][];
+        for (int track = 0; track < comparisonDeltas.length; track++) {
+            SamplingBuffer delta = comparisonDeltas[track];
+            int numVertices = 0;
+            if (!delta.isEmpty()) {
+                int numColumns = (int) ((delta.getX(delta.size() - 1) - delta.getX(0)) * geometry.xScale) + 1;
+                deltaDownsampler.downsample(delta, 1, 0, delta.size(), numColumns);
+                numVertices = deltaDownsampler.size();
+                if (vertexRows.length < numVertices) {
+                    vertices = Arrays.copyOf(vertices, 2 * numVertices);
+                    vertexRows = Arrays.copyOf(vertexRows, numVertices);
+                }
+                for (int i = 0; i < numVertices; i++) {
+                    vertices[2 * i] = geometry.getX(delta.getX(deltaDownsampler.getRow(i)));
+                    vertices[2 * i + 1] = (float) (zeroY - deltaDownsampler.getValue(i) * deltaScale);
+                }
+            }
+            geometry.deltaLines[track] = getLines(vertices, numVertices);
+        }
+        geometry.deltaZeroLine = new float[]{geometry.getX(0.0), zeroY, geometry.getX(maxX), zeroY};
+        String marker = chartByDistance ? StringUtils.formatElapsedTime((long) maxDelta) : xFractionFormat.format(maxDelta) + " " + getXAxisLabel();
+        geometry.deltaMaxMarker = "+" + marker;
+        geometry.deltaMinMarker = "-" + marker;
+    }
+
+    /**
+     * Gets the line segments (x0, y0, x1, y1, ...) through vertices; see {@link Canvas#drawLines(float[], Paint)}.
+     *
+     * @param vertices    the vertices (x0, y0, x1, y1, ...)
+     * @param numVertices the number of vertices
+     */
+    private static float[] getLines(float[] vertices, int numVertices) {
+        if (numVertices == 0) {
+            return new float[0];
+        }
+        if (numVertices == 1) {
+            // A dot
+            return new float[]{vertices[0], vertices[1], vertices[0], vertices[1]};
+        }
+        float[] lines = new float[4 * (numVertices - 1)];
+        for (int i = 0; i < numVertices - 1; i++) {
+            System.arraycopy(vertices, 2 * i, lines, 4 * i, 4);
+        }
+        return lines;
+    }
+
+    /**
+     * Builds the x axis grid and markers.
+     *
+     * @param geometry the geometry
+     */
+    private void buildXAxis(Geometry geometry) {
+        double interval = getXAxisInterval();
+        ArrayList<Double> markerPositions = getXAxisMarkerPositions(interval);
+        NumberFormat numberFormat = interval < 1 ? xFractionFormat : xNumberFormat;
+        int spacing = spacer + getRect(axisPaint, getXAxisLabel()).height() / 2;
+
+        geometry.xAxisGridLines = new float[4 * markerPositions.size()];
+        geometry.xAxisMarkers = new String[markerPositions.size()];
+        geometry.xAxisMarkerPositions = new float[2 * markerPositions.size()];
+        for (int i = 0; i < markerPositions.size(); i++) {
+            double value = markerPositions.get(i);
+            float x = geometry.getX(value);
+            geometry.xAxisGridLines[4 * i] = x;
+            geometry.xAxisGridLines[4 * i + 1] = topBorder;
+            geometry.xAxisGridLines[4 * i + 2] = x;
+            geometry.xAxisGridLines[4 * i + 3] = topBorder + effectiveHeight;
+
+            String marker = chartByDistance ? numberFormat.format(value) : StringUtils.formatElapsedTime((long) value);
+            geometry.xAxisMarkers[i] = marker;
+            geometry.xAxisMarkerPositions[2 * i] = x;
+            geometry.xAxisMarkerPositions[2 * i + 1] = topBorder + effectiveHeight + spacing + getRect(xAxisMarkerPaint, marker).height();
+        }
+    }
+
+    /**
+     * Builds the pointer position: the last value of the first shown series.
+     *
+     * @param geometry the geometry
+     */
+    private void buildPointer(Geometry geometry) {
+        if (chartData.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < series.length; i++) {
+            ChartValueSeries chartValueSeries = series[i];
+            if (chartValueSeries.isEnabled() && chartValueSeries.hasData()) {
+                double value = chartData.getValue(chartData.size() - 1, i + 1);
+                if (!Double.isNaN(value)) {
+                    geometry.pointerSeries = i;
+                    // Not maxX; a compared track might be longer.
+                    geometry.pointerX = geometry.getX(chartData.getX(chartData.size() - 1));
+                    geometry.pointerY = geometry.getY(i, value);
+                }
+                return;
             }
         }
-        return -1;
     }
 
     /**
@@ -894,7 +1720,7 @@ public class ChartView extends View {
             width = newWidth;
             height = newHeight;
             updateEffectiveDimensions();
-            updatePaths();
+            invalidateGeometry();
         }
     }
 
@@ -911,6 +1737,26 @@ public class ChartView extends View {
         return leftBorder + (int) (percentage * effectiveWidth * zoomLevel);
     }
 
+    /**
+     * Gets the value for a x position; the inverse of {@link #getX(double)}.
+     *
+     * @param x the x position
+     */
+    private double getXValue(int x) {
+        if (effectiveWidth == 0) {
+            return 0.0;
+        }
+        double percentage = (double) (x - leftBorder) / (effectiveWidth * zoomLevel);
+        return Math.max(0.0, Math.min(maxX, percentage * maxX));
+    }
+
+    /**
+     * Gets the pixels per x value; see {@link #getX(double)}.
+     */
+    private double getXScale() {
+        return effectiveWidth * zoomLevel / maxX;
+    }
+
     /**
      * Gets the y position for a value in a chart value series
      *
@@ -970,4 +1816,134 @@ public class ChartView extends View {
                 return false;
         }
     }
+
+    /**
+     * The scrolling content for a scale: the data series, the x axis grid and markers.
+     * Built in a background thread; not modified once published.
+     * Drawn scaled to the current scale; so, new data points are added without rebuilding it.
+     */
+    private static class Geometry {
+
+        private final int leftBorder;
+        // See getXScale()
+        private final double xScale;
+        // The y position of the max marker value and the height of the y axis
+        private final int yTop;
+        private final int yRange;
+        // Per series: the scale of the y axis
+        private final int[] intervals = new int[NUM_SERIES];
+        private final int[] minMarkerValues = new int[NUM_SERIES];
+
+        // Per series: the chunks (the last one might be open); empty if no data
+        private final Chunk[][] chunks = new Chunk[NUM_SERIES][];
+
+        private float[] xAxisGridLines = new float[0];
+        private String[] xAxisMarkers = new String[0];
+        // Per marker: x and y
+        private float[] xAxisMarkerPositions = new float[0];
+
+        private int pointerSeries = -1;
+        private float pointerX = Float.NaN;
+        private float pointerY = Float.NaN;
+
+        // Per compared track and series: the line segments
+        private float[][][] comparisonLines = new float[0][][];
+        // Per compared track: the line segments of the delta; empty if no delta
+        private float[][] deltaLines = new float[0][];
+        private float[] deltaZeroLine = new float[0];
+        private String deltaMaxMarker;
+        private String deltaMinMarker;
+
+        private Geometry(int leftBorder, double xScale, int yTop, int yRange, ChartValueSeries[] series) {
+            this.leftBorder = leftBorder;
+            this.xScale = xScale;
+            this.yTop = yTop;
+            this.yRange = yRange;
+            for (int i = 0; i < NUM_SERIES; i++) {
+                intervals[i] = series[i].getInterval();
+                minMarkerValues[i] = series[i].getMinMarkerValue();
+            }
+        }
+
+        /**
+         * Creates a geometry with the scale of another geometry.
+         */
+        private Geometry(Geometry other) {
+            leftBorder = other.leftBorder;
+            xScale = other.xScale;
+            yTop = other.yTop;
+            yRange = other.yRange;
+            System.arraycopy(other.intervals, 0, intervals, 0, NUM_SERIES);
+            System.arraycopy(other.minMarkerValues, 0, minMarkerValues, 0, NUM_SERIES);
+            // Not changed by new data points
+            comparisonLines = other.comparisonLines;
+            deltaLines = other.deltaLines;
+            deltaZeroLine = other.deltaZeroLine;
+            deltaMaxMarker = other.deltaMaxMarker;
+            deltaMinMarker = other.deltaMinMarker;
+        }
+
+        private float getX(double value) {
+            return (float) (leftBorder + value * xScale);
+        }
+
+        private float getY(int seriesIndex, double value) {
+            double percentage = (value - minMarkerValues[seriesIndex]) / (intervals[seriesIndex] * Y_AXIS_INTERVALS);
+            return (float) (yTop + (1 - percentage) * yRange);
+        }
+
+        private float getFillBottom() {
+            return yTop + (FILL_DEPTH + 1) * yRange;
+        }
+    }
+
+    /**
+     * The line segments and the filled area of consecutive vertices of a series.
+     */
+    private static class Chunk {
+
+        // True if rebuilt for new data points
+        private final boolean open;
+        // The line segments (x0, y0, x1, y1, ...); see Canvas.drawLines()
+        private final float[] lines;
+        private final Path fill;
+
+        /**
+         * @param vertices    the vertices (x0, y0, x1, y1, ...)
+         * @param numVertices the number of vertices
+         * @param fillBottom  the y position of the bottom of the filled area
+         * @param open        true if open
+         */
+        private Chunk(float[] vertices, int numVertices, float fillBottom, boolean open) {
+            this.open = open;
+            lines = getLines(vertices, numVertices);
+
+            fill = new Path();
+            fill.moveTo(vertices[0], vertices[1]);
+            for (int i = 1; i < numVertices; i++) {
+                fill.lineTo(vertices[2 * i], vertices[2 * i + 1]);
+            }
+            // Bottom right corner
+            fill.lineTo(vertices[2 * (numVertices - 1)], fillBottom);
+            // Bottom left corner
+            fill.lineTo(vertices[0], fillBottom);
+            fill.close();
+        }
+    }
+
+    /**
+     * Listener for the visible range of x values while zoomed in.
+     */
+    public interface OnVisibleRangeChangedListener {
+
+        /**
+         * Called when the visible range is not covered by the full resolution data points; see {@link #setDetailDataPoints(double, double, SamplingBuffer)}.
+         * Called on the UI thread.
+         *
+         * @param minX      the min visible x value
+         * @param maxX      the max visible x value
+         * @param numPixels the width of the visible range in pixels
+         */
+        void onVisibleRangeChanged(double minX, double maxX, int numPixels);
+    }
 }
@@ -109,6 +109,7 @@ public class MarkerListActivity extends AbstractActivity implements DeleteMarker
             menu.findItem(R.id.list_context_menu_show_on_map).setVisible(isSingleSelection);
             menu.findItem(R.id.list_context_menu_edit).setVisible(isSingleSelection);
             menu.findItem(R.id.list_context_menu_delete).setVisible(true);
+            menu.findItem(R.id.list_context_menu_compare).setVisible(false);
             /*
              * Set select all to the same visibility as delete since delete is the
              * only action that can be applied to multiple markers.
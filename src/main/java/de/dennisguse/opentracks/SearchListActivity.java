@@ -130,6 +130,7 @@ public class SearchListActivity extends AbstractListActivity implements DeleteMa
             menu.findItem(R.id.list_context_menu_edit).setVisible(isSingleSelection);
             // One item. If track, no restriction.
             menu.findItem(R.id.list_context_menu_delete).setVisible(isSingleSelection && isSingleSelectionTrack);
+            menu.findItem(R.id.list_context_menu_compare).setVisible(false);
             // Disable select all, no action is available for multiple selection
             menu.findItem(R.id.list_context_menu_select_all).setVisible(false);
         }
@@ -17,6 +17,7 @@
 package de.dennisguse.opentracks;
 
 import android.Manifest;
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
@@ -24,6 +25,8 @@ import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.provider.MediaStore;
 import android.util.Pair;
 import android.view.Menu;
@@ -39,6 +42,9 @@ import androidx.annotation.NonNull;
 import androidx.core.app.ActivityCompat;
 import androidx.viewpager.widget.ViewPager;
 
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import de.dennisguse.opentracks.content.ContentProviderUtils;
 import de.dennisguse.opentracks.content.Track;
 import de.dennisguse.opentracks.content.TrackDataHub;
@@ -51,6 +57,10 @@ import de.dennisguse.opentracks.fragments.ConfirmDeleteDialogFragment;
 import de.dennisguse.opentracks.fragments.StatsFragment;
 import de.dennisguse.opentracks.services.TrackRecordingServiceConnection;
 import de.dennisguse.opentracks.settings.SettingsActivity;
+import de.dennisguse.opentracks.stats.DemElevationProcessor;
+import de.dennisguse.opentracks.stats.ElevationReprocessor;
+import de.dennisguse.opentracks.stats.HgtTileCache;
+import de.dennisguse.opentracks.stats.IntervalEngine;
 import de.dennisguse.opentracks.util.FileUtils;
 import de.dennisguse.opentracks.util.IntentUtils;
 import de.dennisguse.opentracks.util.PreferencesUtils;
@@ -68,6 +78,7 @@ public class TrackDetailActivity extends AbstractListActivity implements ChooseA
 
     public static final String EXTRA_TRACK_ID = "track_id";
     public static final String EXTRA_MARKER_ID = "marker_id";
+    public static final String EXTRA_COMPARISON_TRACK_IDS = "comparison_track_ids";
 
     private static final String TAG = TrackDetailActivity.class.getSimpleName();
 
@@ -78,6 +89,9 @@ public class TrackDetailActivity extends AbstractListActivity implements ChooseA
     private static final int CAMERA_REQUEST_CODE = 5;
     private static final int EXTERNAL_STORAGE_PERMISSION_REQUEST_CODE = 6;
 
+    // True while correcting the elevation of a track (see correctElevation())
+    private static final AtomicBoolean CORRECTING_ELEVATION = new AtomicBoolean();
+
     // The following are set in onCreate
     private boolean hasCamera;
     private Uri photoUri;
@@ -91,6 +105,7 @@ public class TrackDetailActivity extends AbstractListActivity implements ChooseA
 
     // From intent
     private long trackId;
+    private long[] comparisonTrackIds = new long[0];
 
     // Preferences
     private long recordingTrackId = PreferencesUtils.RECORDING_TRACK_ID_DEFAULT;
@@ -153,6 +168,8 @@ public class TrackDetailActivity extends AbstractListActivity implements ChooseA
     private MenuItem insertPhotoMenuItem;
     private MenuItem markerListMenuItem;
     private MenuItem shareMenuItem;
+    private MenuItem correctElevationMenuItem;
+    private MenuItem detectIntervalsMenuItem;
 
     private final OnClickListener recordListener = new OnClickListener() {
         @Override
@@ -206,7 +223,7 @@ public class TrackDetailActivity extends AbstractListActivity implements ChooseA
         tabsAdapter.addTab(statsTabSpec, StatsFragment.class, null);
 
         TabSpec chartTabSpec = tabHost.newTabSpec(ChartFragment.CHART_FRAGMENT_TAG).setIndicator(getString(R.string.track_detail_chart_tab));
-        tabsAdapter.addTab(chartTabSpec, ChartFragment.class, null);
+        tabsAdapter.addTab(chartTabSpec, ChartFragment.class, ChartFragment.createArguments(comparisonTrackIds));
 
         if (savedInstanceState != null) {
             tabHost.setCurrentTabByTag(savedInstanceState.getString(CURRENT_TAB_TAG_KEY));
@@ -316,6 +333,8 @@ public class TrackDetailActivity extends AbstractListActivity implements ChooseA
         insertPhotoMenuItem.setVisible(new Intent(MediaStore.ACTION_IMAGE_CAPTURE).resolveActivity(getPackageManager()) != null);
         shareMenuItem = menu.findItem(R.id.track_detail_share);
         markerListMenuItem = menu.findItem(R.id.track_detail_markers);
+        correctElevationMenuItem = menu.findItem(R.id.track_detail_correct_elevation);
+        detectIntervalsMenuItem = menu.findItem(R.id.track_detail_detect_intervals);
 
         return super.onCreateOptionsMenu(menu);
     }
@@ -361,6 +380,12 @@ public class TrackDetailActivity extends AbstractListActivity implements ChooseA
                         .putExtra(TrackEditActivity.EXTRA_TRACK_ID, trackId);
                 startActivity(intent);
                 return true;
+            case R.id.track_detail_correct_elevation:
+                correctElevation();
+                return true;
+            case R.id.track_detail_detect_intervals:
+                detectIntervals();
+                return true;
             case R.id.track_detail_delete:
                 deleteTracks(new long[]{trackId});
                 return true;
@@ -428,6 +453,8 @@ public class TrackDetailActivity extends AbstractListActivity implements ChooseA
     private void handleIntent(Intent intent) {
         trackId = intent.getLongExtra(EXTRA_TRACK_ID, -1L);
         long markerId = intent.getLongExtra(EXTRA_MARKER_ID, -1L);
+        long[] trackIds = intent.getLongArrayExtra(EXTRA_COMPARISON_TRACK_IDS);
+        comparisonTrackIds = trackIds != null ? trackIds : new long[0];
         if (markerId != -1L) {
             // Use the trackId from the marker
             Waypoint waypoint = contentProviderUtils.getWaypoint(markerId);
@@ -462,6 +489,9 @@ public class TrackDetailActivity extends AbstractListActivity implements ChooseA
         insertMarkerMenuItem.setVisible(isRecording() && !isPaused);
         insertPhotoMenuItem.setVisible(hasCamera && isRecording() && !isPaused);
         shareMenuItem.setVisible(!isRecording());
+        correctElevationMenuItem.setVisible(!isRecording());
+        correctElevationMenuItem.setEnabled(!CORRECTING_ELEVATION.get());
+        detectIntervalsMenuItem.setVisible(!isRecording());
         markerListMenuItem.setShowAsAction(isRecording() ? MenuItem.SHOW_AS_ACTION_NEVER : MenuItem.SHOW_AS_ACTION_IF_ROOM);
         String title;
         if (isRecording()) {
@@ -473,6 +503,69 @@ public class TrackDetailActivity extends AbstractListActivity implements ChooseA
         setTitle(title);
     }
 
+    /**
+     * Corrects the elevation of the track with the digital elevation model in a background thread.
+     * Only one correction runs at a time (also across recreated activities); the menu item is disabled meanwhile.
+     */
+    private void correctElevation() {
+        final HgtTileCache tileCache = new HgtTileCache(FileUtils.getDemDir(), HgtTileCache.DEFAULT_MAX_TILES);
+        if (!tileCache.hasTiles()) {
+            Toast.makeText(this, getString(R.string.track_correct_elevation_no_data, FileUtils.getPathDisplayName(FileUtils.getDemDir().getName())), Toast.LENGTH_LONG).show();
+            return;
+        }
+        if (!CORRECTING_ELEVATION.compareAndSet(false, true)) {
+            return;
+        }
+        correctElevationMenuItem.setEnabled(false);
+
+        final Context context = getApplicationContext();
+        final long correctTrackId = trackId;
+        final int recordingDistanceInterval = PreferencesUtils.getRecordingDistanceInterval(this);
+        final ContentProviderUtils correctContentProviderUtils = contentProviderUtils;
+        // Does not keep the activity while correcting
+        final WeakReference<TrackDetailActivity> activityReference = new WeakReference<>(this);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ElevationReprocessor.reprocess(correctContentProviderUtils, correctTrackId, new DemElevationProcessor(tileCache), recordingDistanceInterval);
+                } finally {
+                    tileCache.clear();
+                    CORRECTING_ELEVATION.set(false);
+                }
+                new Handler(Looper.getMainLooper()).post(new Runnable() {
+                    @Override
+                    public void run() {
+                        Toast.makeText(context, R.string.track_correct_elevation_done, Toast.LENGTH_SHORT).show();
+                        TrackDetailActivity activity = activityReference.get();
+                        if (activity != null) {
+                            activity.invalidateOptionsMenu();
+                        }
+                    }
+                });
+            }
+        }).start();
+    }
+
+    private void detectIntervals() {
+        final Context context = getApplicationContext();
+        final long detectTrackId = trackId;
+        final int recordingDistanceInterval = PreferencesUtils.getRecordingDistanceInterval(this);
+        final ContentProviderUtils detectContentProviderUtils = contentProviderUtils;
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final int count = IntervalEngine.detect(context, detectContentProviderUtils, detectTrackId, recordingDistanceInterval);
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Toast.makeText(TrackDetailActivity.this, getString(R.string.track_detect_intervals_done, count), Toast.LENGTH_SHORT).show();
+                    }
+                });
+            }
+        }).start();
+    }
+
     private void createWaypointWithPicture() {
         Pair<Intent, Uri> intentAndPhotoUri = IntentUtils.createTakePictureIntent(this, trackId);
         photoUri = intentAndPhotoUri.second;
@@ -48,6 +48,7 @@ import androidx.loader.app.LoaderManager.LoaderCallbacks;
 import androidx.loader.content.CursorLoader;
 import androidx.loader.content.Loader;
 
+import java.util.Arrays;
 import java.util.Locale;
 
 import de.dennisguse.opentracks.content.ContentProviderUtils;
@@ -116,6 +117,7 @@ public class TrackListActivity extends AbstractListActivity implements ConfirmDe
             boolean isSingleSelection = trackIds.length == 1;
 
             menu.findItem(R.id.list_context_menu_edit).setVisible(isSingleSelection);
+            menu.findItem(R.id.list_context_menu_compare).setVisible(trackIds.length >= 2);
             menu.findItem(R.id.list_context_menu_select_all).setVisible(showSelectAll);
         }
 
@@ -538,6 +540,13 @@ public class TrackListActivity extends AbstractListActivity implements ConfirmDe
                         .putExtra(TrackEditActivity.EXTRA_TRACK_ID, trackIds[0]);
                 startActivity(intent);
                 return true;
+            case R.id.list_context_menu_compare:
+                // The first track is shown; the others are drawn into its chart.
+                intent = IntentUtils.newIntent(this, TrackDetailActivity.class)
+                        .putExtra(TrackDetailActivity.EXTRA_TRACK_ID, trackIds[0])
+                        .putExtra(TrackDetailActivity.EXTRA_COMPARISON_TRACK_IDS, Arrays.copyOfRange(trackIds, 1, trackIds.length));
+                startActivity(intent);
+                return true;
             case R.id.list_context_menu_delete:
                 if (trackIds.length > 1 && trackIds.length == listView.getCount()) {
                     trackIds = new long[]{-1L};
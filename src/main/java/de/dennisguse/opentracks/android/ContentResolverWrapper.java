@@ -4,10 +4,13 @@ import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Bundle;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import de.dennisguse.opentracks.content.ContentProviderUtils;
+
 /**
  * Wraps a {@link ContentResolver} and provides access as {@link IContentResolver}.
  */
@@ -40,4 +43,9 @@ public class ContentResolverWrapper implements IContentResolver {
     public int delete(@NonNull Uri url, @Nullable String where, @Nullable String[] selectionArgs) {
         return contentResolver.delete(url, where, selectionArgs);
     }
+
+    @Nullable
+    public Bundle call(@NonNull String method, @Nullable String arg, @Nullable Bundle extras) {
+        return contentResolver.call(Uri.parse(ContentProviderUtils.CONTENT_BASE_URI), method, arg, extras);
+    }
 }
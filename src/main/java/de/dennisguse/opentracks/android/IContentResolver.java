@@ -3,6 +3,7 @@ package de.dennisguse.opentracks.android;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Bundle;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -24,4 +25,7 @@ public interface IContentResolver {
     int update(@RequiresPermission.Write @NonNull Uri uri, @Nullable ContentValues values, @Nullable String where, @Nullable String[] selectionArgs);
 
     int delete(@RequiresPermission.Write @NonNull Uri url, @Nullable String where, @Nullable String[] selectionArgs);
+
+    @Nullable
+    Bundle call(@NonNull String method, @Nullable String arg, @Nullable Bundle extras);
 }
\ No newline at end of file
@@ -22,8 +22,10 @@ import android.location.Location;
 import android.location.LocationManager;
 import android.net.Uri;
 
+import java.io.File;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import de.dennisguse.opentracks.BuildConfig;
 import de.dennisguse.opentracks.content.Waypoint.WaypointType;
@@ -151,6 +153,16 @@ public interface ContentProviderUtils {
      */
     void deleteWaypoint(Context context, long waypointId, DescriptionGenerator descriptionGenerator);
 
+    /**
+     * Deletes the waypoints matching a selection and inserts new waypoints in one transaction.
+     * Unlike {@link #deleteWaypoint(Context, long, DescriptionGenerator)}, neither updates the next statistics marker nor deletes photos: only for waypoints of type {@link WaypointType#WAYPOINT} without photo.
+     *
+     * @param selection     the selection of the waypoints to delete
+     * @param selectionArgs the selection arguments
+     * @param waypoints     the waypoints to insert
+     */
+    void replaceWaypoints(String selection, String[] selectionArgs, List<Waypoint> waypoints);
+
     /**
      * Gets the first waypoint id for a track.
      * The first waypoint is special as it contains the stats for the track.
@@ -230,6 +242,64 @@ public interface ContentProviderUtils {
      */
     boolean updateWaypoint(Waypoint waypoint);
 
+    /**
+     * Creates a split from a cursor.
+     *
+     * @param cursor the cursor pointing to the split
+     */
+    Split createSplit(Cursor cursor);
+
+    /**
+     * Gets the completed splits of a track ordered by their number.
+     * If no split exists, an empty list is returned.
+     *
+     * @param trackId the track id
+     * @param metric  true for kilometer splits; false for mile splits
+     */
+    List<Split> getSplits(long trackId, boolean metric);
+
+    /**
+     * Inserts a split.
+     *
+     * @param split the split
+     * @return the content provider URI of the inserted split.
+     */
+    Uri insertSplit(Split split);
+
+    /**
+     * Inserts multiple splits.
+     *
+     * @param splits the splits
+     * @return the number of splits inserted
+     */
+    int bulkInsertSplits(List<Split> splits);
+
+    /**
+     * Deletes the splits of a track.
+     *
+     * @param trackId the track id
+     */
+    void deleteSplits(long trackId);
+
+    /**
+     * Writes a consistent snapshot of the database into a new database file (see {@link DatabaseSnapshot}).
+     * Can be called while a track is recorded.
+     *
+     * @param file                 the database file (must not exist)
+     * @param previousFingerprints the track fingerprints by track id of a previous snapshot; only the changed tracks are copied. Empty to copy all tracks
+     * @return true if successful
+     */
+    boolean writeDatabaseSnapshot(File file, Map<Long, Long> previousFingerprints);
+
+    /**
+     * Restores a database snapshot (see {@link DatabaseSnapshot#restore()}): its tracks replace the tracks with the same id and the tracks missing in its state are deleted.
+     * Must not be called while a track is recorded.
+     *
+     * @param file the database file of the snapshot
+     * @return true if successful
+     */
+    boolean restoreDatabaseSnapshot(File file);
+
     /**
      * Inserts multiple track points.
      *
@@ -241,6 +311,16 @@ public interface ContentProviderUtils {
      */
     int bulkInsertTrackPoint(Location[] locations, int length, long trackId);
 
+    /**
+     * Updates the altitude of multiple track points of a track in one transaction.
+     *
+     * @param trackId       the track id
+     * @param trackPointIds the track point ids
+     * @param altitudes     the new altitudes (m)
+     * @param length        the number of track points (from the beginning of the arrays) to update
+     */
+    void updateTrackPointAltitudes(long trackId, long[] trackPointIds, double[] altitudes, int length);
+
     /**
      * Creates a location object from a cursor.
      *
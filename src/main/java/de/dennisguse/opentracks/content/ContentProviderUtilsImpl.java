@@ -22,17 +22,22 @@ import android.content.Context;
 import android.database.Cursor;
 import android.location.Location;
 import android.net.Uri;
+import android.os.Bundle;
 import android.util.Log;
 
 import java.io.File;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 import de.dennisguse.opentracks.android.ContentResolverWrapper;
 import de.dennisguse.opentracks.android.IContentResolver;
 import de.dennisguse.opentracks.content.Waypoint.WaypointType;
 import de.dennisguse.opentracks.content.sensor.SensorDataSet;
+import de.dennisguse.opentracks.stats.SensorStatistics;
 import de.dennisguse.opentracks.stats.TripStatistics;
 import de.dennisguse.opentracks.util.FileUtils;
 
@@ -92,9 +97,14 @@ public class ContentProviderUtilsImpl implements ContentProviderUtils {
         int minGradeIndex = cursor.getColumnIndexOrThrow(TracksColumns.MINGRADE);
         int maxGradeIndex = cursor.getColumnIndexOrThrow(TracksColumns.MAXGRADE);
         int iconIndex = cursor.getColumnIndexOrThrow(TracksColumns.ICON);
+        int heartRateZonesIndex = cursor.getColumnIndexOrThrow(TracksColumns.HEARTRATEZONES);
+        int cadenceDistributionIndex = cursor.getColumnIndexOrThrow(TracksColumns.CADENCEDISTRIBUTION);
+        int normalizedPowerIndex = cursor.getColumnIndexOrThrow(TracksColumns.NORMALIZEDPOWER);
+        int heartRateDriftIndex = cursor.getColumnIndexOrThrow(TracksColumns.HEARTRATEDRIFT);
 
         Track track = new Track();
         TripStatistics tripStatistics = track.getTripStatistics();
+        SensorStatistics sensorStatistics = track.getSensorStatistics();
         if (!cursor.isNull(idIndex)) {
             track.setId(cursor.getLong(idIndex));
         }
@@ -159,13 +169,33 @@ public class ContentProviderUtilsImpl implements ContentProviderUtils {
         if (!cursor.isNull(iconIndex)) {
             track.setIcon(cursor.getString(iconIndex));
         }
+        if (!cursor.isNull(heartRateZonesIndex)) {
+            long[] heartRateZones = fromBlob(cursor.getBlob(heartRateZonesIndex));
+            for (int i = 0; i < Math.min(heartRateZones.length, SensorStatistics.NUM_HEART_RATE_ZONES); i++) {
+                sensorStatistics.setHeartRateZoneTime(i, heartRateZones[i]);
+            }
+        }
+        if (!cursor.isNull(cadenceDistributionIndex)) {
+            long[] cadenceDistribution = fromBlob(cursor.getBlob(cadenceDistributionIndex));
+            for (int i = 0; i < Math.min(cadenceDistribution.length, SensorStatistics.NUM_CADENCE_BUCKETS); i++) {
+                sensorStatistics.setCadenceTime(i, cadenceDistribution[i]);
+            }
+        }
+        if (!cursor.isNull(normalizedPowerIndex)) {
+            sensorStatistics.setNormalizedPower(cursor.getFloat(normalizedPowerIndex));
+        }
+        if (!cursor.isNull(heartRateDriftIndex)) {
+            sensorStatistics.setHeartRateDrift(cursor.getFloat(heartRateDriftIndex));
+        }
         return track;
     }
 
     @Override
     public void deleteAllTracks(Context context) {
         contentResolver.delete(TrackPointsColumns.CONTENT_URI, null, null);
+        TrackPointCache.getInstance().clear();
         contentResolver.delete(WaypointsColumns.CONTENT_URI, null, null);
+        contentResolver.delete(SplitsColumns.CONTENT_URI, null, null);
         // Delete tracks last since it triggers a database vaccum call
         contentResolver.delete(TracksColumns.CONTENT_URI, null, null);
 
@@ -183,7 +213,7 @@ public class ContentProviderUtilsImpl implements ContentProviderUtils {
     }
 
     /**
-     * Deletes track points and waypoints of a track. Assumes
+     * Deletes track points, waypoints and splits of a track. Assumes
      * {@link TracksColumns#STARTID}, {@link TracksColumns#STOPID}, and
      * {@link TracksColumns#NUMPOINTS} will be updated by the caller.
      *
@@ -197,8 +227,10 @@ public class ContentProviderUtilsImpl implements ContentProviderUtils {
                     Long.toString(track.getStartId()), Long.toString(track.getStopId())};
             contentResolver.delete(TrackPointsColumns.CONTENT_URI, where, selectionArgs);
         }
+        TrackPointCache.getInstance().invalidate(trackId);
         contentResolver.delete(WaypointsColumns.CONTENT_URI, WaypointsColumns.TRACKID + "=?",
                 new String[]{Long.toString(trackId)});
+        deleteSplits(trackId);
         deleteDirectoryRecurse(context, FileUtils.getPhotoDir(trackId));
     }
 
@@ -307,6 +339,45 @@ public class ContentProviderUtilsImpl implements ContentProviderUtils {
         values.put(TracksColumns.MAXGRADE, tripStatistics.getMaxGrade());
         values.put(TracksColumns.ICON, track.getIcon());
 
+        SensorStatistics sensorStatistics = track.getSensorStatistics();
+        long[] heartRateZones = new long[SensorStatistics.NUM_HEART_RATE_ZONES];
+        for (int i = 0; i < heartRateZones.length; i++) {
+            heartRateZones[i] = sensorStatistics.getHeartRateZoneTime(i);
+        }
+        values.put(TracksColumns.HEARTRATEZONES, toBlob(heartRateZones));
+        long[] cadenceDistribution = new long[SensorStatistics.NUM_CADENCE_BUCKETS];
+        for (int i = 0; i < cadenceDistribution.length; i++) {
+            cadenceDistribution[i] = sensorStatistics.getCadenceTime(i);
+        }
+        values.put(TracksColumns.CADENCEDISTRIBUTION, toBlob(cadenceDistribution));
+        if (sensorStatistics.hasPower()) {
+            values.put(TracksColumns.NORMALIZEDPOWER, sensorStatistics.getNormalizedPower());
+        } else {
+            values.putNull(TracksColumns.NORMALIZEDPOWER);
+        }
+        if (!Double.isNaN(sensorStatistics.getHeartRateDrift())) {
+            values.put(TracksColumns.HEARTRATEDRIFT, sensorStatistics.getHeartRateDrift());
+        } else {
+            values.putNull(TracksColumns.HEARTRATEDRIFT);
+        }
+
+        return values;
+    }
+
+    private static byte[] toBlob(long[] values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * (Long.SIZE / Byte.SIZE));
+        for (long value : values) {
+            buffer.putLong(value);
+        }
+        return buffer.array();
+    }
+
+    private static long[] fromBlob(byte[] blob) {
+        ByteBuffer buffer = ByteBuffer.wrap(blob);
+        long[] values = new long[blob.length / (Long.SIZE / Byte.SIZE)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = buffer.getLong();
+        }
         return values;
     }
 
@@ -496,6 +567,19 @@ public class ContentProviderUtilsImpl implements ContentProviderUtils {
         contentResolver.delete(WaypointsColumns.CONTENT_URI, WaypointsColumns._ID + "=?", new String[]{Long.toString(waypointId)});
     }
 
+    @Override
+    public void replaceWaypoints(String selection, String[] selectionArgs, List<Waypoint> waypoints) {
+        ArrayList<ContentValues> values = new ArrayList<>(waypoints.size());
+        for (Waypoint waypoint : waypoints) {
+            waypoint.setId(-1L);
+            values.add(createContentValues(waypoint));
+        }
+        Bundle extras = new Bundle();
+        extras.putStringArray(CustomContentProvider.EXTRA_SELECTION_ARGS, selectionArgs);
+        extras.putParcelableArrayList(CustomContentProvider.EXTRA_WAYPOINTS, values);
+        contentResolver.call(CustomContentProvider.METHOD_REPLACE_WAYPOINTS, selection, extras);
+    }
+
     @Override
     public long getFirstWaypointId(long trackId) {
         if (trackId < 0) {
@@ -687,6 +771,114 @@ public class ContentProviderUtilsImpl implements ContentProviderUtils {
         return values;
     }
 
+    @Override
+    public Split createSplit(Cursor cursor) {
+        int idIndex = cursor.getColumnIndexOrThrow(SplitsColumns._ID);
+        int trackIdIndex = cursor.getColumnIndexOrThrow(SplitsColumns.TRACKID);
+        int metricIndex = cursor.getColumnIndexOrThrow(SplitsColumns.METRIC);
+        int numberIndex = cursor.getColumnIndexOrThrow(SplitsColumns.NUMBER);
+        int distanceIndex = cursor.getColumnIndexOrThrow(SplitsColumns.DISTANCE);
+        int totalTimeIndex = cursor.getColumnIndexOrThrow(SplitsColumns.TOTALTIME);
+        int movingTimeIndex = cursor.getColumnIndexOrThrow(SplitsColumns.MOVINGTIME);
+        int elevationGainIndex = cursor.getColumnIndexOrThrow(SplitsColumns.ELEVATIONGAIN);
+        int averageHeartRateIndex = cursor.getColumnIndexOrThrow(SplitsColumns.AVGHEARTRATE);
+        int stopTimeIndex = cursor.getColumnIndexOrThrow(SplitsColumns.STOPTIME);
+
+        Split split = new Split();
+        split.setId(cursor.getLong(idIndex));
+        split.setTrackId(cursor.getLong(trackIdIndex));
+        split.setMetric(cursor.getInt(metricIndex) == 1);
+        split.setNumber(cursor.getInt(numberIndex));
+        split.setDistance(cursor.getDouble(distanceIndex));
+        split.setTotalTime(cursor.getLong(totalTimeIndex));
+        split.setMovingTime(cursor.getLong(movingTimeIndex));
+        split.setElevationGain(cursor.getDouble(elevationGainIndex));
+        if (!cursor.isNull(averageHeartRateIndex)) {
+            split.setAverageHeartRate(cursor.getFloat(averageHeartRateIndex));
+        }
+        split.setStopTime(cursor.getLong(stopTimeIndex));
+        return split;
+    }
+
+    @Override
+    public List<Split> getSplits(long trackId, boolean metric) {
+        ArrayList<Split> splits = new ArrayList<>();
+        String selection = SplitsColumns.TRACKID + "=? AND " + SplitsColumns.METRIC + "=?";
+        String[] selectionArgs = new String[]{Long.toString(trackId), metric ? "1" : "0"};
+        try (Cursor cursor = contentResolver.query(SplitsColumns.CONTENT_URI, null, selection, selectionArgs, SplitsColumns.NUMBER)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                splits.ensureCapacity(cursor.getCount());
+                do {
+                    splits.add(createSplit(cursor));
+                } while (cursor.moveToNext());
+            }
+        }
+        return splits;
+    }
+
+    @Override
+    public Uri insertSplit(Split split) {
+        return contentResolver.insert(SplitsColumns.CONTENT_URI, createContentValues(split));
+    }
+
+    @Override
+    public int bulkInsertSplits(List<Split> splits) {
+        if (splits.isEmpty()) {
+            return 0;
+        }
+        ContentValues[] values = new ContentValues[splits.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = createContentValues(splits.get(i));
+        }
+        return contentResolver.bulkInsert(SplitsColumns.CONTENT_URI, values);
+    }
+
+    private static ContentValues createContentValues(Split split) {
+        ContentValues values = new ContentValues();
+        values.put(SplitsColumns.TRACKID, split.getTrackId());
+        values.put(SplitsColumns.METRIC, split.isMetric() ? 1 : 0);
+        values.put(SplitsColumns.NUMBER, split.getNumber());
+        values.put(SplitsColumns.DISTANCE, split.getDistance());
+        values.put(SplitsColumns.TOTALTIME, split.getTotalTime());
+        values.put(SplitsColumns.MOVINGTIME, split.getMovingTime());
+        values.put(SplitsColumns.ELEVATIONGAIN, split.getElevationGain());
+        if (split.hasAverageHeartRate()) {
+            values.put(SplitsColumns.AVGHEARTRATE, split.getAverageHeartRate());
+        }
+        values.put(SplitsColumns.STOPTIME, split.getStopTime());
+        return values;
+    }
+
+    @Override
+    public void deleteSplits(long trackId) {
+        contentResolver.delete(SplitsColumns.CONTENT_URI, SplitsColumns.TRACKID + "=?", new String[]{Long.toString(trackId)});
+    }
+
+    @Override
+    public boolean writeDatabaseSnapshot(File file, Map<Long, Long> previousFingerprints) {
+        long[] trackIds = new long[previousFingerprints.size()];
+        long[] fingerprints = new long[previousFingerprints.size()];
+        int i = 0;
+        for (Map.Entry<Long, Long> entry : previousFingerprints.entrySet()) {
+            trackIds[i] = entry.getKey();
+            fingerprints[i] = entry.getValue();
+            i++;
+        }
+        Bundle extras = new Bundle();
+        extras.putLongArray(CustomContentProvider.EXTRA_SNAPSHOT_TRACK_IDS, trackIds);
+        extras.putLongArray(CustomContentProvider.EXTRA_SNAPSHOT_FINGERPRINTS, fingerprints);
+
+        Bundle result = contentResolver.call(CustomContentProvider.METHOD_SNAPSHOT, file.getAbsolutePath(), extras);
+        return result != null && result.getBoolean(CustomContentProvider.EXTRA_SNAPSHOT_RESULT);
+    }
+
+    @Override
+    public boolean restoreDatabaseSnapshot(File file) {
+        Bundle result = contentResolver.call(CustomContentProvider.METHOD_RESTORE, file.getAbsolutePath(), null);
+        TrackPointCache.getInstance().clear();
+        return result != null && result.getBoolean(CustomContentProvider.EXTRA_SNAPSHOT_RESULT);
+    }
+
     private Waypoint getNextStatisticsWaypointAfter(Waypoint waypoint) {
         Cursor cursor = null;
         try {
@@ -735,7 +927,18 @@ public class ContentProviderUtilsImpl implements ContentProviderUtils {
         for (int i = 0; i < length; i++) {
             values[i] = createContentValues(locations[i], trackId);
         }
-        return contentResolver.bulkInsert(TrackPointsColumns.CONTENT_URI, values);
+        int inserted = contentResolver.bulkInsert(TrackPointsColumns.CONTENT_URI, values);
+        TrackPointCache.getInstance().notifyTrackPointsInserted(trackId);
+        return inserted;
+    }
+
+    @Override
+    public void updateTrackPointAltitudes(long trackId, long[] trackPointIds, double[] altitudes, int length) {
+        Bundle extras = new Bundle();
+        extras.putLongArray(CustomContentProvider.EXTRA_TRACKPOINT_IDS, Arrays.copyOf(trackPointIds, length));
+        extras.putDoubleArray(CustomContentProvider.EXTRA_ALTITUDES, Arrays.copyOf(altitudes, length));
+        contentResolver.call(CustomContentProvider.METHOD_UPDATE_ALTITUDES, Long.toString(trackId), extras);
+        TrackPointCache.getInstance().invalidate(trackId);
     }
 
     @Override
@@ -960,7 +1163,9 @@ public class ContentProviderUtilsImpl implements ContentProviderUtils {
 
     @Override
     public Uri insertTrackPoint(Location location, long trackId) {
-        return contentResolver.insert(TrackPointsColumns.CONTENT_URI, createContentValues(location, trackId));
+        Uri uri = contentResolver.insert(TrackPointsColumns.CONTENT_URI, createContentValues(location, trackId));
+        TrackPointCache.getInstance().notifyTrackPointsInserted(trackId);
+        return uri;
     }
 
     /**
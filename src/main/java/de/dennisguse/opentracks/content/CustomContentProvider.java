@@ -27,28 +27,62 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Binder;
+import android.os.Bundle;
+import android.os.Process;
 import android.text.TextUtils;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.VisibleForTesting;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
- * A {@link ContentProvider} that handles access to track points, tracks, and waypoints tables.
+ * A {@link ContentProvider} that handles access to track points, tracks, waypoints, and splits tables.
  *
  * @author Leif Hendrik Wilden
  */
 public abstract class CustomContentProvider extends ContentProvider {
 
     @VisibleForTesting
-    static final int DATABASE_VERSION = 23;
+    static final int DATABASE_VERSION = 25;
 
     @VisibleForTesting
     static final String DATABASE_NAME = "database.db";
 
     private static final String TAG = CustomContentProvider.class.getSimpleName();
 
+    // Query parameters of the uri notified after inserting track points
+    static final String CHANGE_TRACKID = "trackid";
+    static final String CHANGE_FIRST_TRACKPOINT_ID = "first";
+    static final String CHANGE_LAST_TRACKPOINT_ID = "last";
+
+    // The method of call() to write a database snapshot; the argument is the file path
+    static final String METHOD_SNAPSHOT = "snapshot";
+    static final String EXTRA_SNAPSHOT_TRACK_IDS = "trackIds";
+    static final String EXTRA_SNAPSHOT_FINGERPRINTS = "fingerprints";
+    static final String EXTRA_SNAPSHOT_RESULT = "result";
+
+    // The method of call() to restore a database snapshot (see DatabaseSnapshot.restore()); the argument is the file path
+    static final String METHOD_RESTORE = "restore";
+
+    // The method of call() to update the altitude of track points; the argument is the track id
+    static final String METHOD_UPDATE_ALTITUDES = "updateAltitudes";
+    static final String EXTRA_TRACKPOINT_IDS = "trackPointIds";
+    static final String EXTRA_ALTITUDES = "altitudes";
+
+    // The method of call() to replace waypoints; the argument is the selection of the waypoints to delete
+    static final String METHOD_REPLACE_WAYPOINTS = "replaceWaypoints";
+    static final String EXTRA_SELECTION_ARGS = "selectionArgs";
+    static final String EXTRA_WAYPOINTS = "waypoints";
+
     private final UriMatcher uriMatcher;
 
     private SQLiteDatabase db;
@@ -61,6 +95,8 @@ public abstract class CustomContentProvider extends ContentProvider {
         uriMatcher.addURI(ContentProviderUtils.AUTHORITY_PACKAGE, TracksColumns.TABLE_NAME + "/#", UrlType.TRACKS_ID.ordinal());
         uriMatcher.addURI(ContentProviderUtils.AUTHORITY_PACKAGE, WaypointsColumns.TABLE_NAME, UrlType.WAYPOINTS.ordinal());
         uriMatcher.addURI(ContentProviderUtils.AUTHORITY_PACKAGE, WaypointsColumns.TABLE_NAME + "/#", UrlType.WAYPOINTS_ID.ordinal());
+        uriMatcher.addURI(ContentProviderUtils.AUTHORITY_PACKAGE, SplitsColumns.TABLE_NAME, UrlType.SPLITS.ordinal());
+        uriMatcher.addURI(ContentProviderUtils.AUTHORITY_PACKAGE, SplitsColumns.TABLE_NAME + "/#", UrlType.SPLITS_ID.ordinal());
     }
 
     @Override
@@ -100,6 +136,9 @@ public abstract class CustomContentProvider extends ContentProvider {
             case WAYPOINTS:
                 table = WaypointsColumns.TABLE_NAME;
                 break;
+            case SPLITS:
+                table = SplitsColumns.TABLE_NAME;
+                break;
             default:
                 throw new IllegalArgumentException("Unknown URL " + url);
         }
@@ -138,6 +177,10 @@ public abstract class CustomContentProvider extends ContentProvider {
                 return WaypointsColumns.CONTENT_TYPE;
             case WAYPOINTS_ID:
                 return WaypointsColumns.CONTENT_ITEMTYPE;
+            case SPLITS:
+                return SplitsColumns.CONTENT_TYPE;
+            case SPLITS_ID:
+                return SplitsColumns.CONTENT_ITEMTYPE;
             default:
                 throw new IllegalArgumentException("Unknown URL " + url);
         }
@@ -148,14 +191,19 @@ public abstract class CustomContentProvider extends ContentProvider {
         if (initialValues == null) {
             initialValues = new ContentValues();
         }
+        UrlType urlType = getUrlType(url);
         Uri result;
         try {
             db.beginTransaction();
-            result = insertContentValues(url, getUrlType(url), initialValues);
+            result = insertContentValues(url, urlType, initialValues);
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
         }
+        if (urlType == UrlType.TRACKPOINTS) {
+            long trackPointId = ContentUris.parseId(result);
+            url = createTrackPointsChangeUri(initialValues.getAsLong(TrackPointsColumns.TRACKID), trackPointId, trackPointId);
+        }
         getContext().getContentResolver().notifyChange(url, null, false);
         return result;
     }
@@ -163,26 +211,148 @@ public abstract class CustomContentProvider extends ContentProvider {
     @Override
     public int bulkInsert(@NonNull Uri url, @NonNull ContentValues[] valuesBulk) {
         int numInserted;
+        UrlType urlType = getUrlType(url);
+        Uri firstResult = null;
+        Uri lastResult = null;
         try {
             // Use a transaction in order to make the insertions run as a single batch
             db.beginTransaction();
 
-            UrlType urlType = getUrlType(url);
             for (numInserted = 0; numInserted < valuesBulk.length; numInserted++) {
                 ContentValues contentValues = valuesBulk[numInserted];
                 if (contentValues == null) {
                     contentValues = new ContentValues();
                 }
-                insertContentValues(url, urlType, contentValues);
+                lastResult = insertContentValues(url, urlType, contentValues);
+                if (firstResult == null) {
+                    firstResult = lastResult;
+                }
             }
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
         }
+        if (urlType == UrlType.TRACKPOINTS && numInserted > 0) {
+            // Track points are inserted in bulk for one track only.
+            url = createTrackPointsChangeUri(valuesBulk[0].getAsLong(TrackPointsColumns.TRACKID), ContentUris.parseId(firstResult), ContentUris.parseId(lastResult));
+        }
         getContext().getContentResolver().notifyChange(url, null, false);
         return numInserted;
     }
 
+    @Override
+    public Bundle call(@NonNull String method, String arg, Bundle extras) {
+        if (!METHOD_SNAPSHOT.equals(method) && !METHOD_RESTORE.equals(method) && !METHOD_UPDATE_ALTITUDES.equals(method) && !METHOD_REPLACE_WAYPOINTS.equals(method)) {
+            return super.call(method, arg, extras);
+        }
+        // Other apps may have uri permissions, but must not write files or bypass update().
+        if (Binder.getCallingPid() != Process.myPid()) {
+            throw new SecurityException("Method " + method + " is only available to the app");
+        }
+        if (METHOD_UPDATE_ALTITUDES.equals(method)) {
+            updateTrackPointAltitudes(Long.parseLong(arg), extras.getLongArray(EXTRA_TRACKPOINT_IDS), extras.getDoubleArray(EXTRA_ALTITUDES));
+            return null;
+        }
+        if (METHOD_REPLACE_WAYPOINTS.equals(method)) {
+            ArrayList<ContentValues> waypoints = extras.getParcelableArrayList(EXTRA_WAYPOINTS);
+            replaceWaypoints(arg, extras.getStringArray(EXTRA_SELECTION_ARGS), waypoints != null ? waypoints : new ArrayList<ContentValues>());
+            return null;
+        }
+
+        if (METHOD_RESTORE.equals(method)) {
+            Bundle bundle = new Bundle();
+            bundle.putBoolean(EXTRA_SNAPSHOT_RESULT, restoreSnapshot(new File(arg)));
+            return bundle;
+        }
+
+        Map<Long, Long> previousFingerprints = new HashMap<>();
+        if (extras != null) {
+            long[] trackIds = extras.getLongArray(EXTRA_SNAPSHOT_TRACK_IDS);
+            long[] fingerprints = extras.getLongArray(EXTRA_SNAPSHOT_FINGERPRINTS);
+            if (trackIds != null && fingerprints != null) {
+                for (int i = 0; i < trackIds.length && i < fingerprints.length; i++) {
+                    previousFingerprints.put(trackIds[i], fingerprints[i]);
+                }
+            }
+        }
+
+        boolean result;
+        // The snapshot uses fixed names for the attached database and the temporary tables.
+        synchronized (this) {
+            result = new DatabaseSnapshot(db, new File(arg), previousFingerprints).write();
+        }
+        Bundle bundle = new Bundle();
+        bundle.putBoolean(EXTRA_SNAPSHOT_RESULT, result);
+        return bundle;
+    }
+
+    /**
+     * Replaces the tracks with the tracks of a database snapshot in one transaction; notifies once per table.
+     *
+     * @param file the snapshot file
+     * @return true if successful
+     */
+    private boolean restoreSnapshot(File file) {
+        boolean result;
+        synchronized (this) {
+            result = new DatabaseSnapshot(db, file).restore();
+        }
+        if (result) {
+            getContext().getContentResolver().notifyChange(TracksColumns.CONTENT_URI, null, false);
+            getContext().getContentResolver().notifyChange(TrackPointsColumns.CONTENT_URI, null, false);
+            getContext().getContentResolver().notifyChange(WaypointsColumns.CONTENT_URI, null, false);
+            getContext().getContentResolver().notifyChange(SplitsColumns.CONTENT_URI, null, false);
+        }
+        return result;
+    }
+
+    /**
+     * Updates the altitude of track points of a track with one statement in one transaction; notifies once.
+     *
+     * @param trackId       the track id
+     * @param trackPointIds the track point ids
+     * @param altitudes     the altitudes (same length as trackPointIds)
+     */
+    private void updateTrackPointAltitudes(long trackId, long[] trackPointIds, double[] altitudes) {
+        SQLiteStatement statement = db.compileStatement("UPDATE " + TrackPointsColumns.TABLE_NAME + " SET " + TrackPointsColumns.ALTITUDE + "=? WHERE "
+                + TrackPointsColumns._ID + "=? AND " + TrackPointsColumns.TRACKID + "=?");
+        try {
+            db.beginTransaction();
+            statement.bindLong(3, trackId);
+            for (int i = 0; i < trackPointIds.length; i++) {
+                statement.bindDouble(1, altitudes[i]);
+                statement.bindLong(2, trackPointIds[i]);
+                statement.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+        getContext().getContentResolver().notifyChange(TrackPointsColumns.CONTENT_URI, null, false);
+    }
+
+    /**
+     * Deletes the waypoints matching a selection and inserts new waypoints in one transaction; notifies once.
+     *
+     * @param selection     the selection of the waypoints to delete
+     * @param selectionArgs the selection arguments
+     * @param waypoints     the content values of the waypoints to insert
+     */
+    private void replaceWaypoints(String selection, String[] selectionArgs, List<ContentValues> waypoints) {
+        try {
+            db.beginTransaction();
+            db.delete(WaypointsColumns.TABLE_NAME, selection, selectionArgs);
+            for (ContentValues contentValues : waypoints) {
+                insertWaypoint(WaypointsColumns.CONTENT_URI, contentValues);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        getContext().getContentResolver().notifyChange(WaypointsColumns.CONTENT_URI, null, false);
+    }
+
     @Override
     public Cursor query(@NonNull Uri url, String[] projection, String selection, String[] selectionArgs, String sort) {
         SQLiteQueryBuilder queryBuilder = new SQLiteQueryBuilder();
@@ -212,6 +382,14 @@ public abstract class CustomContentProvider extends ContentProvider {
                 queryBuilder.setTables(WaypointsColumns.TABLE_NAME);
                 queryBuilder.appendWhere("_id=" + url.getPathSegments().get(1));
                 break;
+            case SPLITS:
+                queryBuilder.setTables(SplitsColumns.TABLE_NAME);
+                sortOrder = sort != null ? sort : SplitsColumns.DEFAULT_SORT_ORDER;
+                break;
+            case SPLITS_ID:
+                queryBuilder.setTables(SplitsColumns.TABLE_NAME);
+                queryBuilder.appendWhere("_id=" + url.getPathSegments().get(1));
+                break;
             default:
                 throw new IllegalArgumentException("Unknown url " + url);
         }
@@ -273,6 +451,45 @@ public abstract class CustomContentProvider extends ContentProvider {
         return count;
     }
 
+    /**
+     * Creates the uri to notify about inserted track points.
+     * It matches the observers of {@link TrackPointsColumns#CONTENT_URI} (query parameters are ignored for matching), but also carries the track id and the range of the inserted track point ids.
+     *
+     * @param trackId           the track id or null if unknown
+     * @param firstTrackPointId the first inserted track point id
+     * @param lastTrackPointId  the last inserted track point id
+     */
+    @VisibleForTesting
+    static Uri createTrackPointsChangeUri(Long trackId, long firstTrackPointId, long lastTrackPointId) {
+        Uri.Builder builder = TrackPointsColumns.CONTENT_URI.buildUpon();
+        if (trackId != null) {
+            builder.appendQueryParameter(CHANGE_TRACKID, String.valueOf(trackId));
+        }
+        return builder.appendQueryParameter(CHANGE_FIRST_TRACKPOINT_ID, String.valueOf(firstTrackPointId))
+                .appendQueryParameter(CHANGE_LAST_TRACKPOINT_ID, String.valueOf(lastTrackPointId))
+                .build();
+    }
+
+    /**
+     * Gets a long query parameter of a change uri.
+     *
+     * @param uri the change uri (may be null)
+     * @param key the query parameter
+     * @return the value or -1L if not available
+     */
+    static long getChangeParameter(Uri uri, String key) {
+        String value = uri != null ? uri.getQueryParameter(key) : null;
+        if (value == null) {
+            return -1L;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Invalid change uri " + uri, e);
+            return -1L;
+        }
+    }
+
     /**
      * Gets the {@link UrlType} for a url.
      *
@@ -297,6 +514,8 @@ public abstract class CustomContentProvider extends ContentProvider {
                 return insertTrack(url, contentValues);
             case WAYPOINTS:
                 return insertWaypoint(url, contentValues);
+            case SPLITS:
+                return insertSplit(url, contentValues);
             default:
                 throw new IllegalArgumentException("Unknown url " + url);
         }
@@ -355,6 +574,23 @@ public abstract class CustomContentProvider extends ContentProvider {
         throw new SQLException("Failed to insert a waypoint " + url);
     }
 
+    /**
+     * Inserts a split.
+     *
+     * @param url           the content url
+     * @param contentValues the content values
+     */
+    private Uri insertSplit(Uri url, ContentValues contentValues) {
+        if (!contentValues.containsKey(SplitsColumns.TRACKID)) {
+            throw new IllegalArgumentException("Track id value is required.");
+        }
+        long rowId = db.insert(SplitsColumns.TABLE_NAME, SplitsColumns._ID, contentValues);
+        if (rowId >= 0) {
+            return ContentUris.appendId(SplitsColumns.CONTENT_URI.buildUpon(), rowId).build();
+        }
+        throw new SQLException("Failed to insert a split " + url);
+    }
+
     /**
      * Types of url.
      *
@@ -362,7 +598,7 @@ public abstract class CustomContentProvider extends ContentProvider {
      */
     @VisibleForTesting
     enum UrlType {
-        TRACKPOINTS, TRACKPOINTS_ID, TRACKS, TRACKS_ID, WAYPOINTS, WAYPOINTS_ID
+        TRACKPOINTS, TRACKPOINTS_ID, TRACKS, TRACKS_ID, WAYPOINTS, WAYPOINTS_ID, SPLITS, SPLITS_ID
     }
 
     /**
@@ -385,10 +621,22 @@ public abstract class CustomContentProvider extends ContentProvider {
             db.execSQL(TrackPointsColumns.CREATE_TABLE);
             db.execSQL(TracksColumns.CREATE_TABLE);
             db.execSQL(WaypointsColumns.CREATE_TABLE);
+            db.execSQL(SplitsColumns.CREATE_TABLE);
+            db.execSQL(SplitsColumns.CREATE_INDEX);
         }
 
         @Override
         public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            if (oldVersion < 24) {
+                db.execSQL("ALTER TABLE " + TracksColumns.TABLE_NAME + " ADD " + TracksColumns.HEARTRATEZONES + " BLOB");
+                db.execSQL("ALTER TABLE " + TracksColumns.TABLE_NAME + " ADD " + TracksColumns.CADENCEDISTRIBUTION + " BLOB");
+                db.execSQL("ALTER TABLE " + TracksColumns.TABLE_NAME + " ADD " + TracksColumns.NORMALIZEDPOWER + " FLOAT");
+                db.execSQL("ALTER TABLE " + TracksColumns.TABLE_NAME + " ADD " + TracksColumns.HEARTRATEDRIFT + " FLOAT");
+            }
+            if (oldVersion < 25) {
+                db.execSQL(SplitsColumns.CREATE_TABLE);
+                db.execSQL(SplitsColumns.CREATE_INDEX);
+            }
         }
     }
 }
\ No newline at end of file
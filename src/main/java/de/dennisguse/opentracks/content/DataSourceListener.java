@@ -36,8 +36,13 @@ public interface DataSourceListener {
 
     /**
      * Notifies when the track points table is updated.
+     * If track points were inserted, the track id and the range of the inserted track point ids are known.
+     *
+     * @param trackId           the track id or -1L if unknown
+     * @param firstTrackPointId the first inserted track point id or -1L if unknown
+     * @param lastTrackPointId  the last inserted track point id or -1L if unknown
      */
-    void notifyTrackPointsTableUpdated();
+    void notifyTrackPointsTableUpdated(long trackId, long firstTrackPointId, long lastTrackPointId);
 
     /**
      * Notifies when a preference changes.
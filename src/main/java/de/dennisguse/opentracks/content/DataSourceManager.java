@@ -19,6 +19,7 @@ package de.dennisguse.opentracks.content;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.database.ContentObserver;
+import android.net.Uri;
 import android.os.Handler;
 import android.util.Log;
 
@@ -211,7 +212,15 @@ class DataSourceManager {
 
         @Override
         public void onChange(boolean selfChange) {
-            dataSourceListener.notifyTrackPointsTableUpdated();
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            dataSourceListener.notifyTrackPointsTableUpdated(
+                    CustomContentProvider.getChangeParameter(uri, CustomContentProvider.CHANGE_TRACKID),
+                    CustomContentProvider.getChangeParameter(uri, CustomContentProvider.CHANGE_FIRST_TRACKPOINT_ID),
+                    CustomContentProvider.getChangeParameter(uri, CustomContentProvider.CHANGE_LAST_TRACKPOINT_ID));
         }
     }
 
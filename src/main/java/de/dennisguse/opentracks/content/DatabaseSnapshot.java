@@ -0,0 +1,456 @@
+package de.dennisguse.opentracks.content;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes a consistent snapshot of the database into a new database file while the database is used (e.g., while a track is recorded).
+ * <p>
+ * Like the SQLite online backup API, the snapshot is copied in steps of {@link #STEP_SIZE} track points (a short transaction each); so, writers are only blocked for a step.
+ * Track points are only appended, except for updates (e.g., of the altitude); appended track points are copied by the last step and updated ones are recorded by a temporary trigger and copied again by the last step.
+ * The last step copies the tracks, waypoints, and splits in one transaction; the snapshot is the state of the database at that time.
+ * <p>
+ * The snapshot contains the {@link #STATE_TABLE} with a fingerprint of every track of the database.
+ * Only the tracks whose fingerprint differs from a previous snapshot are copied (i.e., an incremental snapshot).
+ * <p>
+ * A snapshot is restored into a database by {@link #restore()}: its tracks replace the tracks with the same id and the tracks missing in its state are deleted.
+ * So, restoring a full snapshot and then each later incremental snapshot restores the state of the last one.
+ * <p>
+ * Must use the connection of the {@link CustomContentProvider} (for the database of the app) as it uses ATTACH, temporary tables, and temporary triggers.
+ */
+public class DatabaseSnapshot {
+
+    private static final String TAG = DatabaseSnapshot.class.getSimpleName();
+
+    /**
+     * The table with the state of every track of the database (also the tracks not copied).
+     */
+    public static final String STATE_TABLE = "snapshot_state";
+    public static final String STATE_TRACKID = "trackid";
+    public static final String STATE_FINGERPRINT = "fingerprint";
+    public static final String STATE_NUMPOINTS = "numpoints"; // the number of track points
+    public static final String STATE_INCLUDED = "included"; // 1 if the track is copied
+
+    // The number of track points copied per transaction
+    private static final int STEP_SIZE = 10000;
+
+    private static final String SCHEMA = "snapshot";
+    private static final String TEMP_TRACKS = "snapshot_tracks";
+    private static final String TEMP_MODIFIED = "snapshot_modified";
+    private static final String TEMP_TRIGGER = "snapshot_trackpoints_update";
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final SQLiteDatabase db;
+    private final File file;
+    private final Map<Long, Long> previousFingerprints;
+
+    // The number of track points and the largest track point id by track id
+    private final Map<Long, long[]> trackPointStats = new HashMap<>();
+    private long lastStatsTrackPointId = 0L;
+
+    /**
+     * Constructor.
+     *
+     * @param db                   the database of the content provider
+     * @param file                 the snapshot file (must not exist)
+     * @param previousFingerprints the fingerprints by track id of the previous snapshot; empty to copy all tracks
+     */
+    DatabaseSnapshot(SQLiteDatabase db, File file, Map<Long, Long> previousFingerprints) {
+        this.db = db;
+        this.file = file;
+        this.previousFingerprints = previousFingerprints;
+    }
+
+    /**
+     * Constructor to restore a snapshot.
+     *
+     * @param db   the database
+     * @param file the snapshot file
+     */
+    public DatabaseSnapshot(SQLiteDatabase db, File file) {
+        this(db, file, new HashMap<Long, Long>());
+    }
+
+    /**
+     * Writes the snapshot.
+     *
+     * @return true if successful; the file is deleted otherwise
+     */
+    boolean write() {
+        if (file.exists()) {
+            Log.e(TAG, "Snapshot file already exists: " + file);
+            return false;
+        }
+        boolean attached = false;
+        boolean successful = false;
+        try {
+            db.execSQL("ATTACH DATABASE ? AS " + SCHEMA, new Object[]{file.getAbsolutePath()});
+            attached = true;
+            createSchema();
+            db.execSQL("CREATE TEMP TABLE " + TEMP_TRACKS + " (_id INTEGER PRIMARY KEY)");
+            db.execSQL("CREATE TEMP TABLE " + TEMP_MODIFIED + " (_id INTEGER PRIMARY KEY)");
+            db.execSQL("CREATE TEMP TRIGGER " + TEMP_TRIGGER + " AFTER UPDATE ON main." + TrackPointsColumns.TABLE_NAME
+                    + " BEGIN INSERT OR IGNORE INTO " + TEMP_MODIFIED + " VALUES (old._id); END");
+
+            // The tracks changed before the copy
+            updateTrackPointStats();
+            Set<Long> trackIds = getChangedTrackIds(getFingerprints());
+            insertTrackIds(trackIds);
+
+            long lastTrackPointId = copyTrackPoints();
+            if (lastTrackPointId == -1L) {
+                throw new SQLException("Interrupted");
+            }
+            writeLastStep(trackIds, lastTrackPointId);
+            successful = true;
+            return true;
+        } catch (SQLException e) {
+            Log.e(TAG, "Unable to write snapshot " + file, e);
+            return false;
+        } finally {
+            cleanup(attached);
+            if (!successful) {
+                SQLiteDatabase.deleteDatabase(file);
+            }
+        }
+    }
+
+    /**
+     * Restores the snapshot into the database in one transaction: the tracks of the snapshot replace the tracks with the same id and the tracks missing in its state are deleted.
+     * If the database has a {@link #STATE_TABLE} (i.e., it is a restored snapshot), it is replaced by the state of the snapshot.
+     *
+     * @return true if successful; the database is unchanged otherwise
+     */
+    public boolean restore() {
+        boolean attached = false;
+        try {
+            db.execSQL("ATTACH DATABASE ? AS " + SCHEMA, new Object[]{file.getAbsolutePath()});
+            attached = true;
+            // The columns are copied by position.
+            long version = DatabaseUtils.longForQuery(db, "PRAGMA " + SCHEMA + ".user_version", null);
+            if (version != CustomContentProvider.DATABASE_VERSION) {
+                Log.e(TAG, "Unable to restore snapshot of database version " + version + ": " + file);
+                return false;
+            }
+            boolean hasState = DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM main.sqlite_master WHERE type='table' AND name=?", new String[]{STATE_TABLE}) > 0;
+
+            db.beginTransaction();
+            try {
+                deleteReplacedRows(TrackPointsColumns.TABLE_NAME, TrackPointsColumns.TRACKID);
+                deleteReplacedRows(WaypointsColumns.TABLE_NAME, WaypointsColumns.TRACKID);
+                deleteReplacedRows(SplitsColumns.TABLE_NAME, SplitsColumns.TRACKID);
+                deleteReplacedRows(TracksColumns.TABLE_NAME, TracksColumns._ID);
+                for (String table : new String[]{TracksColumns.TABLE_NAME, TrackPointsColumns.TABLE_NAME, WaypointsColumns.TABLE_NAME, SplitsColumns.TABLE_NAME}) {
+                    db.execSQL("INSERT INTO main." + table + " SELECT * FROM " + SCHEMA + "." + table);
+                }
+                if (hasState) {
+                    db.execSQL("DELETE FROM main." + STATE_TABLE);
+                    db.execSQL("INSERT INTO main." + STATE_TABLE + " SELECT * FROM " + SCHEMA + "." + STATE_TABLE);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            return true;
+        } catch (SQLException e) {
+            Log.e(TAG, "Unable to restore snapshot " + file, e);
+            return false;
+        } finally {
+            cleanup(attached);
+        }
+    }
+
+    /**
+     * Deletes the rows of the tracks in the snapshot and of the tracks missing in its state.
+     */
+    private void deleteReplacedRows(String table, String trackIdColumn) {
+        db.execSQL("DELETE FROM main." + table + " WHERE " + trackIdColumn + " IN (SELECT _id FROM " + SCHEMA + "." + TracksColumns.TABLE_NAME + ")"
+                + " OR " + trackIdColumn + " NOT IN (SELECT " + STATE_TRACKID + " FROM " + SCHEMA + "." + STATE_TABLE + ")");
+    }
+
+    /**
+     * Creates the tables and indexes of the main database in the snapshot (with the same column order).
+     */
+    private void createSchema() {
+        try (Cursor cursor = db.rawQuery("SELECT type, name, sql FROM main.sqlite_master WHERE sql NOT NULL AND name NOT LIKE 'sqlite_%' AND name != 'android_metadata'", null)) {
+            List<String> statements = new ArrayList<>();
+            while (cursor.moveToNext()) {
+                String sql = cursor.getString(2);
+                if ("table".equals(cursor.getString(0))) {
+                    statements.add("CREATE TABLE " + SCHEMA + "." + cursor.getString(1) + " " + sql.substring(sql.indexOf('(')));
+                } else if ("index".equals(cursor.getString(0))) {
+                    statements.add(sql.replaceFirst("(?i)^CREATE (UNIQUE )?INDEX ", "CREATE $1INDEX " + SCHEMA + "."));
+                }
+            }
+            for (String statement : statements) {
+                db.execSQL(statement);
+            }
+        }
+        db.execSQL("CREATE TABLE " + SCHEMA + "." + STATE_TABLE + " ("
+                + STATE_TRACKID + " INTEGER PRIMARY KEY, "
+                + STATE_FINGERPRINT + " INTEGER, "
+                + STATE_NUMPOINTS + " INTEGER, "
+                + STATE_INCLUDED + " INTEGER)");
+        db.execSQL("PRAGMA " + SCHEMA + ".user_version = " + CustomContentProvider.DATABASE_VERSION);
+    }
+
+    /**
+     * Copies the track points of the tracks in {@link #TEMP_TRACKS}; one transaction per step.
+     *
+     * @return the largest copied track point id; -1L if interrupted
+     */
+    private long copyTrackPoints() {
+        long lastTrackPointId = 0L;
+        SQLiteStatement copyStatement = db.compileStatement("INSERT INTO " + SCHEMA + "." + TrackPointsColumns.TABLE_NAME
+                + " SELECT * FROM main." + TrackPointsColumns.TABLE_NAME
+                + " WHERE _id > ? AND " + TrackPointsColumns.TRACKID + " IN (SELECT _id FROM " + TEMP_TRACKS + ")"
+                + " ORDER BY _id LIMIT " + STEP_SIZE);
+        try {
+            while (true) {
+                if (Thread.interrupted()) {
+                    return -1L;
+                }
+                int count;
+                db.beginTransaction();
+                try {
+                    copyStatement.bindLong(1, lastTrackPointId);
+                    count = copyStatement.executeUpdateDelete();
+                    if (count > 0) {
+                        lastTrackPointId = DatabaseUtils.longForQuery(db, "SELECT MAX(_id) FROM " + SCHEMA + "." + TrackPointsColumns.TABLE_NAME, null);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                if (count < STEP_SIZE) {
+                    return lastTrackPointId;
+                }
+            }
+        } finally {
+            copyStatement.close();
+        }
+    }
+
+    /**
+     * Completes the snapshot in one transaction.
+     *
+     * @param trackIds         the ids of the tracks copied so far
+     * @param lastTrackPointId the largest copied track point id
+     */
+    private void writeLastStep(Set<Long> trackIds, long lastTrackPointId) {
+        String trackPoints = TrackPointsColumns.TABLE_NAME;
+        String inTrackIds = " IN (SELECT _id FROM " + TEMP_TRACKS + ")";
+
+        db.beginTransaction();
+        try {
+            updateTrackPointStats();
+            Map<Long, Long> fingerprints = getFingerprints();
+            Set<Long> changedTrackIds = getChangedTrackIds(fingerprints);
+
+            // Tracks deleted (or changed back) since the copy
+            for (long trackId : trackIds) {
+                if (!changedTrackIds.contains(trackId)) {
+                    db.execSQL("DELETE FROM " + SCHEMA + "." + trackPoints + " WHERE " + TrackPointsColumns.TRACKID + "=" + trackId);
+                    db.execSQL("DELETE FROM " + TEMP_TRACKS + " WHERE _id=" + trackId);
+                }
+            }
+
+            // Track points updated since the copy
+            db.execSQL("DELETE FROM " + SCHEMA + "." + trackPoints + " WHERE _id IN (SELECT _id FROM " + TEMP_MODIFIED + ")");
+            db.execSQL("INSERT INTO " + SCHEMA + "." + trackPoints + " SELECT * FROM main." + trackPoints
+                    + " WHERE _id IN (SELECT _id FROM " + TEMP_MODIFIED + ") AND _id <= " + lastTrackPointId + " AND " + TrackPointsColumns.TRACKID + inTrackIds);
+
+            // Tracks changed since the copy
+            for (long trackId : changedTrackIds) {
+                if (!trackIds.contains(trackId)) {
+                    db.execSQL("INSERT INTO " + SCHEMA + "." + trackPoints + " SELECT * FROM main." + trackPoints
+                            + " WHERE " + TrackPointsColumns.TRACKID + "=" + trackId + " AND _id <= " + lastTrackPointId);
+                    db.execSQL("INSERT INTO " + TEMP_TRACKS + " VALUES (" + trackId + ")");
+                }
+            }
+
+            // Track points inserted since the copy
+            db.execSQL("INSERT INTO " + SCHEMA + "." + trackPoints + " SELECT * FROM main." + trackPoints
+                    + " WHERE _id > " + lastTrackPointId + " AND " + TrackPointsColumns.TRACKID + inTrackIds);
+
+            db.execSQL("INSERT INTO " + SCHEMA + "." + TracksColumns.TABLE_NAME + " SELECT * FROM main." + TracksColumns.TABLE_NAME + " WHERE _id" + inTrackIds);
+            db.execSQL("INSERT INTO " + SCHEMA + "." + WaypointsColumns.TABLE_NAME + " SELECT * FROM main." + WaypointsColumns.TABLE_NAME + " WHERE " + WaypointsColumns.TRACKID + inTrackIds);
+            db.execSQL("INSERT INTO " + SCHEMA + "." + SplitsColumns.TABLE_NAME + " SELECT * FROM main." + SplitsColumns.TABLE_NAME + " WHERE " + SplitsColumns.TRACKID + inTrackIds);
+
+            writeState(fingerprints, changedTrackIds);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private void writeState(Map<Long, Long> fingerprints, Set<Long> changedTrackIds) {
+        SQLiteStatement statement = db.compileStatement("INSERT INTO " + SCHEMA + "." + STATE_TABLE + " VALUES (?, ?, ?, ?)");
+        try {
+            for (Map.Entry<Long, Long> entry : fingerprints.entrySet()) {
+                long[] stats = trackPointStats.get(entry.getKey());
+                statement.bindLong(1, entry.getKey());
+                statement.bindLong(2, entry.getValue());
+                statement.bindLong(3, stats != null ? stats[0] : 0L);
+                statement.bindLong(4, changedTrackIds.contains(entry.getKey()) ? 1L : 0L);
+                statement.executeInsert();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    private void cleanup(boolean attached) {
+        try {
+            db.execSQL("DROP TRIGGER IF EXISTS temp." + TEMP_TRIGGER);
+            db.execSQL("DROP TABLE IF EXISTS temp." + TEMP_TRACKS);
+            db.execSQL("DROP TABLE IF EXISTS temp." + TEMP_MODIFIED);
+            if (attached) {
+                db.execSQL("DETACH DATABASE " + SCHEMA);
+            }
+        } catch (SQLException e) {
+            Log.e(TAG, "Unable to clean up snapshot", e);
+        }
+    }
+
+    private void insertTrackIds(Set<Long> trackIds) {
+        SQLiteStatement statement = db.compileStatement("INSERT INTO " + TEMP_TRACKS + " VALUES (?)");
+        try {
+            for (long trackId : trackIds) {
+                statement.bindLong(1, trackId);
+                statement.executeInsert();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Gets the ids of the tracks whose fingerprint differs from the previous snapshot.
+     */
+    private Set<Long> getChangedTrackIds(Map<Long, Long> fingerprints) {
+        Set<Long> trackIds = new HashSet<>();
+        for (Map.Entry<Long, Long> entry : fingerprints.entrySet()) {
+            if (!entry.getValue().equals(previousFingerprints.get(entry.getKey()))) {
+                trackIds.add(entry.getKey());
+            }
+        }
+        return trackIds;
+    }
+
+    /**
+     * Updates the track point stats with the track points inserted since the last update.
+     */
+    private void updateTrackPointStats() {
+        try (Cursor cursor = db.rawQuery("SELECT " + TrackPointsColumns.TRACKID + ", COUNT(*), MAX(_id) FROM main." + TrackPointsColumns.TABLE_NAME
+                + " WHERE _id > ? GROUP BY " + TrackPointsColumns.TRACKID, new String[]{Long.toString(lastStatsTrackPointId)})) {
+            while (cursor.moveToNext()) {
+                long trackId = cursor.getLong(0);
+                long[] stats = trackPointStats.get(trackId);
+                if (stats == null) {
+                    stats = new long[2];
+                    trackPointStats.put(trackId, stats);
+                }
+                stats[0] += cursor.getLong(1);
+                stats[1] = cursor.getLong(2);
+                lastStatsTrackPointId = Math.max(lastStatsTrackPointId, stats[1]);
+            }
+        }
+    }
+
+    /**
+     * Gets the fingerprint of every track: a hash of the track, its waypoints, its splits, and the number and the largest id of its track points.
+     */
+    private Map<Long, Long> getFingerprints() {
+        Map<Long, Long> fingerprints = new HashMap<>();
+        try (Cursor cursor = db.rawQuery("SELECT * FROM main." + TracksColumns.TABLE_NAME, null)) {
+            int idIndex = cursor.getColumnIndexOrThrow(TracksColumns._ID);
+            while (cursor.moveToNext()) {
+                long trackId = cursor.getLong(idIndex);
+                long hash = hashRow(FNV_OFFSET_BASIS, cursor);
+                long[] stats = trackPointStats.get(trackId);
+                if (stats != null) {
+                    hash = hashLong(hashLong(hash, stats[0]), stats[1]);
+                }
+                fingerprints.put(trackId, hash);
+            }
+        }
+        hashRows(fingerprints, WaypointsColumns.TABLE_NAME, WaypointsColumns.TRACKID);
+        hashRows(fingerprints, SplitsColumns.TABLE_NAME, SplitsColumns.TRACKID);
+        return fingerprints;
+    }
+
+    /**
+     * Adds the rows of a table to the fingerprints of their tracks.
+     */
+    private void hashRows(Map<Long, Long> fingerprints, String table, String trackIdColumn) {
+        try (Cursor cursor = db.rawQuery("SELECT * FROM main." + table + " ORDER BY _id", null)) {
+            int trackIdIndex = cursor.getColumnIndexOrThrow(trackIdColumn);
+            while (cursor.moveToNext()) {
+                long trackId = cursor.getLong(trackIdIndex);
+                Long hash = fingerprints.get(trackId);
+                if (hash != null) {
+                    fingerprints.put(trackId, hashRow(hash, cursor));
+                }
+            }
+        }
+    }
+
+    /**
+     * Hashes (FNV-1a) the values of the current row of a cursor.
+     */
+    private static long hashRow(long hash, Cursor cursor) {
+        for (int i = 0; i < cursor.getColumnCount(); i++) {
+            int type = cursor.getType(i);
+            hash = hashByte(hash, type);
+            switch (type) {
+                case Cursor.FIELD_TYPE_INTEGER:
+                    hash = hashLong(hash, cursor.getLong(i));
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    hash = hashLong(hash, Double.doubleToLongBits(cursor.getDouble(i)));
+                    break;
+                case Cursor.FIELD_TYPE_STRING:
+                    String text = cursor.getString(i);
+                    for (int j = 0; j < text.length(); j++) {
+                        char c = text.charAt(j);
+                        hash = hashByte(hashByte(hash, c), c >>> 8);
+                    }
+                    break;
+                case Cursor.FIELD_TYPE_BLOB:
+                    for (byte b : cursor.getBlob(i)) {
+                        hash = hashByte(hash, b);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return hash;
+    }
+
+    private static long hashLong(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash = hashByte(hash, (int) (value >>> (8 * i)));
+        }
+        return hash;
+    }
+
+    private static long hashByte(long hash, int value) {
+        return (hash ^ (value & 0xFF)) * FNV_PRIME;
+    }
+}
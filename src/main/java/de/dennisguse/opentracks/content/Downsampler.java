@@ -0,0 +1,250 @@
+package de.dennisguse.opentracks.content;
+
+import java.util.Arrays;
+
+/**
+ * Selects the points of a series (a column of a {@link SamplingBuffer}) to draw into a number of pixel columns.
+ * Uses the min and max of merged rows, so extremes (e.g., heart rate spikes, max speed, summit elevation) are kept.
+ * NaN values are skipped.
+ * <p>
+ * The selected points are kept until the next call; not thread-safe.
+ */
+public class Downsampler {
+
+    public enum Mode {
+        /**
+         * Largest-Triangle-Three-Buckets: one point per pixel column (keeps the visual shape).
+         * The min and max of a row are both candidates; so, extremes are preferred.
+         */
+        LARGEST_TRIANGLE_THREE_BUCKETS,
+        /**
+         * The min and max per pixel column (at most two points per pixel column): every extreme is kept.
+         */
+        MIN_MAX
+    }
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final Mode mode;
+
+    // The selected points
+    private int[] rows = new int[INITIAL_CAPACITY];
+    private double[] values = new double[INITIAL_CAPACITY];
+    private int size = 0;
+
+    // The rows with a value
+    private int[] candidates = new int[INITIAL_CAPACITY];
+
+    public Downsampler(Mode mode) {
+        this.mode = mode;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Selects the points of a series.
+     *
+     * @param data       the data
+     * @param column     the column of the series
+     * @param from       the first row (inclusive)
+     * @param to         the last row (exclusive)
+     * @param numColumns the number of pixel columns of the x range of the rows
+     */
+    public void downsample(SamplingBuffer data, int column, int from, int to, int numColumns) {
+        size = 0;
+        int numCandidates = 0;
+        for (int row = from; row < to; row++) {
+            if (!Double.isNaN(data.getValue(row, column))) {
+                if (numCandidates == candidates.length) {
+                    candidates = Arrays.copyOf(candidates, numCandidates * 2);
+                }
+                candidates[numCandidates] = row;
+                numCandidates++;
+            }
+        }
+        if (numCandidates == 0) {
+            return;
+        }
+        numColumns = Math.max(1, numColumns);
+
+        switch (mode) {
+            case LARGEST_TRIANGLE_THREE_BUCKETS:
+                if (numCandidates <= numColumns || numColumns < 3) {
+                    addAll(data, column, numCandidates);
+                } else {
+                    largestTriangleThreeBuckets(data, column, numCandidates, numColumns);
+                }
+                break;
+            case MIN_MAX:
+                minMax(data, column, numCandidates, numColumns);
+                break;
+            default:
+                throw new IllegalStateException("Unknown mode " + mode);
+        }
+    }
+
+    /**
+     * Returns the number of selected points.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the row of a selected point.
+     */
+    public int getRow(int i) {
+        return rows[i];
+    }
+
+    /**
+     * Gets the value of a selected point (the value, min or max of the row).
+     */
+    public double getValue(int i) {
+        return values[i];
+    }
+
+    /**
+     * Adds all candidates; the min and max of merged rows.
+     */
+    private void addAll(SamplingBuffer data, int column, int numCandidates) {
+        for (int i = 0; i < numCandidates; i++) {
+            int row = candidates[i];
+            double min = data.getMin(row, column);
+            double max = data.getMax(row, column);
+            if (min == max) {
+                add(row, min);
+            } else {
+                // Start with the one closer to the previous value.
+                boolean minFirst = size == 0 || Math.abs(values[size - 1] - min) <= Math.abs(values[size - 1] - max);
+                add(row, minFirst ? min : max);
+                add(row, minFirst ? max : min);
+            }
+        }
+    }
+
+    /**
+     * Largest-Triangle-Three-Buckets (Steinarsson, 2013).
+     * The first and the last candidate are kept; the other candidates are split into numColumns - 2 buckets of equal size.
+     * From each bucket, the point forming the largest triangle with the previously selected point and the average of the next bucket is selected.
+     */
+    private void largestTriangleThreeBuckets(SamplingBuffer data, int column, int numCandidates, int numColumns) {
+        int firstRow = candidates[0];
+        add(firstRow, data.getValue(firstRow, column));
+
+        double bucketSize = (double) (numCandidates - 2) / (numColumns - 2);
+        double previousX = data.getX(firstRow);
+        double previousY = values[0];
+        for (int bucket = 0; bucket < numColumns - 2; bucket++) {
+            int bucketStart = 1 + (int) (bucket * bucketSize);
+            int bucketEnd = 1 + (int) ((bucket + 1) * bucketSize);
+
+            // The average of the next bucket (the last candidate for the last bucket)
+            int nextStart = bucketEnd;
+            int nextEnd = Math.min(numCandidates, 1 + (int) ((bucket + 2) * bucketSize));
+            if (bucket == numColumns - 3) {
+                nextStart = numCandidates - 1;
+                nextEnd = numCandidates;
+            }
+            double averageX = 0.0;
+            double averageY = 0.0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                averageX += data.getX(candidates[i]);
+                averageY += data.getValue(candidates[i], column);
+            }
+            averageX /= nextEnd - nextStart;
+            averageY /= nextEnd - nextStart;
+
+            int selectedRow = -1;
+            double selectedValue = Double.NaN;
+            double selectedArea = -1.0;
+            for (int i = bucketStart; i < bucketEnd; i++) {
+                int row = candidates[i];
+                double x = data.getX(row);
+                double min = data.getMin(row, column);
+                double max = data.getMax(row, column);
+                // Twice the triangle areas
+                double minArea = Math.abs((previousX - averageX) * (min - previousY) - (previousX - x) * (averageY - previousY));
+                double maxArea = Math.abs((previousX - averageX) * (max - previousY) - (previousX - x) * (averageY - previousY));
+                if (minArea > selectedArea) {
+                    selectedArea = minArea;
+                    selectedRow = row;
+                    selectedValue = min;
+                }
+                if (maxArea > selectedArea) {
+                    selectedArea = maxArea;
+                    selectedRow = row;
+                    selectedValue = max;
+                }
+            }
+            add(selectedRow, selectedValue);
+            previousX = data.getX(selectedRow);
+            previousY = selectedValue;
+        }
+
+        int lastRow = candidates[numCandidates - 1];
+        add(lastRow, data.getValue(lastRow, column));
+    }
+
+    /**
+     * Selects the min and max per pixel column (in order of the rows).
+     */
+    private void minMax(SamplingBuffer data, int column, int numCandidates, int numColumns) {
+        double minX = data.getX(candidates[0]);
+        double maxX = data.getX(candidates[numCandidates - 1]);
+        double columnsPerX = maxX > minX ? numColumns / (maxX - minX) : 0.0;
+
+        int currentColumn = -1;
+        int minRow = -1;
+        int maxRow = -1;
+        double min = Double.NaN;
+        double max = Double.NaN;
+        for (int i = 0; i < numCandidates; i++) {
+            int row = candidates[i];
+            int pixelColumn = Math.min(numColumns - 1, (int) ((data.getX(row) - minX) * columnsPerX));
+            if (pixelColumn != currentColumn) {
+                if (currentColumn != -1) {
+                    addMinMax(minRow, min, maxRow, max);
+                }
+                currentColumn = pixelColumn;
+                minRow = -1;
+                maxRow = -1;
+            }
+            double rowMin = data.getMin(row, column);
+            double rowMax = data.getMax(row, column);
+            if (minRow == -1 || rowMin < min) {
+                minRow = row;
+                min = rowMin;
+            }
+            if (maxRow == -1 || rowMax > max) {
+                maxRow = row;
+                max = rowMax;
+            }
+        }
+        addMinMax(minRow, min, maxRow, max);
+    }
+
+    private void addMinMax(int minRow, double min, int maxRow, double max) {
+        if (min == max) {
+            add(minRow, min);
+        } else if (minRow < maxRow || (minRow == maxRow && (size == 0 || Math.abs(values[size - 1] - min) <= Math.abs(values[size - 1] - max)))) {
+            add(minRow, min);
+            add(maxRow, max);
+        } else {
+            add(maxRow, max);
+            add(minRow, min);
+        }
+    }
+
+    private void add(int row, double value) {
+        if (size == rows.length) {
+            rows = Arrays.copyOf(rows, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        rows[size] = row;
+        values[size] = value;
+        size++;
+    }
+}
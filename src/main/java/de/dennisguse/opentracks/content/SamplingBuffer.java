@@ -0,0 +1,275 @@
+package de.dennisguse.opentracks.content;
+
+import java.util.Arrays;
+
+/**
+ * Stores sampled track points as rows (e.g., x value and the values of the chart series) with a resolution that can be halved in place.
+ * Halving merges each two consecutive rows into one bucket: the first x value, the mean and the min/max of each value column are kept.
+ * Point-sampled columns (see {@link #setPointSampled(int)}) keep the value of the first row instead of the mean.
+ * So, repeated halving (see {@link TrackDataListener#onSampledInTrackPointsHalved()}) keeps the extremes and the number of rows bounded without re-reading the track.
+ * NaN values (e.g., missing sensor data) are ignored: the mean of a column is weighted by the number of its non-NaN values, so sparse columns (e.g., heart rate) keep their real mean.
+ * <p>
+ * Columnar storage in primitive arrays: the x values as doubles (distance or time need the precision), the values of the other columns as floats (like the track points).
+ * About 16 bytes per value column and row; no object per row.
+ * <p>
+ * Not thread-safe.
+ */
+public class SamplingBuffer {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final int numColumns;
+    // The number of columns without the x value
+    private final int numValueColumns;
+
+    private double[] xs;
+    private float[] values;
+    private float[] mins;
+    private float[] maxs;
+    // The number of non-NaN values merged into a bucket per value column
+    private int[] valueCounts;
+    // The number of rows merged into a bucket
+    private int[] counts;
+    // The value columns keeping the value of the first row of a bucket
+    private final boolean[] pointSampled;
+
+    // See sample(): every samplingFrequency-th row is added, the others are merged.
+    private int samplingFrequency = 1;
+    private int numSampledRows = 0;
+    private int size = 0;
+
+    /**
+     * @param numColumns the number of columns; the first column is the x value
+     */
+    public SamplingBuffer(int numColumns) {
+        this.numColumns = numColumns;
+        numValueColumns = numColumns - 1;
+        xs = new double[INITIAL_CAPACITY];
+        values = new float[INITIAL_CAPACITY * numValueColumns];
+        mins = new float[INITIAL_CAPACITY * numValueColumns];
+        maxs = new float[INITIAL_CAPACITY * numValueColumns];
+        valueCounts = new int[INITIAL_CAPACITY * numValueColumns];
+        counts = new int[INITIAL_CAPACITY];
+        pointSampled = new boolean[numValueColumns];
+    }
+
+    /**
+     * Keeps the value of the first row of a bucket (matching the kept x value) instead of the mean for a column.
+     * For values increasing with x (e.g., the total time by distance): the mean would lag half a bucket behind the x value.
+     * The min/max are still merged.
+     *
+     * @param column the column (not the x value)
+     */
+    public void setPointSampled(int column) {
+        pointSampled[column - 1] = true;
+    }
+
+    /**
+     * Adds a row.
+     *
+     * @param row the row (numColumns values)
+     */
+    public void add(double[] row) {
+        if (size == counts.length) {
+            int capacity = counts.length * 2;
+            xs = Arrays.copyOf(xs, capacity);
+            values = Arrays.copyOf(values, capacity * numValueColumns);
+            mins = Arrays.copyOf(mins, capacity * numValueColumns);
+            maxs = Arrays.copyOf(maxs, capacity * numValueColumns);
+            valueCounts = Arrays.copyOf(valueCounts, capacity * numValueColumns);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        xs[size] = row[0];
+        int offset = size * numValueColumns;
+        for (int column = 1; column < numColumns; column++) {
+            float value = (float) row[column];
+            values[offset + column - 1] = value;
+            mins[offset + column - 1] = value;
+            maxs[offset + column - 1] = value;
+            valueCounts[offset + column - 1] = Float.isNaN(value) ? 0 : 1;
+        }
+        counts[size] = 1;
+        size++;
+    }
+
+    /**
+     * Merges a row into the last row (e.g., a sampled out track point); keeps the x value of the last row.
+     * Adds the row if empty.
+     *
+     * @param row the row (numColumns values)
+     */
+    public void merge(double[] row) {
+        add(row);
+        if (size > 1) {
+            merge(size - 2, size - 1, size - 2);
+            size--;
+        }
+    }
+
+    /**
+     * Adds a row of a sequence keeping at most maxRows rows: every samplingFrequency-th row is added and the others are merged into the last row.
+     * If there are more than maxRows rows, halves and doubles the sampling frequency; so, all rows cover the same number of sampled rows (except the last one).
+     *
+     * @param row     the row (numColumns values)
+     * @param maxRows the max number of rows
+     */
+    public void sample(double[] row, int maxRows) {
+        if (numSampledRows % samplingFrequency == 0) {
+            add(row);
+        } else {
+            merge(row);
+        }
+        numSampledRows++;
+        if (size > maxRows) {
+            halve();
+            samplingFrequency *= 2;
+        }
+    }
+
+    /**
+     * Halves the resolution: merges the rows 2i and 2i+1 into row i.
+     */
+    public void halve() {
+        int newSize = 0;
+        for (int i = 0; i < size; i += 2) {
+            if (i + 1 < size) {
+                merge(i, i + 1, newSize);
+            } else {
+                move(i, newSize);
+            }
+            newSize++;
+        }
+        size = newSize;
+    }
+
+    public void clear() {
+        size = 0;
+        samplingFrequency = 1;
+        numSampledRows = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gets the x value (the first column) of a row.
+     */
+    public double getX(int row) {
+        return xs[row];
+    }
+
+    /**
+     * Gets the row with the x value closest to a x value (binary search; the x values are not decreasing).
+     *
+     * @param x the x value
+     * @return the row or -1 if empty
+     */
+    public int getNearestRow(double x) {
+        if (size == 0) {
+            return -1;
+        }
+        int index = Arrays.binarySearch(xs, 0, size, x);
+        if (index >= 0) {
+            return index;
+        }
+        int insertionPoint = -index - 1;
+        if (insertionPoint == 0) {
+            return 0;
+        }
+        if (insertionPoint == size) {
+            return size - 1;
+        }
+        return x - xs[insertionPoint - 1] <= xs[insertionPoint] - x ? insertionPoint - 1 : insertionPoint;
+    }
+
+    /**
+     * Gets the mean value of a column of a row.
+     */
+    public double getValue(int row, int column) {
+        return column == 0 ? xs[row] : values[row * numValueColumns + column - 1];
+    }
+
+    /**
+     * Gets the min value of a column of a row; the x value for the first column.
+     */
+    public double getMin(int row, int column) {
+        return column == 0 ? xs[row] : mins[row * numValueColumns + column - 1];
+    }
+
+    /**
+     * Gets the max value of a column of a row; the x value for the first column.
+     */
+    public double getMax(int row, int column) {
+        return column == 0 ? xs[row] : maxs[row * numValueColumns + column - 1];
+    }
+
+    /**
+     * Gets the number of added rows merged into a row.
+     */
+    public int getCount(int row) {
+        return counts[row];
+    }
+
+    /**
+     * Copies the mean values of a row.
+     *
+     * @param row    the row
+     * @param target the target (numColumns values)
+     */
+    public void getRow(int row, double[] target) {
+        target[0] = xs[row];
+        int offset = row * numValueColumns;
+        for (int column = 1; column < numColumns; column++) {
+            target[column] = values[offset + column - 1];
+        }
+    }
+
+    private void merge(int first, int second, int target) {
+        int firstOffset = first * numValueColumns;
+        int secondOffset = second * numValueColumns;
+        int targetOffset = target * numValueColumns;
+
+        // Keep the x value of the first row.
+        xs[target] = xs[first];
+        for (int column = 0; column < numValueColumns; column++) {
+            float firstValue = values[firstOffset + column];
+            float secondValue = values[secondOffset + column];
+            if (Float.isNaN(firstValue)) {
+                values[targetOffset + column] = secondValue;
+                mins[targetOffset + column] = mins[secondOffset + column];
+                maxs[targetOffset + column] = maxs[secondOffset + column];
+                valueCounts[targetOffset + column] = valueCounts[secondOffset + column];
+            } else if (Float.isNaN(secondValue)) {
+                values[targetOffset + column] = firstValue;
+                mins[targetOffset + column] = mins[firstOffset + column];
+                maxs[targetOffset + column] = maxs[firstOffset + column];
+                valueCounts[targetOffset + column] = valueCounts[firstOffset + column];
+            } else {
+                int firstCount = valueCounts[firstOffset + column];
+                int secondCount = valueCounts[secondOffset + column];
+                values[targetOffset + column] = pointSampled[column] ? firstValue : (float) (((double) firstValue * firstCount + (double) secondValue * secondCount) / (firstCount + secondCount));
+                mins[targetOffset + column] = Math.min(mins[firstOffset + column], mins[secondOffset + column]);
+                maxs[targetOffset + column] = Math.max(maxs[firstOffset + column], maxs[secondOffset + column]);
+                valueCounts[targetOffset + column] = firstCount + secondCount;
+            }
+        }
+        counts[target] = counts[first] + counts[second];
+    }
+
+    private void move(int source, int target) {
+        if (source == target) {
+            return;
+        }
+        xs[target] = xs[source];
+        System.arraycopy(values, source * numValueColumns, values, target * numValueColumns, numValueColumns);
+        System.arraycopy(mins, source * numValueColumns, mins, target * numValueColumns, numValueColumns);
+        System.arraycopy(maxs, source * numValueColumns, maxs, target * numValueColumns, numValueColumns);
+        System.arraycopy(valueCounts, source * numValueColumns, valueCounts, target * numValueColumns, numValueColumns);
+        counts[target] = counts[source];
+    }
+}
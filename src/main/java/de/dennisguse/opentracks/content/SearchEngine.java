@@ -29,6 +29,7 @@ import java.util.SortedSet;
 import java.util.TreeSet;
 
 import de.dennisguse.opentracks.stats.TripStatistics;
+import de.dennisguse.opentracks.util.GeodesyUtils;
 import de.dennisguse.opentracks.util.LocationUtils;
 import de.dennisguse.opentracks.util.UnitConversions;
 
@@ -356,15 +357,8 @@ public class SearchEngine {
             return 1.0;
         }
 
-        float[] distanceResults = new float[1];
-
-        Location.distanceBetween(
-                latitude, longitude,
-                query.currentLocation.getLatitude(), query.currentLocation.getLongitude(),
-                distanceResults);
-
         // Score tracks close to the current location higher.
-        double distanceKm = distanceResults[0] * UnitConversions.M_TO_KM;
+        double distanceKm = GeodesyUtils.haversine(latitude, longitude, query.currentLocation.getLatitude(), query.currentLocation.getLongitude()) * UnitConversions.M_TO_KM;
 
         if (distanceKm > 0.0) {
             // Use the inverse of the amortized distance.
@@ -0,0 +1,136 @@
+package de.dennisguse.opentracks.content;
+
+import androidx.annotation.NonNull;
+
+import de.dennisguse.opentracks.util.UnitConversions;
+
+/**
+ * A completed kilometer or mile of a track.
+ */
+public class Split {
+
+    private long id = -1L;
+    private long trackId = -1L;
+    private boolean metric = true;
+    private int number = 0;
+    // Distance (m) of the split
+    private double distance = 0.0;
+    // Total time (ms) of the split
+    private long totalTime = 0L;
+    // Moving time (ms) of the split
+    private long movingTime = 0L;
+    // Elevation gain (m) of the split
+    private double elevationGain = 0.0;
+    // Average heart rate (bpm) of the split; NaN if not available
+    private float averageHeartRate = Float.NaN;
+    // The time the split was completed
+    private long stopTime = -1L;
+
+    public Split() {
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public long getTrackId() {
+        return trackId;
+    }
+
+    public void setTrackId(long trackId) {
+        this.trackId = trackId;
+    }
+
+    /**
+     * True for a kilometer split; false for a mile split.
+     */
+    public boolean isMetric() {
+        return metric;
+    }
+
+    public void setMetric(boolean metric) {
+        this.metric = metric;
+    }
+
+    /**
+     * Gets the number of the split (starting with 1).
+     */
+    public int getNumber() {
+        return number;
+    }
+
+    public void setNumber(int number) {
+        this.number = number;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    public void setDistance(double distance) {
+        this.distance = distance;
+    }
+
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    public void setTotalTime(long totalTime) {
+        this.totalTime = totalTime;
+    }
+
+    public long getMovingTime() {
+        return movingTime;
+    }
+
+    public void setMovingTime(long movingTime) {
+        this.movingTime = movingTime;
+    }
+
+    public double getElevationGain() {
+        return elevationGain;
+    }
+
+    public void setElevationGain(double elevationGain) {
+        this.elevationGain = elevationGain;
+    }
+
+    public float getAverageHeartRate() {
+        return averageHeartRate;
+    }
+
+    public void setAverageHeartRate(float averageHeartRate) {
+        this.averageHeartRate = averageHeartRate;
+    }
+
+    public boolean hasAverageHeartRate() {
+        return !Float.isNaN(averageHeartRate);
+    }
+
+    public long getStopTime() {
+        return stopTime;
+    }
+
+    public void setStopTime(long stopTime) {
+        this.stopTime = stopTime;
+    }
+
+    /**
+     * Gets the average moving speed (m/s) of the split.
+     */
+    public double getAverageMovingSpeed() {
+        return movingTime > 0 ? distance / (movingTime * UnitConversions.MS_TO_S) : 0.0;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "Split { " + (metric ? "km " : "mi ") + number + "; Distance: " + distance
+                + "; Total time: " + totalTime + "; Moving time: " + movingTime
+                + "; Elevation gain: " + elevationGain + "; Heart rate: " + averageHeartRate + "}";
+    }
+}
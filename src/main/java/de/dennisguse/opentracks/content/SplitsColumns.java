@@ -0,0 +1,43 @@
+package de.dennisguse.opentracks.content;
+
+import android.net.Uri;
+import android.provider.BaseColumns;
+
+/**
+ * Constants for the splits table.
+ * A split is a completed kilometer or mile of a track; only completed splits are stored (append-only).
+ */
+public interface SplitsColumns extends BaseColumns {
+
+    String TABLE_NAME = "splits";
+    Uri CONTENT_URI = Uri.parse(ContentProviderUtils.CONTENT_BASE_URI + "/splits");
+    String CONTENT_TYPE = "vnd.android.cursor.dir/vnd.de.dennisguse.split";
+    String CONTENT_ITEMTYPE = "vnd.android.cursor.item/vnd.de.dennisguse.split";
+    String DEFAULT_SORT_ORDER = "_id";
+
+    // Columns
+    String TRACKID = "trackid"; // track id
+    String METRIC = "metric"; // 1 for kilometer splits, 0 for mile splits
+    String NUMBER = "number"; // split number (starting with 1)
+    String DISTANCE = "distance"; // distance of the split
+    String TOTALTIME = "totaltime"; // total time of the split
+    String MOVINGTIME = "movingtime"; // moving time of the split
+    String ELEVATIONGAIN = "elevationgain"; // elevation gain of the split
+    String AVGHEARTRATE = "avgheartrate"; // average heart rate of the split
+    String STOPTIME = "stoptime"; // time the split was completed
+
+    String CREATE_TABLE = "CREATE TABLE " + TABLE_NAME + " ("
+            + _ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + TRACKID + " INTEGER, "
+            + METRIC + " INTEGER, "
+            + NUMBER + " INTEGER, "
+            + DISTANCE + " FLOAT, "
+            + TOTALTIME + " INTEGER, "
+            + MOVINGTIME + " INTEGER, "
+            + ELEVATIONGAIN + " FLOAT, "
+            + AVGHEARTRATE + " FLOAT, "
+            + STOPTIME + " INTEGER"
+            + ");";
+
+    String CREATE_INDEX = "CREATE INDEX " + TABLE_NAME + "_" + TRACKID + "_index ON " + TABLE_NAME + "(" + TRACKID + ", " + METRIC + ", " + NUMBER + ");";
+}
@@ -21,6 +21,7 @@ import android.location.Location;
 import java.util.ArrayList;
 import java.util.List;
 
+import de.dennisguse.opentracks.stats.SensorStatistics;
 import de.dennisguse.opentracks.stats.TripStatistics;
 
 /**
@@ -45,6 +46,7 @@ public class Track {
     private String icon = "";
 
     private TripStatistics tripStatistics = new TripStatistics();
+    private SensorStatistics sensorStatistics = new SensorStatistics();
 
     // Location points (which may not have been loaded)
     private List<Location> locations = new ArrayList<>();
@@ -124,6 +126,14 @@ public class Track {
         this.tripStatistics = tripStatistics;
     }
 
+    public SensorStatistics getSensorStatistics() {
+        return sensorStatistics;
+    }
+
+    public void setSensorStatistics(SensorStatistics sensorStatistics) {
+        this.sensorStatistics = sensorStatistics;
+    }
+
     public void addLocation(Location location) {
         locations.add(location);
     }
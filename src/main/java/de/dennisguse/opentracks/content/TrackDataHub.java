@@ -18,7 +18,6 @@ package de.dennisguse.opentracks.content;
 
 import android.content.Context;
 import android.database.Cursor;
-import android.location.Location;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.util.Log;
@@ -30,7 +29,6 @@ import java.util.EnumSet;
 import java.util.Set;
 
 import de.dennisguse.opentracks.R;
-import de.dennisguse.opentracks.content.ContentProviderUtils.LocationIterator;
 import de.dennisguse.opentracks.util.LocationUtils;
 import de.dennisguse.opentracks.util.PreferencesUtils;
 
@@ -78,6 +76,15 @@ public class TrackDataHub implements DataSourceListener {
     private int numLoadedPoints;
     private long firstSeenLocationId;
     private long lastSeenLocationId;
+    // The track points of the selected track as of the last update
+    private volatile TrackPointCache.Snapshot trackPoints;
+    // Every samplingFrequency-th point is sampled in; -1 if not yet known
+    private int samplingFrequency;
+    // The samplingFrequency before halving; -1 if not yet known
+    private int initialSamplingFrequency;
+    private int numSampledInPoints;
+    // True to sample in the next point (after a segment split)
+    private boolean includeNextPoint;
 
     /**
      * Constructor.
@@ -239,10 +246,21 @@ public class TrackDataHub implements DataSourceListener {
     }
 
     @Override
-    public void notifyTrackPointsTableUpdated() {
+    public void notifyTrackPointsTableUpdated(final long trackId, final long firstTrackPointId, final long lastTrackPointId) {
         runInHandlerThread(new Runnable() {
             @Override
             public void run() {
+                if (trackId != -1L) {
+                    TrackPointCache.getInstance().notifyTrackPointsInserted(trackId);
+                    if (trackId != selectedTrackId) {
+                        // Track points of another track
+                        return;
+                    }
+                }
+                if (lastTrackPointId != -1L && lastTrackPointId <= lastSeenLocationId) {
+                    // Already read
+                    return;
+                }
                 notifyTrackPointsTableUpdate(true, trackDataManager.getListeners(TrackDataType.SAMPLED_IN_TRACK_POINTS_TABLE),
                         trackDataManager.getListeners(TrackDataType.SAMPLED_OUT_TRACK_POINTS_TABLE));
             }
@@ -430,77 +448,113 @@ public class TrackDataHub implements DataSourceListener {
             return;
         }
 
-        if (updateSamplingState && numLoadedPoints >= targetNumPoints) {
-            // Reload and resample the track at a lower frequency.
-            Log.i(TAG, "Resampling track after " + numLoadedPoints + " points.");
-            resetSamplingState();
-            for (TrackDataListener listener : sampledInListeners) {
-                listener.clearTrackPoints();
-            }
+        if (!updateSamplingState && lastSeenLocationId == -1L) {
+            // Nothing seen yet: the next update delivers the track points to all listeners.
+            return;
         }
 
         int localNumLoadedPoints = updateSamplingState ? numLoadedPoints : 0;
         long localFirstSeenLocationId = updateSamplingState ? firstSeenLocationId : -1L;
         long localLastSeenLocationId = updateSamplingState ? lastSeenLocationId : -1L;
         long maxPointId = updateSamplingState ? -1L : lastSeenLocationId;
+        /*
+         * A listener loading the already seen points starts with the initial frequency and is halved at the same points as the other listeners.
+         * So, all listeners keep the same sampled in points.
+         */
+        int localSamplingFrequency = updateSamplingState ? samplingFrequency : initialSamplingFrequency;
+        int localInitialSamplingFrequency = initialSamplingFrequency;
+        int localNumSampledInPoints = updateSamplingState ? numSampledInPoints : 0;
+        boolean localIncludeNextPoint = updateSamplingState && includeNextPoint;
+
+        TrackPointCache.Snapshot snapshot = TrackPointCache.getInstance().getTrackPoints(contentProviderUtils, selectedTrackId);
+        trackPoints = snapshot;
+        long lastTrackPointId = snapshot.isEmpty() ? -1L : snapshot.getId(snapshot.size() - 1);
+
+        // With and without the sampled out track points
+        TrackPointBatch batch = new TrackPointBatch(snapshot);
+        TrackPointBatch sampledInBatch = new TrackPointBatch(snapshot);
+
+        for (int index = snapshot.getIndex(localLastSeenLocationId + 1); index < snapshot.size(); index++) {
+            long locationId = snapshot.getId(index);
+
+            // Stop if past the last wanted point
+            if (maxPointId != -1L && locationId > maxPointId) {
+                break;
+            }
 
-        long lastTrackPointId = contentProviderUtils.getLastTrackPointId(selectedTrackId);
-        int samplingFrequency = -1;
-        boolean includeNextPoint = false;
-
-        try (LocationIterator locationIterator = contentProviderUtils.getTrackPointLocationIterator(selectedTrackId, localLastSeenLocationId + 1, false, ContentProviderUtils.DEFAULT_LOCATION_FACTORY)) {
-
-            while (locationIterator.hasNext()) {
-                Location location = locationIterator.next();
-                long locationId = locationIterator.getLocationId();
-
-                // Stop if past the last wanted point
-                if (maxPointId != -1L && locationId > maxPointId) {
-                    break;
-                }
-
-                if (localFirstSeenLocationId == -1) {
-                    localFirstSeenLocationId = locationId;
-                }
+            if (localFirstSeenLocationId == -1) {
+                localFirstSeenLocationId = locationId;
+            }
 
-                if (samplingFrequency == -1) {
-                    long numTotalPoints = Math.max(0L, lastTrackPointId - localFirstSeenLocationId);
-                    samplingFrequency = 1 + (int) (numTotalPoints / targetNumPoints);
-                }
+            if (localSamplingFrequency == -1) {
+                long numTotalPoints = Math.max(0L, lastTrackPointId - localFirstSeenLocationId);
+                localSamplingFrequency = 1 + (int) (numTotalPoints / targetNumPoints);
+                localInitialSamplingFrequency = localSamplingFrequency;
+            }
 
-                if (!LocationUtils.isValidLocation(location)) {
-                    // TODO: also include the last valid point before a split
-                    for (TrackDataListener trackDataListener : sampledInListeners) {
-                        trackDataListener.onSegmentSplit(location);
-                        includeNextPoint = true;
-                    }
-                } else {
-                    // Also include the last point if the selected track is not recording.
-                    if (includeNextPoint || (localNumLoadedPoints % samplingFrequency == 0) || (locationId == lastTrackPointId && !isSelectedTrackRecording())) {
-                        includeNextPoint = false;
+            if (!snapshot.isValid(index)) {
+                // TODO: also include the last valid point before a split
+                batch.add(index, TrackPointBatch.Kind.SEGMENT_SPLIT);
+                sampledInBatch.add(index, TrackPointBatch.Kind.SEGMENT_SPLIT);
+                localIncludeNextPoint = true;
+            } else {
+                // Also include the last point if the selected track is not recording.
+                if (localIncludeNextPoint || (localNumLoadedPoints % localSamplingFrequency == 0) || (locationId == lastTrackPointId && !isSelectedTrackRecording())) {
+                    localIncludeNextPoint = false;
+                    batch.add(index, TrackPointBatch.Kind.SAMPLED_IN);
+                    sampledInBatch.add(index, TrackPointBatch.Kind.SAMPLED_IN);
+                    localNumSampledInPoints++;
+
+                    if (localNumSampledInPoints >= targetNumPoints) {
+                        // Halve the resolution of the sampled in points instead of reloading the track at a lower frequency.
+                        Log.i(TAG, "Halving sampled in track points after " + localNumLoadedPoints + " points.");
+                        localSamplingFrequency *= 2;
+                        localNumSampledInPoints = (localNumSampledInPoints + 1) / 2;
+                        notifyNewTrackPoints(sampledInListeners, sampledOutListeners, batch, sampledInBatch);
                         for (TrackDataListener trackDataListener : sampledInListeners) {
-                            trackDataListener.onSampledInTrackPoint(location);
-                        }
-                    } else {
-                        for (TrackDataListener trackDataListener : sampledOutListeners) {
-                            trackDataListener.onSampledOutTrackPoint(location);
+                            trackDataListener.onSampledInTrackPointsHalved();
                         }
+                        batch = new TrackPointBatch(snapshot);
+                        sampledInBatch = new TrackPointBatch(snapshot);
                     }
+                } else {
+                    batch.add(index, TrackPointBatch.Kind.SAMPLED_OUT);
                 }
-
-                localNumLoadedPoints++;
-                localLastSeenLocationId = locationId;
             }
+
+            localNumLoadedPoints++;
+            localLastSeenLocationId = locationId;
         }
 
         if (updateSamplingState) {
             numLoadedPoints = localNumLoadedPoints;
             firstSeenLocationId = localFirstSeenLocationId;
             lastSeenLocationId = localLastSeenLocationId;
+            samplingFrequency = localSamplingFrequency;
+            initialSamplingFrequency = localInitialSamplingFrequency;
+            numSampledInPoints = localNumSampledInPoints;
+            includeNextPoint = localIncludeNextPoint;
         }
 
-        for (TrackDataListener listener : sampledInListeners) {
-            listener.onNewTrackPointsDone();
+        notifyNewTrackPoints(sampledInListeners, sampledOutListeners, batch, sampledInBatch);
+    }
+
+    /**
+     * Notifies new track points; to be run in the {@link #handler} thread.
+     *
+     * @param sampledInListeners  the sampled-in listeners
+     * @param sampledOutListeners the sampled-out listeners
+     * @param batch               the batch including the sampled out track points
+     * @param sampledInBatch      the batch without the sampled out track points
+     */
+    private void notifyNewTrackPoints(Set<TrackDataListener> sampledInListeners, Set<TrackDataListener> sampledOutListeners, TrackPointBatch batch, TrackPointBatch sampledInBatch) {
+        for (TrackDataListener trackDataListener : sampledInListeners) {
+            trackDataListener.onNewTrackPoints(sampledOutListeners.contains(trackDataListener) ? batch : sampledInBatch);
+        }
+        for (TrackDataListener trackDataListener : sampledOutListeners) {
+            if (!sampledInListeners.contains(trackDataListener)) {
+                trackDataListener.onNewTrackPoints(batch);
+            }
         }
     }
 
@@ -511,6 +565,10 @@ public class TrackDataHub implements DataSourceListener {
         numLoadedPoints = 0;
         firstSeenLocationId = -1L;
         lastSeenLocationId = -1L;
+        samplingFrequency = -1;
+        initialSamplingFrequency = -1;
+        numSampledInPoints = 0;
+        includeNextPoint = false;
     }
 
     /**
@@ -536,6 +594,16 @@ public class TrackDataHub implements DataSourceListener {
         handler.post(runnable);
     }
 
+    /**
+     * Gets the track points of the selected track as of the last notification of the {@link TrackDataListener}s.
+     * The snapshot is immutable and shared; so, it must not be modified.
+     *
+     * @return the track points or null if not loaded yet
+     */
+    public TrackPointCache.Snapshot getTrackPoints() {
+        return trackPoints;
+    }
+
     /**
      * Gets the value selectedTrackId.
      *
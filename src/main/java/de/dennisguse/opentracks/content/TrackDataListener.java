@@ -16,8 +16,6 @@
 
 package de.dennisguse.opentracks.content;
 
-import android.location.Location;
-
 /**
  * Listener for track data changes.
  *
@@ -38,29 +36,21 @@ public interface TrackDataListener {
     void clearTrackPoints();
 
     /**
-     * Called when a sampled in track point is read.
-     *
-     * @param location the location
-     */
-    void onSampledInTrackPoint(Location location);
-
-    /**
-     * Called when a sampled out track point is read.
+     * Called when new track points are read.
+     * Gets called once per change of the track points table (and after {@link #clearTrackPoints()} with the already recorded track points).
+     * A batch ends before {@link #onSampledInTrackPointsHalved()}.
+     * Sampled out track points are only included if the listener is registered for {@link TrackDataType#SAMPLED_OUT_TRACK_POINTS_TABLE}.
      *
-     * @param location the location
-     */
-    void onSampledOutTrackPoint(Location location);
-
-    /**
-     * Called when an invalid track point representing a segment split is read.
+     * @param trackPointBatch the track points (might be empty)
      */
-    void onSegmentSplit(Location location);
+    void onNewTrackPoints(TrackPointBatch trackPointBatch);
 
     /**
-     * Called when finish sending new track points.
-     * This gets called after every batch of calls to {@link #onSampledInTrackPoint(Location)}, {@link #onSampledOutTrackPoint(Location)} and {@link #onSegmentSplit(Location)}.
+     * Called when the sampling frequency was doubled while reading new track points.
+     * The sampled in track points received since {@link #clearTrackPoints()} should be halved by merging each two consecutive points (e.g., with a {@link SamplingBuffer}).
+     * Also called while loading the already recorded track points after {@link #clearTrackPoints()}, so all listeners keep the same sampled in track points.
      */
-    void onNewTrackPointsDone();
+    void onSampledInTrackPointsHalved();
 
     /**
      * Called to clear previously sent waypoints.
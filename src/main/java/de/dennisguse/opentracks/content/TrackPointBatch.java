@@ -0,0 +1,93 @@
+package de.dennisguse.opentracks.content;
+
+import java.util.Arrays;
+
+/**
+ * A batch of new track points for a {@link TrackDataListener}.
+ * Contains the rows of a {@link TrackPointCache.Snapshot} (in order of the track point ids) and the kind of each row; so, the values are read from the columns of the snapshot instead of one {@link android.location.Location} per track point.
+ * <p>
+ * Immutable once delivered; may be kept by the listener.
+ */
+public class TrackPointBatch {
+
+    public enum Kind {
+        SAMPLED_IN,
+        SAMPLED_OUT,
+        /**
+         * An invalid track point representing a segment split.
+         */
+        SEGMENT_SPLIT
+    }
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final TrackPointCache.Snapshot trackPoints;
+    private int[] indices = new int[INITIAL_CAPACITY];
+    private Kind[] kinds = new Kind[INITIAL_CAPACITY];
+    private int size = 0;
+
+    TrackPointBatch(TrackPointCache.Snapshot trackPoints) {
+        this.trackPoints = trackPoints;
+    }
+
+    void add(int index, Kind kind) {
+        if (size == indices.length) {
+            indices = Arrays.copyOf(indices, size * 2);
+            kinds = Arrays.copyOf(kinds, size * 2);
+        }
+        indices[size] = index;
+        kinds[size] = kind;
+        size++;
+    }
+
+    /**
+     * Gets the track points; the rows refer to them.
+     */
+    public TrackPointCache.Snapshot getTrackPoints() {
+        return trackPoints;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gets the index of a row in {@link #getTrackPoints()}.
+     *
+     * @param row the row
+     */
+    public int getIndex(int row) {
+        return indices[row];
+    }
+
+    public Kind getKind(int row) {
+        return kinds[row];
+    }
+
+    /**
+     * Gets the track point id of the first row or -1L if empty.
+     */
+    public long getFirstTrackPointId() {
+        return size > 0 ? trackPoints.getId(indices[0]) : -1L;
+    }
+
+    /**
+     * Gets the track point id of the last row or -1L if empty.
+     */
+    public long getLastTrackPointId() {
+        return size > 0 ? trackPoints.getId(indices[size - 1]) : -1L;
+    }
+
+    /**
+     * Creates a location for a row (for code still working with {@link android.location.Location}s).
+     *
+     * @param row the row
+     */
+    public SensorDataSetLocation createLocation(int row) {
+        return trackPoints.createLocation(indices[row]);
+    }
+}
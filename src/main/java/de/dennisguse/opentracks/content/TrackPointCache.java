@@ -0,0 +1,388 @@
+package de.dennisguse.opentracks.content;
+
+import android.location.Location;
+import android.location.LocationManager;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import de.dennisguse.opentracks.content.ContentProviderUtils.LocationFactory;
+import de.dennisguse.opentracks.content.ContentProviderUtils.LocationIterator;
+import de.dennisguse.opentracks.content.sensor.SensorDataSet;
+import de.dennisguse.opentracks.util.GeodesyUtils;
+import de.dennisguse.opentracks.util.LocationUtils;
+
+/**
+ * Process-wide in-memory cache of the track points of tracks in columns of primitive arrays.
+ * A track is read once; afterwards only new track points are read (if track points were inserted since).
+ * Readers get immutable {@link Snapshot}s, so the columns can be shared without copying.
+ * <p>
+ * The number of cached track points is bounded; the least recently used tracks are dropped.
+ * Thread-safe.
+ */
+public class TrackPointCache {
+
+    /**
+     * Maximal number of cached track points (about 60 bytes each).
+     */
+    @VisibleForTesting
+    static final int MAX_CACHED_POINTS = 250000;
+
+    private static TrackPointCache instance;
+
+    private final int maxPoints;
+    // In access order
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    @VisibleForTesting
+    TrackPointCache(int maxPoints) {
+        this.maxPoints = maxPoints;
+    }
+
+    public static synchronized TrackPointCache getInstance() {
+        if (instance == null) {
+            instance = new TrackPointCache(MAX_CACHED_POINTS);
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the track points of a track.
+     * Only reads the database if the track is not cached or track points were inserted since.
+     *
+     * @param contentProviderUtils the content provider utils
+     * @param trackId              the track id
+     */
+    public Snapshot getTrackPoints(ContentProviderUtils contentProviderUtils, long trackId) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(trackId);
+            if (entry == null) {
+                entry = new Entry();
+                entries.put(trackId, entry);
+            }
+        }
+
+        Snapshot snapshot = entry.update(contentProviderUtils, trackId);
+
+        synchronized (this) {
+            evict(trackId);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Marks that track points were inserted into a track.
+     *
+     * @param trackId the track id
+     */
+    public synchronized void notifyTrackPointsInserted(long trackId) {
+        Entry entry = entries.get(trackId);
+        if (entry != null) {
+            entry.dirty = true;
+        }
+    }
+
+    /**
+     * Removes a track (e.g., if track points were deleted or changed).
+     *
+     * @param trackId the track id
+     */
+    public synchronized void invalidate(long trackId) {
+        entries.remove(trackId);
+    }
+
+    /**
+     * Removes all tracks.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Drops the least recently used tracks until the number of track points is below the maximum.
+     *
+     * @param keepTrackId the track id to keep
+     */
+    private void evict(long keepTrackId) {
+        int numPoints = 0;
+        for (Entry entry : entries.values()) {
+            numPoints += entry.size;
+        }
+        Iterator<Map.Entry<Long, Entry>> iterator = entries.entrySet().iterator();
+        while (numPoints > maxPoints && iterator.hasNext()) {
+            Map.Entry<Long, Entry> entry = iterator.next();
+            if (entry.getKey() != keepTrackId) {
+                numPoints -= entry.getValue().size;
+                iterator.remove();
+            }
+        }
+    }
+
+    @VisibleForTesting
+    synchronized boolean contains(long trackId) {
+        return entries.containsKey(trackId);
+    }
+
+    /**
+     * The columns of a track; only appended.
+     */
+    private static class Entry {
+
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private long[] ids = new long[INITIAL_CAPACITY];
+        private long[] times = new long[INITIAL_CAPACITY];
+        private int[] latitudesE6 = new int[INITIAL_CAPACITY];
+        private int[] longitudesE6 = new int[INITIAL_CAPACITY];
+        private float[] altitudes = new float[INITIAL_CAPACITY];
+        private float[] accuracies = new float[INITIAL_CAPACITY];
+        private float[] speeds = new float[INITIAL_CAPACITY];
+        private float[] bearings = new float[INITIAL_CAPACITY];
+        private float[] heartRates = new float[INITIAL_CAPACITY];
+        private float[] cadences = new float[INITIAL_CAPACITY];
+        private float[] powers = new float[INITIAL_CAPACITY];
+        private double[] distances = new double[INITIAL_CAPACITY];
+        private boolean[] valids = new boolean[INITIAL_CAPACITY];
+        private volatile int size = 0;
+
+        // Track points were inserted since the last update.
+        private volatile boolean dirty = true;
+
+        // The last valid location; NaN after a pause
+        private double lastLatitude = Double.NaN;
+        private double lastLongitude = Double.NaN;
+        private double distance = 0.0;
+        private Snapshot snapshot;
+
+        synchronized Snapshot update(ContentProviderUtils contentProviderUtils, long trackId) {
+            if (!dirty && snapshot != null) {
+                return snapshot;
+            }
+            // Reset before reading; so, inserts while reading are read next time.
+            dirty = false;
+
+            final SensorDataSetLocation reusableLocation = new SensorDataSetLocation(LocationManager.GPS_PROVIDER);
+            LocationFactory locationFactory = new LocationFactory() {
+                @Override
+                public Location createLocation() {
+                    return reusableLocation;
+                }
+            };
+
+            long startId = size > 0 ? ids[size - 1] + 1 : -1L;
+            try (LocationIterator locationIterator = contentProviderUtils.getTrackPointLocationIterator(trackId, startId, false, locationFactory)) {
+                while (locationIterator.hasNext()) {
+                    SensorDataSetLocation location = (SensorDataSetLocation) locationIterator.next();
+                    add(locationIterator.getLocationId(), location);
+                }
+            }
+            snapshot = new Snapshot(this);
+            return snapshot;
+        }
+
+        private void add(long id, SensorDataSetLocation location) {
+            if (size == ids.length) {
+                grow();
+            }
+            boolean valid = LocationUtils.isValidLocation(location);
+            if (valid) {
+                if (!Double.isNaN(lastLatitude)) {
+                    distance += GeodesyUtils.distance(lastLatitude, lastLongitude, location.getLatitude(), location.getLongitude());
+                }
+                lastLatitude = location.getLatitude();
+                lastLongitude = location.getLongitude();
+            } else {
+                // No distance across a pause
+                lastLatitude = Double.NaN;
+            }
+
+            SensorDataSet sensorDataSet = location.getSensorDataSet();
+            ids[size] = id;
+            times[size] = location.getTime();
+            latitudesE6[size] = (int) Math.round(location.getLatitude() * 1E6);
+            longitudesE6[size] = (int) Math.round(location.getLongitude() * 1E6);
+            altitudes[size] = location.hasAltitude() ? (float) location.getAltitude() : Float.NaN;
+            accuracies[size] = location.hasAccuracy() ? location.getAccuracy() : Float.NaN;
+            speeds[size] = location.hasSpeed() ? location.getSpeed() : Float.NaN;
+            bearings[size] = location.hasBearing() ? location.getBearing() : Float.NaN;
+            heartRates[size] = sensorDataSet != null ? sensorDataSet.getHeartRate() : SensorDataSet.DATA_UNAVAILABLE;
+            cadences[size] = sensorDataSet != null ? sensorDataSet.getCadence() : SensorDataSet.DATA_UNAVAILABLE;
+            powers[size] = sensorDataSet != null ? sensorDataSet.getPower() : SensorDataSet.DATA_UNAVAILABLE;
+            distances[size] = distance;
+            valids[size] = valid;
+            size++;
+        }
+
+        private void grow() {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            times = Arrays.copyOf(times, capacity);
+            latitudesE6 = Arrays.copyOf(latitudesE6, capacity);
+            longitudesE6 = Arrays.copyOf(longitudesE6, capacity);
+            altitudes = Arrays.copyOf(altitudes, capacity);
+            accuracies = Arrays.copyOf(accuracies, capacity);
+            speeds = Arrays.copyOf(speeds, capacity);
+            bearings = Arrays.copyOf(bearings, capacity);
+            heartRates = Arrays.copyOf(heartRates, capacity);
+            cadences = Arrays.copyOf(cadences, capacity);
+            powers = Arrays.copyOf(powers, capacity);
+            distances = Arrays.copyOf(distances, capacity);
+            valids = Arrays.copyOf(valids, capacity);
+        }
+    }
+
+    /**
+     * An immutable view of the cached track points of a track.
+     * Missing float values are NaN.
+     */
+    public static final class Snapshot {
+
+        private final long[] ids;
+        private final long[] times;
+        private final int[] latitudesE6;
+        private final int[] longitudesE6;
+        private final float[] altitudes;
+        private final float[] accuracies;
+        private final float[] speeds;
+        private final float[] bearings;
+        private final float[] heartRates;
+        private final float[] cadences;
+        private final float[] powers;
+        private final double[] distances;
+        private final boolean[] valids;
+        private final int size;
+
+        private Snapshot(Entry entry) {
+            // The entry only writes behind size or into new arrays.
+            ids = entry.ids;
+            times = entry.times;
+            latitudesE6 = entry.latitudesE6;
+            longitudesE6 = entry.longitudesE6;
+            altitudes = entry.altitudes;
+            accuracies = entry.accuracies;
+            speeds = entry.speeds;
+            bearings = entry.bearings;
+            heartRates = entry.heartRates;
+            cadences = entry.cadences;
+            powers = entry.powers;
+            distances = entry.distances;
+            valids = entry.valids;
+            size = entry.size;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Gets the index of the first track point with an id equal or greater than a track point id.
+         *
+         * @param trackPointId the track point id
+         * @return the index or {@link #size()} if there is none
+         */
+        public int getIndex(long trackPointId) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (ids[middle] < trackPointId) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        public long getId(int index) {
+            return ids[index];
+        }
+
+        public long getTime(int index) {
+            return times[index];
+        }
+
+        public double getLatitude(int index) {
+            return latitudesE6[index] / 1E6;
+        }
+
+        public double getLongitude(int index) {
+            return longitudesE6[index] / 1E6;
+        }
+
+        public float getAltitude(int index) {
+            return altitudes[index];
+        }
+
+        public float getAccuracy(int index) {
+            return accuracies[index];
+        }
+
+        public float getSpeed(int index) {
+            return speeds[index];
+        }
+
+        public float getBearing(int index) {
+            return bearings[index];
+        }
+
+        public float getHeartRate(int index) {
+            return heartRates[index];
+        }
+
+        public float getCadence(int index) {
+            return cadences[index];
+        }
+
+        public float getPower(int index) {
+            return powers[index];
+        }
+
+        /**
+         * Gets the distance (m) from the first track point (sum of the distances between consecutive valid track points; pauses are skipped).
+         */
+        public double getDistance(int index) {
+            return distances[index];
+        }
+
+        /**
+         * Returns false for the pause/resume separators.
+         */
+        public boolean isValid(int index) {
+            return valids[index];
+        }
+
+        /**
+         * Creates a {@link Location} (like {@link ContentProviderUtils#DEFAULT_LOCATION_FACTORY} and {@link LocationIterator}).
+         */
+        public SensorDataSetLocation createLocation(int index) {
+            SensorDataSetLocation location = new SensorDataSetLocation(LocationManager.GPS_PROVIDER);
+            location.setLatitude(getLatitude(index));
+            location.setLongitude(getLongitude(index));
+            location.setTime(times[index]);
+            if (!Float.isNaN(altitudes[index])) {
+                location.setAltitude(altitudes[index]);
+            }
+            if (!Float.isNaN(accuracies[index])) {
+                location.setAccuracy(accuracies[index]);
+            }
+            if (!Float.isNaN(speeds[index])) {
+                location.setSpeed(speeds[index]);
+            }
+            if (!Float.isNaN(bearings[index])) {
+                location.setBearing(bearings[index]);
+            }
+            location.setSensorDataSet(new SensorDataSet(heartRates[index], cadences[index], powers[index], SensorDataSet.DATA_UNAVAILABLE, times[index]));
+            return location;
+        }
+    }
+}
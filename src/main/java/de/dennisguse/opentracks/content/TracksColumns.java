@@ -59,6 +59,10 @@ public interface TracksColumns extends BaseColumns {
     String MINGRADE = "mingrade"; // minimum grade
     String MAXGRADE = "maxgrade"; // maximum grade
     String ICON = "icon"; // track activity type icon
+    String HEARTRATEZONES = "heartratezones"; // time in heart rate zones
+    String CADENCEDISTRIBUTION = "cadencedistribution"; // time in cadence buckets
+    String NORMALIZEDPOWER = "normalizedpower"; // normalized power
+    String HEARTRATEDRIFT = "heartratedrift"; // heart rate drift
 
     String CREATE_TABLE = "CREATE TABLE " + TABLE_NAME + " (" // table
             + _ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " // id
@@ -85,5 +89,9 @@ public interface TracksColumns extends BaseColumns {
             + ELEVATIONGAIN + " FLOAT, " // elevation gain
             + MINGRADE + " FLOAT, " // min grade
             + MAXGRADE + " FLOAT, " // max grade
-            + ICON + " TEXT);"; // icon
+            + ICON + " TEXT, " // icon
+            + HEARTRATEZONES + " BLOB, " // heart rate zones
+            + CADENCEDISTRIBUTION + " BLOB, " // cadence distribution
+            + NORMALIZEDPOWER + " FLOAT, " // normalized power
+            + HEARTRATEDRIFT + " FLOAT);"; // heart rate drift
 }
@@ -0,0 +1,225 @@
+package de.dennisguse.opentracks.fragments;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.dennisguse.opentracks.ChartView;
+import de.dennisguse.opentracks.content.ContentProviderUtils;
+import de.dennisguse.opentracks.content.SamplingBuffer;
+import de.dennisguse.opentracks.content.Track;
+import de.dennisguse.opentracks.content.TrackPointCache;
+import de.dennisguse.opentracks.stats.TripStatisticsUpdater;
+import de.dennisguse.opentracks.util.UnitConversions;
+
+/**
+ * Loads tracks to compare with the selected track of a {@link ChartView}.
+ * <p>
+ * The tracks (including the selected one as reference) are loaded concurrently in a shared executor from the {@link TrackPointCache}; so, the selected track is usually not read again.
+ * All tracks are aligned by their start: the x value is the distance or the elapsed time (like the data points of the chart).
+ * Each track is sampled into a {@link SamplingBuffer} of at most {@link #MAX_DATA_POINTS} rows (see {@link SamplingBuffer#sample(double[], int)}); so, the memory does not depend on the length of the tracks.
+ * The other axis is point-sampled at the kept x values; so, the delta does not depend on how often a track was halved.
+ * <p>
+ * Per track, the delta to the selected track is computed: the difference in time (if by distance) or distance (if by time) at the same x value.
+ * Positive if the track is ahead of the selected track.
+ */
+class ChartComparisonLoader {
+
+    private static final String TAG = ChartComparisonLoader.class.getSimpleName();
+
+    /**
+     * The max number of data points per track.
+     */
+    @VisibleForTesting
+    static final int MAX_DATA_POINTS = 1024;
+
+    /**
+     * The columns of a loaded track: the columns of the data points of the chart and the other axis (time if by distance, distance if by time).
+     */
+    @VisibleForTesting
+    static final int NUM_COLUMNS = ChartView.NUM_SERIES + 2;
+    @VisibleForTesting
+    static final int OTHER_AXIS_COLUMN = ChartView.NUM_SERIES + 1;
+
+    // Shared by all loads; one track per thread.
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    private final Context context;
+    private final ChartView chartView;
+    private final ChartDetailLoader.DataPointFiller dataPointFiller;
+
+    // Incremented for each load; older loads are discarded.
+    private final AtomicInteger generation = new AtomicInteger();
+
+    ChartComparisonLoader(Context context, ChartView chartView, ChartDetailLoader.DataPointFiller dataPointFiller) {
+        this.context = context.getApplicationContext();
+        this.chartView = chartView;
+        this.dataPointFiller = dataPointFiller;
+    }
+
+    /**
+     * Loads the tracks to compare with in the background and sets them to the chart view.
+     * To be called after the data points of the chart view were reset (e.g., the x axis changed).
+     *
+     * @param selectedTrackId    the selected track id
+     * @param comparisonTrackIds the track ids to compare with (may be empty)
+     * @param chartByDistance    true if the x value is the distance
+     * @param metricUnits        true for metric units
+     */
+    void load(final long selectedTrackId, final long[] comparisonTrackIds, final boolean chartByDistance, final boolean metricUnits) {
+        final int loadGeneration = generation.incrementAndGet();
+        if (comparisonTrackIds.length == 0) {
+            return;
+        }
+
+        // The selected track is the first one.
+        final SamplingBuffer[] tracks = new SamplingBuffer[comparisonTrackIds.length + 1];
+        final AtomicInteger pending = new AtomicInteger(tracks.length);
+        for (int i = 0; i < tracks.length; i++) {
+            final int trackIndex = i;
+            final long trackId = i == 0 ? selectedTrackId : comparisonTrackIds[i - 1];
+            EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (generation.get() == loadGeneration) {
+                        tracks[trackIndex] = loadTrack(trackId, chartByDistance, metricUnits);
+                    }
+                    // The last one delivers; no thread waits for the others.
+                    if (pending.decrementAndGet() == 0) {
+                        deliver(loadGeneration, tracks, chartByDistance);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Stops delivering the loaded tracks.
+     */
+    void cancel() {
+        generation.incrementAndGet();
+    }
+
+    private void deliver(int loadGeneration, SamplingBuffer[] tracks, boolean chartByDistance) {
+        if (generation.get() != loadGeneration || tracks[0] == null) {
+            return;
+        }
+        int numTracks = 0;
+        for (int i = 1; i < tracks.length; i++) {
+            if (tracks[i] != null) {
+                numTracks++;
+            }
+        }
+        SamplingBuffer[] dataPoints = new SamplingBuffer[numTracks];
+        SamplingBuffer[] deltas = new SamplingBuffer[numTracks];
+        int index = 0;
+        for (int i = 1; i < tracks.length; i++) {
+            if (tracks[i] != null) {
+                dataPoints[index] = tracks[i];
+                deltas[index] = computeDelta(tracks[0], tracks[i], chartByDistance);
+                index++;
+            }
+        }
+        if (generation.get() == loadGeneration) {
+            chartView.setComparisonDataPoints(dataPoints, deltas);
+        }
+    }
+
+    /**
+     * Loads the data points of a track.
+     *
+     * @return the data points or null if the track does not exist
+     */
+    private SamplingBuffer loadTrack(long trackId, boolean chartByDistance, boolean metricUnits) {
+        ContentProviderUtils contentProviderUtils = ContentProviderUtils.Factory.get(context);
+        Track track = contentProviderUtils.getTrack(trackId);
+        if (track == null || track.getTripStatistics() == null) {
+            Log.w(TAG, "Track " + trackId + " not found.");
+            return null;
+        }
+        TrackPointCache.Snapshot trackPoints = TrackPointCache.getInstance().getTrackPoints(contentProviderUtils, trackId);
+
+        TripStatisticsUpdater tripStatisticsUpdater = new TripStatisticsUpdater(track.getTripStatistics().getStartTime());
+        SamplingBuffer data = newTrackData();
+        double[] row = new double[NUM_COLUMNS];
+        for (int index = 0; index < trackPoints.size(); index++) {
+            dataPointFiller.fillDataPoint(tripStatisticsUpdater, trackPoints, index, row);
+            if (!trackPoints.isValid(index)) {
+                continue;
+            }
+            if (chartByDistance) {
+                row[OTHER_AXIS_COLUMN] = tripStatisticsUpdater.getTotalTime();
+            } else {
+                double distance = tripStatisticsUpdater.getTotalDistance() * UnitConversions.M_TO_KM;
+                row[OTHER_AXIS_COLUMN] = metricUnits ? distance : distance * UnitConversions.KM_TO_MI;
+            }
+            data.sample(row, MAX_DATA_POINTS);
+        }
+        return data;
+    }
+
+    /**
+     * Creates the data points of a track (see {@link #NUM_COLUMNS}).
+     */
+    @VisibleForTesting
+    static SamplingBuffer newTrackData() {
+        SamplingBuffer data = new SamplingBuffer(NUM_COLUMNS);
+        // The mean of an increasing value would lag behind the x value of the bucket.
+        data.setPointSampled(OTHER_AXIS_COLUMN);
+        return data;
+    }
+
+    /**
+     * Computes the delta of a track to a reference track: the difference of the other axis at the x values of the track.
+     * The reference is linearly interpolated; x values beyond the reference are skipped.
+     *
+     * @param reference       the reference track (see {@link #NUM_COLUMNS})
+     * @param track           the track (see {@link #NUM_COLUMNS})
+     * @param chartByDistance true if the x value is the distance (the other axis is the time)
+     * @return the delta (x and delta); positive if the track is ahead of the reference
+     */
+    @VisibleForTesting
+    static SamplingBuffer computeDelta(SamplingBuffer reference, SamplingBuffer track, boolean chartByDistance) {
+        SamplingBuffer delta = new SamplingBuffer(2);
+        if (reference.isEmpty()) {
+            return delta;
+        }
+        double[] row = new double[2];
+        int referenceRow = 0;
+        for (int i = 0; i < track.size(); i++) {
+            double x = track.getX(i);
+            // Both are sorted by x; so, the reference is only walked once.
+            while (referenceRow + 1 < reference.size() && reference.getX(referenceRow + 1) <= x) {
+                referenceRow++;
+            }
+            double referenceValue;
+            if (referenceRow + 1 < reference.size()) {
+                double x0 = reference.getX(referenceRow);
+                double x1 = reference.getX(referenceRow + 1);
+                double value0 = reference.getValue(referenceRow, OTHER_AXIS_COLUMN);
+                double value1 = reference.getValue(referenceRow + 1, OTHER_AXIS_COLUMN);
+                referenceValue = x < x0 ? value0 : value0 + (value1 - value0) * (x - x0) / (x1 - x0);
+            } else if (x == reference.getX(referenceRow)) {
+                referenceValue = reference.getValue(referenceRow, OTHER_AXIS_COLUMN);
+            } else {
+                // Beyond the reference
+                break;
+            }
+
+            double value = track.getValue(i, OTHER_AXIS_COLUMN);
+            if (Double.isNaN(value) || Double.isNaN(referenceValue)) {
+                continue;
+            }
+            row[0] = x;
+            // Ahead: less time for the same distance or more distance in the same time
+            row[1] = chartByDistance ? referenceValue - value : value - referenceValue;
+            delta.add(row);
+        }
+        return delta;
+    }
+}
@@ -0,0 +1,307 @@
+package de.dennisguse.opentracks.fragments;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import de.dennisguse.opentracks.ChartView;
+import de.dennisguse.opentracks.content.SamplingBuffer;
+import de.dennisguse.opentracks.content.TrackPointCache;
+import de.dennisguse.opentracks.stats.TripStatisticsUpdater;
+
+/**
+ * Loads the full resolution data points of the visible range of a zoomed in {@link ChartView}.
+ * <p>
+ * The track points are split into windows of {@link #WINDOW_SIZE} track points.
+ * While the track points are sampled, an index is built: the x value (distance or time) of the first track point of each window and a copy of the {@link TripStatisticsUpdater} before it (a checkpoint).
+ * So, a window is computed exactly like the sampled data points (including smoothing) from its checkpoint without reading the track points before it.
+ * The recently used windows are kept; the neighbouring windows of the visible range are prefetched.
+ * <p>
+ * Loads in a background thread.
+ */
+class ChartDetailLoader implements ChartView.OnVisibleRangeChangedListener {
+
+    /**
+     * Computes a data point like the sampled data points.
+     */
+    interface DataPointFiller {
+
+        /**
+         * @param tripStatisticsUpdater the trip statistics updater
+         * @param trackPoints           the track points
+         * @param index                 the index of the track point
+         * @param data                  the data point to fill in
+         */
+        void fillDataPoint(TripStatisticsUpdater tripStatisticsUpdater, TrackPointCache.Snapshot trackPoints, int index, double[] data);
+    }
+
+    @VisibleForTesting
+    static final int WINDOW_SIZE = 256;
+
+    /**
+     * Maximal number of kept windows.
+     */
+    @VisibleForTesting
+    static final int MAX_CACHED_WINDOWS = 32;
+
+    /**
+     * The data points per pixel; if more, the data points are halved (keeping min/max).
+     */
+    private static final int MAX_DATA_POINTS_PER_PIXEL = 2;
+
+    private final ChartView chartView;
+    private final DataPointFiller dataPointFiller;
+
+    // The index; guarded by this
+    private TrackPointCache.Snapshot trackPoints;
+    // The checkpoints of the windows; the instances are kept on reset and reused.
+    private final ArrayList<TripStatisticsUpdater> checkpoints = new ArrayList<>();
+    private int numWindows = 0;
+    private double[] windowStartX = new double[64];
+    private int numTrackPoints = 0;
+    // Incremented on reset; loads of an older generation are discarded.
+    private int generation = 0;
+
+    private final LinkedHashMap<Integer, SamplingBuffer> windows = new LinkedHashMap<Integer, SamplingBuffer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, SamplingBuffer> eldest) {
+            return size() > MAX_CACHED_WINDOWS;
+        }
+    };
+
+    private HandlerThread handlerThread;
+    private Handler handler;
+    // The latest requested range; older requests are skipped.
+    private double requestedMinX;
+    private double requestedMaxX;
+    private int requestedNumPixels;
+    private boolean requestPending = false;
+
+    ChartDetailLoader(ChartView chartView, DataPointFiller dataPointFiller) {
+        this.chartView = chartView;
+        this.dataPointFiller = dataPointFiller;
+    }
+
+    /**
+     * Clears the index; to be called if the data points are reloaded.
+     */
+    synchronized void reset() {
+        trackPoints = null;
+        numWindows = 0;
+        numTrackPoints = 0;
+        windows.clear();
+        generation++;
+    }
+
+    /**
+     * Returns true if a track point is the first one of a new window; then, {@link #addWindow(TrackPointCache.Snapshot, int, TripStatisticsUpdater, double)} needs to be called.
+     *
+     * @param index the index of the track point in the track points
+     */
+    synchronized boolean isWindowStart(int index) {
+        return index % WINDOW_SIZE == 0 && index / WINDOW_SIZE == numWindows;
+    }
+
+    /**
+     * Adds a window to the index.
+     *
+     * @param trackPoints the track points
+     * @param index       the index of the first track point of the window
+     * @param checkpoint  the trip statistics updater before the track point (copied)
+     * @param x           the x value of the track point
+     */
+    synchronized void addWindow(TrackPointCache.Snapshot trackPoints, int index, TripStatisticsUpdater checkpoint, double x) {
+        if (!isWindowStart(index)) {
+            return;
+        }
+        int window = numWindows;
+        if (window == windowStartX.length) {
+            windowStartX = Arrays.copyOf(windowStartX, window * 2);
+        }
+        windowStartX[window] = x;
+        if (window < checkpoints.size()) {
+            checkpoints.get(window).set(checkpoint);
+        } else {
+            checkpoints.add(new TripStatisticsUpdater(checkpoint));
+        }
+        numWindows++;
+        this.trackPoints = trackPoints;
+    }
+
+    /**
+     * Updates the number of processed track points.
+     *
+     * @param trackPoints    the track points
+     * @param numTrackPoints the number of processed track points
+     */
+    synchronized void setNumTrackPoints(TrackPointCache.Snapshot trackPoints, int numTrackPoints) {
+        this.trackPoints = trackPoints;
+        this.numTrackPoints = numTrackPoints;
+    }
+
+    @Override
+    public void onVisibleRangeChanged(double minX, double maxX, int numPixels) {
+        Handler localHandler;
+        synchronized (this) {
+            requestedMinX = minX;
+            requestedMaxX = maxX;
+            requestedNumPixels = numPixels;
+            if (requestPending) {
+                return;
+            }
+            requestPending = true;
+            if (handlerThread == null) {
+                handlerThread = new HandlerThread(ChartDetailLoader.class.getSimpleName());
+                handlerThread.start();
+                handler = new Handler(handlerThread.getLooper());
+            }
+            localHandler = handler;
+        }
+        localHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        });
+    }
+
+    /**
+     * Stops the background thread.
+     */
+    synchronized void stop() {
+        if (handlerThread != null) {
+            handlerThread.getLooper().quit();
+            handlerThread = null;
+            handler = null;
+        }
+        requestPending = false;
+    }
+
+    /**
+     * Loads the latest requested range and its neighbouring windows; to be run in the {@link #handler} thread.
+     */
+    private void load() {
+        double minX;
+        double maxX;
+        int numPixels;
+        int loadGeneration;
+        int firstWindow;
+        int lastWindow;
+        synchronized (this) {
+            requestPending = false;
+            minX = requestedMinX;
+            maxX = requestedMaxX;
+            numPixels = requestedNumPixels;
+            loadGeneration = generation;
+            if (numWindows == 0) {
+                return;
+            }
+            firstWindow = getWindow(minX);
+            lastWindow = getWindow(maxX);
+            // Prefetch the neighbouring windows (half of the visible range on each side).
+            int prefetch = Math.max(1, (lastWindow - firstWindow + 1) / 2);
+            firstWindow = Math.max(0, firstWindow - prefetch);
+            lastWindow = Math.min(numWindows - 1, lastWindow + prefetch);
+        }
+
+        SamplingBuffer detail = new SamplingBuffer(ChartView.NUM_SERIES + 1);
+        // The loaded range is about twice the visible range.
+        int maxDataPoints = MAX_DATA_POINTS_PER_PIXEL * numPixels * 2;
+        double[] row = new double[ChartView.NUM_SERIES + 1];
+        for (int window = firstWindow; window <= lastWindow; window++) {
+            SamplingBuffer windowData = getWindowData(window, loadGeneration);
+            if (windowData == null) {
+                // Reset while loading
+                return;
+            }
+            for (int i = 0; i < windowData.size(); i++) {
+                windowData.getRow(i, row);
+                detail.sample(row, maxDataPoints);
+            }
+        }
+
+        double detailMinX;
+        double detailMaxX;
+        synchronized (this) {
+            if (loadGeneration != generation || detail.isEmpty()) {
+                return;
+            }
+            detailMinX = windowStartX[firstWindow];
+            // The last window might still grow.
+            detailMaxX = lastWindow + 1 < numWindows ? windowStartX[lastWindow + 1] : detail.getX(detail.size() - 1);
+        }
+        chartView.setDetailDataPoints(detailMinX, detailMaxX, detail);
+    }
+
+    /**
+     * Gets the window containing a x value; the x values are not decreasing.
+     * Needs to be synchronized.
+     *
+     * @param x the x value
+     */
+    private int getWindow(double x) {
+        int low = 0;
+        int high = numWindows - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (windowStartX[middle] <= x) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Gets the data points of a window; computes them if not cached.
+     *
+     * @param window         the window
+     * @param loadGeneration the generation of the load
+     * @return the data points or null if reset
+     */
+    private SamplingBuffer getWindowData(int window, int loadGeneration) {
+        TrackPointCache.Snapshot localTrackPoints;
+        TripStatisticsUpdater tripStatisticsUpdater;
+        int end;
+        synchronized (this) {
+            if (loadGeneration != generation) {
+                return null;
+            }
+            SamplingBuffer windowData = windows.get(window);
+            if (windowData != null) {
+                return windowData;
+            }
+            localTrackPoints = trackPoints;
+            // Copied while locked: the checkpoint is reused after a reset.
+            tripStatisticsUpdater = new TripStatisticsUpdater(checkpoints.get(window));
+            end = Math.min((window + 1) * WINDOW_SIZE, Math.min(numTrackPoints, localTrackPoints.size()));
+        }
+
+        SamplingBuffer windowData = new SamplingBuffer(ChartView.NUM_SERIES + 1);
+        double[] data = new double[ChartView.NUM_SERIES + 1];
+        for (int index = window * WINDOW_SIZE; index < end; index++) {
+            dataPointFiller.fillDataPoint(tripStatisticsUpdater, localTrackPoints, index, data);
+            if (localTrackPoints.isValid(index)) {
+                windowData.add(data);
+            }
+        }
+
+        synchronized (this) {
+            if (loadGeneration != generation) {
+                return null;
+            }
+            if (end == (window + 1) * WINDOW_SIZE) {
+                // Only complete windows are kept.
+                windows.put(window, windowData);
+            }
+        }
+        return windowData;
+    }
+}
@@ -29,20 +29,22 @@ import androidx.annotation.VisibleForTesting;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentActivity;
 
-import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.EnumSet;
 
 import de.dennisguse.opentracks.ChartView;
 import de.dennisguse.opentracks.R;
 import de.dennisguse.opentracks.TrackDetailActivity;
+import de.dennisguse.opentracks.content.SamplingBuffer;
 import de.dennisguse.opentracks.content.SensorDataSetLocation;
 import de.dennisguse.opentracks.content.Track;
 import de.dennisguse.opentracks.content.TrackDataHub;
 import de.dennisguse.opentracks.content.TrackDataListener;
 import de.dennisguse.opentracks.content.TrackDataType;
+import de.dennisguse.opentracks.content.TrackPointBatch;
+import de.dennisguse.opentracks.content.TrackPointCache;
 import de.dennisguse.opentracks.content.Waypoint;
 import de.dennisguse.opentracks.content.sensor.SensorDataSet;
-import de.dennisguse.opentracks.stats.TripStatistics;
 import de.dennisguse.opentracks.stats.TripStatisticsUpdater;
 import de.dennisguse.opentracks.util.LocationUtils;
 import de.dennisguse.opentracks.util.PreferencesUtils;
@@ -58,7 +60,7 @@ public class ChartFragment extends Fragment implements TrackDataListener {
 
     public static final String CHART_FRAGMENT_TAG = "chartFragment";
 
-    private final ArrayList<double[]> pendingPoints = new ArrayList<>();
+    private static final String KEY_COMPARISON_TRACK_IDS = "comparisonTrackIds";
 
     private TrackDataHub trackDataHub;
 
@@ -66,6 +68,14 @@ public class ChartFragment extends Fragment implements TrackDataListener {
     private TripStatisticsUpdater tripStatisticsUpdater;
     private long startTime;
 
+    // Reused for each batch of new track points; so, no objects are created per track point.
+    private final SamplingBuffer newDataPoints = new SamplingBuffer(ChartView.NUM_SERIES + 1);
+    // The sampled out track points are merged into the previous data point; so, their extremes are kept.
+    private final BitSet mergedDataPoints = new BitSet();
+    private final double[] dataPoint = new double[ChartView.NUM_SERIES + 1];
+    // Reused for the checkpoint of each window (copied by the chartDetailLoader).
+    private final TripStatisticsUpdater checkpoint = new TripStatisticsUpdater(0L);
+
     private boolean metricUnits = true;
     private boolean reportSpeed = true;
     private int recordingDistanceInterval;
@@ -76,6 +86,8 @@ public class ChartFragment extends Fragment implements TrackDataListener {
 
     // UI elements
     private ChartView chartView;
+    private ChartDetailLoader chartDetailLoader;
+    private ChartComparisonLoader chartComparisonLoader;
     private ZoomControls zoomControls;
 
     /**
@@ -95,6 +107,17 @@ public class ChartFragment extends Fragment implements TrackDataListener {
         }
     };
 
+    /**
+     * Creates the arguments of a chart fragment.
+     *
+     * @param comparisonTrackIds the ids of the tracks to compare the selected track with (may be empty)
+     */
+    public static Bundle createArguments(long[] comparisonTrackIds) {
+        Bundle bundle = new Bundle();
+        bundle.putLongArray(KEY_COMPARISON_TRACK_IDS, comparisonTrackIds);
+        return bundle;
+    }
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -105,6 +128,15 @@ public class ChartFragment extends Fragment implements TrackDataListener {
          * Create a chartView here to store data thus won't need to reload all the data on every onStart or onResume.
          */
         chartView = new ChartView(getActivity());
+        ChartDetailLoader.DataPointFiller dataPointFiller = new ChartDetailLoader.DataPointFiller() {
+            @Override
+            public void fillDataPoint(TripStatisticsUpdater tripStatisticsUpdater, TrackPointCache.Snapshot trackPoints, int index, double[] data) {
+                ChartFragment.this.fillDataPoint(tripStatisticsUpdater, trackPoints, index, data);
+            }
+        };
+        chartDetailLoader = new ChartDetailLoader(chartView, dataPointFiller);
+        chartComparisonLoader = new ChartComparisonLoader(getActivity(), chartView, dataPointFiller);
+        chartView.setOnVisibleRangeChangedListener(chartDetailLoader);
     }
 
     @Override
@@ -148,6 +180,13 @@ public class ChartFragment extends Fragment implements TrackDataListener {
         pauseTrackDataHub();
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        chartDetailLoader.stop();
+        chartComparisonLoader.cancel();
+    }
+
     @Override
     public void onStop() {
         super.onStop();
@@ -170,13 +209,16 @@ public class ChartFragment extends Fragment implements TrackDataListener {
     public void clearTrackPoints() {
         if (isResumed()) {
             tripStatisticsUpdater = startTime != -1L ? new TripStatisticsUpdater(startTime) : null;
-            pendingPoints.clear();
+            chartDetailLoader.reset();
             chartView.reset();
+            final long selectedTrackId = trackDataHub.getSelectedTrackId();
             runOnUiThread(new Runnable() {
                 @Override
                 public void run() {
                     if (isResumed()) {
                         chartView.resetScroll();
+                        // The reset cleared the compared tracks and the x axis might have changed; so, they are loaded again.
+                        loadComparisonTracks(selectedTrackId);
                     }
                 }
             });
@@ -184,34 +226,44 @@ public class ChartFragment extends Fragment implements TrackDataListener {
     }
 
     @Override
-    public void onSampledInTrackPoint(Location location) {
+    public void onNewTrackPoints(TrackPointBatch trackPointBatch) {
         if (isResumed()) {
-            double[] data = new double[ChartView.NUM_SERIES + 1];
-            fillDataPoint(location, data);
-            pendingPoints.add(data);
-        }
-    }
+            newDataPoints.clear();
+            mergedDataPoints.clear();
+            TrackPointCache.Snapshot trackPoints = trackPointBatch.getTrackPoints();
+            for (int row = 0; row < trackPointBatch.size(); row++) {
+                int index = trackPointBatch.getIndex(row);
+                // Index the track points for loading the full resolution data points if zoomed in.
+                boolean isWindowStart = tripStatisticsUpdater != null && chartDetailLoader.isWindowStart(index);
+                if (isWindowStart) {
+                    checkpoint.set(tripStatisticsUpdater);
+                }
 
-    @Override
-    public void onSampledOutTrackPoint(Location location) {
-        if (isResumed()) {
-            fillDataPoint(location, null);
-        }
-    }
+                TrackPointBatch.Kind kind = trackPointBatch.getKind(row);
+                fillDataPoint(tripStatisticsUpdater, trackPoints, index, dataPoint);
+                if (kind != TrackPointBatch.Kind.SEGMENT_SPLIT) {
+                    if (kind == TrackPointBatch.Kind.SAMPLED_OUT) {
+                        mergedDataPoints.set(newDataPoints.size());
+                    }
+                    newDataPoints.add(dataPoint);
+                }
 
-    @Override
-    public void onSegmentSplit(Location location) {
-        if (isResumed()) {
-            fillDataPoint(location, null);
+                if (isWindowStart) {
+                    chartDetailLoader.addWindow(trackPoints, index, checkpoint, dataPoint[0]);
+                }
+            }
+            if (!trackPointBatch.isEmpty()) {
+                chartDetailLoader.setNumTrackPoints(trackPoints, trackPointBatch.getIndex(trackPointBatch.size() - 1) + 1);
+            }
+            chartView.addDataPoints(newDataPoints, mergedDataPoints);
+            runOnUiThread(updateChart);
         }
     }
 
     @Override
-    public void onNewTrackPointsDone() {
+    public void onSampledInTrackPointsHalved() {
         if (isResumed()) {
-            chartView.addDataPoints(pendingPoints);
-            pendingPoints.clear();
-            runOnUiThread(updateChart);
+            chartView.halveDataPoints();
         }
     }
 
@@ -390,6 +442,17 @@ public class ChartFragment extends Fragment implements TrackDataListener {
         }
     }
 
+    /**
+     * Loads the tracks to compare with (from the arguments) in the background; to be called on the UI thread.
+     *
+     * @param selectedTrackId the selected track id
+     */
+    private void loadComparisonTracks(long selectedTrackId) {
+        Bundle arguments = getArguments();
+        long[] comparisonTrackIds = arguments != null ? arguments.getLongArray(KEY_COMPARISON_TRACK_IDS) : null;
+        chartComparisonLoader.load(selectedTrackId, comparisonTrackIds != null ? comparisonTrackIds : new long[0], chartByDistance, metricUnits);
+    }
+
     private void zoomIn() {
         chartView.zoomIn();
         zoomControls.setIsZoomInEnabled(chartView.canZoomIn());
@@ -429,22 +492,83 @@ public class ChartFragment extends Fragment implements TrackDataListener {
      */
     @VisibleForTesting
     void fillDataPoint(Location location, double[] data) {
+        fillDataPoint(tripStatisticsUpdater, location, data);
+    }
+
+    /**
+     * Given a location, fill in a data point using a trip statistics updater; see {@link #fillDataPoint(Location, double[])}.
+     *
+     * @param tripStatisticsUpdater the trip statistics updater, can be null
+     * @param location              the location
+     * @param data                  the data point to fill in, can be null
+     */
+    private void fillDataPoint(TripStatisticsUpdater tripStatisticsUpdater, Location location, double[] data) {
+        if (tripStatisticsUpdater != null) {
+            tripStatisticsUpdater.addLocation(location, recordingDistanceInterval);
+        }
+
+        double heartRate = Double.NaN;
+        double cadence = Double.NaN;
+        double power = Double.NaN;
+        if (location instanceof SensorDataSetLocation && ((SensorDataSetLocation) location).getSensorDataSet() != null) {
+            SensorDataSet sensorDataSet = ((SensorDataSetLocation) location).getSensorDataSet();
+            if (sensorDataSet.hasHeartRate()) {
+                heartRate = sensorDataSet.getHeartRate();
+            }
+            if (sensorDataSet.hasCadence()) {
+                cadence = sensorDataSet.getCadence();
+            }
+            if (sensorDataSet.hasPower()) {
+                power = sensorDataSet.getPower();
+            }
+        }
+        fillDataPoint(tripStatisticsUpdater, heartRate, cadence, power, data);
+    }
+
+    /**
+     * Given a track point, fill in a data point using a trip statistics updater; like {@link #fillDataPoint(Location, double[])}, but reads the columns of the track points.
+     * So, no objects are created per track point.
+     *
+     * @param tripStatisticsUpdater the trip statistics updater, can be null
+     * @param trackPoints           the track points
+     * @param index                 the index of the track point
+     * @param data                  the data point to fill in, can be null
+     */
+    private void fillDataPoint(TripStatisticsUpdater tripStatisticsUpdater, TrackPointCache.Snapshot trackPoints, int index, double[] data) {
+        if (tripStatisticsUpdater != null) {
+            tripStatisticsUpdater.addTrackPoint(trackPoints.getTime(index), trackPoints.getLatitude(index), trackPoints.getLongitude(index),
+                    trackPoints.getAltitude(index), trackPoints.getSpeed(index), recordingDistanceInterval);
+        }
+
+        // Missing sensor data is NaN (see SensorDataSet).
+        float heartRate = trackPoints.getHeartRate(index);
+        fillDataPoint(tripStatisticsUpdater, heartRate > 0 ? heartRate : Double.NaN, trackPoints.getCadence(index), trackPoints.getPower(index), data);
+    }
+
+    /**
+     * Fills in a data point from the updated trip statistics updater and the sensor values.
+     *
+     * @param tripStatisticsUpdater the trip statistics updater (the track point is added), can be null
+     * @param heartRate             the heart rate or NaN
+     * @param cadence               the cadence or NaN
+     * @param power                 the power or NaN
+     * @param data                  the data point to fill in, can be null
+     */
+    private void fillDataPoint(TripStatisticsUpdater tripStatisticsUpdater, double heartRate, double cadence, double power, double[] data) {
         double timeOrDistance = Double.NaN;
         double elevation = Double.NaN;
         double speed = Double.NaN;
         double pace = Double.NaN;
 
         if (tripStatisticsUpdater != null) {
-            tripStatisticsUpdater.addLocation(location, recordingDistanceInterval);
-            TripStatistics tripStatistics = tripStatisticsUpdater.getTripStatistics();
             if (chartByDistance) {
-                double distance = tripStatistics.getTotalDistance() * UnitConversions.M_TO_KM;
+                double distance = tripStatisticsUpdater.getTotalDistance() * UnitConversions.M_TO_KM;
                 if (!metricUnits) {
                     distance *= UnitConversions.KM_TO_MI;
                 }
                 timeOrDistance = distance;
             } else {
-                timeOrDistance = tripStatistics.getTotalTime();
+                timeOrDistance = tripStatisticsUpdater.getTotalTime();
             }
 
             elevation = tripStatisticsUpdater.getSmoothedElevation();
@@ -459,22 +583,6 @@ public class ChartFragment extends Fragment implements TrackDataListener {
             pace = speed == 0 ? 0.0 : 60.0 / speed;
         }
 
-        double heartRate = Double.NaN;
-        double cadence = Double.NaN;
-        double power = Double.NaN;
-        if (location instanceof SensorDataSetLocation && ((SensorDataSetLocation) location).getSensorDataSet() != null) {
-            SensorDataSet sensorDataSet = ((SensorDataSetLocation) location).getSensorDataSet();
-            if (sensorDataSet.hasHeartRate()) {
-                heartRate = sensorDataSet.getHeartRate();
-            }
-            if (sensorDataSet.hasCadence()) {
-                cadence = sensorDataSet.getCadence();
-            }
-            if (sensorDataSet.hasPower()) {
-                power = sensorDataSet.getPower();
-            }
-        }
-
         //TODO: Is related to ChartView.ELEVATION_SERIES etc.
         if (data != null) {
             data[0] = timeOrDistance;
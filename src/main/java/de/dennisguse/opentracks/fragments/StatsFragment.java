@@ -16,6 +16,7 @@
 
 package de.dennisguse.opentracks.fragments;
 
+import android.content.Context;
 import android.location.Location;
 import android.os.Bundle;
 import android.os.Handler;
@@ -31,20 +32,27 @@ import androidx.annotation.NonNull;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentActivity;
 
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.List;
 
 import de.dennisguse.opentracks.R;
 import de.dennisguse.opentracks.TrackDetailActivity;
+import de.dennisguse.opentracks.content.ContentProviderUtils;
+import de.dennisguse.opentracks.content.Split;
 import de.dennisguse.opentracks.content.Track;
 import de.dennisguse.opentracks.content.TrackDataHub;
 import de.dennisguse.opentracks.content.TrackDataListener;
 import de.dennisguse.opentracks.content.TrackDataType;
+import de.dennisguse.opentracks.content.TrackPointBatch;
 import de.dennisguse.opentracks.content.Waypoint;
 import de.dennisguse.opentracks.content.sensor.SensorDataSet;
 import de.dennisguse.opentracks.services.ITrackRecordingService;
 import de.dennisguse.opentracks.services.TrackRecordingServiceConnection;
+import de.dennisguse.opentracks.stats.SensorStatistics;
 import de.dennisguse.opentracks.stats.TripStatistics;
 import de.dennisguse.opentracks.util.LocationUtils;
+import de.dennisguse.opentracks.util.PreferencesUtils;
 import de.dennisguse.opentracks.util.StatsUtils;
 import de.dennisguse.opentracks.util.TrackIconUtils;
 import de.dennisguse.opentracks.util.UnitConversions;
@@ -66,6 +74,9 @@ public class StatsFragment extends Fragment implements TrackDataListener {
 
     private Location lastLocation = null;
     private TripStatistics lastTripStatistics = null;
+    private SensorStatistics lastSensorStatistics = null;
+    // Written on the TrackDataHub's thread (see loadSplits()), read on the UI thread
+    private volatile SplitsSnapshot splitsSnapshot = new SplitsSnapshot(-1L, false, Collections.<Split>emptyList());
 
     private final Runnable updateUIeachSecond = new Runnable() {
         public void run() {
@@ -148,11 +159,14 @@ public class StatsFragment extends Fragment implements TrackDataListener {
     @Override
     public void onTrackUpdated(final Track track) {
         if (isResumed()) {
+            // Called on the TrackDataHub's thread: load the splits here, but only if a new one was completed.
+            loadSplits(track);
             getActivity().runOnUiThread(new Runnable() {
                 @Override
                 public void run() {
                     if (isResumed()) {
                         lastTripStatistics = track != null ? track.getTripStatistics() : null;
+                        lastSensorStatistics = track != null ? track.getSensorStatistics() : null;
                         category = track != null ? track.getCategory() : "";
                         updateUi(getActivity());
                     }
@@ -167,22 +181,18 @@ public class StatsFragment extends Fragment implements TrackDataListener {
     }
 
     @Override
-    public void onSampledInTrackPoint(Location location) {
-        lastLocation = location;
-    }
-
-    @Override
-    public void onSampledOutTrackPoint(Location location) {
-        lastLocation = location;
-    }
-
-    @Override
-    public void onSegmentSplit(Location location) {
+    public void onSampledInTrackPointsHalved() {
         // We don't care.
     }
 
     @Override
-    public void onNewTrackPointsDone() {
+    public void onNewTrackPoints(TrackPointBatch trackPointBatch) {
+        for (int row = trackPointBatch.size() - 1; row >= 0; row--) {
+            if (trackPointBatch.getKind(row) != TrackPointBatch.Kind.SEGMENT_SPLIT) {
+                lastLocation = trackPointBatch.createLocation(row);
+                break;
+            }
+        }
         if (isResumed()) {
             getActivity().runOnUiThread(new Runnable() {
                 @Override
@@ -317,13 +327,52 @@ public class StatsFragment extends Fragment implements TrackDataListener {
         StatsUtils.setSensorData(getActivity(), sensorDataSet, isSelectedTrackRecording());
     }
 
+    /**
+     * Loads the completed splits of a track in the current unit and publishes them as {@link #splitsSnapshot}.
+     * Splits are append-only: they are only queried if the number of completed splits changed.
+     */
+    private void loadSplits(Track track) {
+        Context context = getContext();
+        if (track == null || context == null) {
+            splitsSnapshot = new SplitsSnapshot(-1L, false, Collections.<Split>emptyList());
+            return;
+        }
+        SplitsSnapshot currentSnapshot = splitsSnapshot;
+        boolean metricUnits = PreferencesUtils.isMetricUnits(context);
+        double splitDistance = metricUnits ? UnitConversions.KM_TO_M : 1.0 / UnitConversions.M_TO_MI;
+        long completedSplits = (long) (track.getTripStatistics().getTotalDistance() / splitDistance);
+        if (currentSnapshot.trackId == track.getId() && currentSnapshot.metricUnits == metricUnits && currentSnapshot.splits.size() == completedSplits) {
+            return;
+        }
+        List<Split> splits = ContentProviderUtils.Factory.get(context).getSplits(track.getId(), metricUnits);
+        splitsSnapshot = new SplitsSnapshot(track.getId(), metricUnits, Collections.unmodifiableList(splits));
+    }
+
     /**
      * Updates the UI.
      */
     private void updateUi(FragmentActivity activity) {
         String trackIconValue = TrackIconUtils.getIconValue(activity, category);
         StatsUtils.setTripStatisticsValues(activity, lastTripStatistics, trackIconValue);
+        StatsUtils.setSensorStatisticsValues(activity, lastSensorStatistics);
+        StatsUtils.setSplitValues(activity, splitsSnapshot.splits);
         StatsUtils.setLocationValues(activity, lastLocation, isSelectedTrackRecording());
         updateSensorDataUI();
     }
+
+    /**
+     * The loaded splits of a track; immutable, so it can be handed over between threads.
+     */
+    private static class SplitsSnapshot {
+
+        private final long trackId;
+        private final boolean metricUnits;
+        private final List<Split> splits;
+
+        SplitsSnapshot(long trackId, boolean metricUnits, List<Split> splits) {
+            this.trackId = trackId;
+            this.metricUnits = metricUnits;
+            this.splits = splits;
+        }
+    }
 }
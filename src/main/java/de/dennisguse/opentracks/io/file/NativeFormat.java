@@ -0,0 +1,369 @@
+package de.dennisguse.opentracks.io.file;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * The binary format of {@link TrackFileFormat#OPENTRACKS_BINARY}: a full backup of tracks (including all columns of the track points, waypoints, and splits).
+ * <p>
+ * A file is the magic number and the version, followed by blocks; the last block is {@link #BLOCK_END}.
+ * A block is its type (one byte), the length of the payload (varint), the payload, and the CRC32 of the payload (4 bytes).
+ * Numbers are little-endian; varints are unsigned LEB128; signed values are zigzag encoded.
+ * <p>
+ * A track is a {@link #BLOCK_TRACK} followed by its {@link #BLOCK_TRACK_POINTS}, {@link #BLOCK_WAYPOINTS}, and {@link #BLOCK_SPLITS}.
+ * The rows of tracks, waypoints, and splits are stored as tables: the column names, then per row and column the type and value.
+ * The track points are stored in columns (up to {@link #MAX_TRACK_POINTS_PER_BLOCK} rows per block): per column the types (2 bits per value), then the values.
+ * Integers are stored as delta to the previous integer of the column, floats as XOR to the previous float of the column.
+ * Track point ids are stored as the index of the track point in the track.
+ * Readers skip blocks of unknown types and columns unknown to the database.
+ */
+public final class NativeFormat {
+
+    private static final int MAGIC = 0x4B52544F; // "OTRK"
+
+    /**
+     * The version written; files of later versions are rejected.
+     */
+    public static final int VERSION = 1;
+
+    public static final int BLOCK_END = 0;
+    public static final int BLOCK_TRACK = 1;
+    public static final int BLOCK_TRACK_POINTS = 2;
+    public static final int BLOCK_WAYPOINTS = 3;
+    public static final int BLOCK_SPLITS = 4;
+
+    public static final int MAX_TRACK_POINTS_PER_BLOCK = 4096;
+
+    // The types of the values of tables
+    public static final int TYPE_NULL = 0;
+    public static final int TYPE_LONG = 1;
+    public static final int TYPE_DOUBLE = 2;
+    public static final int TYPE_STRING = 3;
+    public static final int TYPE_BLOB = 4;
+
+    // The types of the values of columns (2 bits)
+    public static final int COLUMN_TYPE_NULL = 0;
+    public static final int COLUMN_TYPE_LONG = 1;
+    public static final int COLUMN_TYPE_FLOAT = 2;
+    public static final int COLUMN_TYPE_DOUBLE = 3;
+
+    // Protects from allocating huge buffers for corrupt files
+    private static final int MAX_BLOCK_LENGTH = 16 * 1024 * 1024;
+
+    private NativeFormat() {
+    }
+
+    /**
+     * Writes the blocks of a file; a block is buffered until {@link #endBlock(int)}.
+     */
+    public static class Output {
+
+        private static final int INITIAL_CAPACITY = 64 * 1024;
+
+        private final OutputStream outputStream;
+        private final CRC32 crc32 = new CRC32();
+        private byte[] buffer = new byte[INITIAL_CAPACITY];
+        private int length = 0;
+
+        public Output(OutputStream outputStream) {
+            this.outputStream = outputStream;
+        }
+
+        /**
+         * Writes the magic number and the version.
+         */
+        public void writeHeader() throws IOException {
+            writeInt(MAGIC);
+            writeVarLong(VERSION);
+            outputStream.write(buffer, 0, length);
+            length = 0;
+        }
+
+        /**
+         * Writes the buffered payload as a block.
+         *
+         * @param type the block type
+         */
+        public void endBlock(int type) throws IOException {
+            crc32.reset();
+            crc32.update(buffer, 0, length);
+
+            byte[] header = new byte[11];
+            header[0] = (byte) type;
+            int headerLength = 1;
+            long value = length;
+            while ((value & ~0x7FL) != 0) {
+                header[headerLength++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            header[headerLength++] = (byte) value;
+
+            outputStream.write(header, 0, headerLength);
+            outputStream.write(buffer, 0, length);
+            int crc = (int) crc32.getValue();
+            outputStream.write(new byte[]{(byte) crc, (byte) (crc >>> 8), (byte) (crc >>> 16), (byte) (crc >>> 24)});
+            length = 0;
+        }
+
+        /**
+         * Gets the number of bytes of the current block (e.g., to reserve space).
+         */
+        public int position() {
+            return length;
+        }
+
+        /**
+         * Overwrites a byte of the current block (e.g., reserved by {@link #writeByte(int)}).
+         *
+         * @param position the position
+         * @param value    the byte
+         */
+        public void setByte(int position, int value) {
+            buffer[position] = (byte) value;
+        }
+
+        public void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[length++] = (byte) value;
+        }
+
+        public void writeInt(int value) {
+            ensureCapacity(4);
+            buffer[length++] = (byte) value;
+            buffer[length++] = (byte) (value >>> 8);
+            buffer[length++] = (byte) (value >>> 16);
+            buffer[length++] = (byte) (value >>> 24);
+        }
+
+        public void writeLong(long value) {
+            writeInt((int) value);
+            writeInt((int) (value >>> 32));
+        }
+
+        public void writeDouble(double value) {
+            writeLong(Double.doubleToRawLongBits(value));
+        }
+
+        /**
+         * Writes an unsigned varint.
+         */
+        public void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[length++] = (byte) value;
+        }
+
+        /**
+         * Writes a signed varint.
+         */
+        public void writeZigZag(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        public void writeBytes(byte[] bytes) {
+            writeVarLong(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, length, bytes.length);
+            length += bytes.length;
+        }
+
+        public void writeString(String text) {
+            writeBytes(text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public void flush() throws IOException {
+            outputStream.flush();
+        }
+
+        private void ensureCapacity(int count) {
+            if (length + count > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + count));
+            }
+        }
+    }
+
+    /**
+     * Reads the blocks of a file; the checksum of a block is verified before its payload is read.
+     */
+    public static class Input {
+
+        private final InputStream inputStream;
+        private final CRC32 crc32 = new CRC32();
+        private byte[] buffer = new byte[64 * 1024];
+        private int length = 0;
+        private int position = 0;
+
+        public Input(InputStream inputStream) {
+            this.inputStream = inputStream;
+        }
+
+        /**
+         * Reads the magic number and the version.
+         *
+         * @return the version
+         */
+        public int readHeader() throws IOException {
+            int magic = 0;
+            for (int i = 0; i < 4; i++) {
+                magic |= readStreamByte() << (8 * i);
+            }
+            if (magic != MAGIC) {
+                throw new IOException("Not an OpenTracks file");
+            }
+            long version = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = readStreamByte();
+                version |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    break;
+                }
+                if (shift > 28) {
+                    throw new IOException("Invalid version");
+                }
+            }
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported version " + version);
+            }
+            return (int) version;
+        }
+
+        /**
+         * Reads the next block.
+         *
+         * @return the block type
+         */
+        public int nextBlock() throws IOException {
+            int type = readStreamByte();
+            long blockLength = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = readStreamByte();
+                blockLength |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    break;
+                }
+                if (shift > 28) {
+                    throw new IOException("Invalid block length");
+                }
+            }
+            if (blockLength > MAX_BLOCK_LENGTH) {
+                throw new IOException("Invalid block length " + blockLength);
+            }
+
+            length = (int) blockLength;
+            position = 0;
+            if (length > buffer.length) {
+                buffer = new byte[length];
+            }
+            readStreamFully(buffer, length);
+
+            int crc = 0;
+            for (int i = 0; i < 4; i++) {
+                crc |= readStreamByte() << (8 * i);
+            }
+            crc32.reset();
+            crc32.update(buffer, 0, length);
+            if ((int) crc32.getValue() != crc) {
+                throw new IOException("Invalid checksum of block " + type);
+            }
+            return type;
+        }
+
+        public int readByte() throws IOException {
+            checkRemaining(1);
+            return buffer[position++] & 0xFF;
+        }
+
+        public int readInt() throws IOException {
+            checkRemaining(4);
+            int value = (buffer[position] & 0xFF) | (buffer[position + 1] & 0xFF) << 8 | (buffer[position + 2] & 0xFF) << 16 | (buffer[position + 3] & 0xFF) << 24;
+            position += 4;
+            return value;
+        }
+
+        public long readLong() throws IOException {
+            long low = readInt() & 0xFFFFFFFFL;
+            return low | (long) readInt() << 32;
+        }
+
+        public double readDouble() throws IOException {
+            return Double.longBitsToDouble(readLong());
+        }
+
+        public long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Invalid varint");
+        }
+
+        public long readZigZag() throws IOException {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        /**
+         * Reads a varint that is used as a count or an index.
+         */
+        public int readCount() throws IOException {
+            long value = readVarLong();
+            if (value < 0 || value > length) {
+                throw new IOException("Invalid count " + value);
+            }
+            return (int) value;
+        }
+
+        public byte[] readBytes() throws IOException {
+            int count = readCount();
+            checkRemaining(count);
+            byte[] bytes = Arrays.copyOfRange(buffer, position, position + count);
+            position += count;
+            return bytes;
+        }
+
+        public String readString() throws IOException {
+            int count = readCount();
+            checkRemaining(count);
+            String text = new String(buffer, position, count, StandardCharsets.UTF_8);
+            position += count;
+            return text;
+        }
+
+        private void checkRemaining(int count) throws IOException {
+            if (count > length - position) {
+                throw new IOException("Truncated block");
+            }
+        }
+
+        private int readStreamByte() throws IOException {
+            int value = inputStream.read();
+            if (value == -1) {
+                throw new EOFException("Truncated file");
+            }
+            return value;
+        }
+
+        private void readStreamFully(byte[] bytes, int count) throws IOException {
+            int offset = 0;
+            while (offset < count) {
+                int read = inputStream.read(bytes, offset, count - offset);
+                if (read == -1) {
+                    throw new EOFException("Truncated file");
+                }
+                offset += read;
+            }
+        }
+    }
+}
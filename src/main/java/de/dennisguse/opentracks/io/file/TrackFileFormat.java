@@ -11,6 +11,7 @@ import de.dennisguse.opentracks.io.file.exporter.FileTrackExporter;
 import de.dennisguse.opentracks.io.file.exporter.GpxTrackWriter;
 import de.dennisguse.opentracks.io.file.exporter.KmlTrackWriter;
 import de.dennisguse.opentracks.io.file.exporter.KmzTrackExporter;
+import de.dennisguse.opentracks.io.file.exporter.NativeTrackExporter;
 import de.dennisguse.opentracks.io.file.exporter.TrackExporter;
 import de.dennisguse.opentracks.io.file.exporter.TrackExporterListener;
 import de.dennisguse.opentracks.io.file.exporter.TrackWriter;
@@ -22,8 +23,9 @@ public enum TrackFileFormat {
 
     KML_ONLY_TRACK {
         @Override
-        public TrackWriter newTrackWriter(Context context, boolean multiple) {
-            return new KmlTrackWriter(context, multiple, false, false, false);
+        public TrackExporter newTrackExporter(Context context, Track[] tracks, TrackExporterListener trackExporterListener) {
+            TrackWriter trackWriter = new KmlTrackWriter(context, tracks.length > 1, false, false, false);
+            return newFileTrackExporter(context, trackWriter, tracks, trackExporterListener);
         }
 
         @Override
@@ -37,8 +39,9 @@ public enum TrackFileFormat {
     },
     KML_WITH_TRACKDETAIL {
         @Override
-        public TrackWriter newTrackWriter(Context context, boolean multiple) {
-            return new KmlTrackWriter(context, multiple, true, false, false);
+        public TrackExporter newTrackExporter(Context context, Track[] tracks, TrackExporterListener trackExporterListener) {
+            TrackWriter trackWriter = new KmlTrackWriter(context, tracks.length > 1, true, false, false);
+            return newFileTrackExporter(context, trackWriter, tracks, trackExporterListener);
         }
 
         @Override
@@ -52,8 +55,9 @@ public enum TrackFileFormat {
     },
     KML_WITH_TRACKDETAIL_AND_SENSORDATA {
         @Override
-        public TrackWriter newTrackWriter(Context context, boolean multiple) {
-            return new KmlTrackWriter(context, multiple, true, true, false);
+        public TrackExporter newTrackExporter(Context context, Track[] tracks, TrackExporterListener trackExporterListener) {
+            TrackWriter trackWriter = new KmlTrackWriter(context, tracks.length > 1, true, true, false);
+            return newFileTrackExporter(context, trackWriter, tracks, trackExporterListener);
         }
 
         @Override
@@ -70,12 +74,9 @@ public enum TrackFileFormat {
         private final static boolean exportPhotos = false;
 
         @Override
-        public TrackWriter newTrackWriter(Context context, boolean multiple) {
-            return new KmlTrackWriter(context, multiple, false, false, exportPhotos);
-        }
-
         public TrackExporter newTrackExporter(Context context, Track[] tracks, TrackExporterListener trackExporterListener) {
-            return newKmzTrackExporter(context, this.newTrackWriter(context, tracks.length > 1), tracks, trackExporterListener, exportPhotos);
+            TrackWriter trackWriter = new KmlTrackWriter(context, tracks.length > 1, false, false, exportPhotos);
+            return newKmzTrackExporter(context, trackWriter, tracks, trackExporterListener, exportPhotos);
         }
 
         @Override
@@ -92,12 +93,9 @@ public enum TrackFileFormat {
         private final static boolean exportPhotos = false;
 
         @Override
-        public TrackWriter newTrackWriter(Context context, boolean multiple) {
-            return new KmlTrackWriter(context, multiple, true, false, exportPhotos);
-        }
-
         public TrackExporter newTrackExporter(Context context, Track[] tracks, TrackExporterListener trackExporterListener) {
-            return newKmzTrackExporter(context, this.newTrackWriter(context, tracks.length > 1), tracks, trackExporterListener, exportPhotos);
+            TrackWriter trackWriter = new KmlTrackWriter(context, tracks.length > 1, true, false, exportPhotos);
+            return newKmzTrackExporter(context, trackWriter, tracks, trackExporterListener, exportPhotos);
         }
 
         @Override
@@ -113,18 +111,15 @@ public enum TrackFileFormat {
 
         private final static boolean exportPhotos = false;
 
-        @Override
-        public TrackWriter newTrackWriter(Context context, boolean multiple) {
-            return new KmlTrackWriter(context, multiple, true, true, exportPhotos);
-        }
-
         @Override
         public String getMimeType() {
             return MIME_KMZ;
         }
 
+        @Override
         public TrackExporter newTrackExporter(Context context, Track[] tracks, TrackExporterListener trackExporterListener) {
-            return newKmzTrackExporter(context, this.newTrackWriter(context, tracks.length > 1), tracks, trackExporterListener, exportPhotos);
+            TrackWriter trackWriter = new KmlTrackWriter(context, tracks.length > 1, true, true, exportPhotos);
+            return newKmzTrackExporter(context, trackWriter, tracks, trackExporterListener, exportPhotos);
         }
 
         public String getExtension() {
@@ -135,18 +130,15 @@ public enum TrackFileFormat {
 
         private final static boolean exportPhotos = true;
 
-        @Override
-        public TrackWriter newTrackWriter(Context context, boolean multiple) {
-            return new KmlTrackWriter(context, multiple, true, true, exportPhotos);
-        }
-
         @Override
         public String getMimeType() {
             return MIME_KMZ;
         }
 
+        @Override
         public TrackExporter newTrackExporter(Context context, Track[] tracks, TrackExporterListener trackExporterListener) {
-            return newKmzTrackExporter(context, this.newTrackWriter(context, tracks.length > 1), tracks, trackExporterListener, exportPhotos);
+            TrackWriter trackWriter = new KmlTrackWriter(context, tracks.length > 1, true, true, exportPhotos);
+            return newKmzTrackExporter(context, trackWriter, tracks, trackExporterListener, exportPhotos);
         }
 
         public String getExtension() {
@@ -155,8 +147,9 @@ public enum TrackFileFormat {
     },
     GPX {
         @Override
-        public TrackWriter newTrackWriter(Context context, boolean multiple) {
-            return new GpxTrackWriter(context.getString(R.string.app_name));
+        public TrackExporter newTrackExporter(Context context, Track[] tracks, TrackExporterListener trackExporterListener) {
+            TrackWriter trackWriter = new GpxTrackWriter(context.getString(R.string.app_name));
+            return newFileTrackExporter(context, trackWriter, tracks, trackExporterListener);
         }
 
         @Override
@@ -167,23 +160,46 @@ public enum TrackFileFormat {
         public String getExtension() {
             return "gpx";
         }
+    },
+    OPENTRACKS_BINARY {
+        @Override
+        public TrackExporter newTrackExporter(Context context, Track[] tracks, TrackExporterListener trackExporterListener) {
+            return new NativeTrackExporter(ContentProviderUtils.Factory.get(context), tracks, trackExporterListener);
+        }
+
+        @Override
+        public String getMimeType() {
+            return "application/octet-stream";
+        }
+
+        public String getExtension() {
+            return "otrk";
+        }
     };
 
     private static final String MIME_KMZ = "application/vnd.google-earth.kmz";
 
     private static final String MIME_KML = "application/vnd.google-earth.kml+xml";
 
-    public TrackExporter newTrackExporter(Context context, Track[] tracks, TrackExporterListener trackExporterListener) {
-        ContentProviderUtils contentProviderUtils = ContentProviderUtils.Factory.get(context);
-        TrackWriter trackWriter = this.newTrackWriter(context, tracks.length > 1);
-        return new FileTrackExporter(contentProviderUtils, trackWriter, tracks, trackExporterListener);
-    }
+    /**
+     * Creates a new track exporter for the format.
+     *
+     * @param context               the context
+     * @param tracks                the tracks to export
+     * @param trackExporterListener the listener for the exported points (can be null)
+     */
+    public abstract TrackExporter newTrackExporter(Context context, Track[] tracks, TrackExporterListener trackExporterListener);
 
     /**
      * Returns the mime type for each format.
      */
     public abstract String getMimeType();
 
+    private static TrackExporter newFileTrackExporter(Context context, TrackWriter trackWriter, Track[] tracks, TrackExporterListener trackExporterListener) {
+        ContentProviderUtils contentProviderUtils = ContentProviderUtils.Factory.get(context);
+        return new FileTrackExporter(contentProviderUtils, trackWriter, tracks, trackExporterListener);
+    }
+
     private static TrackExporter newKmzTrackExporter(Context context, TrackWriter trackWriter, Track[] tracks, TrackExporterListener trackExporterListener, boolean exportPhotos) {
         ContentProviderUtils contentProviderUtils = ContentProviderUtils.Factory.get(context);
 
@@ -192,14 +208,6 @@ public enum TrackFileFormat {
         return new KmzTrackExporter(contentProviderUtils, fileTrackExporter, tracks, exportPhotos);
     }
 
-    /**
-     * Creates a new track writer for the format.
-     *
-     * @param context  the context
-     * @param multiple true for writing multiple tracks
-     */
-    public abstract TrackWriter newTrackWriter(Context context, boolean multiple);
-
     /**
      * Returns the file extension for each format.
      */
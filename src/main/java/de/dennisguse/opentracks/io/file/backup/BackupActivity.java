@@ -0,0 +1,184 @@
+package de.dennisguse.opentracks.io.file.backup;
+
+import android.Manifest;
+import android.app.AlertDialog;
+import android.app.Dialog;
+import android.content.DialogInterface;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.core.app.ActivityCompat;
+import androidx.fragment.app.FragmentActivity;
+
+import java.io.File;
+
+import de.dennisguse.opentracks.R;
+import de.dennisguse.opentracks.util.DialogUtils;
+import de.dennisguse.opentracks.util.FileUtils;
+
+/**
+ * An activity for backing up the database and the photos to the external storage or for restoring the last backup (see {@link DatabaseBackup}).
+ */
+public class BackupActivity extends FragmentActivity {
+
+    /**
+     * true to restore the last backup (after a confirmation).
+     */
+    public static final String EXTRA_RESTORE = "restore";
+
+    private static final int EXTERNAL_STORAGE_PERMISSION_REQUEST_CODE = 7;
+
+    private static final int DIALOG_PROGRESS_ID = 0;
+    private static final int DIALOG_RESULT_ID = 1;
+    private static final int DIALOG_CONFIRM_RESTORE_ID = 2;
+
+    private boolean restore;
+    private File directory;
+    private String directoryDisplayName;
+
+    private BackupAsyncTask backupAsyncTask;
+
+    private DatabaseBackup.Result result;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        restore = getIntent().getBooleanExtra(EXTRA_RESTORE, false);
+
+        if (!FileUtils.isExternalStorageWriteable() || ActivityCompat.checkSelfPermission(this, Manifest.permission.WRITE_EXTERNAL_STORAGE) == PackageManager.PERMISSION_DENIED) {
+            ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.WRITE_EXTERNAL_STORAGE}, EXTERNAL_STORAGE_PERMISSION_REQUEST_CODE);
+        } else {
+            backupStart();
+        }
+    }
+
+    @Override
+    public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
+        if (requestCode == EXTERNAL_STORAGE_PERMISSION_REQUEST_CODE) {
+            if (ActivityCompat.checkSelfPermission(this, Manifest.permission.WRITE_EXTERNAL_STORAGE) == PackageManager.PERMISSION_DENIED) {
+                Toast.makeText(this, R.string.external_storage_not_writable, Toast.LENGTH_LONG).show();
+                finish();
+            } else {
+                backupStart();
+            }
+            return;
+        }
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+    }
+
+    private void backupStart() {
+        directory = new File(FileUtils.getPath(DatabaseBackup.DIRECTORY));
+        if (!FileUtils.isExternalStorageWriteable() || !FileUtils.ensureDirectoryExists(directory)) {
+            Toast.makeText(this, R.string.external_storage_not_writable, Toast.LENGTH_LONG).show();
+            finish();
+            return;
+        }
+
+        directoryDisplayName = FileUtils.getPathDisplayName(DatabaseBackup.DIRECTORY);
+
+        if (restore) {
+            // Replaces all tracks
+            showDialog(DIALOG_CONFIRM_RESTORE_ID);
+        } else {
+            startAsyncTask();
+        }
+    }
+
+    private void startAsyncTask() {
+        backupAsyncTask = new BackupAsyncTask(this, directory, restore);
+        backupAsyncTask.execute();
+    }
+
+    @Override
+    protected Dialog onCreateDialog(int id) {
+        switch (id) {
+            case DIALOG_CONFIRM_RESTORE_ID:
+                return new AlertDialog.Builder(this).setCancelable(true)
+                        .setIcon(android.R.drawable.ic_dialog_alert)
+                        .setMessage(getString(R.string.restore_confirm_message, directoryDisplayName))
+                        .setOnCancelListener(new DialogInterface.OnCancelListener() {
+                            @Override
+                            public void onCancel(DialogInterface dialog) {
+                                dialog.dismiss();
+                                finish();
+                            }
+                        }).setNegativeButton(R.string.generic_no, new DialogInterface.OnClickListener() {
+                            @Override
+                            public void onClick(DialogInterface dialog, int arg1) {
+                                dialog.dismiss();
+                                finish();
+                            }
+                        }).setPositiveButton(R.string.generic_yes, new DialogInterface.OnClickListener() {
+                            @Override
+                            public void onClick(DialogInterface dialog, int arg1) {
+                                dialog.dismiss();
+                                startAsyncTask();
+                            }
+                        }).setTitle(R.string.menu_restore).create();
+            case DIALOG_PROGRESS_ID:
+                return DialogUtils.createSpinnerProgressDialog(this, restore ? R.string.restore_progress_message : R.string.backup_progress_message, new DialogInterface.OnCancelListener() {
+                    @Override
+                    public void onCancel(DialogInterface dialog) {
+                        backupAsyncTask.cancel(true);
+                        dialog.dismiss();
+                        finish();
+                    }
+                });
+            case DIALOG_RESULT_ID:
+                int iconId;
+                int titleId;
+                String message;
+                if (result != null) {
+                    iconId = R.drawable.ic_dialog_success_24dp;
+                    titleId = R.string.generic_success_title;
+                    String tracks = getResources().getQuantityString(R.plurals.tracks, result.getTrackCount(), result.getTrackCount());
+                    if (restore) {
+                        message = getString(R.string.restore_success, tracks, result.getArchive().getName());
+                    } else {
+                        message = getString(result.isIncremental() ? R.string.backup_incremental_success : R.string.backup_success, tracks, directoryDisplayName);
+                    }
+                } else {
+                    iconId = R.drawable.ic_dialog_error_24dp;
+                    titleId = R.string.generic_error_title;
+                    message = getString(restore ? R.string.restore_error : R.string.backup_error, directoryDisplayName);
+                }
+                return new AlertDialog.Builder(this).setCancelable(true)
+                        .setIcon(iconId).setMessage(message)
+                        .setOnCancelListener(new DialogInterface.OnCancelListener() {
+                            @Override
+                            public void onCancel(DialogInterface dialog) {
+                                dialog.dismiss();
+                                finish();
+                            }
+                        }).setPositiveButton(R.string.generic_ok, new DialogInterface.OnClickListener() {
+                            @Override
+                            public void onClick(DialogInterface dialog, int arg1) {
+                                dialog.dismiss();
+                                finish();
+                            }
+                        }).setTitle(titleId).create();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Invokes when the associated AsyncTask completes.
+     *
+     * @param result the result of the backup (or the restore) or null if failed
+     */
+    public void onAsyncTaskCompleted(DatabaseBackup.Result result) {
+        this.result = result;
+        removeDialog(DIALOG_PROGRESS_ID);
+        showDialog(DIALOG_RESULT_ID);
+    }
+
+    /**
+     * Shows the progress dialog.
+     */
+    public void showProgressDialog() {
+        showDialog(DIALOG_PROGRESS_ID);
+    }
+}
@@ -0,0 +1,71 @@
+package de.dennisguse.opentracks.io.file.backup;
+
+import android.os.AsyncTask;
+
+import java.io.File;
+
+/**
+ * Async Task to back up or to restore the database.
+ */
+public class BackupAsyncTask extends AsyncTask<Void, Void, DatabaseBackup.Result> {
+
+    private final DatabaseBackup databaseBackup;
+    private final boolean restore;
+    private BackupActivity backupActivity;
+
+    // true if the AsyncTask has completed
+    private boolean completed = false;
+    private DatabaseBackup.Result result;
+
+    /**
+     * Creates an AsyncTask.
+     *
+     * @param backupActivity the activity currently associated with this task
+     * @param directory      the directory of the archives
+     * @param restore        true to restore the last backup; false to back up
+     */
+    public BackupAsyncTask(BackupActivity backupActivity, File directory, boolean restore) {
+        this.backupActivity = backupActivity;
+        this.restore = restore;
+        databaseBackup = new DatabaseBackup(backupActivity.getApplicationContext(), directory);
+    }
+
+    /**
+     * Sets the current activity associated with this AyncTask.
+     *
+     * @param backupActivity the current activity, can be null
+     */
+    public void setActivity(BackupActivity backupActivity) {
+        this.backupActivity = backupActivity;
+        if (completed && backupActivity != null) {
+            backupActivity.onAsyncTaskCompleted(result);
+        }
+    }
+
+    @Override
+    protected void onPreExecute() {
+        if (backupActivity != null) {
+            backupActivity.showProgressDialog();
+        }
+    }
+
+    @Override
+    protected DatabaseBackup.Result doInBackground(Void... params) {
+        return restore ? databaseBackup.restore() : databaseBackup.backup();
+    }
+
+    @Override
+    protected void onPostExecute(DatabaseBackup.Result result) {
+        completed = true;
+        this.result = result;
+        if (backupActivity != null) {
+            backupActivity.onAsyncTaskCompleted(result);
+        }
+    }
+
+    @Override
+    protected void onCancelled(DatabaseBackup.Result result) {
+        completed = true;
+        this.result = null;
+    }
+}
@@ -0,0 +1,706 @@
+package de.dennisguse.opentracks.io.file.backup;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import de.dennisguse.opentracks.content.ContentProviderUtils;
+import de.dennisguse.opentracks.content.DatabaseSnapshot;
+import de.dennisguse.opentracks.content.Track;
+import de.dennisguse.opentracks.content.TrackPointsColumns;
+import de.dennisguse.opentracks.content.TracksColumns;
+import de.dennisguse.opentracks.util.FileUtils;
+import de.dennisguse.opentracks.util.PreferencesUtils;
+
+/**
+ * Backs up the database and the photos into zip archives; can be used while a track is recorded.
+ * <p>
+ * An archive contains a snapshot of the database (see {@link DatabaseSnapshot}), the photos of the tracks in the snapshot, the state of all tracks, and a manifest.
+ * A full backup contains all tracks; an incremental backup only the tracks changed since the previous backup (full or incremental).
+ * To restore (see {@link #restore()}), the last full backup is restored and then each later incremental backup: its tracks replace the tracks with the same id and the tracks missing in its state are deleted.
+ * <p>
+ * An archive is only kept if it can be restored: the checksums of all entries, the integrity of the restored database, and its tracks are verified.
+ */
+public class DatabaseBackup {
+
+    private static final String TAG = DatabaseBackup.class.getSimpleName();
+
+    /**
+     * The directory of the archives under the app's external storage directory.
+     */
+    public static final String DIRECTORY = "backup";
+
+    private static final String FILE_PREFIX = "backup-";
+    private static final String FULL = "full";
+    private static final String INCREMENTAL = "incremental";
+    private static final String EXTENSION = "zip";
+
+    // The entries of an archive
+    private static final String DATABASE_ENTRY = "database.db";
+    private static final String STATE_ENTRY = "state.txt";
+    private static final String MANIFEST_ENTRY = "backup.properties";
+    private static final String PHOTOS_ENTRY = "photos/";
+
+    private static final String MANIFEST_VERSION = "version";
+    private static final String MANIFEST_TYPE = "type";
+    private static final String MANIFEST_BASE = "base";
+    private static final String MANIFEST_TIME = "time";
+    private static final String MANIFEST_TRACKS = "tracks";
+    private static final String MANIFEST_PHOTOS = "photos";
+    private static final int VERSION = 1;
+
+    // A full backup is written after this number of incremental backups
+    private static final int MAX_INCREMENTAL_BACKUPS = 6;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Context context;
+    private final ContentProviderUtils contentProviderUtils;
+    private final File directory;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /**
+     * Constructor.
+     *
+     * @param context   the context
+     * @param directory the directory of the archives
+     */
+    public DatabaseBackup(Context context, File directory) {
+        this.context = context;
+        this.contentProviderUtils = ContentProviderUtils.Factory.get(context);
+        this.directory = directory;
+    }
+
+    /**
+     * Writes a backup: incremental if there is a previous backup and less than {@link #MAX_INCREMENTAL_BACKUPS} incremental backups since the last full backup; full otherwise.
+     *
+     * @return the result or null if failed
+     */
+    public Result backup() {
+        File[] archives = getArchives();
+        File previousArchive = null;
+        int incrementalCount = 0;
+        for (int i = archives.length - 1; i >= 0; i--) {
+            if (previousArchive == null) {
+                previousArchive = archives[i];
+            }
+            if (isFull(archives[i])) {
+                break;
+            }
+            incrementalCount++;
+        }
+
+        if (previousArchive != null && incrementalCount < MAX_INCREMENTAL_BACKUPS) {
+            try {
+                Map<Long, Long> previousFingerprints = new HashMap<>();
+                for (TrackState trackState : readArchiveState(previousArchive)) {
+                    previousFingerprints.put(trackState.trackId, trackState.fingerprint);
+                }
+                return backup(previousFingerprints, previousArchive.getName());
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to read the previous backup " + previousArchive + "; writing a full backup.", e);
+            }
+        }
+        return backup(new HashMap<Long, Long>(), null);
+    }
+
+    /**
+     * Writes a backup.
+     *
+     * @param previousFingerprints the track fingerprints of the previous backup (empty for a full backup)
+     * @param baseName             the file name of the previous backup (null for a full backup)
+     * @return the result or null if failed
+     */
+    private Result backup(Map<Long, Long> previousFingerprints, String baseName) {
+        String name = FILE_PREFIX + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date()) + "-" + (baseName == null ? FULL : INCREMENTAL);
+        File archive = new File(directory, FileUtils.buildUniqueFileName(directory, name, EXTENSION));
+        File temporaryArchive = new File(directory, archive.getName() + ".tmp");
+        File snapshotFile = new File(context.getCacheDir(), DATABASE_ENTRY);
+
+        try {
+            SQLiteDatabase.deleteDatabase(snapshotFile);
+            if (!contentProviderUtils.writeDatabaseSnapshot(snapshotFile, previousFingerprints)) {
+                return null;
+            }
+
+            List<TrackState> trackStates;
+            SQLiteDatabase snapshot = SQLiteDatabase.openDatabase(snapshotFile.getPath(), null, SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.NO_LOCALIZED_COLLATORS);
+            try {
+                trackStates = readSnapshotState(snapshot);
+            } finally {
+                snapshot.close();
+            }
+
+            Properties manifest = new Properties();
+            manifest.setProperty(MANIFEST_VERSION, Integer.toString(VERSION));
+            manifest.setProperty(MANIFEST_TYPE, baseName == null ? FULL : INCREMENTAL);
+            if (baseName != null) {
+                manifest.setProperty(MANIFEST_BASE, baseName);
+            }
+            manifest.setProperty(MANIFEST_TIME, Long.toString(System.currentTimeMillis()));
+            writeArchive(temporaryArchive, snapshotFile, trackStates, manifest);
+
+            if (!verify(temporaryArchive)) {
+                Log.e(TAG, "Unable to verify backup " + archive);
+                return null;
+            }
+            if (!temporaryArchive.renameTo(archive)) {
+                Log.e(TAG, "Unable to rename backup " + temporaryArchive);
+                return null;
+            }
+            return new Result(archive, baseName != null, Integer.parseInt(manifest.getProperty(MANIFEST_TRACKS)));
+        } catch (IOException | SQLiteException e) {
+            Log.e(TAG, "Unable to write backup " + archive, e);
+            return null;
+        } finally {
+            if (temporaryArchive.exists() && !temporaryArchive.delete()) {
+                Log.w(TAG, "Unable to delete " + temporaryArchive);
+            }
+            SQLiteDatabase.deleteDatabase(snapshotFile);
+        }
+    }
+
+    /**
+     * Restores the last backup: the last full backup and each later incremental backup are merged into a temporary database, verified, and then replace all tracks of the database (i.e., tracks recorded after the backup are deleted).
+     * The photos of the tracks are replaced, too.
+     * Not while recording.
+     * <p>
+     * The incremental backups are restored up to the first one that is not based on the previous backup or cannot be verified.
+     *
+     * @return the result (the last restored archive and the number of tracks) or null if failed
+     */
+    public Result restore() {
+        if (PreferencesUtils.isRecording(context)) {
+            Log.e(TAG, "Unable to restore while recording");
+            return null;
+        }
+        List<File> archives = getRestoreArchives();
+        if (archives.isEmpty()) {
+            Log.e(TAG, "No backup to restore in " + directory);
+            return null;
+        }
+
+        File databaseFile = new File(context.getCacheDir(), "restore-" + DATABASE_ENTRY);
+        File incrementalFile = new File(context.getCacheDir(), "restore-incremental-" + DATABASE_ENTRY);
+        try {
+            SQLiteDatabase.deleteDatabase(databaseFile);
+            extractDatabase(archives.get(0), databaseFile);
+
+            List<TrackState> trackStates;
+            SQLiteDatabase db = SQLiteDatabase.openDatabase(databaseFile.getPath(), null, SQLiteDatabase.OPEN_READWRITE | SQLiteDatabase.NO_LOCALIZED_COLLATORS);
+            try {
+                for (File archive : archives.subList(1, archives.size())) {
+                    SQLiteDatabase.deleteDatabase(incrementalFile);
+                    extractDatabase(archive, incrementalFile);
+                    if (!new DatabaseSnapshot(db, incrementalFile).restore()) {
+                        Log.e(TAG, "Unable to merge backup " + archive);
+                        return null;
+                    }
+                }
+                trackStates = readSnapshotState(db);
+            } finally {
+                db.close();
+            }
+
+            // The merged database contains all tracks of the last state.
+            List<TrackState> restoredTrackStates = new ArrayList<>();
+            for (TrackState trackState : trackStates) {
+                restoredTrackStates.add(new TrackState(trackState.trackId, trackState.fingerprint, trackState.numberOfTrackPoints, true));
+            }
+            if (!verifyDatabase(databaseFile, restoredTrackStates)) {
+                Log.e(TAG, "Unable to verify the merged backup");
+                return null;
+            }
+
+            List<Long> previousTrackIds = new ArrayList<>();
+            for (Track track : contentProviderUtils.getAllTracks()) {
+                previousTrackIds.add(track.getId());
+            }
+            if (!contentProviderUtils.restoreDatabaseSnapshot(databaseFile)) {
+                return null;
+            }
+            restorePhotos(archives, trackStates, previousTrackIds);
+            return new Result(archives.get(archives.size() - 1), archives.size() > 1, trackStates.size());
+        } catch (IOException | SQLiteException e) {
+            Log.e(TAG, "Unable to restore backup", e);
+            return null;
+        } finally {
+            SQLiteDatabase.deleteDatabase(databaseFile);
+            SQLiteDatabase.deleteDatabase(incrementalFile);
+        }
+    }
+
+    /**
+     * Verifies that an archive can be restored: reads all entries (verifying their checksums), restores the database into a temporary file, checks its integrity, and compares its tracks and track points with the state.
+     *
+     * @param archive the archive
+     * @return true if the archive can be restored
+     */
+    public boolean verify(File archive) {
+        File databaseFile = new File(context.getCacheDir(), "verify-" + DATABASE_ENTRY);
+        SQLiteDatabase.deleteDatabase(databaseFile);
+        try (ZipInputStream zipInputStream = new ZipInputStream(new BufferedInputStream(new FileInputStream(archive), BUFFER_SIZE))) {
+            boolean hasDatabase = false;
+            List<TrackState> trackStates = null;
+            Properties manifest = null;
+            int photoCount = 0;
+
+            ZipEntry zipEntry;
+            while ((zipEntry = zipInputStream.getNextEntry()) != null) {
+                String entryName = zipEntry.getName();
+                if (DATABASE_ENTRY.equals(entryName)) {
+                    try (OutputStream outputStream = new FileOutputStream(databaseFile)) {
+                        copy(zipInputStream, outputStream);
+                    }
+                    hasDatabase = true;
+                } else if (STATE_ENTRY.equals(entryName)) {
+                    trackStates = readState(zipInputStream);
+                } else if (MANIFEST_ENTRY.equals(entryName)) {
+                    manifest = new Properties();
+                    manifest.load(zipInputStream);
+                } else {
+                    // The checksum is verified at the end of the entry.
+                    while (zipInputStream.read(buffer) != -1) {
+                        // Skip
+                    }
+                    if (entryName.startsWith(PHOTOS_ENTRY)) {
+                        photoCount++;
+                    }
+                }
+                zipInputStream.closeEntry();
+            }
+
+            if (!hasDatabase || trackStates == null || manifest == null) {
+                Log.e(TAG, "Missing entries in " + archive);
+                return false;
+            }
+            if (!Integer.toString(photoCount).equals(manifest.getProperty(MANIFEST_PHOTOS))) {
+                Log.e(TAG, "Missing photos in " + archive);
+                return false;
+            }
+            return verifyDatabase(databaseFile, trackStates);
+        } catch (IOException | SQLiteException e) {
+            Log.e(TAG, "Unable to verify " + archive, e);
+            return false;
+        } finally {
+            SQLiteDatabase.deleteDatabase(databaseFile);
+        }
+    }
+
+    /**
+     * Gets the archives sorted by time (i.e., by name).
+     */
+    private File[] getArchives() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return new File[0];
+        }
+        List<File> archives = new ArrayList<>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(FILE_PREFIX) && name.endsWith("." + EXTENSION)) {
+                archives.add(file);
+            }
+        }
+        File[] result = archives.toArray(new File[0]);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Gets the archives to restore (in order): the last full backup and the later incremental backups based on it.
+     * Ends before an archive that is not based on the previous one or cannot be verified; empty if the full backup cannot be verified.
+     */
+    private List<File> getRestoreArchives() {
+        File[] archives = getArchives();
+        int fullIndex = archives.length - 1;
+        while (fullIndex >= 0 && !isFull(archives[fullIndex])) {
+            fullIndex--;
+        }
+
+        List<File> restoreArchives = new ArrayList<>();
+        if (fullIndex < 0) {
+            return restoreArchives;
+        }
+        for (int i = fullIndex; i < archives.length; i++) {
+            if (i > fullIndex) {
+                String base = null;
+                try {
+                    base = readArchiveManifest(archives[i]).getProperty(MANIFEST_BASE);
+                } catch (IOException e) {
+                    Log.w(TAG, "Unable to read the manifest of " + archives[i], e);
+                }
+                if (!archives[i - 1].getName().equals(base)) {
+                    Log.w(TAG, "Backup " + archives[i] + " is not based on " + archives[i - 1] + "; restoring up to " + archives[i - 1]);
+                    break;
+                }
+            }
+            if (!verify(archives[i])) {
+                Log.w(TAG, "Unable to verify backup " + archives[i]);
+                break;
+            }
+            restoreArchives.add(archives[i]);
+        }
+        return restoreArchives;
+    }
+
+    private static boolean isFull(File archive) {
+        return archive.getName().contains("-" + FULL);
+    }
+
+    /**
+     * Writes the archive.
+     * Adds the number of tracks and photos to the manifest.
+     */
+    private void writeArchive(File archive, File snapshotFile, List<TrackState> trackStates, Properties manifest) throws IOException {
+        int trackCount = 0;
+        int photoCount = 0;
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(archive), BUFFER_SIZE))) {
+            zipOutputStream.putNextEntry(new ZipEntry(DATABASE_ENTRY));
+            try (InputStream inputStream = new FileInputStream(snapshotFile)) {
+                copy(inputStream, zipOutputStream);
+            }
+            zipOutputStream.closeEntry();
+
+            zipOutputStream.putNextEntry(new ZipEntry(STATE_ENTRY));
+            Writer writer = new OutputStreamWriter(zipOutputStream, StandardCharsets.UTF_8);
+            for (TrackState trackState : trackStates) {
+                writer.write(trackState.trackId + " " + trackState.fingerprint + " " + trackState.numberOfTrackPoints + " " + (trackState.included ? 1 : 0) + "\n");
+            }
+            writer.flush();
+            zipOutputStream.closeEntry();
+
+            // Photos are already compressed
+            zipOutputStream.setLevel(Deflater.NO_COMPRESSION);
+            for (TrackState trackState : trackStates) {
+                if (!trackState.included) {
+                    continue;
+                }
+                trackCount++;
+                File photoDir = FileUtils.getPhotoDir(trackState.trackId);
+                File[] photos = photoDir.listFiles();
+                if (photos == null) {
+                    continue;
+                }
+                for (File photo : photos) {
+                    if (!photo.isFile()) {
+                        continue;
+                    }
+                    zipOutputStream.putNextEntry(new ZipEntry(PHOTOS_ENTRY + photoDir.getName() + "/" + photo.getName()));
+                    try (InputStream inputStream = new FileInputStream(photo)) {
+                        copy(inputStream, zipOutputStream);
+                    }
+                    zipOutputStream.closeEntry();
+                    photoCount++;
+                }
+            }
+            zipOutputStream.setLevel(Deflater.DEFAULT_COMPRESSION);
+
+            manifest.setProperty(MANIFEST_TRACKS, Integer.toString(trackCount));
+            manifest.setProperty(MANIFEST_PHOTOS, Integer.toString(photoCount));
+            zipOutputStream.putNextEntry(new ZipEntry(MANIFEST_ENTRY));
+            manifest.store(zipOutputStream, null);
+            zipOutputStream.closeEntry();
+        }
+    }
+
+    /**
+     * Restores the photos of the restored tracks from the last archive containing each track; deletes the photos of the tracks deleted by the restore.
+     *
+     * @param archives         the restored archives (in order)
+     * @param trackStates      the state of the restored tracks
+     * @param previousTrackIds the ids of the tracks before the restore
+     */
+    private void restorePhotos(List<File> archives, List<TrackState> trackStates, List<Long> previousTrackIds) throws IOException {
+        Set<Long> pendingTrackIds = new HashSet<>();
+        for (TrackState trackState : trackStates) {
+            pendingTrackIds.add(trackState.trackId);
+        }
+        Set<Long> trackIds = new HashSet<>(previousTrackIds);
+        trackIds.addAll(pendingTrackIds);
+        for (long trackId : trackIds) {
+            deletePhotos(trackId);
+        }
+
+        for (int i = archives.size() - 1; i >= 0 && !pendingTrackIds.isEmpty(); i--) {
+            // The photo directory names of the tracks of this archive
+            Map<String, Long> photoDirs = new HashMap<>();
+            for (TrackState trackState : readArchiveState(archives.get(i))) {
+                if (trackState.included && pendingTrackIds.remove(trackState.trackId)) {
+                    photoDirs.put(FileUtils.getPhotoDir(trackState.trackId).getName(), trackState.trackId);
+                }
+            }
+            extractPhotos(archives.get(i), photoDirs);
+        }
+    }
+
+    /**
+     * Extracts the photos of tracks.
+     *
+     * @param archive   the archive
+     * @param photoDirs the track ids by photo directory name
+     */
+    private void extractPhotos(File archive, Map<String, Long> photoDirs) throws IOException {
+        if (photoDirs.isEmpty()) {
+            return;
+        }
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+            while (zipEntries.hasMoreElements()) {
+                ZipEntry zipEntry = zipEntries.nextElement();
+                if (!zipEntry.getName().startsWith(PHOTOS_ENTRY)) {
+                    continue;
+                }
+                // photos/<photo directory>/<photo>
+                String[] names = zipEntry.getName().substring(PHOTOS_ENTRY.length()).split("/");
+                Long trackId = names.length == 2 ? photoDirs.get(names[0]) : null;
+                if (trackId == null || names[1].isEmpty() || names[1].equals("..")) {
+                    continue;
+                }
+                File photoDir = FileUtils.getPhotoDir(trackId);
+                if (!FileUtils.ensureDirectoryExists(photoDir)) {
+                    throw new IOException("Unable to create " + photoDir);
+                }
+                try (InputStream inputStream = zipFile.getInputStream(zipEntry);
+                     OutputStream outputStream = new FileOutputStream(new File(photoDir, names[1]))) {
+                    copy(inputStream, outputStream);
+                }
+            }
+        }
+    }
+
+    private static void deletePhotos(long trackId) {
+        File photoDir = FileUtils.getPhotoDir(trackId);
+        File[] photos = photoDir.listFiles();
+        if (photos == null) {
+            return;
+        }
+        for (File photo : photos) {
+            if (!photo.delete()) {
+                Log.w(TAG, "Unable to delete " + photo);
+            }
+        }
+        photoDir.delete();
+    }
+
+    /**
+     * Extracts the database of an archive.
+     */
+    private void extractDatabase(File archive, File databaseFile) throws IOException {
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            ZipEntry zipEntry = zipFile.getEntry(DATABASE_ENTRY);
+            if (zipEntry == null) {
+                throw new IOException("No database in " + archive);
+            }
+            try (InputStream inputStream = zipFile.getInputStream(zipEntry);
+                 OutputStream outputStream = new FileOutputStream(databaseFile)) {
+                copy(inputStream, outputStream);
+            }
+        }
+    }
+
+    /**
+     * Checks the integrity of a restored database and compares its tracks and track points with the state.
+     */
+    private static boolean verifyDatabase(File databaseFile, List<TrackState> trackStates) {
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(databaseFile.getPath(), null, SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.NO_LOCALIZED_COLLATORS);
+        try {
+            if (!db.isDatabaseIntegrityOk()) {
+                Log.e(TAG, "Database integrity check failed");
+                return false;
+            }
+
+            Map<Long, Long> trackPointCounts = new HashMap<>();
+            try (Cursor cursor = db.rawQuery("SELECT " + TrackPointsColumns.TRACKID + ", COUNT(*) FROM " + TrackPointsColumns.TABLE_NAME + " GROUP BY " + TrackPointsColumns.TRACKID, null)) {
+                while (cursor.moveToNext()) {
+                    trackPointCounts.put(cursor.getLong(0), cursor.getLong(1));
+                }
+            }
+            List<Long> trackIds = new ArrayList<>();
+            try (Cursor cursor = db.rawQuery("SELECT " + TracksColumns._ID + " FROM " + TracksColumns.TABLE_NAME, null)) {
+                while (cursor.moveToNext()) {
+                    trackIds.add(cursor.getLong(0));
+                }
+            }
+
+            int includedCount = 0;
+            for (TrackState trackState : trackStates) {
+                if (!trackState.included) {
+                    continue;
+                }
+                includedCount++;
+                Long trackPointCount = trackPointCounts.remove(trackState.trackId);
+                if (!trackIds.contains(trackState.trackId) || trackState.numberOfTrackPoints != (trackPointCount != null ? trackPointCount : 0L)) {
+                    Log.e(TAG, "Track " + trackState.trackId + " does not match its state");
+                    return false;
+                }
+            }
+            if (includedCount != trackIds.size() || !trackPointCounts.isEmpty()) {
+                Log.e(TAG, "Database contains tracks or track points not in the state");
+                return false;
+            }
+            return true;
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * Reads the state of the tracks from an archive.
+     */
+    private static List<TrackState> readArchiveState(File archive) throws IOException {
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            ZipEntry zipEntry = zipFile.getEntry(STATE_ENTRY);
+            if (zipEntry == null) {
+                throw new IOException("No state in " + archive);
+            }
+            try (InputStream inputStream = zipFile.getInputStream(zipEntry)) {
+                return readState(inputStream);
+            }
+        }
+    }
+
+    /**
+     * Reads the manifest of an archive.
+     */
+    private static Properties readArchiveManifest(File archive) throws IOException {
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            ZipEntry zipEntry = zipFile.getEntry(MANIFEST_ENTRY);
+            if (zipEntry == null) {
+                throw new IOException("No manifest in " + archive);
+            }
+            Properties manifest = new Properties();
+            try (InputStream inputStream = zipFile.getInputStream(zipEntry)) {
+                manifest.load(inputStream);
+            }
+            return manifest;
+        }
+    }
+
+    /**
+     * Reads the state of the tracks from a state entry; does not close the input stream.
+     */
+    private static List<TrackState> readState(InputStream inputStream) throws IOException {
+        List<TrackState> trackStates = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] values = line.split(" ");
+            if (values.length != 4) {
+                throw new IOException("Invalid state: " + line);
+            }
+            try {
+                trackStates.add(new TrackState(Long.parseLong(values[0]), Long.parseLong(values[1]), Long.parseLong(values[2]), "1".equals(values[3])));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid state: " + line, e);
+            }
+        }
+        return trackStates;
+    }
+
+    /**
+     * Reads the state of the tracks from a snapshot.
+     */
+    private static List<TrackState> readSnapshotState(SQLiteDatabase snapshot) {
+        List<TrackState> trackStates = new ArrayList<>();
+        try (Cursor cursor = snapshot.query(DatabaseSnapshot.STATE_TABLE, new String[]{DatabaseSnapshot.STATE_TRACKID, DatabaseSnapshot.STATE_FINGERPRINT, DatabaseSnapshot.STATE_NUMPOINTS, DatabaseSnapshot.STATE_INCLUDED}, null, null, null, null, DatabaseSnapshot.STATE_TRACKID)) {
+            while (cursor.moveToNext()) {
+                trackStates.add(new TrackState(cursor.getLong(0), cursor.getLong(1), cursor.getLong(2), cursor.getInt(3) == 1));
+            }
+        }
+        return trackStates;
+    }
+
+    private void copy(InputStream inputStream, OutputStream outputStream) throws IOException {
+        int count;
+        while ((count = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, count);
+        }
+    }
+
+    /**
+     * The state of a track in a backup.
+     */
+    private static class TrackState {
+
+        final long trackId;
+        final long fingerprint;
+        final long numberOfTrackPoints;
+        // true if the track is in the backup
+        final boolean included;
+
+        TrackState(long trackId, long fingerprint, long numberOfTrackPoints, boolean included) {
+            this.trackId = trackId;
+            this.fingerprint = fingerprint;
+            this.numberOfTrackPoints = numberOfTrackPoints;
+            this.included = included;
+        }
+    }
+
+    /**
+     * The result of a backup.
+     */
+    public static class Result {
+
+        private final File archive;
+        private final boolean incremental;
+        private final int trackCount;
+
+        Result(File archive, boolean incremental, int trackCount) {
+            this.archive = archive;
+            this.incremental = incremental;
+            this.trackCount = trackCount;
+        }
+
+        public File getArchive() {
+            return archive;
+        }
+
+        public boolean isIncremental() {
+            return incremental;
+        }
+
+        /**
+         * Gets the number of tracks in the backup (i.e., the changed tracks of an incremental backup) or restored.
+         */
+        public int getTrackCount() {
+            return trackCount;
+        }
+    }
+}
@@ -20,12 +20,20 @@ import android.content.Context;
 import android.database.Cursor;
 import android.os.AsyncTask;
 import android.os.PowerManager.WakeLock;
+import android.os.Process;
 import android.util.Log;
 
+import androidx.annotation.VisibleForTesting;
+
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import de.dennisguse.opentracks.content.ContentProviderUtils;
 import de.dennisguse.opentracks.content.Track;
@@ -37,6 +45,10 @@ import de.dennisguse.opentracks.util.SystemUtils;
 
 /**
  * Async Task to save tracks to the external storage.
+ * <p>
+ * The tracks are exported concurrently to separate files; each export reads its track points with its own cursor.
+ * The parallelism is fixed: one track per core; while recording, one core is left to the recording and the exports run with background priority.
+ * The progress is the number of points exported of all tracks (published in per mille).
  *
  * @author Jimmy Shih
  */
@@ -44,6 +56,16 @@ import de.dennisguse.opentracks.util.SystemUtils;
 public class ExportAsyncTask extends AsyncTask<Void, Integer, Boolean> {
 
     private static final String TAG = ExportAsyncTask.class.getSimpleName();
+
+    // The interval to publish the progress
+    private static final long PROGRESS_INTERVAL_MS = 100;
+
+    // The number of points exported by a worker before adding them to the progress
+    private static final int PROGRESS_POINTS = 500;
+
+    // The progress is published in per mille (the point counts may exceed an int)
+    private static final int PROGRESS_MAX = 1000;
+
     private final TrackFileFormat trackFileFormat;
     private final File directory;
     private final Context context;
@@ -53,9 +75,15 @@ public class ExportAsyncTask extends AsyncTask<Void, Integer, Boolean> {
 
     private boolean completed;
 
-    private int processedTrackCount;
+    private final AtomicInteger processedTrackCount = new AtomicInteger();
     private int totalTrackCount;
 
+    // The number of points exported of all tracks
+    private final AtomicLong pointCount = new AtomicLong();
+
+    // Guards building a unique file name and creating the file
+    private final Object fileLock = new Object();
+
     /**
      * Creates an AsyncTask.
      *
@@ -64,14 +92,25 @@ public class ExportAsyncTask extends AsyncTask<Void, Integer, Boolean> {
      * @param directory       the directory to write the file
      */
     public ExportAsyncTask(ExportActivity exportActivity, TrackFileFormat trackFileFormat, File directory) {
+        this(exportActivity.getApplicationContext(), trackFileFormat, directory);
         this.exportActivity = exportActivity;
+    }
+
+    /**
+     * Creates an AsyncTask without an activity.
+     *
+     * @param context         the context
+     * @param trackFileFormat the track file format
+     * @param directory       the directory to write the file
+     */
+    @VisibleForTesting
+    ExportAsyncTask(Context context, TrackFileFormat trackFileFormat, File directory) {
         this.trackFileFormat = trackFileFormat;
         this.directory = directory;
-        context = exportActivity.getApplicationContext();
-        contentProviderUtils = ContentProviderUtils.Factory.get(context);
+        this.context = context.getApplicationContext();
+        contentProviderUtils = ContentProviderUtils.Factory.get(this.context);
 
         completed = false;
-        processedTrackCount = 0;
         totalTrackCount = 0;
     }
 
@@ -83,7 +122,7 @@ public class ExportAsyncTask extends AsyncTask<Void, Integer, Boolean> {
     public void setActivity(ExportActivity exportActivity) {
         this.exportActivity = exportActivity;
         if (completed && exportActivity != null) {
-            exportActivity.onAsyncTaskCompleted(processedTrackCount, totalTrackCount);
+            exportActivity.onAsyncTaskCompleted(processedTrackCount.get(), totalTrackCount);
         }
     }
 
@@ -97,14 +136,14 @@ public class ExportAsyncTask extends AsyncTask<Void, Integer, Boolean> {
     @Override
     protected Boolean doInBackground(Void... params) {
         try {
-            Thread.currentThread().setPriority(Thread.MAX_PRIORITY);
-            boolean isRecording = PreferencesUtils.isRecording(exportActivity);
-            boolean isPaused = PreferencesUtils.isRecordingTrackPaused(exportActivity);
+            // The activity may be gone (e.g., rotated)
+            boolean isRecording = PreferencesUtils.isRecording(context);
+            boolean isPaused = PreferencesUtils.isRecordingTrackPaused(context);
             // Get the wake lock if not recording or paused
             if (!isRecording || isPaused) {
-                wakeLock = SystemUtils.acquireWakeLock(exportActivity, wakeLock);
+                wakeLock = SystemUtils.acquireWakeLock(context, wakeLock);
             }
-            return saveAllTracks();
+            return saveAllTracks(isRecording && !isPaused);
         } finally {
             if (wakeLock != null && wakeLock.isHeld()) {
                 wakeLock.release();
@@ -123,7 +162,7 @@ public class ExportAsyncTask extends AsyncTask<Void, Integer, Boolean> {
     protected void onPostExecute(Boolean result) {
         completed = true;
         if (exportActivity != null) {
-            exportActivity.onAsyncTaskCompleted(processedTrackCount, totalTrackCount);
+            exportActivity.onAsyncTaskCompleted(processedTrackCount.get(), totalTrackCount);
         }
     }
 
@@ -131,7 +170,7 @@ public class ExportAsyncTask extends AsyncTask<Void, Integer, Boolean> {
     protected void onCancelled() {
         completed = true;
         if (exportActivity != null) {
-            exportActivity.onAsyncTaskCompleted(processedTrackCount, totalTrackCount);
+            exportActivity.onAsyncTaskCompleted(processedTrackCount.get(), totalTrackCount);
         }
     }
 
@@ -145,24 +184,45 @@ public class ExportAsyncTask extends AsyncTask<Void, Integer, Boolean> {
             return false;
         }
 
-        TrackExporterListener trackExporterListener = new TrackExporterListener() {
-            @Override
-            public void onProgressUpdate(int number, int max) {
-                //Update the progress dialog once every 500 points.
-                if (number % 500 == 0) {
-                    publishProgress(number, max);
-                }
+        ProgressListener progressListener = new ProgressListener();
+        try {
+            return saveTracks(tracks, progressListener);
+        } finally {
+            // Counts the points not reported (i.e., invalid or not exported) too
+            long numberOfPoints = 0;
+            for (Track track : tracks) {
+                numberOfPoints += track.getNumberOfPoints();
             }
-        };
+            pointCount.addAndGet(Math.max(0, numberOfPoints - progressListener.reportedCount));
+        }
+    }
 
+    /**
+     * Saves tracks to a new file with a unique name.
+     *
+     * @param tracks                the tracks
+     * @param trackExporterListener the listener for the exported points
+     */
+    private boolean saveTracks(Track[] tracks, TrackExporterListener trackExporterListener) {
         TrackExporter trackExporter = trackFileFormat.newTrackExporter(context, tracks, trackExporterListener);
 
         Track track = tracks[0];
-        String fileName = FileUtils.buildUniqueFileName(directory, track.getName(), trackFileFormat.getExtension());
-        File file = new File(directory, fileName);
+        File file;
+        FileOutputStream fileOutputStream;
+        // Concurrent exports of tracks with the same name must not get the same file
+        synchronized (fileLock) {
+            String fileName = FileUtils.buildUniqueFileName(directory, track.getName(), trackFileFormat.getExtension());
+            file = new File(directory, fileName);
+            try {
+                fileOutputStream = new FileOutputStream(file);
+            } catch (FileNotFoundException e) {
+                Log.e(TAG, "Unable to open file " + file.getName(), e);
+                return false;
+            }
+        }
 
-        try (FileOutputStream fileOutputStream = new FileOutputStream(file)) {
-            if (trackExporter.writeTrack(context, fileOutputStream)) {
+        try (FileOutputStream outputStream = fileOutputStream) {
+            if (trackExporter.writeTrack(context, outputStream)) {
                 return true;
             } else {
                 if (!file.delete()) {
@@ -171,9 +231,6 @@ public class ExportAsyncTask extends AsyncTask<Void, Integer, Boolean> {
                 Log.e(TAG, "Unable to export track");
                 return false;
             }
-        } catch (FileNotFoundException e) {
-            Log.e(TAG, "Unable to open file " + file.getName(), e);
-            return false;
         } catch (IOException e) {
             Log.e(TAG, "Unable to close file output stream", e);
             return false;
@@ -182,25 +239,129 @@ public class ExportAsyncTask extends AsyncTask<Void, Integer, Boolean> {
 
     /**
      * Saves all the tracks.
+     *
+     * @param isRecording true if recording; then, the exports leave one core to the recording and run with background priority
      */
-    private Boolean saveAllTracks() {
+    private Boolean saveAllTracks(boolean isRecording) {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        if (isRecording) {
+            parallelism--;
+        }
+
+        long totalPointCount = 0;
+        ExecutorService executorService;
         try (Cursor cursor = contentProviderUtils.getTrackCursor(null, null, TracksColumns._ID)) {
             if (cursor == null) {
                 return false;
             }
             totalTrackCount = cursor.getCount();
+            if (totalTrackCount == 0) {
+                return true;
+            }
+
+            executorService = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, totalTrackCount)));
             for (int i = 0; i < totalTrackCount; i++) {
-                if (isCancelled()) {
-                    return false;
-                }
                 cursor.moveToPosition(i);
                 Track track = contentProviderUtils.createTrack(cursor);
-                if (track != null && saveTracks(new Track[]{track})) {
-                    processedTrackCount++;
+                if (track != null) {
+                    totalPointCount += track.getNumberOfPoints();
+                    executorService.execute(new ExportRunnable(track, isRecording));
+                }
+            }
+            executorService.shutdown();
+        }
+
+        try {
+            while (!awaitTermination(executorService)) {
+                if (isCancelled()) {
+                    // The exports stop at their next track point (interrupted)
+                    executorService.shutdownNow();
+                    return false;
                 }
-                publishProgress(i + 1, totalTrackCount);
+                publishProgress(getProgress(pointCount.get(), totalPointCount), PROGRESS_MAX);
+            }
+            publishProgress(PROGRESS_MAX, PROGRESS_MAX);
+            return !isCancelled();
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Gets the progress in per mille.
+     *
+     * @param count the number of points exported
+     * @param total the number of points of all tracks
+     */
+    private static int getProgress(long count, long total) {
+        if (total <= 0) {
+            return 0;
+        }
+        return (int) (Math.min(count, total) * PROGRESS_MAX / total);
+    }
+
+    /**
+     * Waits for the exports for {@link #PROGRESS_INTERVAL_MS}.
+     * If interrupted (i.e., cancelled), the exports are stopped.
+     *
+     * @return true if all exports are done
+     */
+    private boolean awaitTermination(ExecutorService executorService) {
+        try {
+            return executorService.awaitTermination(PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            executorService.shutdownNow();
+            return false;
+        }
+    }
+
+    /**
+     * Exports a track in a worker thread.
+     */
+    private class ExportRunnable implements Runnable {
+
+        private final Track track;
+        private final boolean isRecording;
+
+        ExportRunnable(Track track, boolean isRecording) {
+            this.track = track;
+            this.isRecording = isRecording;
+        }
+
+        @Override
+        public void run() {
+            if (isCancelled()) {
+                return;
+            }
+            if (isRecording) {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            }
+            if (saveTracks(new Track[]{track})) {
+                processedTrackCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Adds the exported points of a file to the progress; once every {@link #PROGRESS_POINTS} points to not contend for the counter.
+     */
+    private class ProgressListener implements TrackExporterListener {
+
+        // The number of points added to the progress
+        private long reportedCount = 0;
+        private int lastNumber = 0;
+
+        @Override
+        public void onProgressUpdate(int number, int max) {
+            if (number < lastNumber) {
+                // Next track of the file
+                lastNumber = 0;
+            }
+            if (number - lastNumber >= PROGRESS_POINTS || number == max) {
+                pointCount.addAndGet(number - lastNumber);
+                reportedCount += number - lastNumber;
+                lastNumber = number;
             }
-            return true;
         }
     }
 }
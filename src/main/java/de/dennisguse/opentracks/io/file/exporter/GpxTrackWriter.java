@@ -19,13 +19,9 @@ package de.dennisguse.opentracks.io.file.exporter;
 import android.location.Location;
 
 import java.io.OutputStream;
-import java.io.PrintWriter;
-import java.text.NumberFormat;
-import java.util.Locale;
 
 import de.dennisguse.opentracks.content.Track;
 import de.dennisguse.opentracks.content.Waypoint;
-import de.dennisguse.opentracks.util.StringUtils;
 
 /**
  * Write track as GPX to a file.
@@ -35,24 +31,15 @@ import de.dennisguse.opentracks.util.StringUtils;
 //TODO Can we export SensorData in GPX?
 public class GpxTrackWriter implements TrackWriter {
 
-    private static final NumberFormat ELEVATION_FORMAT = NumberFormat.getInstance(Locale.US);
-    private static final NumberFormat COORDINATE_FORMAT = NumberFormat.getInstance(Locale.US);
-
-    static {
-        /*
-         * GPX readers expect to see fractional numbers with US-style punctuation.
-         * That is, they want periods for decimal points, rather than commas.
-         */
-        ELEVATION_FORMAT.setMaximumFractionDigits(1);
-        ELEVATION_FORMAT.setGroupingUsed(false);
-
-        COORDINATE_FORMAT.setMaximumFractionDigits(6);
-        COORDINATE_FORMAT.setMaximumIntegerDigits(3);
-        COORDINATE_FORMAT.setGroupingUsed(false);
-    }
+    /*
+     * GPX readers expect to see fractional numbers with US-style punctuation.
+     * That is, they want periods for decimal points, rather than commas.
+     */
+    private static final int ELEVATION_FRACTION_DIGITS = 1;
+    private static final int COORDINATE_FRACTION_DIGITS = 6;
 
     private final String creator;
-    private PrintWriter printWriter;
+    private XmlOutput xmlOutput;
 
     public GpxTrackWriter(String creator) {
         this.creator = creator;
@@ -60,43 +47,43 @@ public class GpxTrackWriter implements TrackWriter {
 
     @Override
     public void prepare(OutputStream outputStream) {
-        this.printWriter = new PrintWriter(outputStream);
+        this.xmlOutput = new XmlOutput(outputStream);
     }
 
     @Override
     public void close() {
-        if (printWriter != null) {
-            printWriter.flush();
-            printWriter = null;
+        if (xmlOutput != null) {
+            xmlOutput.flush();
+            xmlOutput = null;
         }
     }
 
     @Override
     public void writeHeader(Track[] tracks) {
-        if (printWriter != null) {
-            printWriter.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-            printWriter.println("<gpx");
-            printWriter.println("version=\"1.1\"");
-            printWriter.println("creator=\"" + creator + "\"");
-            printWriter.println("xmlns=\"http://www.topografix.com/GPX/1/1\"");
-            printWriter.println("xmlns:topografix=\"http://www.topografix.com/GPX/Private/TopoGrafix/0/1\"");
-            printWriter.println("xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"");
-            printWriter.println("xsi:schemaLocation=\"http://www.topografix.com/GPX/1/1"
+        if (xmlOutput != null) {
+            xmlOutput.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            xmlOutput.println("<gpx");
+            xmlOutput.println("version=\"1.1\"");
+            xmlOutput.println("creator=\"" + creator + "\"");
+            xmlOutput.println("xmlns=\"http://www.topografix.com/GPX/1/1\"");
+            xmlOutput.println("xmlns:topografix=\"http://www.topografix.com/GPX/Private/TopoGrafix/0/1\"");
+            xmlOutput.println("xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"");
+            xmlOutput.println("xsi:schemaLocation=\"http://www.topografix.com/GPX/1/1"
                     + " http://www.topografix.com/GPX/1/1/gpx.xsd"
                     + " http://www.topografix.com/GPX/Private/TopoGrafix/0/1"
                     + " http://www.topografix.com/GPX/Private/TopoGrafix/0/1/topografix.xsd\">");
-            printWriter.println("<metadata>");
+            xmlOutput.println("<metadata>");
             Track track = tracks[0];
-            printWriter.println("<name>" + StringUtils.formatCData(track.getName()) + "</name>");
-            printWriter.println("<desc>" + StringUtils.formatCData(track.getDescription()) + "</desc>");
-            printWriter.println("</metadata>");
+            xmlOutput.printlnCDataElement("name", track.getName());
+            xmlOutput.printlnCDataElement("desc", track.getDescription());
+            xmlOutput.println("</metadata>");
         }
     }
 
     @Override
     public void writeFooter() {
-        if (printWriter != null) {
-            printWriter.println("</gpx>");
+        if (xmlOutput != null) {
+            xmlOutput.println("</gpx>");
         }
     }
 
@@ -112,21 +99,19 @@ public class GpxTrackWriter implements TrackWriter {
 
     @Override
     public void writeWaypoint(Waypoint waypoint) {
-        if (printWriter != null) {
+        if (xmlOutput != null) {
             Location location = waypoint.getLocation();
             if (location != null) {
-                printWriter.println("<wpt " + formatLocation(location) + ">");
-                if (location.hasAltitude()) {
-                    printWriter.println("<ele>" + ELEVATION_FORMAT.format(location.getAltitude()) + "</ele>");
-                }
-                printWriter.println(
-                        "<time>" + StringUtils.formatDateTimeIso8601(location.getTime()) + "</time>");
-                printWriter.println("<name>" + StringUtils.formatCData(waypoint.getName()) + "</name>");
-                printWriter.println("<cmt>" + StringUtils.formatCData(waypoint.getType().name()) + "</cmt>");
-                printWriter.println(
-                        "<desc>" + StringUtils.formatCData(waypoint.getDescription()) + "</desc>");
-                printWriter.println("<type>" + StringUtils.formatCData(waypoint.getCategory()) + "</type>");
-                printWriter.println("</wpt>");
+                xmlOutput.print("<wpt ");
+                writeLocationAttributes(location);
+                xmlOutput.println(">");
+                writeElevation(location);
+                writeTime(location.getTime());
+                xmlOutput.printlnCDataElement("name", waypoint.getName());
+                xmlOutput.printlnCDataElement("cmt", waypoint.getType().name());
+                xmlOutput.printlnCDataElement("desc", waypoint.getDescription());
+                xmlOutput.printlnCDataElement("type", waypoint.getCategory());
+                xmlOutput.println("</wpt>");
             }
         }
     }
@@ -143,51 +128,78 @@ public class GpxTrackWriter implements TrackWriter {
 
     @Override
     public void writeBeginTrack(Track track, Location startLocation) {
-        if (printWriter != null) {
-            printWriter.println("<trk>");
-            printWriter.println("<name>" + StringUtils.formatCData(track.getName()) + "</name>");
-            printWriter.println("<desc>" + StringUtils.formatCData(track.getDescription()) + "</desc>");
-            printWriter.println("<type>" + StringUtils.formatCData(track.getCategory()) + "</type>");
-            printWriter.println("<extensions><topografix:color>c0c0c0</topografix:color></extensions>");
+        if (xmlOutput != null) {
+            xmlOutput.println("<trk>");
+            xmlOutput.printlnCDataElement("name", track.getName());
+            xmlOutput.printlnCDataElement("desc", track.getDescription());
+            xmlOutput.printlnCDataElement("type", track.getCategory());
+            xmlOutput.println("<extensions><topografix:color>c0c0c0</topografix:color></extensions>");
         }
     }
 
     @Override
     public void writeEndTrack(Track track, Location endLocation) {
-        if (printWriter != null) {
-            printWriter.println("</trk>");
+        if (xmlOutput != null) {
+            xmlOutput.println("</trk>");
         }
     }
 
     @Override
     public void writeOpenSegment() {
-        printWriter.println("<trkseg>");
+        xmlOutput.println("<trkseg>");
     }
 
     @Override
     public void writeCloseSegment() {
-        printWriter.println("</trkseg>");
+        xmlOutput.println("</trkseg>");
     }
 
     @Override
     public void writeLocation(Location location) {
-        if (printWriter != null) {
-            printWriter.println("<trkpt " + formatLocation(location) + ">");
-            if (location.hasAltitude()) {
-                printWriter.println("<ele>" + ELEVATION_FORMAT.format(location.getAltitude()) + "</ele>");
-            }
-            printWriter.println(
-                    "<time>" + StringUtils.formatDateTimeIso8601(location.getTime()) + "</time>");
-            printWriter.println("</trkpt>");
+        if (xmlOutput != null) {
+            xmlOutput.print("<trkpt ");
+            writeLocationAttributes(location);
+            xmlOutput.println(">");
+            writeElevation(location);
+            writeTime(location.getTime());
+            xmlOutput.println("</trkpt>");
         }
     }
 
     /**
-     * Formats a location with latitude and longitude coordinates.
+     * Writes the elevation element if the location has an altitude.
+     *
+     * @param location the location
+     */
+    private void writeElevation(Location location) {
+        if (location.hasAltitude()) {
+            xmlOutput.print("<ele>");
+            xmlOutput.printDouble(location.getAltitude(), ELEVATION_FRACTION_DIGITS);
+            xmlOutput.println("</ele>");
+        }
+    }
+
+    /**
+     * Writes the time element.
+     *
+     * @param time the time
+     */
+    private void writeTime(long time) {
+        xmlOutput.print("<time>");
+        xmlOutput.printTime(time);
+        xmlOutput.println("</time>");
+    }
+
+    /**
+     * Writes the latitude and longitude attributes of a location.
      *
      * @param location the location
      */
-    private String formatLocation(Location location) {
-        return "lat=\"" + COORDINATE_FORMAT.format(location.getLatitude()) + "\" lon=\"" + COORDINATE_FORMAT.format(location.getLongitude()) + "\"";
+    private void writeLocationAttributes(Location location) {
+        xmlOutput.print("lat=\"");
+        xmlOutput.printDouble(location.getLatitude(), COORDINATE_FRACTION_DIGITS);
+        xmlOutput.print("\" lon=\"");
+        xmlOutput.printDouble(location.getLongitude(), COORDINATE_FRACTION_DIGITS);
+        xmlOutput.print('"');
     }
 }
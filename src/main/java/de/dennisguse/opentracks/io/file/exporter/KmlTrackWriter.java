@@ -16,14 +16,11 @@
 package de.dennisguse.opentracks.io.file.exporter;
 
 import android.content.Context;
-import android.database.Cursor;
 import android.location.Location;
 import android.net.Uri;
 
 import java.io.OutputStream;
-import java.io.PrintWriter;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 import de.dennisguse.opentracks.R;
 import de.dennisguse.opentracks.content.ContentProviderUtils;
@@ -34,7 +31,6 @@ import de.dennisguse.opentracks.content.Track;
 import de.dennisguse.opentracks.content.Waypoint;
 import de.dennisguse.opentracks.content.Waypoint.WaypointType;
 import de.dennisguse.opentracks.content.sensor.SensorDataSet;
-import de.dennisguse.opentracks.util.StringUtils;
 
 /**
  * Write track as KML to a file.
@@ -68,13 +64,18 @@ public class KmlTrackWriter implements TrackWriter {
     private final DescriptionGenerator descriptionGenerator;
     private final ContentProviderUtils contentProviderUtils;
 
-    private PrintWriter printWriter;
-    private List<Float> powerList = new ArrayList<>();
-    private List<Float> cadenceList = new ArrayList<>();
-    private List<Float> heartRateList = new ArrayList<>();
+    private XmlOutput xmlOutput;
+    // The sensor data of the current segment (reused for the following segments)
+    private final SensorValues powerValues = new SensorValues();
+    private final SensorValues cadenceValues = new SensorValues();
+    private final SensorValues heartRateValues = new SensorValues();
 
     private Location startLocation;
 
+    // The headings of the photos of the track of the last photo waypoint
+    private PhotoHeadings photoHeadings;
+    private long photoHeadingsTrackId;
+
     /**
      * @param context            the context
      * @param hasMultipleTracks  should encode multiple tracks into one file?
@@ -94,32 +95,34 @@ public class KmlTrackWriter implements TrackWriter {
 
     @Override
     public void prepare(OutputStream outputStream) {
-        this.printWriter = new PrintWriter(outputStream);
+        this.xmlOutput = new XmlOutput(outputStream);
     }
 
     @Override
     public void close() {
-        if (printWriter != null) {
-            printWriter.flush();
-            printWriter = null;
+        if (xmlOutput != null) {
+            xmlOutput.flush();
+            xmlOutput = null;
         }
     }
 
     @Override
     public void writeHeader(Track[] tracks) {
-        if (printWriter != null) {
-            printWriter.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-            printWriter.println("<kml xmlns=\"http://www.opengis.net/kml/2.2\"");
-            printWriter.println("xmlns:gx=\"http://www.google.com/kml/ext/2.2\"");
-            printWriter.println("xmlns:atom=\"http://www.w3.org/2005/Atom\">");
-            printWriter.println("<Document>");
-            printWriter.println("<open>1</open>");
-            printWriter.println("<visibility>1</visibility>");
+        if (xmlOutput != null) {
+            xmlOutput.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            xmlOutput.println("<kml xmlns=\"http://www.opengis.net/kml/2.2\"");
+            xmlOutput.println("xmlns:gx=\"http://www.google.com/kml/ext/2.2\"");
+            xmlOutput.println("xmlns:atom=\"http://www.w3.org/2005/Atom\">");
+            xmlOutput.println("<Document>");
+            xmlOutput.println("<open>1</open>");
+            xmlOutput.println("<visibility>1</visibility>");
 
             if (exportTrackDetail) {
                 Track track = tracks[0];
-                printWriter.println("<name>" + StringUtils.formatCData(track.getName()) + "</name>");
-                printWriter.println("<atom:author><atom:name>" + StringUtils.formatCData(context.getString(R.string.app_name)) + "</atom:name></atom:author>");
+                xmlOutput.printlnCDataElement("name", track.getName());
+                xmlOutput.print("<atom:author><atom:name>");
+                xmlOutput.printCData(context.getString(R.string.app_name));
+                xmlOutput.println("</atom:name></atom:author>");
             }
 
             writeTrackStyle();
@@ -127,50 +130,50 @@ public class KmlTrackWriter implements TrackWriter {
             writePlacemarkerStyle(END_STYLE, END_ICON, 32, 1);
             writePlacemarkerStyle(STATISTICS_STYLE, STATISTICS_ICON, 20, 2);
             writePlacemarkerStyle(WAYPOINT_STYLE, WAYPOINT_ICON, 20, 2);
-            printWriter.println("<Schema id=\"" + SCHEMA_ID + "\">");
+            xmlOutput.println("<Schema id=\"" + SCHEMA_ID + "\">");
 
             if (exportSensorData) {
                 writeSensorStyle(SENSOR_TYPE_POWER, context.getString(R.string.description_sensor_power));
                 writeSensorStyle(SENSOR_TYPE_CADENCE, context.getString(R.string.description_sensor_cadence));
                 writeSensorStyle(SENSOR_TYPE_HEART_RATE, context.getString(R.string.description_sensor_heart_rate));
             }
-            printWriter.println("</Schema>");
+            xmlOutput.println("</Schema>");
         }
     }
 
     @Override
     public void writeFooter() {
-        if (printWriter != null) {
-            printWriter.println("</Document>");
-            printWriter.println("</kml>");
+        if (xmlOutput != null) {
+            xmlOutput.println("</Document>");
+            xmlOutput.println("</kml>");
         }
     }
 
     @Override
     public void writeBeginWaypoints(Track track) {
-        if (printWriter != null) {
-            printWriter.println("<Folder>");
+        if (xmlOutput != null) {
+            xmlOutput.println("<Folder>");
             if (exportTrackDetail) {
-                printWriter.println("<name>" + StringUtils.formatCData(context.getString(R.string.track_markers, track.getName())) + "</name>");
+                xmlOutput.printlnCDataElement("name", context.getString(R.string.track_markers, track.getName()));
             }
-            printWriter.println("<open>1</open>");
+            xmlOutput.println("<open>1</open>");
         }
     }
 
     @Override
     public void writeEndWaypoints() {
-        if (printWriter != null) {
-            printWriter.println("</Folder>");
+        if (xmlOutput != null) {
+            xmlOutput.println("</Folder>");
         }
     }
 
     @Override
     public void writeWaypoint(Waypoint waypoint) {
-        if (printWriter != null && exportTrackDetail) {
+        if (xmlOutput != null && exportTrackDetail) {
             String styleName = waypoint.getType() == WaypointType.STATISTICS ? STATISTICS_STYLE : WAYPOINT_STYLE;
 
             if (waypoint.hasPhoto() && exportPhotos) {
-                float heading = getHeading(waypoint.getTrackId(), waypoint.getLocation());
+                float heading = getPhotoHeadings(waypoint.getTrackId()).getHeading(waypoint.getLocation());
                 writePhotoOverlay(waypoint.getName(), waypoint.getCategory(), waypoint.getDescription(), styleName, waypoint.getLocation(), waypoint.getPhotoUrl(), heading);
             } else {
                 writePlacemark(waypoint.getName(), waypoint.getCategory(), waypoint.getDescription(), styleName, waypoint.getLocation());
@@ -180,46 +183,46 @@ public class KmlTrackWriter implements TrackWriter {
 
     @Override
     public void writeBeginTracks() {
-        if (printWriter != null && hasMultipleTracks) {
-            printWriter.println("<Folder id=tour>");
-            printWriter.println("<name>" + context.getString(R.string.generic_tracks) + "</name>");
-            printWriter.println("<open>1</open>");
+        if (xmlOutput != null && hasMultipleTracks) {
+            xmlOutput.println("<Folder id=tour>");
+            xmlOutput.println("<name>" + context.getString(R.string.generic_tracks) + "</name>");
+            xmlOutput.println("<open>1</open>");
         }
     }
 
     @Override
     public void writeEndTracks() {
-        if (printWriter != null && hasMultipleTracks) {
-            printWriter.println("</Folder>");
+        if (xmlOutput != null && hasMultipleTracks) {
+            xmlOutput.println("</Folder>");
         }
     }
 
     @Override
     public void writeBeginTrack(Track track, Location startLocation) {
         this.startLocation = startLocation;
-        if (printWriter != null) {
+        if (xmlOutput != null) {
             String name = context.getString(R.string.marker_label_start, track.getName());
             writePlacemark(name, "", "", START_STYLE, startLocation);
-            printWriter.println("<Placemark>");
+            xmlOutput.println("<Placemark>");
 
             if (exportTrackDetail) {
-                printWriter.println("<name>" + StringUtils.formatCData(track.getName()) + "</name>");
-                printWriter.println("<description>" + StringUtils.formatCData(track.getDescription()) + "</description>");
+                xmlOutput.printlnCDataElement("name", track.getName());
+                xmlOutput.printlnCDataElement("description", track.getDescription());
             }
 
-            printWriter.println("<styleUrl>#" + TRACK_STYLE + "</styleUrl>");
+            xmlOutput.println("<styleUrl>#" + TRACK_STYLE + "</styleUrl>");
             writeCategory(track.getCategory());
-            printWriter.println("<gx:MultiTrack>");
-            printWriter.println("<altitudeMode>absolute</altitudeMode>");
-            printWriter.println("<gx:interpolate>1</gx:interpolate>");
+            xmlOutput.println("<gx:MultiTrack>");
+            xmlOutput.println("<altitudeMode>absolute</altitudeMode>");
+            xmlOutput.println("<gx:interpolate>1</gx:interpolate>");
         }
     }
 
     @Override
     public void writeEndTrack(Track track, Location endLocation) {
-        if (printWriter != null) {
-            printWriter.println("</gx:MultiTrack>");
-            printWriter.println("</Placemark>");
+        if (xmlOutput != null) {
+            xmlOutput.println("</gx:MultiTrack>");
+            xmlOutput.println("</Placemark>");
 
             if (exportTrackDetail) {
                 String name = context.getString(R.string.marker_label_end, track.getName());
@@ -231,56 +234,60 @@ public class KmlTrackWriter implements TrackWriter {
 
     @Override
     public void writeOpenSegment() {
-        if (printWriter != null) {
-            printWriter.println("<gx:Track>");
-            powerList.clear();
-            cadenceList.clear();
-            heartRateList.clear();
+        if (xmlOutput != null) {
+            xmlOutput.println("<gx:Track>");
+            powerValues.clear();
+            cadenceValues.clear();
+            heartRateValues.clear();
         }
     }
 
     @Override
     public void writeCloseSegment() {
-        if (printWriter != null) {
-            printWriter.println("<ExtendedData>");
-            printWriter.println("<SchemaData schemaUrl=\"#" + SCHEMA_ID + "\">");
+        if (xmlOutput != null) {
+            xmlOutput.println("<ExtendedData>");
+            xmlOutput.println("<SchemaData schemaUrl=\"#" + SCHEMA_ID + "\">");
             if (exportSensorData) {
-                if (powerList.size() > 0) {
-                    writeSensorData(powerList, SENSOR_TYPE_POWER);
+                if (powerValues.size > 0) {
+                    writeSensorData(powerValues, SENSOR_TYPE_POWER);
                 }
-                if (cadenceList.size() > 0) {
-                    writeSensorData(cadenceList, SENSOR_TYPE_CADENCE);
+                if (cadenceValues.size > 0) {
+                    writeSensorData(cadenceValues, SENSOR_TYPE_CADENCE);
                 }
-                if (heartRateList.size() > 0) {
-                    writeSensorData(heartRateList, SENSOR_TYPE_HEART_RATE);
+                if (heartRateValues.size > 0) {
+                    writeSensorData(heartRateValues, SENSOR_TYPE_HEART_RATE);
                 }
             }
-            printWriter.println("</SchemaData>");
-            printWriter.println("</ExtendedData>");
-            printWriter.println("</gx:Track>");
+            xmlOutput.println("</SchemaData>");
+            xmlOutput.println("</ExtendedData>");
+            xmlOutput.println("</gx:Track>");
         }
     }
 
     @Override
     public void writeLocation(Location location) {
-        if (printWriter != null) {
+        if (xmlOutput != null) {
             if (exportTrackDetail) {
-                printWriter.println("<when>" + getTime(location) + "</when>");
+                xmlOutput.print("<when>");
+                writeTime(location);
+                xmlOutput.println("</when>");
             }
 
-            printWriter.println("<gx:coord>" + getCoordinates(location, " ") + "</gx:coord>");
+            xmlOutput.print("<gx:coord>");
+            writeCoordinates(location, ' ');
+            xmlOutput.println("</gx:coord>");
 
             if (exportSensorData && location instanceof SensorDataSetLocation) {
                 SensorDataSet sensorDataSet = ((SensorDataSetLocation) location).getSensorDataSet();
                 if (sensorDataSet != null) {
                     if (sensorDataSet.hasHeartRate()) {
-                        heartRateList.add(sensorDataSet.getHeartRate());
+                        heartRateValues.add(sensorDataSet.getHeartRate());
                     }
                     if (sensorDataSet.hasCadence()) {
-                        cadenceList.add(sensorDataSet.getCadence());
+                        cadenceValues.add(sensorDataSet.getCadence());
                     }
                     if (sensorDataSet.hasPower()) {
-                        powerList.add(sensorDataSet.getPower());
+                        powerValues.add(sensorDataSet.getPower());
                     }
                 }
             }
@@ -290,15 +297,19 @@ public class KmlTrackWriter implements TrackWriter {
     /**
      * Writes the sensor data.
      *
-     * @param list a list of sensor data
-     * @param name the name of the sensor data
+     * @param sensorValues the sensor data
+     * @param name         the name of the sensor data
      */
-    private void writeSensorData(List<Float> list, String name) {
-        printWriter.println("<gx:SimpleArrayData name=\"" + name + "\">");
-        for (int i = 0; i < list.size(); i++) {
-            printWriter.println("<gx:value>" + list.get(i) + "</gx:value>");
+    private void writeSensorData(SensorValues sensorValues, String name) {
+        xmlOutput.print("<gx:SimpleArrayData name=\"");
+        xmlOutput.print(name);
+        xmlOutput.println("\">");
+        for (int i = 0; i < sensorValues.size; i++) {
+            xmlOutput.print("<gx:value>");
+            xmlOutput.printShortest(sensorValues.values[i]);
+            xmlOutput.println("</gx:value>");
         }
-        printWriter.println("</gx:SimpleArrayData>");
+        xmlOutput.println("</gx:SimpleArrayData>");
     }
 
     /**
@@ -312,16 +323,20 @@ public class KmlTrackWriter implements TrackWriter {
      */
     private void writePlacemark(String name, String category, String description, String styleName, Location location) {
         if (location != null && exportTrackDetail) {
-            printWriter.println("<Placemark>");
-            printWriter.println("<name>" + StringUtils.formatCData(name) + "</name>");
-            printWriter.println("<description>" + StringUtils.formatCData(description) + "</description>");
-            printWriter.println("<TimeStamp><when>" + getTime(location) + "</when></TimeStamp>");
-            printWriter.println("<styleUrl>#" + styleName + "</styleUrl>");
+            xmlOutput.println("<Placemark>");
+            xmlOutput.printlnCDataElement("name", name);
+            xmlOutput.printlnCDataElement("description", description);
+            xmlOutput.print("<TimeStamp><when>");
+            writeTime(location);
+            xmlOutput.println("</when></TimeStamp>");
+            xmlOutput.println("<styleUrl>#" + styleName + "</styleUrl>");
             writeCategory(category);
-            printWriter.println("<Point>");
-            printWriter.println("<coordinates>" + getCoordinates(location, ",") + "</coordinates>");
-            printWriter.println("</Point>");
-            printWriter.println("</Placemark>");
+            xmlOutput.println("<Point>");
+            xmlOutput.print("<coordinates>");
+            writeCoordinates(location, ',');
+            xmlOutput.println("</coordinates>");
+            xmlOutput.println("</Point>");
+            xmlOutput.println("</Placemark>");
         }
     }
 
@@ -338,80 +353,88 @@ public class KmlTrackWriter implements TrackWriter {
      */
     private void writePhotoOverlay(String name, String category, String description, String styleName, Location location, String photoUrl, float heading) {
         if (location != null && exportTrackDetail) {
-            printWriter.println("<PhotoOverlay>");
-            printWriter.println("<name>" + StringUtils.formatCData(name) + "</name>");
-            printWriter.println("<description>" + StringUtils.formatCData(description) + "</description>");
-            printWriter.print("<Camera>");
-            printWriter.print("<longitude>" + location.getLongitude() + "</longitude>");
-            printWriter.print("<latitude>" + location.getLatitude() + "</latitude>");
-            printWriter.print("<altitude>20</altitude>");
-            printWriter.print("<heading>" + heading + "</heading>");
-            printWriter.print("<tilt>90</tilt>");
-            printWriter.println("</Camera>");
-            printWriter.println("<TimeStamp><when>" + getTime(location) + "</when></TimeStamp>");
-            printWriter.println("<styleUrl>#" + styleName + "</styleUrl>");
+            xmlOutput.println("<PhotoOverlay>");
+            xmlOutput.printlnCDataElement("name", name);
+            xmlOutput.printlnCDataElement("description", description);
+            xmlOutput.print("<Camera>");
+            xmlOutput.print("<longitude>");
+            xmlOutput.printShortest(location.getLongitude());
+            xmlOutput.print("</longitude>");
+            xmlOutput.print("<latitude>");
+            xmlOutput.printShortest(location.getLatitude());
+            xmlOutput.print("</latitude>");
+            xmlOutput.print("<altitude>20</altitude>");
+            xmlOutput.print("<heading>");
+            xmlOutput.printShortest(heading);
+            xmlOutput.print("</heading>");
+            xmlOutput.print("<tilt>90</tilt>");
+            xmlOutput.println("</Camera>");
+            xmlOutput.print("<TimeStamp><when>");
+            writeTime(location);
+            xmlOutput.println("</when></TimeStamp>");
+            xmlOutput.println("<styleUrl>#" + styleName + "</styleUrl>");
             writeCategory(category);
 
             if (exportPhotos) {
-                printWriter.println("<Icon><href>" + Uri.decode(photoUrl) + "</href></Icon>");
+                xmlOutput.println("<Icon><href>" + Uri.decode(photoUrl) + "</href></Icon>");
             }
 
-            printWriter.print("<ViewVolume>");
-            printWriter.print("<near>10</near>");
-            printWriter.print("<leftFov>-60</leftFov>");
-            printWriter.print("<rightFov>60</rightFov>");
-            printWriter.print("<bottomFov>-45</bottomFov>");
-            printWriter.print("<topFov>45</topFov>");
-            printWriter.println("</ViewVolume>");
-            printWriter.println("<Point>");
-            printWriter.println("<coordinates>" + getCoordinates(location, ",") + "</coordinates>");
-            printWriter.println("</Point>");
-            printWriter.println("</PhotoOverlay>");
+            xmlOutput.print("<ViewVolume>");
+            xmlOutput.print("<near>10</near>");
+            xmlOutput.print("<leftFov>-60</leftFov>");
+            xmlOutput.print("<rightFov>60</rightFov>");
+            xmlOutput.print("<bottomFov>-45</bottomFov>");
+            xmlOutput.print("<topFov>45</topFov>");
+            xmlOutput.println("</ViewVolume>");
+            xmlOutput.println("<Point>");
+            xmlOutput.print("<coordinates>");
+            writeCoordinates(location, ',');
+            xmlOutput.println("</coordinates>");
+            xmlOutput.println("</Point>");
+            xmlOutput.println("</PhotoOverlay>");
         }
     }
 
     /**
-     * Returns the formatted time of the location; either absolute or relative depending exportTrackDetail.
+     * Writes the time of the location; either absolute or relative depending exportTrackDetail.
      *
      * @param location the location
      */
-    private String getTime(Location location) {
+    private void writeTime(Location location) {
         if (exportTrackDetail) {
-            return StringUtils.formatDateTimeIso8601(location.getTime());
+            xmlOutput.printTime(location.getTime());
         } else {
-            return StringUtils.formatDateTimeIso8601(location.getTime() - startLocation.getTime());
+            xmlOutput.printTime(location.getTime() - startLocation.getTime());
         }
     }
 
     /**
-     * Gets the heading to a location.
+     * Gets the headings of the photos of a track; loaded once per track.
      *
-     * @param trackId  the track id containing the location
-     * @param location the location
+     * @param trackId the track id
      */
-    private float getHeading(long trackId, Location location) {
-        long trackPointId = contentProviderUtils.getTrackPointId(trackId, location);
-        if (trackPointId == -1L) {
-            return location.getBearing();
+    private PhotoHeadings getPhotoHeadings(long trackId) {
+        if (photoHeadings == null || photoHeadingsTrackId != trackId) {
+            photoHeadings = PhotoHeadings.load(contentProviderUtils, trackId);
+            photoHeadingsTrackId = trackId;
         }
-        Location viewLocation;
-        try (Cursor cursor = contentProviderUtils.getTrackPointCursor(trackId, trackPointId, 10, true)) {
-            if (cursor == null || cursor.getCount() == 0) {
-                return location.getBearing();
-            }
-            cursor.moveToPosition(cursor.getCount() - 1);
-            viewLocation = contentProviderUtils.createTrackPoint(cursor);
-        }
-        return viewLocation.bearingTo(location);
+        return photoHeadings;
     }
 
-    private String getCoordinates(Location location, String separator) {
-        StringBuilder builder = new StringBuilder();
-        builder.append(location.getLongitude()).append(separator).append(location.getLatitude());
+    /**
+     * Writes the coordinates of a location (longitude, latitude, and altitude if any).
+     *
+     * @param location  the location
+     * @param separator the separator of the values
+     */
+    private void writeCoordinates(Location location, char separator) {
+        xmlOutput.printShortest(location.getLongitude());
+        xmlOutput.print(separator);
+        xmlOutput.printShortest(location.getLatitude());
         if (location.hasAltitude()) {
-            builder.append(separator).append(location.getAltitude());
+            xmlOutput.print(separator);
+            xmlOutput.printShortest(location.getAltitude());
         }
-        return builder.toString();
     }
 
     /**
@@ -423,22 +446,24 @@ public class KmlTrackWriter implements TrackWriter {
         if (category == null || category.equals("")) {
             return;
         }
-        printWriter.println("<ExtendedData>");
-        printWriter.println("<Data name=\"type\"><value>" + StringUtils.formatCData(category) + "</value></Data>");
-        printWriter.println("</ExtendedData>");
+        xmlOutput.println("<ExtendedData>");
+        xmlOutput.print("<Data name=\"type\"><value>");
+        xmlOutput.printCData(category);
+        xmlOutput.println("</value></Data>");
+        xmlOutput.println("</ExtendedData>");
     }
 
     /**
      * Writes the track style.
      */
     private void writeTrackStyle() {
-        printWriter.println("<Style id=\"" + TRACK_STYLE + "\">");
-        printWriter.println("<LineStyle><color>7f0000ff</color><width>4</width></LineStyle>");
-        printWriter.println("<IconStyle>");
-        printWriter.println("<scale>1.3</scale>");
-        printWriter.println("<Icon><href>" + TRACK_ICON + "</href></Icon>");
-        printWriter.println("</IconStyle>");
-        printWriter.println("</Style>");
+        xmlOutput.println("<Style id=\"" + TRACK_STYLE + "\">");
+        xmlOutput.println("<LineStyle><color>7f0000ff</color><width>4</width></LineStyle>");
+        xmlOutput.println("<IconStyle>");
+        xmlOutput.println("<scale>1.3</scale>");
+        xmlOutput.println("<Icon><href>" + TRACK_ICON + "</href></Icon>");
+        xmlOutput.println("</IconStyle>");
+        xmlOutput.println("</Style>");
     }
 
     /**
@@ -450,11 +475,11 @@ public class KmlTrackWriter implements TrackWriter {
      * @param y    the y position of the hotspot
      */
     private void writePlacemarkerStyle(String name, String url, int x, int y) {
-        printWriter.println("<Style id=\"" + name + "\"><IconStyle>");
-        printWriter.println("<scale>1.3</scale>");
-        printWriter.println("<Icon><href>" + url + "</href></Icon>");
-        printWriter.println("<hotSpot x=\"" + x + "\" y=\"" + y + "\" xunits=\"pixels\" yunits=\"pixels\"/>");
-        printWriter.println("</IconStyle></Style>");
+        xmlOutput.println("<Style id=\"" + name + "\"><IconStyle>");
+        xmlOutput.println("<scale>1.3</scale>");
+        xmlOutput.println("<Icon><href>" + url + "</href></Icon>");
+        xmlOutput.println("<hotSpot x=\"" + x + "\" y=\"" + y + "\" xunits=\"pixels\" yunits=\"pixels\"/>");
+        xmlOutput.println("</IconStyle></Style>");
     }
 
     /**
@@ -464,8 +489,31 @@ public class KmlTrackWriter implements TrackWriter {
      * @param sensorType the sensor display name
      */
     private void writeSensorStyle(String name, String sensorType) {
-        printWriter.println("<gx:SimpleArrayField name=\"" + name + "\" type=\"float\">");
-        printWriter.println("<displayName>" + StringUtils.formatCData(sensorType) + "</displayName>");
-        printWriter.println("</gx:SimpleArrayField>");
+        xmlOutput.println("<gx:SimpleArrayField name=\"" + name + "\" type=\"float\">");
+        xmlOutput.printlnCDataElement("displayName", sensorType);
+        xmlOutput.println("</gx:SimpleArrayField>");
+    }
+
+    /**
+     * The values of a sensor of a segment without boxing.
+     */
+    private static class SensorValues {
+
+        private static final int INITIAL_CAPACITY = 64;
+
+        private float[] values = new float[INITIAL_CAPACITY];
+        private int size = 0;
+
+        void add(float value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size] = value;
+            size++;
+        }
+
+        void clear() {
+            size = 0;
+        }
     }
 }
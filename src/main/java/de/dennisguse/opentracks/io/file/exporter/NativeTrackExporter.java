@@ -0,0 +1,330 @@
+package de.dennisguse.opentracks.io.file.exporter;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.dennisguse.opentracks.content.ContentProviderUtils;
+import de.dennisguse.opentracks.content.SplitsColumns;
+import de.dennisguse.opentracks.content.Track;
+import de.dennisguse.opentracks.content.TrackPointsColumns;
+import de.dennisguse.opentracks.content.TracksColumns;
+import de.dennisguse.opentracks.content.WaypointsColumns;
+import de.dennisguse.opentracks.io.file.NativeFormat;
+
+/**
+ * Exports tracks with all their data in the {@link NativeFormat}.
+ * The track points are read block by block; so, the memory needed does not depend on the track size.
+ */
+public class NativeTrackExporter implements TrackExporter {
+
+    private static final String TAG = NativeTrackExporter.class.getSimpleName();
+
+    // The columns that are not exported (i.e., set by the importer)
+    private static final String[] TRACK_EXCLUDED_COLUMNS = {TracksColumns._ID, TracksColumns.STARTID, TracksColumns.STOPID};
+    private static final String[] TRACK_POINT_EXCLUDED_COLUMNS = {TrackPointsColumns._ID, TrackPointsColumns.TRACKID};
+    private static final String[] WAYPOINT_EXCLUDED_COLUMNS = {WaypointsColumns._ID, WaypointsColumns.TRACKID};
+    private static final String[] SPLIT_EXCLUDED_COLUMNS = {SplitsColumns._ID, SplitsColumns.TRACKID};
+
+    // The waypoint columns with track point ids (exported as track point indexes)
+    private static final String[] WAYPOINT_TRACK_POINT_COLUMNS = {WaypointsColumns.STARTID, WaypointsColumns.STOPID};
+
+    private final ContentProviderUtils contentProviderUtils;
+    private final Track[] tracks;
+    private final TrackExporterListener trackExporterListener;
+
+    /**
+     * Constructor.
+     *
+     * @param contentProviderUtils  the content provider utils
+     * @param tracks                the tracks
+     * @param trackExporterListener the track export listener (can be null)
+     */
+    public NativeTrackExporter(ContentProviderUtils contentProviderUtils, Track[] tracks, TrackExporterListener trackExporterListener) {
+        this.contentProviderUtils = contentProviderUtils;
+        this.tracks = tracks;
+        this.trackExporterListener = trackExporterListener;
+    }
+
+    @Override
+    public boolean writeTrack(Context context, @NonNull OutputStream outputStream) {
+        try {
+            NativeFormat.Output output = new NativeFormat.Output(outputStream);
+            output.writeHeader();
+            for (Track track : tracks) {
+                writeTrack(context.getContentResolver(), output, track);
+            }
+            output.endBlock(NativeFormat.BLOCK_END);
+            output.flush();
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to export track", e);
+            return false;
+        } catch (InterruptedException e) {
+            Log.e(TAG, "Thread interrupted", e);
+            return false;
+        }
+    }
+
+    private void writeTrack(ContentResolver contentResolver, NativeFormat.Output output, Track track) throws IOException, InterruptedException {
+        String[] trackIdArgs = new String[]{Long.toString(track.getId())};
+
+        try (Cursor cursor = contentProviderUtils.getTrackCursor(TracksColumns._ID + "=?", trackIdArgs, null)) {
+            if (cursor == null || !cursor.moveToFirst()) {
+                throw new IOException("Track " + track.getId() + " not found");
+            }
+            writeTable(output, cursor, TRACK_EXCLUDED_COLUMNS, null);
+            output.endBlock(NativeFormat.BLOCK_TRACK);
+        }
+
+        TrackPointIndexes trackPointIndexes = new TrackPointIndexes(getWaypointTrackPointIds(track.getId()));
+        writeTrackPoints(output, track, trackPointIndexes);
+
+        try (Cursor cursor = contentProviderUtils.getWaypointCursor(WaypointsColumns.TRACKID + "=?", trackIdArgs, WaypointsColumns._ID, -1)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                writeTable(output, cursor, WAYPOINT_EXCLUDED_COLUMNS, trackPointIndexes);
+                output.endBlock(NativeFormat.BLOCK_WAYPOINTS);
+            }
+        }
+
+        try (Cursor cursor = contentResolver.query(SplitsColumns.CONTENT_URI, null, SplitsColumns.TRACKID + "=?", trackIdArgs, SplitsColumns._ID)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                writeTable(output, cursor, SPLIT_EXCLUDED_COLUMNS, null);
+                output.endBlock(NativeFormat.BLOCK_SPLITS);
+            }
+        }
+    }
+
+    /**
+     * Writes the track points; a block per {@link NativeFormat#MAX_TRACK_POINTS_PER_BLOCK} track points.
+     */
+    private void writeTrackPoints(NativeFormat.Output output, Track track, TrackPointIndexes trackPointIndexes) throws IOException, InterruptedException {
+        long startId = 0L;
+        int index = 0;
+        while (true) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            try (Cursor cursor = contentProviderUtils.getTrackPointCursor(track.getId(), startId, NativeFormat.MAX_TRACK_POINTS_PER_BLOCK, false)) {
+                if (cursor == null || !cursor.moveToFirst()) {
+                    return;
+                }
+                int idIndex = cursor.getColumnIndexOrThrow(TrackPointsColumns._ID);
+                do {
+                    trackPointIndexes.add(cursor.getLong(idIndex), index);
+                    index++;
+                } while (cursor.moveToNext());
+                cursor.moveToLast();
+                startId = cursor.getLong(idIndex) + 1;
+
+                writeColumns(output, cursor);
+                output.endBlock(NativeFormat.BLOCK_TRACK_POINTS);
+
+                if (trackExporterListener != null) {
+                    trackExporterListener.onProgressUpdate(index, track.getNumberOfPoints());
+                }
+                if (cursor.getCount() < NativeFormat.MAX_TRACK_POINTS_PER_BLOCK) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the sorted track point ids referenced by the waypoints of a track.
+     */
+    private long[] getWaypointTrackPointIds(long trackId) {
+        List<Long> ids = new ArrayList<>();
+        try (Cursor cursor = contentProviderUtils.getWaypointCursor(WaypointsColumns.TRACKID + "=?", new String[]{Long.toString(trackId)}, WaypointsColumns._ID, -1)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                do {
+                    for (String column : WAYPOINT_TRACK_POINT_COLUMNS) {
+                        int columnIndex = cursor.getColumnIndexOrThrow(column);
+                        if (!cursor.isNull(columnIndex)) {
+                            ids.add(cursor.getLong(columnIndex));
+                        }
+                    }
+                } while (cursor.moveToNext());
+            }
+        }
+        long[] result = new long[ids.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ids.get(i);
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Writes the rows of a cursor (from its first row) as table.
+     *
+     * @param trackPointIndexes the indexes of the track point ids of {@link #WAYPOINT_TRACK_POINT_COLUMNS} (null if none)
+     */
+    private static void writeTable(NativeFormat.Output output, Cursor cursor, String[] excludedColumns, TrackPointIndexes trackPointIndexes) throws IOException {
+        int[] columnIndexes = getColumnIndexes(cursor, excludedColumns);
+        boolean[] isTrackPointColumn = new boolean[columnIndexes.length];
+        output.writeVarLong(columnIndexes.length);
+        for (int i = 0; i < columnIndexes.length; i++) {
+            String columnName = cursor.getColumnName(columnIndexes[i]);
+            isTrackPointColumn[i] = trackPointIndexes != null && Arrays.asList(WAYPOINT_TRACK_POINT_COLUMNS).contains(columnName);
+            output.writeString(columnName);
+        }
+
+        output.writeVarLong(cursor.getCount());
+        do {
+            for (int i = 0; i < columnIndexes.length; i++) {
+                int columnIndex = columnIndexes[i];
+                switch (cursor.getType(columnIndex)) {
+                    case Cursor.FIELD_TYPE_NULL:
+                        output.writeByte(NativeFormat.TYPE_NULL);
+                        break;
+                    case Cursor.FIELD_TYPE_INTEGER:
+                        long value = cursor.getLong(columnIndex);
+                        if (isTrackPointColumn[i]) {
+                            value = trackPointIndexes.get(value);
+                        }
+                        output.writeByte(NativeFormat.TYPE_LONG);
+                        output.writeZigZag(value);
+                        break;
+                    case Cursor.FIELD_TYPE_FLOAT:
+                        output.writeByte(NativeFormat.TYPE_DOUBLE);
+                        output.writeDouble(cursor.getDouble(columnIndex));
+                        break;
+                    case Cursor.FIELD_TYPE_STRING:
+                        output.writeByte(NativeFormat.TYPE_STRING);
+                        output.writeString(cursor.getString(columnIndex));
+                        break;
+                    case Cursor.FIELD_TYPE_BLOB:
+                        output.writeByte(NativeFormat.TYPE_BLOB);
+                        output.writeBytes(cursor.getBlob(columnIndex));
+                        break;
+                    default:
+                        throw new IOException("Unknown type of column " + cursor.getColumnName(columnIndex));
+                }
+            }
+        } while (cursor.moveToNext());
+    }
+
+    /**
+     * Writes the rows of a cursor as columns.
+     */
+    private static void writeColumns(NativeFormat.Output output, Cursor cursor) throws IOException {
+        int[] columnIndexes = getColumnIndexes(cursor, TRACK_POINT_EXCLUDED_COLUMNS);
+        int count = cursor.getCount();
+        output.writeVarLong(count);
+        output.writeVarLong(columnIndexes.length);
+        for (int columnIndex : columnIndexes) {
+            output.writeString(cursor.getColumnName(columnIndex));
+        }
+
+        for (int columnIndex : columnIndexes) {
+            // The types are written before the values; so, reserve them
+            int typesPosition = output.position();
+            for (int i = 0; i < (count + 3) / 4; i++) {
+                output.writeByte(0);
+            }
+
+            int types = 0;
+            long lastLong = 0;
+            int lastFloatBits = 0;
+            for (int row = 0; row < count; row++) {
+                cursor.moveToPosition(row);
+                int type;
+                switch (cursor.getType(columnIndex)) {
+                    case Cursor.FIELD_TYPE_NULL:
+                        type = NativeFormat.COLUMN_TYPE_NULL;
+                        break;
+                    case Cursor.FIELD_TYPE_INTEGER:
+                        type = NativeFormat.COLUMN_TYPE_LONG;
+                        long longValue = cursor.getLong(columnIndex);
+                        output.writeZigZag(longValue - lastLong);
+                        lastLong = longValue;
+                        break;
+                    case Cursor.FIELD_TYPE_FLOAT:
+                        double doubleValue = cursor.getDouble(columnIndex);
+                        float floatValue = (float) doubleValue;
+                        if (floatValue == doubleValue) {
+                            type = NativeFormat.COLUMN_TYPE_FLOAT;
+                            int floatBits = Float.floatToRawIntBits(floatValue);
+                            output.writeVarLong((floatBits ^ lastFloatBits) & 0xFFFFFFFFL);
+                            lastFloatBits = floatBits;
+                        } else {
+                            type = NativeFormat.COLUMN_TYPE_DOUBLE;
+                            output.writeDouble(doubleValue);
+                        }
+                        break;
+                    default:
+                        throw new IOException("Unsupported type of track point column " + cursor.getColumnName(columnIndex));
+                }
+
+                types |= type << (2 * (row % 4));
+                if (row % 4 == 3 || row == count - 1) {
+                    output.setByte(typesPosition + row / 4, types);
+                    types = 0;
+                }
+            }
+        }
+    }
+
+    private static int[] getColumnIndexes(Cursor cursor, String[] excludedColumns) {
+        List<String> excluded = Arrays.asList(excludedColumns);
+        String[] columnNames = cursor.getColumnNames();
+        int[] columnIndexes = new int[columnNames.length];
+        int count = 0;
+        for (int i = 0; i < columnNames.length; i++) {
+            if (!excluded.contains(columnNames[i])) {
+                columnIndexes[count] = i;
+                count++;
+            }
+        }
+        return Arrays.copyOf(columnIndexes, count);
+    }
+
+    /**
+     * The indexes in the track of the track points referenced by waypoints.
+     */
+    private static class TrackPointIndexes {
+
+        private final long[] ids;
+        private final int[] indexes;
+
+        TrackPointIndexes(long[] sortedIds) {
+            ids = sortedIds;
+            indexes = new int[sortedIds.length];
+            Arrays.fill(indexes, -1);
+        }
+
+        /**
+         * Adds a track point (in the order of the ids).
+         */
+        void add(long id, int index) {
+            int i = Arrays.binarySearch(ids, id);
+            if (i >= 0) {
+                // Equal ids
+                while (i > 0 && ids[i - 1] == id) {
+                    i--;
+                }
+                for (; i < ids.length && ids[i] == id; i++) {
+                    indexes[i] = index;
+                }
+            }
+        }
+
+        /**
+         * Gets the index of a track point id; -1 if not a track point of the track.
+         */
+        int get(long id) {
+            int i = Arrays.binarySearch(ids, id);
+            return i >= 0 ? indexes[i] : -1;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package de.dennisguse.opentracks.io.file.exporter;
+
+import android.database.Cursor;
+import android.location.Location;
+import android.location.LocationManager;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.Arrays;
+
+import de.dennisguse.opentracks.content.ContentProviderUtils;
+import de.dennisguse.opentracks.content.ContentProviderUtils.LocationIterator;
+import de.dennisguse.opentracks.content.Waypoint;
+import de.dennisguse.opentracks.util.GeodesyUtils;
+
+/**
+ * The headings of the photo waypoints of a track.
+ * <p>
+ * The heading of a photo is the bearing from the track point {@link #VIEW_DISTANCE} points before the (last) track point at the time of the photo to the photo.
+ * The view locations of all photos are found in one forward pass over the track points (merged by time with the sorted photo times) instead of two queries per photo.
+ */
+class PhotoHeadings {
+
+    // The number of track points between the view location and the track point of the photo
+    @VisibleForTesting
+    static final int VIEW_DISTANCE = 9;
+
+    // The sorted (distinct) times of the photos
+    private final long[] times;
+
+    // The view location of each time (if found)
+    private final double[] viewLatitudes;
+    private final double[] viewLongitudes;
+    private final boolean[] found;
+
+    // The latitudes and longitudes of the last VIEW_DISTANCE + 1 track points
+    private final double[] lastLatitudes = new double[VIEW_DISTANCE + 1];
+    private final double[] lastLongitudes = new double[VIEW_DISTANCE + 1];
+    private int trackPointCount = 0;
+
+    // The index of the first time not before the time of the last track point
+    private int timeIndex = 0;
+    private long lastTime = Long.MIN_VALUE;
+
+    @VisibleForTesting
+    PhotoHeadings(long[] photoTimes) {
+        long[] sortedTimes = photoTimes.clone();
+        Arrays.sort(sortedTimes);
+        int size = 0;
+        for (int i = 0; i < sortedTimes.length; i++) {
+            if (size == 0 || sortedTimes[i] != sortedTimes[size - 1]) {
+                sortedTimes[size] = sortedTimes[i];
+                size++;
+            }
+        }
+        times = Arrays.copyOf(sortedTimes, size);
+        viewLatitudes = new double[size];
+        viewLongitudes = new double[size];
+        found = new boolean[size];
+    }
+
+    /**
+     * Loads the headings of the photo waypoints of a track.
+     *
+     * @param contentProviderUtils the content provider utils
+     * @param trackId              the track id
+     */
+    static PhotoHeadings load(ContentProviderUtils contentProviderUtils, long trackId) {
+        long[] photoTimes = new long[0];
+        int size = 0;
+        try (Cursor cursor = contentProviderUtils.getWaypointCursor(trackId, -1L, ContentProviderUtils.MAX_LOADED_WAYPOINTS_POINTS)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                photoTimes = new long[cursor.getCount()];
+                do {
+                    Waypoint waypoint = contentProviderUtils.createWaypoint(cursor);
+                    if (waypoint.hasPhoto() && waypoint.getLocation() != null) {
+                        photoTimes[size] = waypoint.getLocation().getTime();
+                        size++;
+                    }
+                } while (cursor.moveToNext());
+            }
+        }
+
+        PhotoHeadings photoHeadings = new PhotoHeadings(Arrays.copyOf(photoTimes, size));
+        if (size == 0) {
+            return photoHeadings;
+        }
+
+        final Location location = new Location(LocationManager.GPS_PROVIDER);
+        ContentProviderUtils.LocationFactory locationFactory = new ContentProviderUtils.LocationFactory() {
+            @Override
+            public Location createLocation() {
+                return location;
+            }
+        };
+        try (LocationIterator locationIterator = contentProviderUtils.getTrackPointLocationIterator(trackId, -1L, false, locationFactory)) {
+            while (locationIterator.hasNext()) {
+                Location trackPoint = locationIterator.next();
+                photoHeadings.addTrackPoint(trackPoint.getTime(), trackPoint.getLatitude(), trackPoint.getLongitude());
+            }
+        }
+        return photoHeadings;
+    }
+
+    /**
+     * Adds the next track point (in the order of the track point ids).
+     *
+     * @param time      the time
+     * @param latitude  the latitude
+     * @param longitude the longitude
+     */
+    @VisibleForTesting
+    void addTrackPoint(long time, double latitude, double longitude) {
+        int index = trackPointCount % lastLatitudes.length;
+        lastLatitudes[index] = latitude;
+        lastLongitudes[index] = longitude;
+        trackPointCount++;
+
+        if (time >= lastTime) {
+            while (timeIndex < times.length && times[timeIndex] < time) {
+                timeIndex++;
+            }
+        } else {
+            // Not ordered by time
+            timeIndex = Arrays.binarySearch(times, time);
+            if (timeIndex < 0) {
+                timeIndex = -timeIndex - 1;
+            }
+        }
+        lastTime = time;
+
+        if (timeIndex < times.length && times[timeIndex] == time) {
+            // The view location is the first track point if there are fewer before
+            int viewIndex = trackPointCount > VIEW_DISTANCE ? (trackPointCount - 1 - VIEW_DISTANCE) % lastLatitudes.length : 0;
+            viewLatitudes[timeIndex] = lastLatitudes[viewIndex];
+            viewLongitudes[timeIndex] = lastLongitudes[viewIndex];
+            found[timeIndex] = true;
+        }
+    }
+
+    /**
+     * Gets the heading of a photo; the bearing of the location if there is no track point at its time.
+     *
+     * @param location the location of the photo
+     */
+    float getHeading(Location location) {
+        int index = Arrays.binarySearch(times, location.getTime());
+        if (index < 0 || !found[index]) {
+            return location.getBearing();
+        }
+        return GeodesyUtils.bearing(viewLatitudes[index], viewLongitudes[index], location.getLatitude(), location.getLongitude());
+    }
+}
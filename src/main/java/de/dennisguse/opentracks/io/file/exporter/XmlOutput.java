@@ -0,0 +1,427 @@
+package de.dennisguse.opentracks.io.file.exporter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import de.dennisguse.opentracks.util.StringUtils;
+
+/**
+ * Writes the XML of the {@link TrackWriter}s to an {@link OutputStream}: encoded to UTF-8 directly into a large buffer and with the numbers formatted without creating objects.
+ * <p>
+ * The output is the same as the one of a {@link java.io.PrintWriter} (with '\n' as line separator) and the formatting used before:
+ * {@link #printDouble(double, int)} like a {@link java.text.DecimalFormat} without grouping and {@link #printShortest(double)} like {@link Double#toString(double)}.
+ * Like a {@link java.io.PrintWriter}, IO errors are not thrown (see {@link #checkError()}).
+ * {@link #flush()} does not close the {@link OutputStream} (e.g., for the entries of a KMZ file).
+ */
+class XmlOutput {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Bound of the scaled digits (2^53): below, every integer is a double; so, Math.rint(value * 10^n) is exact, fits into a long, and its last digit is reliable.
+    // At or above, consecutive doubles are 2 or more apart; these values are printed by printRounded().
+    private static final long MAX_EXACT_DECIMAL = 1L << 53;
+    // Every entry of POWERS_OF_TEN (10^0 to 10^MAX_FRACTION_DIGITS) is an exact double; so, scaling by it is rounded once only.
+    private static final int MAX_FRACTION_DIGITS = 17;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17};
+    private static final long[] LONG_POWERS_OF_TEN = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L, 10000000000L, 100000000000L,
+            1000000000000L, 10000000000000L, 100000000000000L, 1000000000000000L, 10000000000000000L, 100000000000000000L};
+
+    // Double.toString() uses the plain notation for this range.
+    private static final double MIN_PLAIN = 1e-3;
+    private static final double MAX_PLAIN = 1e7;
+
+    private static final String CDATA_START = "<![CDATA[";
+    private static final String CDATA_END = "]]>";
+    private static final String CDATA_END_ESCAPED = "]]]]><![CDATA[>";
+
+    private final OutputStream outputStream;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private boolean error;
+
+    // The buffer to format the times and the digits of numbers
+    private final char[] chars = new char[Math.max(StringUtils.ISO_8601_DATE_TIME_MAX_LENGTH, 32)];
+
+    XmlOutput(OutputStream outputStream) {
+        this.outputStream = outputStream;
+    }
+
+    /**
+     * Writes a String.
+     */
+    void print(String text) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                if (position == BUFFER_SIZE) {
+                    flushBuffer();
+                }
+                buffer[position++] = (byte) c;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                writeCodePoint(Character.toCodePoint(c, text.charAt(i + 1)));
+                i++;
+            } else {
+                writeCodePoint(c);
+            }
+        }
+    }
+
+    /**
+     * Writes a String and a line separator.
+     */
+    void println(String text) {
+        print(text);
+        println();
+    }
+
+    /**
+     * Writes a line separator.
+     */
+    void println() {
+        print('\n');
+    }
+
+    /**
+     * Writes an ASCII char.
+     */
+    void print(char c) {
+        if (position == BUFFER_SIZE) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) c;
+    }
+
+    /**
+     * Writes an int.
+     */
+    void print(int value) {
+        if (value < 0) {
+            print('-');
+            printDigits(-(long) value, 1);
+        } else {
+            printDigits(value, 1);
+        }
+    }
+
+    /**
+     * Writes a text as CDATA like {@link StringUtils#formatCData(String)}: an end of CDATA in the text is split into two CDATA sections.
+     *
+     * @param text the text
+     */
+    void printCData(String text) {
+        print(CDATA_START);
+        int start = 0;
+        int end;
+        while ((end = text.indexOf(CDATA_END, start)) != -1) {
+            printRange(text, start, end);
+            print(CDATA_END_ESCAPED);
+            start = end + CDATA_END.length();
+        }
+        printRange(text, start, text.length());
+        print(CDATA_END);
+    }
+
+    /**
+     * Writes an element with a CDATA text and a line separator.
+     *
+     * @param name the element name
+     * @param text the text
+     */
+    void printlnCDataElement(String name, String text) {
+        print('<');
+        print(name);
+        print('>');
+        printCData(text);
+        print("</");
+        print(name);
+        print('>');
+        println();
+    }
+
+    /**
+     * Writes a time like {@link StringUtils#formatDateTimeIso8601(long)}.
+     *
+     * @param time the time
+     */
+    void printTime(long time) {
+        int length = StringUtils.formatDateTimeIso8601(time, chars, 0);
+        for (int i = 0; i < length; i++) {
+            print(chars[i]);
+        }
+    }
+
+    /**
+     * Writes a double like a {@link java.text.DecimalFormat} (Locale.US) without grouping and with a max number of fraction digits.
+     * The shortest decimal representing the double is rounded half even; trailing zeros are omitted.
+     *
+     * @param value             the value
+     * @param maxFractionDigits the max number of fraction digits
+     */
+    void printDouble(double value, int maxFractionDigits) {
+        if (Double.isNaN(value)) {
+            print("NaN");
+            return;
+        }
+        if (value < 0 || (value == 0 && 1 / value < 0)) {
+            print('-');
+            value = -value;
+        }
+        if (Double.isInfinite(value)) {
+            print("\u221E");
+            return;
+        }
+
+        double scaled = value * POWERS_OF_TEN[maxFractionDigits];
+        long digits;
+        double fraction = scaled - Math.floor(scaled);
+        if (scaled >= MAX_EXACT_DECIMAL) {
+            printRounded(value, maxFractionDigits);
+            return;
+        } else if (Math.abs(fraction - 0.5) > 4 * Math.ulp(scaled)) {
+            // Not close to a tie; so, rounded like the shortest decimal.
+            digits = (long) Math.floor(scaled) + (fraction > 0.5 ? 1 : 0);
+        } else {
+            int fractionDigits = getShortestFractionDigits(value);
+            if (fractionDigits == -1) {
+                printRounded(value, maxFractionDigits);
+                return;
+            }
+            digits = (long) Math.rint(value * POWERS_OF_TEN[fractionDigits]);
+            if (fractionDigits > maxFractionDigits) {
+                long divisor = LONG_POWERS_OF_TEN[fractionDigits - maxFractionDigits];
+                long remainder = digits % divisor;
+                digits /= divisor;
+                if (remainder * 2 > divisor || (remainder * 2 == divisor && digits % 2 == 1)) {
+                    digits++;
+                }
+            } else {
+                digits *= LONG_POWERS_OF_TEN[maxFractionDigits - fractionDigits];
+            }
+        }
+
+        int fractionDigits = maxFractionDigits;
+        while (fractionDigits > 0 && digits % 10 == 0) {
+            digits /= 10;
+            fractionDigits--;
+        }
+        printDecimal(digits, fractionDigits, false);
+    }
+
+    /**
+     * Writes a non-negative double rounded half even (exactly) with a max number of fraction digits.
+     * Only for rare values: large ones or ones with more than 15 significant digits (so, the shortest decimal is not a tie).
+     */
+    private void printRounded(double value, int maxFractionDigits) {
+        String digits = new BigDecimal(value).setScale(maxFractionDigits, RoundingMode.HALF_EVEN).unscaledValue().toString();
+        int fractionStart = digits.length() - maxFractionDigits;
+        int fractionEnd = digits.length();
+        while (fractionEnd > Math.max(fractionStart, 0) && digits.charAt(fractionEnd - 1) == '0') {
+            fractionEnd--;
+        }
+        if (fractionStart > 0) {
+            print(digits.substring(0, fractionStart));
+        } else {
+            print('0');
+        }
+        if (fractionEnd > Math.max(fractionStart, 0)) {
+            print('.');
+            for (int i = fractionStart; i < 0; i++) {
+                print('0');
+            }
+            print(digits.substring(Math.max(fractionStart, 0), fractionEnd));
+        }
+    }
+
+    /**
+     * Writes a double like {@link Double#toString(double)}: the shortest decimal representing the double.
+     * Values out of [10^-3, 10^7) are written by {@link Double#toString(double)} (scientific notation).
+     *
+     * @param value the value
+     */
+    void printShortest(double value) {
+        double absValue = Math.abs(value);
+        int fractionDigits = absValue >= MIN_PLAIN && absValue < MAX_PLAIN ? getShortestFractionDigits(absValue) : -1;
+        if (fractionDigits == -1) {
+            if (value == 0) {
+                print(1 / value < 0 ? "-0.0" : "0.0");
+            } else {
+                print(Double.toString(value));
+            }
+            return;
+        }
+        if (value < 0) {
+            print('-');
+        }
+        printDecimal((long) Math.rint(absValue * POWERS_OF_TEN[fractionDigits]), fractionDigits, true);
+    }
+
+    /**
+     * Writes a float like {@link Float#toString(float)}: the shortest decimal representing the float.
+     * Values out of [10^-3, 10^7) are written by {@link Float#toString(float)} (scientific notation).
+     *
+     * @param value the value
+     */
+    void printShortest(float value) {
+        float absValue = Math.abs(value);
+        int fractionDigits = -1;
+        if (absValue >= MIN_PLAIN && absValue < MAX_PLAIN) {
+            for (int i = 0; i <= 9; i++) {
+                double scaled = absValue * POWERS_OF_TEN[i];
+                if ((float) (Math.rint(scaled) / POWERS_OF_TEN[i]) == absValue) {
+                    fractionDigits = i;
+                    break;
+                }
+            }
+        }
+        if (fractionDigits == -1) {
+            if (value == 0) {
+                print(1 / value < 0 ? "-0.0" : "0.0");
+            } else {
+                print(Float.toString(value));
+            }
+            return;
+        }
+        if (value < 0) {
+            print('-');
+        }
+        printDecimal((long) Math.rint(absValue * POWERS_OF_TEN[fractionDigits]), fractionDigits, true);
+    }
+
+    /**
+     * Writes the buffer to the output stream and flushes it.
+     * The output stream is not closed.
+     */
+    void flush() {
+        flushBuffer();
+        try {
+            outputStream.flush();
+        } catch (IOException e) {
+            error = true;
+        }
+    }
+
+    /**
+     * Flushes and returns true if an IO error occurred.
+     */
+    boolean checkError() {
+        flush();
+        return error;
+    }
+
+    /**
+     * Gets the number of fraction digits of the shortest decimal that is parsed to the value.
+     *
+     * @param value the value (not negative)
+     * @return the number of fraction digits or -1 if more than 15 significant digits are needed
+     */
+    private static int getShortestFractionDigits(double value) {
+        for (int i = 0; i <= MAX_FRACTION_DIGITS; i++) {
+            double scaled = value * POWERS_OF_TEN[i];
+            if (scaled >= MAX_EXACT_DECIMAL) {
+                return -1;
+            }
+            // Both are exact; so, the division is rounded like parsing the decimal.
+            if (Math.rint(scaled) / POWERS_OF_TEN[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes a decimal.
+     *
+     * @param digits         the digits of the decimal
+     * @param fractionDigits the number of fraction digits
+     * @param pointZero      true to write ".0" if no fraction digits (like {@link Double#toString(double)})
+     */
+    private void printDecimal(long digits, int fractionDigits, boolean pointZero) {
+        if (fractionDigits == 0) {
+            printDigits(digits, 1);
+            if (pointZero) {
+                print(".0");
+            }
+        } else {
+            long divisor = LONG_POWERS_OF_TEN[fractionDigits];
+            printDigits(digits / divisor, 1);
+            print('.');
+            printDigits(digits % divisor, fractionDigits);
+        }
+    }
+
+    /**
+     * Writes the decimal digits of a non-negative value.
+     *
+     * @param value     the value
+     * @param minDigits the min number of digits (padded with leading zeros)
+     */
+    private void printDigits(long value, int minDigits) {
+        int index = chars.length;
+        do {
+            chars[--index] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        while (chars.length - index < minDigits) {
+            chars[--index] = '0';
+        }
+        for (; index < chars.length; index++) {
+            print(chars[index]);
+        }
+    }
+
+    private void printRange(String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                print(c);
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                writeCodePoint(Character.toCodePoint(c, text.charAt(i + 1)));
+                i++;
+            } else {
+                writeCodePoint(c);
+            }
+        }
+    }
+
+    /**
+     * Encodes a code point (not ASCII) to UTF-8.
+     * Unpaired surrogates are replaced by '?' (like the UTF-8 encoder).
+     */
+    private void writeCodePoint(int codePoint) {
+        if (position > BUFFER_SIZE - 4) {
+            flushBuffer();
+        }
+        if (codePoint < 0x800) {
+            buffer[position++] = (byte) (0xC0 | (codePoint >> 6));
+            buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else if (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE) {
+            buffer[position++] = '?';
+        } else if (codePoint < 0x10000) {
+            buffer[position++] = (byte) (0xE0 | (codePoint >> 12));
+            buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else {
+            buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+            buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+        }
+    }
+
+    private void flushBuffer() {
+        if (position == 0) {
+            return;
+        }
+        try {
+            outputStream.write(buffer, 0, position);
+        } catch (IOException e) {
+            error = true;
+        }
+        position = 0;
+    }
+}
@@ -32,6 +32,7 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Callable;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
@@ -41,10 +42,13 @@ import de.dennisguse.opentracks.R;
 import de.dennisguse.opentracks.content.ContentProviderUtils;
 import de.dennisguse.opentracks.content.ContentProviderUtils.LocationIterator;
 import de.dennisguse.opentracks.content.DescriptionGeneratorImpl;
+import de.dennisguse.opentracks.content.Split;
 import de.dennisguse.opentracks.content.Track;
 import de.dennisguse.opentracks.content.Waypoint;
 import de.dennisguse.opentracks.content.Waypoint.WaypointType;
 import de.dennisguse.opentracks.services.TrackRecordingService;
+import de.dennisguse.opentracks.stats.SensorStatisticsUpdater;
+import de.dennisguse.opentracks.stats.SplitUpdater;
 import de.dennisguse.opentracks.stats.TripStatistics;
 import de.dennisguse.opentracks.stats.TripStatisticsUpdater;
 import de.dennisguse.opentracks.util.FileUtils;
@@ -69,6 +73,7 @@ abstract class AbstractFileTrackImporter extends DefaultHandler implements Track
     private final long importTrackId;
     private final ContentProviderUtils contentProviderUtils;
     private final int recordingDistanceInterval;
+    private final int maxHeartRate;
 
     private final List<Long> trackIds;
     private final List<Waypoint> waypoints;
@@ -92,6 +97,9 @@ abstract class AbstractFileTrackImporter extends DefaultHandler implements Track
     // The SAX locator to get the current line information
     private Locator locator;
 
+    // Runs the database writes
+    private ImportWriter importWriter = ImportWriter.DIRECT;
+
     /**
      * Constructor.
      *
@@ -103,10 +111,20 @@ abstract class AbstractFileTrackImporter extends DefaultHandler implements Track
         this.importTrackId = importTrackId;
         this.contentProviderUtils = contentProviderUtils;
         this.recordingDistanceInterval = PreferencesUtils.getRecordingDistanceInterval(context);
+        this.maxHeartRate = PreferencesUtils.getMaxHeartRate(context);
         trackIds = new ArrayList<>();
         waypoints = new ArrayList<>();
     }
 
+    /**
+     * Sets the writer of the database writes; by default, they are run directly.
+     *
+     * @param importWriter the import writer
+     */
+    void setImportWriter(ImportWriter importWriter) {
+        this.importWriter = importWriter;
+    }
+
     @Override
     public void setDocumentLocator(Locator locator) {
         this.locator = locator;
@@ -126,10 +144,10 @@ abstract class AbstractFileTrackImporter extends DefaultHandler implements Track
     @Override
     public long importFile(InputStream inputStream) {
         try {
-            SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
             long start = System.currentTimeMillis();
 
-            saxParser.parse(inputStream, this);
+            parse(inputStream);
+            importWriter.flush();
             Log.d(TAG, "Total import time: " + (System.currentTimeMillis() - start) + "ms");
             if (trackIds.size() != 1) {
                 Log.d(TAG, trackIds.size() + " tracks imported");
@@ -137,13 +155,24 @@ abstract class AbstractFileTrackImporter extends DefaultHandler implements Track
                 return -1L;
             }
             return trackIds.get(0);
-        } catch (IOException | SAXException | ParserConfigurationException e) {
+        } catch (IOException | SAXException | ParserConfigurationException | RuntimeException e) {
             Log.e(TAG, "Unable to import file", e);
             cleanImport();
             return -1L;
         }
     }
 
+    /**
+     * Parses the file and calls the callbacks (e.g., {@link #onTrackStart()}).
+     * Uses SAX by default.
+     *
+     * @param inputStream the file's input stream
+     */
+    protected void parse(InputStream inputStream) throws IOException, SAXException, ParserConfigurationException {
+        SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
+        saxParser.parse(inputStream, this);
+    }
+
     /**
      * On file end.
      */
@@ -153,7 +182,22 @@ abstract class AbstractFileTrackImporter extends DefaultHandler implements Track
         if (size == 0) {
             return;
         }
-        long trackId = trackIds.get(size - 1);
+        final long trackId = trackIds.get(size - 1);
+        // Reads the inserted track points; so, after the queued writes.
+        importWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                insertWaypoints(trackId);
+            }
+        });
+    }
+
+    /**
+     * Inserts the waypoints matching the track points of a track.
+     *
+     * @param trackId the track id
+     */
+    private void insertWaypoints(long trackId) {
         Track track = contentProviderUtils.getTrack(trackId);
         if (track == null) {
             return;
@@ -236,16 +280,29 @@ abstract class AbstractFileTrackImporter extends DefaultHandler implements Track
      */
     protected void onTrackStart() throws SAXException {
         trackData = new TrackData();
-        long trackId;
+        trackData.sensorStatisticsUpdater = new SensorStatisticsUpdater(maxHeartRate);
+        trackData.splitUpdater = new SplitUpdater();
+        final long trackId;
         if (importTrackId == -1L) {
-            Uri uri = contentProviderUtils.insertTrack(trackData.track);
-            trackId = Long.parseLong(uri.getLastPathSegment());
+            final Track track = trackData.track;
+            trackId = importWriter.call(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    Uri uri = contentProviderUtils.insertTrack(track);
+                    return Long.parseLong(uri.getLastPathSegment());
+                }
+            });
         } else {
             if (trackIds.size() > 0) {
                 throw new SAXException(createErrorMessage("Cannot import more than one track to an existing track " + importTrackId));
             }
             trackId = importTrackId;
-            contentProviderUtils.clearTrack(context, trackId);
+            importWriter.execute(new Runnable() {
+                @Override
+                public void run() {
+                    contentProviderUtils.clearTrack(context, trackId);
+                }
+            });
         }
         trackIds.add(trackId);
         trackData.track.setId(trackId);
@@ -256,6 +313,7 @@ abstract class AbstractFileTrackImporter extends DefaultHandler implements Track
      */
     protected void onTrackEnd() {
         flushLocations(trackData);
+        flushSplits(trackData);
         if (name != null) {
             trackData.track.setName(name);
         }
@@ -271,9 +329,17 @@ abstract class AbstractFileTrackImporter extends DefaultHandler implements Track
             trackData.tripStatisticsUpdater.updateTime(trackData.importTime);
         }
         trackData.track.setTripStatistics(trackData.tripStatisticsUpdater.getTripStatistics());
+        trackData.track.setSensorStatistics(trackData.sensorStatisticsUpdater.getSensorStatistics());
         trackData.track.setNumberOfPoints(trackData.numberOfLocations);
-        contentProviderUtils.updateTrack(trackData.track);
-        insertFirstWaypoint(trackData.track);
+        // After the track points; so, with the start id and the stop id.
+        final Track track = trackData.track;
+        importWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                contentProviderUtils.updateTrack(track);
+                insertFirstWaypoint(track);
+            }
+        });
     }
 
     /**
@@ -329,8 +395,22 @@ abstract class AbstractFileTrackImporter extends DefaultHandler implements Track
      * Gets a track point.
      */
     protected Location getTrackPoint() throws SAXException {
-        Location location = createLocation();
+        return getTrackPoint(createLocation());
+    }
 
+    /**
+     * Gets a track point without parsing Strings.
+     *
+     * @param latitudeValue  the latitude
+     * @param longitudeValue the longitude
+     * @param altitudeValue  the altitude or NaN if none
+     * @param timeValue      the time or -1L if none
+     */
+    protected Location getTrackPoint(double latitudeValue, double longitudeValue, double altitudeValue, long timeValue) throws SAXException {
+        return getTrackPoint(createLocation(latitudeValue, longitudeValue, altitudeValue, timeValue != -1L ? timeValue : trackData.importTime));
+    }
+
+    private Location getTrackPoint(Location location) throws SAXException {
         // Calculate derived attributes from the previous point
         if (trackData.lastLocationInCurrentSegment != null && trackData.lastLocationInCurrentSegment.getTime() != 0) {
             long timeDifference = location.getTime() - trackData.lastLocationInCurrentSegment.getTime();
@@ -372,9 +452,10 @@ abstract class AbstractFileTrackImporter extends DefaultHandler implements Track
     protected void insertTrackPoint(Location location) {
         insertLocation(location);
 
-        if (trackData.track.getStartId() == -1L) {
+        if (!trackData.flushedFirstLocation) {
             // Flush the location to set the track start id and the track end id
             flushLocations(trackData);
+            trackData.flushedFirstLocation = true;
         }
     }
 
@@ -416,7 +497,7 @@ abstract class AbstractFileTrackImporter extends DefaultHandler implements Track
         } catch (NumberFormatException e) {
             throw new SAXException(createErrorMessage(String.format(Locale.US, "Unable to parse latitude longitude: %s %s", latitude, longitude)), e);
         }
-        Double altitudeValue = null;
+        double altitudeValue = Double.NaN;
         if (altitude != null) {
             try {
                 altitudeValue = Double.parseDouble(altitude);
@@ -443,14 +524,14 @@ abstract class AbstractFileTrackImporter extends DefaultHandler implements Track
      *
      * @param latitudeValue  the latitude value
      * @param longitudeValue the longitude value
-     * @param altitudeValue  the altitude value
+     * @param altitudeValue  the altitude value or NaN if none
      * @param timeValue      the time value
      */
-    private Location createLocation(double latitudeValue, double longitudeValue, Double altitudeValue, long timeValue) {
+    private Location createLocation(double latitudeValue, double longitudeValue, double altitudeValue, long timeValue) {
         Location location = new Location(LocationManager.GPS_PROVIDER);
         location.setLatitude(latitudeValue);
         location.setLongitude(longitudeValue);
-        if (altitudeValue != null) {
+        if (!Double.isNaN(altitudeValue)) {
             location.setAltitude(altitudeValue);
         } else {
             location.removeAltitude();
@@ -472,6 +553,11 @@ abstract class AbstractFileTrackImporter extends DefaultHandler implements Track
             trackData.tripStatisticsUpdater = new TripStatisticsUpdater(location.getTime() != -1L ? location.getTime() : trackData.importTime);
         }
         trackData.tripStatisticsUpdater.addLocation(location, recordingDistanceInterval);
+        trackData.sensorStatisticsUpdater.addLocation(location);
+        for (Split split : trackData.splitUpdater.addLocation(location, trackData.tripStatisticsUpdater.getTripStatistics())) {
+            split.setTrackId(trackData.track.getId());
+            trackData.splits.add(split);
+        }
 
         trackData.bufferedLocations[trackData.numBufferedLocations] = location;
         trackData.numBufferedLocations++;
@@ -491,12 +577,42 @@ abstract class AbstractFileTrackImporter extends DefaultHandler implements Track
         if (data.numBufferedLocations <= 0) {
             return;
         }
-        contentProviderUtils.bulkInsertTrackPoint(data.bufferedLocations, data.numBufferedLocations, data.track.getId());
+        // The buffer is handed over to the writer.
+        final Location[] locations = data.bufferedLocations;
+        final int numLocations = data.numBufferedLocations;
+        final Track track = data.track;
+        data.bufferedLocations = new Location[MAX_BUFFERED_LOCATIONS];
         data.numBufferedLocations = 0;
-        if (data.track.getStartId() == -1L) {
-            data.track.setStartId(contentProviderUtils.getFirstTrackPointId(data.track.getId()));
+        importWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                contentProviderUtils.bulkInsertTrackPoint(locations, numLocations, track.getId());
+                if (track.getStartId() == -1L) {
+                    track.setStartId(contentProviderUtils.getFirstTrackPointId(track.getId()));
+                }
+                track.setStopId(contentProviderUtils.getLastTrackPointId(track.getId()));
+            }
+        });
+    }
+
+    /**
+     * Inserts the splits of a track in one batch.
+     *
+     * @param data the track data
+     */
+    private void flushSplits(TrackData data) {
+        if (data.splits.isEmpty()) {
+            return;
         }
-        data.track.setStopId(contentProviderUtils.getLastTrackPointId(data.track.getId()));
+        // The list is handed over to the writer.
+        final List<Split> splits = data.splits;
+        data.splits = new ArrayList<>();
+        importWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                contentProviderUtils.bulkInsertSplits(splits);
+            }
+        });
     }
 
     /**
@@ -524,9 +640,17 @@ abstract class AbstractFileTrackImporter extends DefaultHandler implements Track
      * Cleans up import.
      */
     private void cleanImport() {
-        for (long trackId : trackIds) {
-            contentProviderUtils.deleteTrack(context, trackId);
+        // Drops the failure of a pending write; the track is deleted anyway.
+        importWriter.flushQuietly();
+        for (final long trackId : trackIds) {
+            importWriter.execute(new Runnable() {
+                @Override
+                public void run() {
+                    contentProviderUtils.deleteTrack(context, trackId);
+                }
+            });
         }
+        importWriter.flushQuietly();
     }
 
     /**
@@ -550,6 +674,12 @@ abstract class AbstractFileTrackImporter extends DefaultHandler implements Track
         // The trip statistics updater for the current track
         TripStatisticsUpdater tripStatisticsUpdater;
 
+        // The sensor statistics updater for the current track
+        SensorStatisticsUpdater sensorStatisticsUpdater;
+
+        // The split updater for the current track
+        SplitUpdater splitUpdater;
+
         // The import time of the track.
         long importTime = System.currentTimeMillis();
 
@@ -558,5 +688,11 @@ abstract class AbstractFileTrackImporter extends DefaultHandler implements Track
 
         // The number of buffered locations
         int numBufferedLocations = 0;
+
+        // The splits of the current track; inserted at the end of the track
+        List<Split> splits = new ArrayList<>();
+
+        // True if the first location was flushed (to set the start id)
+        boolean flushedFirstLocation = false;
     }
 }
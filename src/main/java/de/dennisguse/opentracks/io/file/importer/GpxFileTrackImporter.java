@@ -21,14 +21,19 @@ import android.location.Location;
 
 import androidx.annotation.VisibleForTesting;
 
-import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
 import de.dennisguse.opentracks.content.ContentProviderUtils;
 import de.dennisguse.opentracks.content.Waypoint.WaypointType;
+import de.dennisguse.opentracks.util.StringUtils;
 
 /**
  * Imports a GPX file.
+ * Uses a {@link XmlTokenizer}; so, the track points are imported without creating Strings.
  *
  * @author Jimmy Shih
  */
@@ -49,6 +54,15 @@ public class GpxFileTrackImporter extends AbstractFileTrackImporter {
     private static final String ATTRIBUTE_LAT = "lat";
     private static final String ATTRIBUTE_LON = "lon";
 
+    private XmlTokenizer tokenizer;
+
+    // The current track point; parsed without creating Strings
+    private boolean inTrackPoint = false;
+    private double trackPointLatitude;
+    private double trackPointLongitude;
+    private double trackPointAltitude;
+    private long trackPointTime;
+
     /**
      * Constructor.
      *
@@ -63,11 +77,27 @@ public class GpxFileTrackImporter extends AbstractFileTrackImporter {
         super(context, -1L, contentProviderUtils);
     }
 
+    /**
+     * Parses with a {@link XmlTokenizer}: the track points are parsed from the char buffers without creating Strings.
+     */
     @Override
-    public void startElement(String uri, String localName, String tag, Attributes attributes) throws SAXException {
+    protected void parse(InputStream inputStream) throws IOException, SAXException {
+        tokenizer = new XmlTokenizer(inputStream);
+        setDocumentLocator(tokenizer);
+        int eventType;
+        while ((eventType = tokenizer.next()) != XmlTokenizer.END_DOCUMENT) {
+            if (eventType == XmlTokenizer.START_TAG) {
+                startElement(tokenizer.getName());
+            } else if (eventType == XmlTokenizer.END_TAG) {
+                endElement(tokenizer.getName());
+            }
+        }
+    }
+
+    private void startElement(String tag) throws SAXException {
         switch (tag) {
             case TAG_WAYPOINT:
-                onWaypointStart(attributes);
+                onWaypointStart();
                 break;
             case TAG_TRACK:
                 onTrackStart();
@@ -76,13 +106,12 @@ public class GpxFileTrackImporter extends AbstractFileTrackImporter {
                 onTrackSegmentStart();
                 break;
             case TAG_TRACK_POINT:
-                onTrackPointStart(attributes);
+                onTrackPointStart();
                 break;
         }
     }
 
-    @Override
-    public void endElement(String uri, String localName, String tag) throws SAXException {
+    private void endElement(String tag) throws SAXException {
         switch (tag) {
             case TAG_GPX:
                 onFileEnd();
@@ -97,39 +126,66 @@ public class GpxFileTrackImporter extends AbstractFileTrackImporter {
                 onTrackPointEnd();
                 break;
             case TAG_NAME:
-                if (content != null) {
-                    name = content.trim();
+                if (hasContent()) {
+                    name = getContent();
                 }
                 break;
             case TAG_DESCRIPTION:
-                if (content != null) {
-                    description = content.trim();
+                if (hasContent()) {
+                    description = getContent();
                 }
                 break;
             case TAG_TYPE:
-                if (content != null) {
-                    category = content.trim();
+                if (hasContent()) {
+                    category = getContent();
                 }
                 break;
             case TAG_TIME:
-                if (content != null) {
-                    time = content.trim();
+                if (hasContent()) {
+                    if (inTrackPoint) {
+                        try {
+                            trackPointTime = StringUtils.getTime(tokenizer.getTextCharacters(), 0, tokenizer.getTextLength());
+                        } catch (IllegalArgumentException e) {
+                            throw new SAXException(createErrorMessage(String.format(Locale.US, "Unable to parse time: %s", getContent())), e);
+                        }
+                    } else {
+                        time = getContent();
+                    }
                 }
                 break;
             case TAG_ELEVATION:
-                if (content != null) {
-                    altitude = content.trim();
+                if (hasContent()) {
+                    if (inTrackPoint) {
+                        try {
+                            trackPointAltitude = StringUtils.parseDouble(tokenizer.getTextCharacters(), 0, tokenizer.getTextLength());
+                        } catch (NumberFormatException e) {
+                            throw new SAXException(createErrorMessage(String.format(Locale.US, "Unable to parse altitude: %s", getContent())), e);
+                        }
+                    } else {
+                        altitude = getContent();
+                    }
                 }
                 break;
             case TAG_COMMENT:
-                if (content != null) {
-                    waypointType = content.trim();
+                if (hasContent()) {
+                    waypointType = getContent();
                 }
                 break;
         }
+    }
+
+    /**
+     * Returns true if the element that just ended has content.
+     */
+    private boolean hasContent() {
+        return tokenizer.getTextLength() > 0;
+    }
 
-        // Reset element content
-        content = null;
+    /**
+     * Gets the trimmed content of the element that just ended.
+     */
+    private String getContent() {
+        return tokenizer.getText().trim();
     }
 
     @Override
@@ -142,39 +198,52 @@ public class GpxFileTrackImporter extends AbstractFileTrackImporter {
 
     /**
      * On track point start.
-     *
-     * @param attributes the attributes
      */
-    private void onTrackPointStart(Attributes attributes) {
-        latitude = attributes.getValue(ATTRIBUTE_LAT);
-        longitude = attributes.getValue(ATTRIBUTE_LON);
-        altitude = null;
-        time = null;
+    private void onTrackPointStart() throws SAXException {
+        inTrackPoint = true;
+        trackPointLatitude = getCoordinate(ATTRIBUTE_LAT);
+        trackPointLongitude = getCoordinate(ATTRIBUTE_LON);
+        trackPointAltitude = Double.NaN;
+        trackPointTime = -1L;
     }
 
     /**
      * On track point end.
      */
     private void onTrackPointEnd() throws SAXException {
-        Location location = getTrackPoint();
-        if (location == null) {
-            return;
-        }
+        inTrackPoint = false;
+        Location location = getTrackPoint(trackPointLatitude, trackPointLongitude, trackPointAltitude, trackPointTime);
         insertTrackPoint(location);
     }
 
     /**
-     * On waypoint start.
+     * Gets a coordinate of the current start tag.
      *
-     * @param attributes the attributes
+     * @param attributeName the attribute name
+     * @return the coordinate or NaN if not present (an invalid location)
+     */
+    private double getCoordinate(String attributeName) throws SAXException {
+        int index = tokenizer.getAttributeIndex(attributeName);
+        if (index == -1) {
+            return Double.NaN;
+        }
+        try {
+            return StringUtils.parseDouble(tokenizer.getAttributeCharacters(), tokenizer.getAttributeValueStart(index), tokenizer.getAttributeValueLength(index));
+        } catch (NumberFormatException e) {
+            throw new SAXException(createErrorMessage(String.format(Locale.US, "Unable to parse latitude longitude: %s %s", tokenizer.getAttributeValue(ATTRIBUTE_LAT), tokenizer.getAttributeValue(ATTRIBUTE_LON))), e);
+        }
+    }
+
+    /**
+     * On waypoint start.
      */
-    private void onWaypointStart(Attributes attributes) {
+    private void onWaypointStart() {
         name = null;
         description = null;
         category = null;
         photoUrl = null;
-        latitude = attributes.getValue(ATTRIBUTE_LAT);
-        longitude = attributes.getValue(ATTRIBUTE_LON);
+        latitude = tokenizer.getAttributeValue(ATTRIBUTE_LAT);
+        longitude = tokenizer.getAttributeValue(ATTRIBUTE_LON);
         altitude = null;
         time = null;
         waypointType = null;
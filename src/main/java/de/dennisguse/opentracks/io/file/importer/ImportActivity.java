@@ -199,8 +199,8 @@ public class ImportActivity extends FragmentActivity implements FileTypeDialogFr
     /**
      * Sets the progress dialog value.
      *
-     * @param number the number of files imported
-     * @param max    the maximum number of files
+     * @param number the number of kilobytes imported
+     * @param max    the number of kilobytes of all files
      */
     public void setProgressDialogValue(int number, int max) {
         if (progressDialog != null) {
@@ -24,9 +24,18 @@ import android.util.Log;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import de.dennisguse.opentracks.content.ContentProviderUtils;
 import de.dennisguse.opentracks.content.Track;
@@ -37,12 +46,21 @@ import de.dennisguse.opentracks.util.SystemUtils;
 
 /**
  * AsyncTask to import files from the external storage.
+ * <p>
+ * The files are parsed concurrently (one per core); the database writes are committed by one {@link ImportWriter}.
+ * The progress is the number of bytes read.
  *
  * @author Jimmy Shih
  */
 public class ImportAsyncTask extends AsyncTask<Void, Integer, Boolean> {
 
     private static final String TAG = ImportAsyncTask.class.getSimpleName();
+
+    // The max number of queued database writes (each up to a bulk insert of track points)
+    private static final int WRITER_CAPACITY = 64;
+
+    // The interval to publish the progress
+    private static final long PROGRESS_INTERVAL_MS = 100;
     private final TrackFileFormat trackFileFormat;
     private final String path;
     private final Context context;
@@ -52,12 +70,12 @@ public class ImportAsyncTask extends AsyncTask<Void, Integer, Boolean> {
     // true if the AsyncTask has completed
     private boolean completed;
 
-    private int importTrackCount;
+    private final AtomicInteger importTrackCount = new AtomicInteger();
 
     private int totalTrackCount;
 
-    // the last successfully imported track id
-    private long trackId;
+    // The number of bytes read of all files
+    private final AtomicLong bytesRead = new AtomicLong();
 
     /**
      * Creates an AsyncTask.
@@ -73,9 +91,7 @@ public class ImportAsyncTask extends AsyncTask<Void, Integer, Boolean> {
         context = importActivity.getApplicationContext();
 
         completed = false;
-        importTrackCount = 0;
         totalTrackCount = 0;
-        trackId = -1L;
     }
 
     /**
@@ -86,7 +102,7 @@ public class ImportAsyncTask extends AsyncTask<Void, Integer, Boolean> {
     public void setActivity(ImportActivity importActivity) {
         this.importActivity = importActivity;
         if (completed && importActivity != null) {
-            importActivity.onAsyncTaskCompleted(importTrackCount, totalTrackCount);
+            importActivity.onAsyncTaskCompleted(importTrackCount.get(), totalTrackCount);
         }
     }
 
@@ -114,15 +130,31 @@ public class ImportAsyncTask extends AsyncTask<Void, Integer, Boolean> {
                 return true;
             }
 
-            for (int i = 0; i < totalTrackCount; i++) {
-                if (isCancelled()) {
-                    // If cancelled, return true to show the number of files imported
-                    return true;
+            long totalBytes = 0;
+            for (File file : files) {
+                totalBytes += file.length();
+            }
+
+            ImportWriter importWriter = new ImportWriter(WRITER_CAPACITY);
+            ExecutorService executorService = Executors.newFixedThreadPool(Math.min(Runtime.getRuntime().availableProcessors(), totalTrackCount));
+            try {
+                for (final File file : files) {
+                    executorService.execute(new ImportRunnable(file, importWriter));
                 }
-                if (importFile(files.get(i))) {
-                    importTrackCount++;
+                executorService.shutdown();
+
+                while (!awaitTermination(executorService)) {
+                    if (isCancelled()) {
+                        // The imports stop at their next read; if cancelled, return true to show the number of files imported
+                        executorService.shutdownNow();
+                    } else {
+                        publishProgress((int) (bytesRead.get() / 1024), (int) (totalBytes / 1024));
+                    }
                 }
-                publishProgress(i + 1, totalTrackCount);
+            } finally {
+                executorService.shutdownNow();
+                // Commits the remaining writes (including the clean up of cancelled imports)
+                importWriter.close();
             }
             return true;
         } finally {
@@ -132,6 +164,21 @@ public class ImportAsyncTask extends AsyncTask<Void, Integer, Boolean> {
         }
     }
 
+    /**
+     * Waits for the imports for {@link #PROGRESS_INTERVAL_MS}.
+     * If interrupted (i.e., cancelled), the imports are stopped and waited for.
+     *
+     * @return true if all imports are done
+     */
+    private boolean awaitTermination(ExecutorService executorService) {
+        try {
+            return executorService.awaitTermination(PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            executorService.shutdownNow();
+            return false;
+        }
+    }
+
     @Override
     protected void onProgressUpdate(Integer... values) {
         if (importActivity != null) {
@@ -143,7 +190,7 @@ public class ImportAsyncTask extends AsyncTask<Void, Integer, Boolean> {
     protected void onPostExecute(Boolean result) {
         completed = true;
         if (importActivity != null) {
-            importActivity.onAsyncTaskCompleted(importTrackCount, totalTrackCount);
+            importActivity.onAsyncTaskCompleted(importTrackCount.get(), totalTrackCount);
         }
     }
 
@@ -151,34 +198,46 @@ public class ImportAsyncTask extends AsyncTask<Void, Integer, Boolean> {
     protected void onCancelled() {
         completed = true;
         if (importActivity != null) {
-            importActivity.onAsyncTaskCompleted(importTrackCount, totalTrackCount);
+            importActivity.onAsyncTaskCompleted(importTrackCount.get(), totalTrackCount);
         }
     }
 
     /**
      * Imports a file.
      *
-     * @param file the file
+     * @param file         the file
+     * @param importWriter the import writer
      */
-    private boolean importFile(final File file) {
+    private boolean importFile(final File file, ImportWriter importWriter) {
         TrackImporter trackImporter;
-        if (trackFileFormat == TrackFileFormat.GPX) {
-            trackImporter = new GpxFileTrackImporter(context);
+        if (trackFileFormat == TrackFileFormat.OPENTRACKS_BINARY) {
+            trackImporter = new NativeTrackImporter(context, importWriter);
+        } else if (trackFileFormat == TrackFileFormat.GPX) {
+            GpxFileTrackImporter gpxFileTrackImporter = new GpxFileTrackImporter(context);
+            gpxFileTrackImporter.setImportWriter(importWriter);
+            trackImporter = gpxFileTrackImporter;
         } else { //KML or KMZ
             String extension = FileUtils.getExtension(file.getName());
             if (TrackFileFormat.KML_ONLY_TRACK.getExtension().equals(extension)) {
-                trackImporter = new KmlFileTrackImporter(context, -1L);
+                KmlFileTrackImporter kmlFileTrackImporter = new KmlFileTrackImporter(context, -1L);
+                kmlFileTrackImporter.setImportWriter(importWriter);
+                trackImporter = kmlFileTrackImporter;
             } else {
-                ContentProviderUtils contentProviderUtils = ContentProviderUtils.Factory.get(context);
-                Uri uri = contentProviderUtils.insertTrack(new Track());
-                long newId = Long.parseLong(uri.getLastPathSegment());
+                long newId = importWriter.call(new Callable<Long>() {
+                    @Override
+                    public Long call() {
+                        ContentProviderUtils contentProviderUtils = ContentProviderUtils.Factory.get(context);
+                        Uri uri = contentProviderUtils.insertTrack(new Track());
+                        return Long.parseLong(uri.getLastPathSegment());
+                    }
+                });
 
-                trackImporter = new KmzTrackImporter(context, newId);
+                trackImporter = new KmzTrackImporter(context, newId, importWriter);
             }
         }
 
-        try (FileInputStream fileInputStream = new FileInputStream(file)) {
-            trackId = trackImporter.importFile(fileInputStream);
+        try (InputStream inputStream = new ProgressInputStream(new FileInputStream(file))) {
+            long trackId = trackImporter.importFile(inputStream);
             return trackId != -1L;
         } catch (IOException e) {
             Log.e(TAG, "Unable to import file", e);
@@ -210,4 +269,73 @@ public class ImportAsyncTask extends AsyncTask<Void, Integer, Boolean> {
 
         return files;
     }
+
+    /**
+     * Imports a file in a parser thread.
+     */
+    private class ImportRunnable implements Runnable {
+
+        private final File file;
+        private final ImportWriter importWriter;
+
+        ImportRunnable(File file, ImportWriter importWriter) {
+            this.file = file;
+            this.importWriter = importWriter;
+        }
+
+        @Override
+        public void run() {
+            if (isCancelled()) {
+                return;
+            }
+            if (importFile(file, importWriter)) {
+                importTrackCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes read for the progress and stops the import if cancelled.
+     * The importers handle the {@link InterruptedIOException} like other IO errors (i.e., delete the partially imported track).
+     */
+    private class ProgressInputStream extends FilterInputStream {
+
+        ProgressInputStream(InputStream inputStream) {
+            super(inputStream);
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkCancelled();
+            int value = super.read();
+            if (value != -1) {
+                bytesRead.incrementAndGet();
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            checkCancelled();
+            int count = super.read(buffer, offset, length);
+            if (count > 0) {
+                bytesRead.addAndGet(count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            checkCancelled();
+            long count = super.skip(n);
+            bytesRead.addAndGet(count);
+            return count;
+        }
+
+        private void checkCancelled() throws InterruptedIOException {
+            if (isCancelled()) {
+                throw new InterruptedIOException("Import cancelled");
+            }
+        }
+    }
 }
@@ -0,0 +1,235 @@
+package de.dennisguse.opentracks.io.file.importer;
+
+import android.util.Log;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Runs the database writes of the importers.
+ * <p>
+ * The writes of concurrent importers are queued into a bounded queue and committed by one writer thread (in order); so, the parsers do not wait for the database and the database is not written concurrently.
+ * The queue is bounded; so, fast parsers wait for the writer (instead of buffering whole files).
+ * As the track ids are created by the writer only, it is the only allocator of track ids.
+ * <p>
+ * A failed write is logged and thrown in the thread that queued it by its next {@link #execute(Runnable)}, {@link #call(Callable)}, or {@link #flush()}; so, the importer cleans up.
+ * <p>
+ * {@link #DIRECT} runs the writes in the calling thread (e.g., to import a single file).
+ */
+class ImportWriter {
+
+    private static final String TAG = ImportWriter.class.getSimpleName();
+
+    /**
+     * Runs the writes in the calling thread.
+     */
+    static final ImportWriter DIRECT = new ImportWriter();
+
+    // Stops the writer thread.
+    private static final Runnable STOP = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    private final BlockingQueue<Runnable> queue;
+    private final Thread thread;
+
+    // The first failed write per submitting thread; thrown in that thread by its next execute(), call(), or flush().
+    private final Map<Thread, RuntimeException> failures = new ConcurrentHashMap<>();
+
+    private ImportWriter() {
+        queue = null;
+        thread = null;
+    }
+
+    /**
+     * Starts a writer thread.
+     *
+     * @param capacity the max number of queued writes
+     */
+    ImportWriter(int capacity) {
+        queue = new ArrayBlockingQueue<>(capacity);
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    Runnable runnable;
+                    try {
+                        runnable = queue.take();
+                    } catch (InterruptedException e) {
+                        // Only stopped by STOP; so, no write is lost.
+                        continue;
+                    }
+                    if (runnable == STOP) {
+                        return;
+                    }
+                    Write write = (Write) runnable;
+                    try {
+                        write.runnable.run();
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "Unable to write", e);
+                        if (!failures.containsKey(write.owner)) {
+                            failures.put(write.owner, e);
+                        }
+                    }
+                }
+            }
+        }, TAG);
+        thread.start();
+    }
+
+    /**
+     * Queues a write; runs it directly if {@link #DIRECT}.
+     * Waits (uninterruptibly) if the queue is full; so, no write is lost.
+     *
+     * @param runnable the write
+     * @throws RuntimeException the failure of a write queued before by the calling thread
+     */
+    void execute(Runnable runnable) {
+        throwFailure();
+        if (queue == null) {
+            runnable.run();
+            return;
+        }
+        put(new Write(runnable, Thread.currentThread()));
+    }
+
+    /**
+     * Queues a write and waits for its result (e.g., a new track id).
+     * All writes queued before are committed before.
+     *
+     * @param callable the write
+     * @throws RuntimeException the failure of the write or of a write queued before by the calling thread
+     */
+    <T> T call(Callable<T> callable) {
+        FutureTask<T> futureTask = new FutureTask<>(callable);
+        execute(futureTask);
+        return await(futureTask);
+    }
+
+    /**
+     * Waits for the writes queued before by the calling thread; to be called at the end of an import.
+     *
+     * @throws RuntimeException the failure of a write queued before by the calling thread
+     */
+    void flush() {
+        if (queue == null) {
+            return;
+        }
+        FutureTask<Void> futureTask = new FutureTask<>(STOP, null);
+        put(new Write(futureTask, Thread.currentThread()));
+        await(futureTask);
+        throwFailure();
+    }
+
+    /**
+     * Like {@link #flush()}, but logs the failure instead of throwing it (e.g., to clean up after a failed import).
+     */
+    void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Unable to write", e);
+        }
+    }
+
+    /**
+     * Commits all queued writes and stops the writer thread.
+     */
+    void close() {
+        if (thread == null) {
+            return;
+        }
+        put(STOP);
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        // Not flushed by their importers; logged already.
+        failures.clear();
+    }
+
+    private void throwFailure() {
+        RuntimeException failure = failures.remove(Thread.currentThread());
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Puts into the queue; waits (uninterruptibly) if the queue is full.
+     */
+    private void put(Runnable runnable) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(runnable);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits (uninterruptibly) for a queued write.
+     */
+    private static <T> T await(FutureTask<T> futureTask) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return futureTask.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * A queued write and the thread that queued it.
+     */
+    private static class Write implements Runnable {
+
+        final Runnable runnable;
+        final Thread owner;
+
+        Write(Runnable runnable, Thread owner) {
+            this.runnable = runnable;
+            this.owner = owner;
+        }
+
+        @Override
+        public void run() {
+            runnable.run();
+        }
+    }
+}
@@ -20,10 +20,10 @@ import android.content.Context;
 import android.net.Uri;
 import android.util.Log;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.zip.ZipEntry;
@@ -36,6 +36,8 @@ import de.dennisguse.opentracks.util.PreferencesUtils;
 
 /**
  * Imports a KMZ file.
+ * <p>
+ * The file is imported in one pass: the kml is parsed directly from the zip and the images are copied to the photo directory; so, the memory needed does not depend on the file size.
  *
  * @author Jimmy Shih
  */
@@ -43,10 +45,15 @@ public class KmzTrackImporter implements TrackImporter {
 
     private static final String TAG = KmzTrackImporter.class.getSimpleName();
 
-    private static final int BUFFER_SIZE = 4096;
+    // The buffer size to read the zip and copy the images
+    private static final int BUFFER_SIZE = 64 * 1024;
 
     private final Context context;
     private final long importTrackId;
+    private final ImportWriter importWriter;
+
+    // The buffer to copy the images; allocated on the first image
+    private byte[] buffer;
 
     /**
      * Constructor.
@@ -55,14 +62,27 @@ public class KmzTrackImporter implements TrackImporter {
      * @param importTrackId track id to import to. This should not be -1L so that images in the kmz file can be imported.
      */
     KmzTrackImporter(Context context, long importTrackId) {
+        this(context, importTrackId, ImportWriter.DIRECT);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param context       the context
+     * @param importTrackId track id to import to. This should not be -1L so that images in the kmz file can be imported.
+     * @param importWriter  the writer of the database writes
+     */
+    KmzTrackImporter(Context context, long importTrackId, ImportWriter importWriter) {
         this.context = context;
         this.importTrackId = importTrackId;
+        this.importWriter = importWriter;
     }
 
     @Override
     public long importFile(InputStream inputStream) {
         long trackId = importTrackId;
-        try (ZipInputStream zipInputStream = new ZipInputStream(inputStream)) {
+        // ZipInputStream reads the compressed data in small chunks
+        try (ZipInputStream zipInputStream = new ZipInputStream(new BufferedInputStream(inputStream, BUFFER_SIZE))) {
             ZipEntry zipEntry;
 
             while ((zipEntry = zipInputStream.getNextEntry()) != null) {
@@ -100,10 +120,18 @@ public class KmzTrackImporter implements TrackImporter {
      *
      * @param trackId the trackId
      */
-    private void cleanImport(long trackId) {
+    private void cleanImport(final long trackId) {
         if (PreferencesUtils.isRecording(trackId)) {
-            ContentProviderUtils contentProviderUtils = ContentProviderUtils.Factory.get(context);
-            contentProviderUtils.deleteTrack(context, trackId);
+            // Drops the failure of a pending write; the track is deleted anyway.
+            importWriter.flushQuietly();
+            importWriter.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ContentProviderUtils contentProviderUtils = ContentProviderUtils.Factory.get(context);
+                    contentProviderUtils.deleteTrack(context, trackId);
+                }
+            });
+            importWriter.flushQuietly();
         }
 
         if (importTrackId != -1L) {
@@ -119,38 +147,15 @@ public class KmzTrackImporter implements TrackImporter {
     }
 
     /**
-     * Parses kml
+     * Parses kml directly from the zip entry.
      *
      * @param zipInputStream the zip input stream
      * @return the imported track id or -1L
      */
-    private long parseKml(ZipInputStream zipInputStream) throws IOException {
-        ByteArrayInputStream byteArrayInputStream = null;
-        try {
-            KmlFileTrackImporter kmlFileTrackImporter = new KmlFileTrackImporter(context, importTrackId);
-            byteArrayInputStream = new ByteArrayInputStream(getKml(zipInputStream));
-            return kmlFileTrackImporter.importFile(byteArrayInputStream);
-        } finally {
-            if (byteArrayInputStream != null) {
-                byteArrayInputStream.close();
-            }
-        }
-    }
-
-    /**
-     * Gets the kml as byte array.
-     *
-     * @param zipInputStream the zip input stream
-     */
-    private byte[] getKml(ZipInputStream zipInputStream) throws IOException {
-        try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream()) {
-            byte[] buffer = new byte[BUFFER_SIZE];
-            int count;
-            while ((count = zipInputStream.read(buffer)) != -1) {
-                byteArrayOutputStream.write(buffer, 0, count);
-            }
-            return byteArrayOutputStream.toByteArray();
-        }
+    private long parseKml(ZipInputStream zipInputStream) {
+        KmlFileTrackImporter kmlFileTrackImporter = new KmlFileTrackImporter(context, importTrackId);
+        kmlFileTrackImporter.setImportWriter(importWriter);
+        return kmlFileTrackImporter.importFile(new EntryInputStream(zipInputStream));
     }
 
     /**
@@ -170,8 +175,10 @@ public class KmzTrackImporter implements TrackImporter {
         FileUtils.ensureDirectoryExists(dir);
         File file = new File(dir, fileName);
 
+        if (buffer == null) {
+            buffer = new byte[BUFFER_SIZE];
+        }
         try (FileOutputStream fileOutputStream = new FileOutputStream(file)) {
-            byte[] buffer = new byte[BUFFER_SIZE];
             int count;
             while ((count = zipInputStream.read(buffer)) != -1) {
                 fileOutputStream.write(buffer, 0, count);
@@ -180,4 +187,19 @@ public class KmzTrackImporter implements TrackImporter {
             FileUtils.updateMediaScanner(context, Uri.fromFile(file));
         }
     }
+
+    /**
+     * The input stream of a zip entry: does not close the zip input stream (e.g., if the parser closes its input stream); so, the following entries can be read.
+     */
+    private static class EntryInputStream extends FilterInputStream {
+
+        EntryInputStream(ZipInputStream zipInputStream) {
+            super(zipInputStream);
+        }
+
+        @Override
+        public void close() {
+            // Do nothing; the entry is closed by the importer
+        }
+    }
 }
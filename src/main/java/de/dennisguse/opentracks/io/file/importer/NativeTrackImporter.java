@@ -0,0 +1,415 @@
+package de.dennisguse.opentracks.io.file.importer;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import de.dennisguse.opentracks.content.ContentProviderUtils;
+import de.dennisguse.opentracks.content.SplitsColumns;
+import de.dennisguse.opentracks.content.TrackPointCache;
+import de.dennisguse.opentracks.content.TrackPointsColumns;
+import de.dennisguse.opentracks.content.TracksColumns;
+import de.dennisguse.opentracks.content.WaypointsColumns;
+import de.dennisguse.opentracks.io.file.NativeFormat;
+
+/**
+ * Imports tracks of the {@link NativeFormat}.
+ * <p>
+ * The blocks are decoded directly into {@link ContentValues}; the track points of a block are inserted with one bulk insert (i.e., one transaction).
+ * If the file is invalid (e.g., a checksum does not match), the tracks imported from it are deleted.
+ */
+public class NativeTrackImporter implements TrackImporter {
+
+    private static final String TAG = NativeTrackImporter.class.getSimpleName();
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // The waypoint columns with track point indexes (imported as track point ids)
+    private static final String[] WAYPOINT_TRACK_POINT_COLUMNS = {WaypointsColumns.STARTID, WaypointsColumns.STOPID};
+
+    private final Context context;
+    private final ContentResolver contentResolver;
+    private final ImportWriter importWriter;
+
+    // The column names of the tables; read once
+    private List<String> trackColumns;
+    private List<String> trackPointColumns;
+    private List<String> waypointColumns;
+    private List<String> splitColumns;
+
+    /**
+     * Constructor.
+     *
+     * @param context      the context
+     * @param importWriter the writer of the database writes
+     */
+    NativeTrackImporter(Context context, ImportWriter importWriter) {
+        this.context = context;
+        this.contentResolver = context.getContentResolver();
+        this.importWriter = importWriter;
+    }
+
+    @Override
+    public long importFile(InputStream inputStream) {
+        List<Long> trackIds = new ArrayList<>();
+        try {
+            NativeFormat.Input input = new NativeFormat.Input(new BufferedInputStream(inputStream, BUFFER_SIZE));
+            input.readHeader();
+
+            TrackData trackData = null;
+            while (true) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedIOException("Import cancelled");
+                }
+                int type = input.nextBlock();
+                switch (type) {
+                    case NativeFormat.BLOCK_TRACK:
+                        finishTrack(trackData);
+                        trackData = new TrackData(insertTrack(input));
+                        trackIds.add(trackData.trackId);
+                        break;
+                    case NativeFormat.BLOCK_TRACK_POINTS:
+                        checkTrack(trackData);
+                        insertTrackPoints(input, trackData);
+                        break;
+                    case NativeFormat.BLOCK_WAYPOINTS:
+                        checkTrack(trackData);
+                        insertWaypoints(input, trackData);
+                        break;
+                    case NativeFormat.BLOCK_SPLITS:
+                        checkTrack(trackData);
+                        insertSplits(input, trackData.trackId);
+                        break;
+                    case NativeFormat.BLOCK_END:
+                        finishTrack(trackData);
+                        importWriter.flush();
+                        return trackIds.isEmpty() ? -1L : trackIds.get(0);
+                    default:
+                        Log.d(TAG, "Skipping unknown block " + type);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Unable to import file", e);
+            cleanImport(trackIds);
+            return -1L;
+        }
+    }
+
+    private long insertTrack(NativeFormat.Input input) throws IOException {
+        if (trackColumns == null) {
+            trackColumns = getColumnNames(TracksColumns.CONTENT_URI);
+        }
+        List<ContentValues> rows = readTable(input, trackColumns);
+        if (rows.size() != 1) {
+            throw new IOException("Invalid track block");
+        }
+        final ContentValues values = rows.get(0);
+        // Set with the track points
+        values.put(TracksColumns.STARTID, -1L);
+        values.put(TracksColumns.STOPID, -1L);
+
+        return importWriter.call(new Callable<Long>() {
+            @Override
+            public Long call() {
+                Uri uri = contentResolver.insert(TracksColumns.CONTENT_URI, values);
+                return Long.parseLong(uri.getLastPathSegment());
+            }
+        });
+    }
+
+    private void insertTrackPoints(NativeFormat.Input input, final TrackData trackData) throws IOException {
+        if (trackPointColumns == null) {
+            trackPointColumns = getColumnNames(TrackPointsColumns.CONTENT_URI);
+        }
+        final ContentValues[] values = readColumns(input, trackPointColumns);
+        for (ContentValues value : values) {
+            value.put(TrackPointsColumns.TRACKID, trackData.trackId);
+        }
+        trackData.numberOfTrackPoints += values.length;
+
+        importWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                contentResolver.bulkInsert(TrackPointsColumns.CONTENT_URI, values);
+                TrackPointCache.getInstance().notifyTrackPointsInserted(trackData.trackId);
+            }
+        });
+    }
+
+    private void insertWaypoints(NativeFormat.Input input, TrackData trackData) throws IOException {
+        if (waypointColumns == null) {
+            waypointColumns = getColumnNames(WaypointsColumns.CONTENT_URI);
+        }
+        // Inserted by finishTrack() (i.e., after the track points are inserted)
+        trackData.waypoints.addAll(readTable(input, waypointColumns));
+    }
+
+    private void insertSplits(NativeFormat.Input input, final long trackId) throws IOException {
+        if (splitColumns == null) {
+            splitColumns = getColumnNames(SplitsColumns.CONTENT_URI);
+        }
+        List<ContentValues> rows = readTable(input, splitColumns);
+        if (rows.isEmpty()) {
+            return;
+        }
+        final ContentValues[] values = rows.toArray(new ContentValues[0]);
+        for (ContentValues row : values) {
+            row.put(SplitsColumns.TRACKID, trackId);
+        }
+
+        importWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                contentResolver.bulkInsert(SplitsColumns.CONTENT_URI, values);
+            }
+        });
+    }
+
+    /**
+     * Sets the start and stop id of a track and inserts its waypoints after its track points are inserted.
+     * The track point indexes are resolved with one scan of the track point ids.
+     *
+     * @param trackData the track data (can be null)
+     */
+    private void finishTrack(final TrackData trackData) {
+        if (trackData == null || (trackData.numberOfTrackPoints == 0 && trackData.waypoints.isEmpty())) {
+            return;
+        }
+        importWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                long[] trackPointIds = getTrackPointIds(trackData.trackId, trackData.numberOfTrackPoints);
+                if (trackPointIds.length > 0) {
+                    ContentValues values = new ContentValues();
+                    values.put(TracksColumns.STARTID, getTrackPointId(trackPointIds, 0));
+                    values.put(TracksColumns.STOPID, getTrackPointId(trackPointIds, trackPointIds.length - 1));
+                    contentResolver.update(TracksColumns.CONTENT_URI, values, TracksColumns._ID + "=?", new String[]{Long.toString(trackData.trackId)});
+                }
+
+                for (ContentValues values : trackData.waypoints) {
+                    values.put(WaypointsColumns.TRACKID, trackData.trackId);
+                    for (String column : WAYPOINT_TRACK_POINT_COLUMNS) {
+                        Long index = values.getAsLong(column);
+                        if (index != null) {
+                            values.put(column, getTrackPointId(trackPointIds, index));
+                        }
+                    }
+                    contentResolver.insert(WaypointsColumns.CONTENT_URI, values);
+                }
+            }
+        });
+    }
+
+    private void checkTrack(TrackData trackData) throws IOException {
+        if (trackData == null) {
+            throw new IOException("Block without track");
+        }
+    }
+
+    /**
+     * Gets the ids of the track points of a track (ordered like the track points).
+     *
+     * @param count the number of track points
+     */
+    private long[] getTrackPointIds(long trackId, int count) {
+        long[] trackPointIds = new long[count];
+        int size = 0;
+        String[] projection = new String[]{TrackPointsColumns._ID};
+        String selection = TrackPointsColumns.TRACKID + "=?";
+        try (Cursor cursor = contentResolver.query(TrackPointsColumns.CONTENT_URI, projection, selection, new String[]{Long.toString(trackId)}, TrackPointsColumns._ID)) {
+            if (cursor != null) {
+                while (size < count && cursor.moveToNext()) {
+                    trackPointIds[size++] = cursor.getLong(0);
+                }
+            }
+        }
+        return size == count ? trackPointIds : Arrays.copyOf(trackPointIds, size);
+    }
+
+    /**
+     * Gets the id of a track point from its index in the track.
+     *
+     * @param trackPointIds the ids of the track points
+     * @return the id or -1L
+     */
+    private static long getTrackPointId(long[] trackPointIds, long index) {
+        return index >= 0 && index < trackPointIds.length ? trackPointIds[(int) index] : -1L;
+    }
+
+    /**
+     * Reads a table; the columns unknown to the database are skipped.
+     *
+     * @param columnNames the column names of the database table
+     */
+    private static List<ContentValues> readTable(NativeFormat.Input input, List<String> columnNames) throws IOException {
+        String[] names = readColumnNames(input, columnNames);
+        int count = input.readCount();
+        List<ContentValues> rows = new ArrayList<>(count);
+        for (int row = 0; row < count; row++) {
+            ContentValues values = new ContentValues();
+            for (String name : names) {
+                int type = input.readByte();
+                switch (type) {
+                    case NativeFormat.TYPE_NULL:
+                        if (name != null) {
+                            values.putNull(name);
+                        }
+                        break;
+                    case NativeFormat.TYPE_LONG:
+                        long longValue = input.readZigZag();
+                        if (name != null) {
+                            values.put(name, longValue);
+                        }
+                        break;
+                    case NativeFormat.TYPE_DOUBLE:
+                        double doubleValue = input.readDouble();
+                        if (name != null) {
+                            values.put(name, doubleValue);
+                        }
+                        break;
+                    case NativeFormat.TYPE_STRING:
+                        String stringValue = input.readString();
+                        if (name != null) {
+                            values.put(name, stringValue);
+                        }
+                        break;
+                    case NativeFormat.TYPE_BLOB:
+                        byte[] blobValue = input.readBytes();
+                        if (name != null) {
+                            values.put(name, blobValue);
+                        }
+                        break;
+                    default:
+                        throw new IOException("Unknown type " + type);
+                }
+            }
+            rows.add(values);
+        }
+        return rows;
+    }
+
+    /**
+     * Reads track point columns; the columns unknown to the database are skipped.
+     *
+     * @param columnNames the column names of the database table
+     */
+    private static ContentValues[] readColumns(NativeFormat.Input input, List<String> columnNames) throws IOException {
+        int count = input.readCount();
+        String[] names = readColumnNames(input, columnNames);
+
+        ContentValues[] rows = new ContentValues[count];
+        for (int row = 0; row < count; row++) {
+            rows[row] = new ContentValues();
+        }
+
+        int[] types = new int[count];
+        for (String name : names) {
+            for (int row = 0; row < count; row += 4) {
+                int packedTypes = input.readByte();
+                for (int i = row; i < row + 4 && i < count; i++) {
+                    types[i] = packedTypes & 0x3;
+                    packedTypes >>>= 2;
+                }
+            }
+
+            long lastLong = 0;
+            int lastFloatBits = 0;
+            for (int row = 0; row < count; row++) {
+                switch (types[row]) {
+                    case NativeFormat.COLUMN_TYPE_NULL:
+                        if (name != null) {
+                            rows[row].putNull(name);
+                        }
+                        break;
+                    case NativeFormat.COLUMN_TYPE_LONG:
+                        lastLong += input.readZigZag();
+                        if (name != null) {
+                            rows[row].put(name, lastLong);
+                        }
+                        break;
+                    case NativeFormat.COLUMN_TYPE_FLOAT:
+                        lastFloatBits ^= (int) input.readVarLong();
+                        if (name != null) {
+                            rows[row].put(name, Float.intBitsToFloat(lastFloatBits));
+                        }
+                        break;
+                    default:
+                        double doubleValue = input.readDouble();
+                        if (name != null) {
+                            rows[row].put(name, doubleValue);
+                        }
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Reads the column names; null for the columns unknown to the database.
+     */
+    private static String[] readColumnNames(NativeFormat.Input input, List<String> columnNames) throws IOException {
+        String[] names = new String[input.readCount()];
+        for (int i = 0; i < names.length; i++) {
+            String name = input.readString();
+            names[i] = columnNames.contains(name) ? name : null;
+        }
+        return names;
+    }
+
+    private List<String> getColumnNames(Uri uri) throws IOException {
+        try (Cursor cursor = contentResolver.query(uri, null, "0", null, null)) {
+            if (cursor == null) {
+                throw new IOException("Unable to query " + uri);
+            }
+            return Arrays.asList(cursor.getColumnNames());
+        }
+    }
+
+    /**
+     * Deletes the imported tracks.
+     *
+     * @param trackIds the track ids
+     */
+    private void cleanImport(List<Long> trackIds) {
+        // Drops the failure of a pending write; the tracks are deleted anyway.
+        importWriter.flushQuietly();
+        for (final long trackId : trackIds) {
+            importWriter.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ContentProviderUtils contentProviderUtils = ContentProviderUtils.Factory.get(context);
+                    contentProviderUtils.deleteTrack(context, trackId);
+                }
+            });
+        }
+        importWriter.flushQuietly();
+    }
+
+    /**
+     * The data of the track being imported.
+     */
+    private static class TrackData {
+
+        final long trackId;
+        int numberOfTrackPoints = 0;
+
+        // Inserted after the track points
+        final List<ContentValues> waypoints = new ArrayList<>();
+
+        TrackData(long trackId) {
+            this.trackId = trackId;
+        }
+    }
+}
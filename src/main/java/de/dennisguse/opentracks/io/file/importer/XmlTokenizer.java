@@ -0,0 +1,711 @@
+package de.dennisguse.opentracks.io.file.importer;
+
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A non-validating XML pull parser for importing large files.
+ * <p>
+ * Element names, attributes, and text are kept in reused char buffers; so, parsing does not create objects once the buffers have grown (unlike SAX creating Strings per element, attribute, and text).
+ * Element names are returned as cached Strings (see {@link #getName()}); values are to be parsed from the char buffers (e.g., {@link de.dennisguse.opentracks.util.StringUtils#parseDouble(char[], int, int)}).
+ * <p>
+ * The XML declaration, processing instructions, comments, and the DOCTYPE are skipped.
+ * CDATA sections and character references are resolved; only the predefined entities are supported.
+ * Text is reported as a whole (even if interrupted by comments or CDATA sections).
+ * Not thread-safe.
+ */
+class XmlTokenizer implements Locator {
+
+    static final int START_TAG = 1;
+    static final int END_TAG = 2;
+    static final int TEXT = 3;
+    static final int END_DOCUMENT = 4;
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    // Needs to be a power of two
+    private static final int NAME_CACHE_SIZE = 256;
+    private static final int XML_DECLARATION_MAX_LENGTH = 256;
+    private static final int ENTITY_MAX_LENGTH = 10;
+
+    private static final Pattern ENCODING = Pattern.compile("encoding\\s*=\\s*[\"']([A-Za-z0-9._:-]+)[\"']");
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+    private int lineNumber = 1;
+    private int columnNumber = 1;
+
+    private int eventType = 0;
+
+    // The name of the current start or end tag
+    private char[] name = new char[64];
+    private int nameLength = 0;
+    private String cachedName;
+    private final String[] nameCache = new String[NAME_CACHE_SIZE];
+    // True if the current start tag is an empty element tag; the end tag is reported next.
+    private boolean emptyElement = false;
+
+    // The attributes of the current start tag: names and values in attributeChars
+    private char[] attributeChars = new char[256];
+    private int attributeCharsLength = 0;
+    private int[] attributeNameStarts = new int[8];
+    private int[] attributeValueStarts = new int[8];
+    private int[] attributeValueEnds = new int[8];
+    private int attributeCount = 0;
+
+    // The current text
+    private char[] text = new char[256];
+    private int textLength = 0;
+
+    // The names of the open elements
+    private char[] openElementChars = new char[256];
+    private int[] openElementStarts = new int[16];
+    private int depth = 0;
+
+    /**
+     * Constructor.
+     * The encoding is taken from the byte order mark or the XML declaration (UTF-8 by default).
+     *
+     * @param inputStream the input stream
+     */
+    XmlTokenizer(InputStream inputStream) throws IOException {
+        this(createReader(inputStream));
+    }
+
+    XmlTokenizer(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads the next event: {@link #START_TAG}, {@link #END_TAG}, {@link #TEXT}, or {@link #END_DOCUMENT}.
+     * The text of an element is still available when its end tag is reported (see {@link #getTextLength()}).
+     */
+    int next() throws IOException, SAXException {
+        cachedName = null;
+        if (emptyElement) {
+            emptyElement = false;
+            textLength = 0;
+            depth--;
+            return eventType = END_TAG;
+        }
+        if (eventType != TEXT) {
+            textLength = 0;
+            if (readText()) {
+                return eventType = TEXT;
+            }
+        }
+
+        // A tag or the end
+        if (peek() == -1) {
+            if (depth > 0) {
+                throw createException("Unexpected end of document");
+            }
+            return eventType = END_DOCUMENT;
+        }
+        read();
+        if (peek() == '/') {
+            read();
+            readEndTag();
+            return eventType = END_TAG;
+        }
+        readStartTag();
+        return eventType = START_TAG;
+    }
+
+    int getEventType() {
+        return eventType;
+    }
+
+    /**
+     * Gets the name of the current start or end tag (including the prefix, if any).
+     * The Strings are cached; so, no object is created for known names.
+     */
+    String getName() {
+        if (cachedName != null) {
+            return cachedName;
+        }
+        int hash = 0;
+        for (int i = 0; i < nameLength; i++) {
+            hash = 31 * hash + name[i];
+        }
+        int index = (hash ^ (hash >>> 16)) & (NAME_CACHE_SIZE - 1);
+        String cached = nameCache[index];
+        if (cached == null || !equals(cached, name, 0, nameLength)) {
+            cached = new String(name, 0, nameLength);
+            nameCache[index] = cached;
+        }
+        cachedName = cached;
+        return cached;
+    }
+
+    /**
+     * Gets the index of an attribute of the current start tag.
+     *
+     * @param attributeName the attribute name
+     * @return the index or -1 if not present
+     */
+    int getAttributeIndex(String attributeName) {
+        for (int i = 0; i < attributeCount; i++) {
+            if (equals(attributeName, attributeChars, attributeNameStarts[i], attributeValueStarts[i] - attributeNameStarts[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the value of an attribute of the current start tag.
+     *
+     * @param attributeName the attribute name
+     * @return the value or null if not present
+     */
+    String getAttributeValue(String attributeName) {
+        int index = getAttributeIndex(attributeName);
+        return index == -1 ? null : new String(attributeChars, getAttributeValueStart(index), getAttributeValueLength(index));
+    }
+
+    /**
+     * Gets the chars of the attributes of the current start tag; see {@link #getAttributeValueStart(int)}.
+     */
+    char[] getAttributeCharacters() {
+        return attributeChars;
+    }
+
+    int getAttributeValueStart(int index) {
+        return attributeValueStarts[index];
+    }
+
+    int getAttributeValueLength(int index) {
+        return attributeValueEnds[index] - attributeValueStarts[index];
+    }
+
+    /**
+     * Gets the chars of the current text (starting at 0); see {@link #getTextLength()}.
+     */
+    char[] getTextCharacters() {
+        return text;
+    }
+
+    /**
+     * Gets the length of the current text.
+     * For an end tag, the length of the text directly before it (0 if none).
+     */
+    int getTextLength() {
+        return textLength;
+    }
+
+    String getText() {
+        return new String(text, 0, textLength);
+    }
+
+    @Override
+    public String getPublicId() {
+        return null;
+    }
+
+    @Override
+    public String getSystemId() {
+        return null;
+    }
+
+    @Override
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public int getColumnNumber() {
+        return columnNumber;
+    }
+
+    /**
+     * Reads text until a start tag, an end tag, or the end.
+     * Comments, processing instructions, and the DOCTYPE are skipped.
+     *
+     * @return true if there is text
+     */
+    private boolean readText() throws IOException, SAXException {
+        while (true) {
+            int c = peek();
+            if (c == -1) {
+                break;
+            }
+            if (c == '<') {
+                if (!fill(2)) {
+                    throw createException("Unexpected end of document");
+                }
+                char next = buffer[position + 1];
+                if (next != '!' && next != '?') {
+                    break;
+                }
+                read();
+                read();
+                if (next == '?') {
+                    skipUntil('?', '>');
+                } else {
+                    readMarkupDeclaration();
+                }
+            } else if (c == '&') {
+                read();
+                appendText(readReference());
+            } else if (c == '\r') {
+                // Line ends are normalized to \n.
+                read();
+                if (peek() != '\n') {
+                    appendText('\n');
+                }
+            } else {
+                read();
+                appendText((char) c);
+            }
+        }
+        return textLength > 0;
+    }
+
+    /**
+     * Reads a comment, a CDATA section (into the text), or a DOCTYPE; after "&lt;!".
+     */
+    private void readMarkupDeclaration() throws IOException, SAXException {
+        int c = read();
+        if (c == '-') {
+            expect('-');
+            skipUntil('-', '-');
+            expect('>');
+        } else if (c == '[') {
+            expect('C');
+            expect('D');
+            expect('A');
+            expect('T');
+            expect('A');
+            expect('[');
+            // Until "]]>"
+            while (true) {
+                c = read();
+                if (c == -1) {
+                    throw createException("Unexpected end of document");
+                }
+                if (c == ']' && fill(2) && buffer[position] == ']' && buffer[position + 1] == '>') {
+                    read();
+                    read();
+                    return;
+                }
+                appendText((char) c);
+            }
+        } else {
+            // DOCTYPE: until the ">" outside of the internal subset and quotes
+            int bracketDepth = 0;
+            int quote = -1;
+            while (true) {
+                if (c == -1) {
+                    throw createException("Unexpected end of document");
+                }
+                if (quote != -1) {
+                    if (c == quote) {
+                        quote = -1;
+                    }
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '[') {
+                    bracketDepth++;
+                } else if (c == ']') {
+                    bracketDepth--;
+                } else if (c == '>' && bracketDepth <= 0) {
+                    return;
+                }
+                c = read();
+            }
+        }
+    }
+
+    /**
+     * Reads a start tag; after "&lt;".
+     */
+    private void readStartTag() throws IOException, SAXException {
+        nameLength = 0;
+        int c = read();
+        while (isNameChar(c)) {
+            if (nameLength == name.length) {
+                name = Arrays.copyOf(name, 2 * nameLength);
+            }
+            name[nameLength++] = (char) c;
+            c = read();
+        }
+        if (nameLength == 0) {
+            throw createException("Invalid start tag");
+        }
+
+        attributeCount = 0;
+        attributeCharsLength = 0;
+        while (true) {
+            while (isWhitespace(c)) {
+                c = read();
+            }
+            if (c == '>') {
+                break;
+            }
+            if (c == '/') {
+                expect('>');
+                emptyElement = true;
+                break;
+            }
+            if (!isNameChar(c)) {
+                throw createException("Invalid start tag " + getName());
+            }
+            c = readAttribute(c);
+        }
+
+        // Push
+        int start = depth == 0 ? 0 : openElementStarts[depth - 1] + getOpenElementLength(depth - 1);
+        if (depth + 1 == openElementStarts.length) {
+            openElementStarts = Arrays.copyOf(openElementStarts, 2 * openElementStarts.length);
+        }
+        if (start + nameLength > openElementChars.length) {
+            openElementChars = Arrays.copyOf(openElementChars, 2 * (start + nameLength));
+        }
+        System.arraycopy(name, 0, openElementChars, start, nameLength);
+        openElementStarts[depth] = start;
+        openElementStarts[depth + 1] = start + nameLength;
+        depth++;
+    }
+
+    /**
+     * Reads an attribute.
+     *
+     * @param c the first char of the name
+     * @return the char after the value
+     */
+    private int readAttribute(int c) throws IOException, SAXException {
+        if (attributeCount == attributeNameStarts.length) {
+            attributeNameStarts = Arrays.copyOf(attributeNameStarts, 2 * attributeCount);
+            attributeValueStarts = Arrays.copyOf(attributeValueStarts, 2 * attributeCount);
+            attributeValueEnds = Arrays.copyOf(attributeValueEnds, 2 * attributeCount);
+        }
+        attributeNameStarts[attributeCount] = attributeCharsLength;
+        while (isNameChar(c)) {
+            appendAttributeChar((char) c);
+            c = read();
+        }
+        attributeValueStarts[attributeCount] = attributeCharsLength;
+        while (isWhitespace(c)) {
+            c = read();
+        }
+        if (c != '=') {
+            throw createException("Expected = after attribute name in " + getName());
+        }
+        c = read();
+        while (isWhitespace(c)) {
+            c = read();
+        }
+        if (c != '"' && c != '\'') {
+            throw createException("Expected quoted attribute value in " + getName());
+        }
+        int quote = c;
+        while ((c = read()) != quote) {
+            if (c == -1 || c == '<') {
+                throw createException("Invalid attribute value in " + getName());
+            }
+            if (c == '&') {
+                int codePoint = readReference();
+                if (Character.isSupplementaryCodePoint(codePoint)) {
+                    appendAttributeChar(Character.highSurrogate(codePoint));
+                    appendAttributeChar(Character.lowSurrogate(codePoint));
+                } else {
+                    appendAttributeChar((char) codePoint);
+                }
+            } else {
+                // Attribute value normalization
+                appendAttributeChar(isWhitespace(c) ? ' ' : (char) c);
+            }
+        }
+        attributeValueEnds[attributeCount] = attributeCharsLength;
+        attributeCount++;
+        return read();
+    }
+
+    /**
+     * Reads an end tag; after "&lt;/".
+     */
+    private void readEndTag() throws IOException, SAXException {
+        nameLength = 0;
+        int c = read();
+        while (isNameChar(c)) {
+            if (nameLength == name.length) {
+                name = Arrays.copyOf(name, 2 * nameLength);
+            }
+            name[nameLength++] = (char) c;
+            c = read();
+        }
+        while (isWhitespace(c)) {
+            c = read();
+        }
+        if (c != '>') {
+            throw createException("Invalid end tag " + getName());
+        }
+
+        // Pop
+        if (depth == 0 || getOpenElementLength(depth - 1) != nameLength || !regionMatches(openElementChars, openElementStarts[depth - 1], name, nameLength)) {
+            throw createException("Unexpected end tag " + getName());
+        }
+        depth--;
+    }
+
+    /**
+     * Reads a character or entity reference; after "&amp;".
+     *
+     * @return the code point
+     */
+    private int readReference() throws IOException, SAXException {
+        int c = read();
+        if (c == '#') {
+            int radix = 10;
+            c = read();
+            if (c == 'x') {
+                radix = 16;
+                c = read();
+            }
+            int codePoint = 0;
+            int numDigits = 0;
+            while (c != ';') {
+                int digit = c == -1 ? -1 : Character.digit(c, radix);
+                if (digit == -1 || numDigits == ENTITY_MAX_LENGTH) {
+                    throw createException("Invalid character reference");
+                }
+                codePoint = codePoint * radix + digit;
+                numDigits++;
+                c = read();
+            }
+            if (numDigits == 0 || !Character.isValidCodePoint(codePoint)) {
+                throw createException("Invalid character reference");
+            }
+            return codePoint;
+        }
+
+        // Predefined entities: lt, gt, amp, quot, apos
+        int length = 0;
+        char c0 = 0;
+        char c1 = 0;
+        char c2 = 0;
+        char c3 = 0;
+        while (c != ';') {
+            if (c == -1 || length == ENTITY_MAX_LENGTH) {
+                throw createException("Invalid entity reference");
+            }
+            if (length == 0) {
+                c0 = (char) c;
+            } else if (length == 1) {
+                c1 = (char) c;
+            } else if (length == 2) {
+                c2 = (char) c;
+            } else if (length == 3) {
+                c3 = (char) c;
+            }
+            length++;
+            c = read();
+        }
+        if (length == 2 && c0 == 'l' && c1 == 't') {
+            return '<';
+        }
+        if (length == 2 && c0 == 'g' && c1 == 't') {
+            return '>';
+        }
+        if (length == 3 && c0 == 'a' && c1 == 'm' && c2 == 'p') {
+            return '&';
+        }
+        if (length == 4 && c0 == 'q' && c1 == 'u' && c2 == 'o' && c3 == 't') {
+            return '"';
+        }
+        if (length == 4 && c0 == 'a' && c1 == 'p' && c2 == 'o' && c3 == 's') {
+            return '\'';
+        }
+        throw createException("Unsupported entity reference");
+    }
+
+    private void skipUntil(char c0, char c1) throws IOException, SAXException {
+        int previous = -1;
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                throw createException("Unexpected end of document");
+            }
+            if (previous == c0 && c == c1) {
+                return;
+            }
+            previous = c;
+        }
+    }
+
+    private void expect(char expected) throws IOException, SAXException {
+        if (read() != expected) {
+            throw createException("Expected " + expected);
+        }
+    }
+
+    private void appendText(char c) {
+        if (textLength == text.length) {
+            text = Arrays.copyOf(text, 2 * textLength);
+        }
+        text[textLength++] = c;
+    }
+
+    private void appendText(int codePoint) {
+        if (Character.isSupplementaryCodePoint(codePoint)) {
+            appendText(Character.highSurrogate(codePoint));
+            appendText(Character.lowSurrogate(codePoint));
+        } else {
+            appendText((char) codePoint);
+        }
+    }
+
+    private void appendAttributeChar(char c) {
+        if (attributeCharsLength == attributeChars.length) {
+            attributeChars = Arrays.copyOf(attributeChars, 2 * attributeCharsLength);
+        }
+        attributeChars[attributeCharsLength++] = c;
+    }
+
+    private int getOpenElementLength(int index) {
+        return openElementStarts[index + 1] - openElementStarts[index];
+    }
+
+    /**
+     * Peeks the next char.
+     *
+     * @return the char or -1 at the end
+     */
+    private int peek() throws IOException {
+        return position < limit || fill(1) ? buffer[position] : -1;
+    }
+
+    /**
+     * Reads the next char.
+     *
+     * @return the char or -1 at the end
+     */
+    private int read() throws IOException {
+        int c = peek();
+        if (c != -1) {
+            position++;
+            if (c == '\n') {
+                lineNumber++;
+                columnNumber = 1;
+            } else {
+                columnNumber++;
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Fills the buffer to have at least count chars available.
+     *
+     * @return false if the end is reached before
+     */
+    private boolean fill(int count) throws IOException {
+        if (limit - position >= count) {
+            return true;
+        }
+        System.arraycopy(buffer, position, buffer, 0, limit - position);
+        limit -= position;
+        position = 0;
+        while (limit < count) {
+            int read = reader.read(buffer, limit, buffer.length - limit);
+            if (read == -1) {
+                return false;
+            }
+            limit += read;
+        }
+        return true;
+    }
+
+    private SAXException createException(String message) {
+        return new SAXParseException(message, this);
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\t' || c == '\r';
+    }
+
+    private static boolean isNameChar(int c) {
+        return c > ' ' && c != '/' && c != '>' && c != '<' && c != '=' && c != '"' && c != '\'' && c != '&';
+    }
+
+    private static boolean equals(String string, char[] chars, int start, int length) {
+        if (string.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (string.charAt(i) != chars[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean regionMatches(char[] chars, int start, char[] other, int length) {
+        for (int i = 0; i < length; i++) {
+            if (chars[start + i] != other[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates a reader for the encoding of the byte order mark or the XML declaration (UTF-8 by default).
+     */
+    private static Reader createReader(InputStream inputStream) throws IOException {
+        BufferedInputStream bufferedInputStream = new BufferedInputStream(inputStream);
+        bufferedInputStream.mark(XML_DECLARATION_MAX_LENGTH);
+        byte[] head = new byte[XML_DECLARATION_MAX_LENGTH];
+        int length = 0;
+        int read;
+        while (length < head.length && (read = bufferedInputStream.read(head, length, head.length - length)) != -1) {
+            length += read;
+        }
+        bufferedInputStream.reset();
+
+        String charsetName = "UTF-8";
+        int byteOrderMarkLength = 0;
+        if (length >= 3 && (head[0] & 0xFF) == 0xEF && (head[1] & 0xFF) == 0xBB && (head[2] & 0xFF) == 0xBF) {
+            byteOrderMarkLength = 3;
+        } else if (length >= 2 && (head[0] & 0xFF) == 0xFE && (head[1] & 0xFF) == 0xFF) {
+            charsetName = "UTF-16BE";
+            byteOrderMarkLength = 2;
+        } else if (length >= 2 && (head[0] & 0xFF) == 0xFF && (head[1] & 0xFF) == 0xFE) {
+            charsetName = "UTF-16LE";
+            byteOrderMarkLength = 2;
+        } else {
+            String declaration = new String(head, 0, length, "ISO-8859-1");
+            int end = declaration.indexOf("?>");
+            if (declaration.startsWith("<?xml") && end != -1) {
+                Matcher matcher = ENCODING.matcher(declaration.substring(0, end));
+                if (matcher.find()) {
+                    charsetName = matcher.group(1);
+                }
+            }
+        }
+        for (int i = 0; i < byteOrderMarkLength; i++) {
+            bufferedInputStream.read();
+        }
+
+        Charset charset;
+        try {
+            charset = Charset.forName(charsetName);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unsupported encoding " + charsetName, e);
+        }
+        return new InputStreamReader(bufferedInputStream, charset);
+    }
+}
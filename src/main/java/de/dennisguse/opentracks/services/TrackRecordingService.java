@@ -41,6 +41,8 @@ import androidx.annotation.VisibleForTesting;
 import androidx.core.app.NotificationCompat;
 import androidx.core.app.TaskStackBuilder;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -52,6 +54,7 @@ import de.dennisguse.opentracks.content.ContentProviderUtils.LocationIterator;
 import de.dennisguse.opentracks.content.CustomContentProvider;
 import de.dennisguse.opentracks.content.DescriptionGeneratorImpl;
 import de.dennisguse.opentracks.content.SensorDataSetLocation;
+import de.dennisguse.opentracks.content.Split;
 import de.dennisguse.opentracks.content.Track;
 import de.dennisguse.opentracks.content.Waypoint;
 import de.dennisguse.opentracks.content.Waypoint.WaypointType;
@@ -61,7 +64,12 @@ import de.dennisguse.opentracks.services.sensors.BluetoothRemoteSensorManager;
 import de.dennisguse.opentracks.services.tasks.AnnouncementPeriodicTaskFactory;
 import de.dennisguse.opentracks.services.tasks.PeriodicTaskExecutor;
 import de.dennisguse.opentracks.services.tasks.SplitPeriodicTaskFactory;
+import de.dennisguse.opentracks.stats.ElevationProcessor;
 import de.dennisguse.opentracks.stats.TripStatistics;
+import de.dennisguse.opentracks.stats.SensorStatisticsUpdater;
+import de.dennisguse.opentracks.stats.Interval;
+import de.dennisguse.opentracks.stats.IntervalEngine;
+import de.dennisguse.opentracks.stats.SplitUpdater;
 import de.dennisguse.opentracks.stats.TripStatisticsUpdater;
 import de.dennisguse.opentracks.util.IntentUtils;
 import de.dennisguse.opentracks.util.LocationUtils;
@@ -113,6 +121,12 @@ public class TrackRecordingService extends Service {
 
     // The following variables are set when recording:
     private TripStatisticsUpdater trackTripStatisticsUpdater;
+    private SensorStatisticsUpdater sensorStatisticsUpdater;
+    private SplitUpdater splitUpdater;
+    // null if intervals are not detected (yet); created with the first valid location, see detectIntervals()
+    private IntervalEngine intervalEngine;
+    private boolean shouldDetectIntervals;
+    private volatile ElevationProcessor elevationProcessor;
     // Note that sharedPreferenceChangeListener cannot be an anonymous inner class; anonymous inner class will get garbage collected.
     private final OnSharedPreferenceChangeListener sharedPreferenceChangeListener = new OnSharedPreferenceChangeListener() {
         @Override
@@ -271,6 +285,7 @@ public class TrackRecordingService extends Service {
 
         handler.removeCallbacks(registerLocationRunnable);
         unregisterLocationListener();
+        stopElevationProcessor();
 
         // unregister sharedPreferences before shutting down splitExecutor and voiceExecutor
         sharedPreferences.unregisterOnSharedPreferenceChangeListener(sharedPreferenceChangeListener);
@@ -499,6 +514,10 @@ public class TrackRecordingService extends Service {
         long now = System.currentTimeMillis();
         trackTripStatisticsUpdater = new TripStatisticsUpdater(now);
         markerTripStatisticsUpdater = new TripStatisticsUpdater(now);
+        sensorStatisticsUpdater = new SensorStatisticsUpdater(PreferencesUtils.getMaxHeartRate(this));
+        splitUpdater = new SplitUpdater();
+        intervalEngine = null;
+        shouldDetectIntervals = PreferencesUtils.shouldDetectIntervals(this);
 
         // Insert a track
         Track track = new Track();
@@ -543,12 +562,20 @@ public class TrackRecordingService extends Service {
             markerStartTime = tripStatistics.getStartTime();
         }
         markerTripStatisticsUpdater = new TripStatisticsUpdater(markerStartTime);
+        sensorStatisticsUpdater = new SensorStatisticsUpdater(PreferencesUtils.getMaxHeartRate(this));
+        // Completed splits are persisted; continue after them.
+        splitUpdater = new SplitUpdater(contentProviderUtils.getSplits(track.getId(), true), contentProviderUtils.getSplits(track.getId(), false));
+        intervalEngine = null;
+        shouldDetectIntervals = PreferencesUtils.shouldDetectIntervals(this);
 
         try (LocationIterator locationIterator = contentProviderUtils.getTrackPointLocationIterator(track.getId(), -1L, false, ContentProviderUtils.DEFAULT_LOCATION_FACTORY)) {
 
             while (locationIterator.hasNext()) {
                 Location location = locationIterator.next();
                 trackTripStatisticsUpdater.addLocation(location, recordingDistanceInterval);
+                sensorStatisticsUpdater.addLocation(location);
+                // The detected intervals are stored already.
+                detectIntervals(location, locationIterator.getLocationId(), trackTripStatisticsUpdater.getTripStatistics());
                 if (location.getTime() > markerStartTime) {
                     markerTripStatisticsUpdater.addLocation(location, recordingDistanceInterval);
                 }
@@ -559,6 +586,26 @@ public class TrackRecordingService extends Service {
         startRecording(true);
     }
 
+    /**
+     * Adds a location to the {@link IntervalEngine} if intervals should be detected.
+     * The engine is created with the first valid location: the signal is chosen from the sensors connected at that time (see {@link IntervalEngine#getSignal(Location)}).
+     * As restartTrack() replays the stored locations, it chooses the same signal.
+     *
+     * @param location       the location
+     * @param trackPointId   the id of the location's track point
+     * @param tripStatistics the statistics of the track including the location
+     * @return the detected laps and intervals
+     */
+    private List<Interval> detectIntervals(Location location, long trackPointId, TripStatistics tripStatistics) {
+        if (intervalEngine == null) {
+            if (!shouldDetectIntervals || !LocationUtils.isValidLocation(location)) {
+                return Collections.emptyList();
+            }
+            intervalEngine = new IntervalEngine(IntervalEngine.getSignal(location));
+        }
+        return intervalEngine.addLocation(location, trackPointId, tripStatistics);
+    }
+
     /**
      * Resumes current track.
      */
@@ -611,10 +658,27 @@ public class TrackRecordingService extends Service {
      */
     private void startGps() {
         wakeLock = SystemUtils.acquireWakeLock(this, wakeLock);
+        startElevationProcessor();
         registerLocationListener();
         showNotification(true);
     }
 
+    /**
+     * Starts the {@link ElevationProcessor} chosen in the preferences.
+     */
+    private void startElevationProcessor() {
+        stopElevationProcessor();
+        elevationProcessor = ElevationProcessor.Factory.get(this);
+        elevationProcessor.start();
+    }
+
+    private void stopElevationProcessor() {
+        if (elevationProcessor != null) {
+            elevationProcessor.stop();
+            elevationProcessor = null;
+        }
+    }
+
     /**
      * Ends the current track.
      */
@@ -647,7 +711,13 @@ public class TrackRecordingService extends Service {
                 track.setName(trackName);
                 contentProviderUtils.updateTrack(track);
             }
+
+            if (intervalEngine != null) {
+                insertIntervals(track.getId(), intervalEngine.finish());
+            }
         }
+        intervalEngine = null;
+        shouldDetectIntervals = false;
         endRecording(true, trackId);
     }
 
@@ -707,6 +777,7 @@ public class TrackRecordingService extends Service {
      */
     private void stopGps(boolean stop) {
         unregisterLocationListener();
+        stopElevationProcessor();
         showNotification(false);
         releaseWakeLock();
         if (stop) {
@@ -789,6 +860,13 @@ public class TrackRecordingService extends Service {
                 location = new SensorDataSetLocation(location, sensorDataSet);
             }
 
+            // Replace the GPS altitude with the processed elevation (e.g., barometer)
+            ElevationProcessor currentElevationProcessor = elevationProcessor;
+            double elevation = currentElevationProcessor != null ? currentElevationProcessor.getElevation(location) : Double.NaN;
+            if (!Double.isNaN(elevation)) {
+                location.setAltitude(elevation);
+            }
+
             // Always insert the first segment location
             if (!currentSegmentHasLocation) {
                 insertLocation(track, location, null);
@@ -867,7 +945,13 @@ public class TrackRecordingService extends Service {
             long trackPointId = Long.parseLong(uri.getLastPathSegment());
             trackTripStatisticsUpdater.addLocation(location, recordingDistanceInterval);
             markerTripStatisticsUpdater.addLocation(location, recordingDistanceInterval);
+            sensorStatisticsUpdater.addLocation(location);
             updateRecordingTrack(track, trackPointId, LocationUtils.isValidLocation(location));
+            for (Split split : splitUpdater.addLocation(location, track.getTripStatistics())) {
+                split.setTrackId(track.getId());
+                contentProviderUtils.insertSplit(split);
+            }
+            insertIntervals(track.getId(), detectIntervals(location, trackPointId, track.getTripStatistics()));
         } catch (SQLiteException e) {
             /*
              * Insert failed, most likely because of SqlLite error code 5 (SQLite_BUSY).
@@ -879,6 +963,18 @@ public class TrackRecordingService extends Service {
         splitExecutor.update();
     }
 
+    /**
+     * Inserts the markers of detected intervals.
+     *
+     * @param trackId   the track id
+     * @param intervals the intervals
+     */
+    private void insertIntervals(long trackId, List<Interval> intervals) {
+        for (Interval interval : intervals) {
+            contentProviderUtils.insertWaypoint(IntervalEngine.createWaypoint(this, trackId, interval));
+        }
+    }
+
     /**
      * Updates the recording track time as well as the startId and the stopId.
      * Increase the number of points if it is a new and valid track point.
@@ -900,6 +996,7 @@ public class TrackRecordingService extends Service {
 
         trackTripStatisticsUpdater.updateTime(System.currentTimeMillis());
         track.setTripStatistics(trackTripStatisticsUpdater.getTripStatistics());
+        track.setSensorStatistics(sensorStatisticsUpdater.getSensorStatistics());
         contentProviderUtils.updateTrack(track);
     }
 
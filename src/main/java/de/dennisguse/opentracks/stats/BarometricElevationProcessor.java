@@ -0,0 +1,118 @@
+package de.dennisguse.opentracks.stats;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.location.Location;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.concurrent.TimeUnit;
+
+import de.dennisguse.opentracks.util.LocationUtils;
+
+/**
+ * Computes the elevation from the barometer.
+ * The barometer is precise for elevation changes, but its absolute value depends on the weather.
+ * Therefore, it is calibrated with the GPS altitude: the offset between both is averaged over all locations, so the GPS noise cancels out.
+ */
+public class BarometricElevationProcessor implements ElevationProcessor, SensorEventListener {
+
+    /**
+     * Pressure readings older than this (ns) are not used.
+     * Compared on the elapsed realtime clock of both, the sensor events and the locations: the GPS time of a location may differ from the system time.
+     */
+    @VisibleForTesting
+    static final long MAX_PRESSURE_AGE_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    /**
+     * Weight of a new pressure reading for the low-pass filter.
+     */
+    private static final float PRESSURE_SMOOTHING = 0.1f;
+
+    /**
+     * Minimal weight of a new GPS altitude for the offset; allows to follow weather changes.
+     */
+    private static final double MIN_OFFSET_WEIGHT = 0.01;
+
+    private final SensorManager sensorManager;
+
+    private float pressure = Float.NaN;
+    private long pressureElapsedRealtimeNanos = -1L;
+
+    // Offset between GPS altitude and barometric altitude (m)
+    private double offset = Double.NaN;
+    private int offsetSamples = 0;
+
+    /**
+     * @param sensorManager the sensor manager; can be null if pressure readings are added via {@link #addPressure(float, long)}
+     */
+    public BarometricElevationProcessor(SensorManager sensorManager) {
+        this.sensorManager = sensorManager;
+    }
+
+    @Override
+    public void start() {
+        if (sensorManager == null) {
+            return;
+        }
+        Sensor sensor = sensorManager.getDefaultSensor(Sensor.TYPE_PRESSURE);
+        if (sensor != null) {
+            sensorManager.registerListener(this, sensor, SensorManager.SENSOR_DELAY_NORMAL);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (sensorManager != null) {
+            sensorManager.unregisterListener(this);
+        }
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        // The timestamp of sensor events is elapsed realtime.
+        addPressure(event.values[0], event.timestamp);
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+        // We don't care.
+    }
+
+    /**
+     * Adds a pressure reading.
+     *
+     * @param pressure             the pressure (hPa)
+     * @param elapsedRealtimeNanos the elapsed realtime of the reading (ns)
+     */
+    @VisibleForTesting
+    synchronized void addPressure(float pressure, long elapsedRealtimeNanos) {
+        if (Float.isNaN(this.pressure) || elapsedRealtimeNanos - pressureElapsedRealtimeNanos > MAX_PRESSURE_AGE_NANOS) {
+            this.pressure = pressure;
+        } else {
+            this.pressure += PRESSURE_SMOOTHING * (pressure - this.pressure);
+        }
+        pressureElapsedRealtimeNanos = elapsedRealtimeNanos;
+    }
+
+    @Override
+    public synchronized double getElevation(Location location) {
+        if (!LocationUtils.isValidLocation(location) || Float.isNaN(pressure) || Math.abs(location.getElapsedRealtimeNanos() - pressureElapsedRealtimeNanos) > MAX_PRESSURE_AGE_NANOS) {
+            return Double.NaN;
+        }
+
+        double barometricElevation = SensorManager.getAltitude(SensorManager.PRESSURE_STANDARD_ATMOSPHERE, pressure);
+        if (location.hasAltitude()) {
+            double difference = location.getAltitude() - barometricElevation;
+            offsetSamples++;
+            if (Double.isNaN(offset)) {
+                offset = difference;
+            } else {
+                offset += Math.max(1.0 / offsetSamples, MIN_OFFSET_WEIGHT) * (difference - offset);
+            }
+        }
+        return Double.isNaN(offset) ? Double.NaN : barometricElevation + offset;
+    }
+}
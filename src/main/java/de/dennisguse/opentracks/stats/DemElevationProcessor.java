@@ -0,0 +1,81 @@
+package de.dennisguse.opentracks.stats;
+
+import android.location.Location;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import de.dennisguse.opentracks.util.LocationUtils;
+
+/**
+ * Takes the elevation from a digital elevation model (SRTM/HGT tiles) instead of the GPS altitude.
+ * Locations outside of the available tiles keep their GPS altitude.
+ * <p>
+ * Once started (i.e., while recording), tiles are mapped in a background thread: the locations of a tile that is not mapped yet keep their GPS altitude.
+ * The neighboring tile is mapped ahead when approaching the edge of a tile.
+ * Otherwise (e.g., re-processing a stored track), tiles are mapped when needed.
+ */
+public class DemElevationProcessor implements ElevationProcessor {
+
+    // Distance to the edge of a tile (degree; about 1 km) to map the neighboring tile
+    private static final double PRELOAD_DISTANCE = 0.01;
+
+    private final HgtTileCache tileCache;
+
+    private volatile ExecutorService tileLoader;
+
+    public DemElevationProcessor(HgtTileCache tileCache) {
+        this.tileCache = tileCache;
+    }
+
+    @Override
+    public void start() {
+        tileLoader = Executors.newSingleThreadExecutor();
+    }
+
+    @Override
+    public void stop() {
+        // Keep the executor: afterwards, tiles are neither mapped in the background nor blocking.
+        ExecutorService currentTileLoader = tileLoader;
+        if (currentTileLoader != null) {
+            currentTileLoader.shutdownNow();
+        }
+        tileCache.clear();
+    }
+
+    @Override
+    public double getElevation(Location location) {
+        if (!LocationUtils.isValidLocation(location)) {
+            return Double.NaN;
+        }
+        double latitude = location.getLatitude();
+        double longitude = location.getLongitude();
+
+        ExecutorService currentTileLoader = tileLoader;
+        if (currentTileLoader == null) {
+            return tileCache.getElevation(latitude, longitude);
+        }
+        preloadNeighbors(latitude, longitude, currentTileLoader);
+        return tileCache.getElevation(latitude, longitude, currentTileLoader);
+    }
+
+    private void preloadNeighbors(double latitude, double longitude, ExecutorService executor) {
+        double latitudeFraction = latitude - Math.floor(latitude);
+        double longitudeFraction = longitude - Math.floor(longitude);
+        double neighborLatitude = latitudeFraction < PRELOAD_DISTANCE ? latitude - 1.0 : latitudeFraction > 1.0 - PRELOAD_DISTANCE ? latitude + 1.0 : latitude;
+        double neighborLongitude = longitudeFraction < PRELOAD_DISTANCE ? longitude - 1.0 : longitudeFraction > 1.0 - PRELOAD_DISTANCE ? longitude + 1.0 : longitude;
+        if (neighborLatitude != latitude) {
+            tileCache.preload(neighborLatitude, longitude, executor);
+        }
+        if (neighborLongitude != longitude) {
+            tileCache.preload(latitude, neighborLongitude, executor);
+        }
+        if (neighborLatitude != latitude && neighborLongitude != longitude) {
+            tileCache.preload(neighborLatitude, neighborLongitude, executor);
+        }
+    }
+
+    public HgtTileCache getTileCache() {
+        return tileCache;
+    }
+}
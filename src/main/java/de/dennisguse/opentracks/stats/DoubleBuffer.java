@@ -49,6 +49,30 @@ public class DoubleBuffer {
         reset();
     }
 
+    /**
+     * Copy constructor.
+     *
+     * @param other the other buffer
+     */
+    DoubleBuffer(DoubleBuffer other) {
+        buffer = new double[other.buffer.length];
+        set(other);
+    }
+
+    /**
+     * Copies another buffer of the same size into this one.
+     *
+     * @param other the other buffer
+     */
+    void set(DoubleBuffer other) {
+        if (other.buffer.length != buffer.length) {
+            throw new IllegalArgumentException("The buffer sizes differ.");
+        }
+        System.arraycopy(other.buffer, 0, buffer, 0, buffer.length);
+        index = other.index;
+        isFull = other.isFull;
+    }
+
     /**
      * Resets the buffer.
      */
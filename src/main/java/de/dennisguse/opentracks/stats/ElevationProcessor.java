@@ -0,0 +1,85 @@
+package de.dennisguse.opentracks.stats;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorManager;
+import android.location.Location;
+import android.util.Log;
+
+import de.dennisguse.opentracks.R;
+import de.dennisguse.opentracks.util.FileUtils;
+import de.dennisguse.opentracks.util.PreferencesUtils;
+
+/**
+ * Processes the elevation of locations before they are stored and used for the {@link TripStatistics} (e.g., elevation gain).
+ * The GPS altitude is noisy; implementations replace it by a more accurate source.
+ */
+public interface ElevationProcessor {
+
+    /**
+     * Keeps the GPS altitude.
+     */
+    ElevationProcessor GPS = new ElevationProcessor() {
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public double getElevation(Location location) {
+            return Double.NaN;
+        }
+    };
+
+    /**
+     * Starts processing (e.g., registers sensors).
+     */
+    void start();
+
+    /**
+     * Stops processing and releases resources.
+     */
+    void stop();
+
+    /**
+     * Gets the elevation of a location.
+     * NOTE: Some of the locations represent pause/resume separator.
+     *
+     * @param location the location
+     * @return the elevation (m) or NaN if not available; then the altitude of the location should be kept.
+     */
+    double getElevation(Location location);
+
+    /**
+     * A factory which creates the {@link ElevationProcessor} chosen in the preferences.
+     */
+    class Factory {
+
+        private static final String TAG = Factory.class.getSimpleName();
+
+        /**
+         * Creates the {@link ElevationProcessor} chosen in the preferences.
+         * Falls back to {@link #GPS} if the device has no barometer.
+         *
+         * @param context the context
+         */
+        public static ElevationProcessor get(Context context) {
+            String elevationSource = PreferencesUtils.getElevationSource(context);
+            if (context.getString(R.string.elevation_source_barometer).equals(elevationSource)) {
+                SensorManager sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+                if (sensorManager != null && sensorManager.getDefaultSensor(Sensor.TYPE_PRESSURE) != null) {
+                    return new BarometricElevationProcessor(sensorManager);
+                }
+                Log.w(TAG, "No barometer available; using GPS altitude.");
+                return GPS;
+            }
+            if (context.getString(R.string.elevation_source_dem).equals(elevationSource)) {
+                return new DemElevationProcessor(new HgtTileCache(FileUtils.getDemDir(), HgtTileCache.DEFAULT_MAX_TILES));
+            }
+            return GPS;
+        }
+    }
+}
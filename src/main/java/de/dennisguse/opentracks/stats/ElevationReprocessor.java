@@ -0,0 +1,92 @@
+package de.dennisguse.opentracks.stats;
+
+import android.location.Location;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.dennisguse.opentracks.content.ContentProviderUtils;
+import de.dennisguse.opentracks.content.ContentProviderUtils.LocationIterator;
+import de.dennisguse.opentracks.content.Split;
+import de.dennisguse.opentracks.content.Track;
+import de.dennisguse.opentracks.util.LocationUtils;
+
+/**
+ * Re-processes the elevation of a stored track with an {@link ElevationProcessor} (e.g., {@link DemElevationProcessor}).
+ * Updates the altitude of the track points in one transaction and recomputes the elevation values of the track's {@link TripStatistics} and its splits in the same pass.
+ */
+public class ElevationReprocessor {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private ElevationReprocessor() {
+    }
+
+    /**
+     * Re-processes the elevation of a track.
+     * Must not be called for the recording track.
+     *
+     * @param contentProviderUtils      the content provider utils
+     * @param trackId                   the track id
+     * @param elevationProcessor        the elevation processor
+     * @param recordingDistanceInterval the recording distance interval
+     * @return the number of updated track points
+     */
+    public static int reprocess(ContentProviderUtils contentProviderUtils, long trackId, ElevationProcessor elevationProcessor, int recordingDistanceInterval) {
+        Track track = contentProviderUtils.getTrack(trackId);
+        if (track == null) {
+            return 0;
+        }
+
+        TripStatisticsUpdater tripStatisticsUpdater = new TripStatisticsUpdater(track.getTripStatistics().getStartTime());
+        SplitUpdater splitUpdater = new SplitUpdater();
+        List<Split> splits = new ArrayList<>();
+
+        long[] trackPointIds = new long[INITIAL_CAPACITY];
+        double[] altitudes = new double[INITIAL_CAPACITY];
+        int length = 0;
+
+        try (LocationIterator locationIterator = contentProviderUtils.getTrackPointLocationIterator(trackId, -1L, false, ContentProviderUtils.DEFAULT_LOCATION_FACTORY)) {
+            while (locationIterator.hasNext()) {
+                Location location = locationIterator.next();
+                if (LocationUtils.isValidLocation(location)) {
+                    double elevation = elevationProcessor.getElevation(location);
+                    if (!Double.isNaN(elevation)) {
+                        location.setAltitude(elevation);
+                        if (length == trackPointIds.length) {
+                            trackPointIds = Arrays.copyOf(trackPointIds, 2 * length);
+                            altitudes = Arrays.copyOf(altitudes, 2 * length);
+                        }
+                        trackPointIds[length] = locationIterator.getLocationId();
+                        altitudes[length] = elevation;
+                        length++;
+                    }
+                }
+                tripStatisticsUpdater.addLocation(location, recordingDistanceInterval);
+                splits.addAll(splitUpdater.addLocation(location, tripStatisticsUpdater.getTripStatistics()));
+            }
+        }
+        if (length == 0) {
+            return 0;
+        }
+        contentProviderUtils.updateTrackPointAltitudes(trackId, trackPointIds, altitudes, length);
+
+        // Only the elevation dependent values change; keep distance and time as recorded.
+        TripStatistics recomputed = tripStatisticsUpdater.getTripStatistics();
+        TripStatistics tripStatistics = track.getTripStatistics();
+        tripStatistics.setTotalElevationGain(recomputed.getTotalElevationGain());
+        tripStatistics.setMinElevation(recomputed.getMinElevation());
+        tripStatistics.setMaxElevation(recomputed.getMaxElevation());
+        tripStatistics.setMinGrade(recomputed.getMinGrade());
+        tripStatistics.setMaxGrade(recomputed.getMaxGrade());
+        contentProviderUtils.updateTrack(track);
+
+        contentProviderUtils.deleteSplits(trackId);
+        for (Split split : splits) {
+            split.setTrackId(trackId);
+        }
+        contentProviderUtils.bulkInsertSplits(splits);
+        return length;
+    }
+}
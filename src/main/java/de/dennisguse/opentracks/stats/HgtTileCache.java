@@ -0,0 +1,270 @@
+package de.dennisguse.opentracks.stats;
+
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Looks up elevations in SRTM/HGT tiles (e.g., N47E008.hgt) of a directory.
+ * A tile covers 1x1 degree and contains a square grid (1201x1201 or 3601x3601) of big-endian 16-bit elevations (m); the first row is the northern edge.
+ * <p>
+ * Tiles are memory-mapped (only the accessed pages are read) and kept in a LRU cache.
+ * Consecutive lookups in the same tile do not access the cache and do not allocate.
+ * While recording, tiles should be mapped in the background (see {@link #getElevation(double, double, Executor)}) as mapping a tile accesses the storage.
+ * Thread-safe.
+ */
+public class HgtTileCache {
+
+    private static final String TAG = HgtTileCache.class.getSimpleName();
+
+    public static final int DEFAULT_MAX_TILES = 4;
+
+    /**
+     * Value of grid points without data.
+     */
+    @VisibleForTesting
+    static final short VOID = Short.MIN_VALUE;
+
+    private static final String EXTENSION = ".hgt";
+
+    // Marks tiles that do not exist or could not be read.
+    private static final Tile MISSING = new Tile(null, 0);
+
+    private final File directory;
+    private final LinkedHashMap<Integer, Tile> tiles;
+    // The keys of the tiles being mapped in the background
+    private final Set<Integer> loadingKeys = new HashSet<>();
+    // Incremented by clear(); tiles mapped in the background before are dropped.
+    private int generation = 0;
+
+    private int lastKey = Integer.MIN_VALUE;
+    private Tile lastTile;
+
+    /**
+     * @param directory the directory containing the tiles
+     * @param maxTiles  the number of tiles to keep mapped
+     */
+    public HgtTileCache(File directory, final int maxTiles) {
+        this.directory = directory;
+        this.tiles = new LinkedHashMap<Integer, Tile>(maxTiles + 1, 1.0f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Tile> eldest) {
+                return size() > maxTiles;
+            }
+        };
+    }
+
+    /**
+     * Gets the elevation of a coordinate (bilinear interpolation of the surrounding grid points).
+     * Maps the tile if needed (blocking).
+     *
+     * @param latitude  the latitude (degree)
+     * @param longitude the longitude (degree)
+     * @return the elevation (m) or NaN if no data is available
+     */
+    public synchronized double getElevation(double latitude, double longitude) {
+        int latitudeFloor = (int) Math.floor(latitude);
+        int longitudeFloor = (int) Math.floor(longitude);
+        int key = getKey(latitudeFloor, longitudeFloor);
+
+        if (key != lastKey) {
+            Tile tile = tiles.get(key);
+            if (tile == null) {
+                tile = Tile.load(new File(directory, getFileName(latitudeFloor, longitudeFloor)));
+                tiles.put(key, tile);
+            }
+            lastTile = tile;
+            lastKey = key;
+        }
+        return getLastTileElevation(latitude - latitudeFloor, longitude - longitudeFloor);
+    }
+
+    /**
+     * Gets the elevation of a coordinate like {@link #getElevation(double, double)}, but does not block for mapping a tile.
+     * A tile not in the cache is mapped by the executor; until then, NaN is returned.
+     *
+     * @param latitude  the latitude (degree)
+     * @param longitude the longitude (degree)
+     * @param executor  the executor to map tiles
+     * @return the elevation (m) or NaN if no data is available (yet)
+     */
+    public synchronized double getElevation(double latitude, double longitude, Executor executor) {
+        int latitudeFloor = (int) Math.floor(latitude);
+        int longitudeFloor = (int) Math.floor(longitude);
+        int key = getKey(latitudeFloor, longitudeFloor);
+
+        if (key != lastKey) {
+            Tile tile = tiles.get(key);
+            if (tile == null) {
+                preload(latitudeFloor, longitudeFloor, executor);
+                return Double.NaN;
+            }
+            lastTile = tile;
+            lastKey = key;
+        }
+        return getLastTileElevation(latitude - latitudeFloor, longitude - longitudeFloor);
+    }
+
+    /**
+     * Maps the tile containing a coordinate in the background, if it is not in the cache.
+     *
+     * @param latitude  the latitude (degree)
+     * @param longitude the longitude (degree)
+     * @param executor  the executor to map the tile
+     */
+    public synchronized void preload(double latitude, double longitude, Executor executor) {
+        preload((int) Math.floor(latitude), (int) Math.floor(longitude), executor);
+    }
+
+    private void preload(final int latitudeFloor, final int longitudeFloor, Executor executor) {
+        final int key = getKey(latitudeFloor, longitudeFloor);
+        if (tiles.containsKey(key) || !loadingKeys.add(key)) {
+            return;
+        }
+        final int loadGeneration = generation;
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Tile tile = Tile.load(new File(directory, getFileName(latitudeFloor, longitudeFloor)));
+                    synchronized (HgtTileCache.this) {
+                        if (loadGeneration == generation) {
+                            loadingKeys.remove(key);
+                            tiles.put(key, tile);
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The executor was shut down (e.g., recording stopped).
+            loadingKeys.remove(key);
+        }
+    }
+
+    /**
+     * Returns true if there is at least one tile in the directory.
+     */
+    public boolean hasTiles() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return false;
+        }
+        for (File file : files) {
+            if (file.getName().toLowerCase(Locale.US).endsWith(EXTENSION)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes all tiles from the cache.
+     */
+    public synchronized void clear() {
+        tiles.clear();
+        loadingKeys.clear();
+        generation++;
+        lastKey = Integer.MIN_VALUE;
+        lastTile = null;
+    }
+
+    /**
+     * Gets the file name of the tile with the south-west corner at a coordinate.
+     *
+     * @param latitude  the latitude of the south-west corner
+     * @param longitude the longitude of the south-west corner
+     */
+    @VisibleForTesting
+    static String getFileName(int latitude, int longitude) {
+        return String.format(Locale.US, "%s%02d%s%03d%s", latitude >= 0 ? "N" : "S", Math.abs(latitude), longitude >= 0 ? "E" : "W", Math.abs(longitude), EXTENSION);
+    }
+
+    private static int getKey(int latitudeFloor, int longitudeFloor) {
+        return (latitudeFloor + 90) * 360 + (longitudeFloor + 180);
+    }
+
+    /**
+     * Gets the elevation within the last tile.
+     */
+    private double getLastTileElevation(double latitudeFraction, double longitudeFraction) {
+        if (lastTile == MISSING) {
+            return Double.NaN;
+        }
+        return lastTile.getElevation(latitudeFraction, longitudeFraction);
+    }
+
+    private static class Tile {
+
+        // The elevations in row-major order; null for MISSING
+        private final ShortBuffer elevations;
+        private final int size;
+
+        Tile(ShortBuffer elevations, int size) {
+            this.elevations = elevations;
+            this.size = size;
+        }
+
+        static Tile load(File file) {
+            if (!file.isFile()) {
+                return MISSING;
+            }
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r"); FileChannel channel = randomAccessFile.getChannel()) {
+                long length = channel.size();
+                int size = (int) Math.round(Math.sqrt(length / 2.0));
+                if (size < 2 || (long) size * size * 2 != length) {
+                    Log.w(TAG, "Invalid tile size " + length + " of " + file);
+                    return MISSING;
+                }
+                // The mapping stays valid after closing the channel.
+                ShortBuffer elevations = channel.map(FileChannel.MapMode.READ_ONLY, 0, length).order(ByteOrder.BIG_ENDIAN).asShortBuffer();
+                return new Tile(elevations, size);
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to read tile " + file, e);
+                return MISSING;
+            }
+        }
+
+        /**
+         * @param latitudeFraction  the latitude within the tile (0 to 1)
+         * @param longitudeFraction the longitude within the tile (0 to 1)
+         */
+        double getElevation(double latitudeFraction, double longitudeFraction) {
+            double row = (1.0 - latitudeFraction) * (size - 1);
+            double column = longitudeFraction * (size - 1);
+            int row0 = Math.min((int) row, size - 2);
+            int column0 = Math.min((int) column, size - 2);
+            double rowWeight = row - row0;
+            double columnWeight = column - column0;
+
+            // Ignore grid points without data
+            double sum = 0.0;
+            double weights = 0.0;
+            for (int i = 0; i < 4; i++) {
+                int r = row0 + (i >> 1);
+                int c = column0 + (i & 1);
+                short elevation = elevations.get(r * size + c);
+                if (elevation == VOID) {
+                    continue;
+                }
+                double weight = ((i >> 1) == 1 ? rowWeight : 1.0 - rowWeight) * ((i & 1) == 1 ? columnWeight : 1.0 - columnWeight);
+                sum += weight * elevation;
+                weights += weight;
+            }
+            return weights > 0.0 ? sum / weights : Double.NaN;
+        }
+    }
+}
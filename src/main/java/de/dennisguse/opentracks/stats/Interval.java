@@ -0,0 +1,92 @@
+package de.dennisguse.opentracks.stats;
+
+import android.location.Location;
+import android.location.LocationManager;
+
+/**
+ * An automatically detected lap or work/rest interval of a track.
+ */
+public class Interval {
+
+    public enum Type {
+        // The route passed the lap start point again
+        LAP,
+        // A segment with a higher intensity than its neighbours
+        WORK,
+        // A segment with a lower intensity than its neighbours
+        REST
+    }
+
+    private final Type type;
+    private final int number;
+    private final long startTrackPointId;
+    private final long stopTrackPointId;
+    private final Location location;
+    private final TripStatistics tripStatistics;
+
+    public Interval(Type type, int number, long startTrackPointId, long stopTrackPointId, Location location, TripStatistics tripStatistics) {
+        this.type = type;
+        this.number = number;
+        this.startTrackPointId = startTrackPointId;
+        this.stopTrackPointId = stopTrackPointId;
+        this.location = location;
+        this.tripStatistics = tripStatistics;
+    }
+
+    /**
+     * Creates an interval from the difference of two boundaries.
+     */
+    static Interval create(Type type, int number, IntervalBoundary start, IntervalBoundary stop) {
+        TripStatistics tripStatistics = new TripStatistics();
+        tripStatistics.setStartTime(start.time);
+        tripStatistics.setStopTime(stop.time);
+        tripStatistics.setTotalDistance(stop.totalDistance - start.totalDistance);
+        tripStatistics.setTotalTime(stop.totalTime - start.totalTime);
+        tripStatistics.setMovingTime(stop.movingTime - start.movingTime);
+        tripStatistics.setTotalElevationGain(stop.totalElevationGain - start.totalElevationGain);
+
+        Location location = new Location(LocationManager.GPS_PROVIDER);
+        location.setLatitude(stop.latitude);
+        location.setLongitude(stop.longitude);
+        if (!Double.isNaN(stop.altitude)) {
+            location.setAltitude(stop.altitude);
+        }
+        location.setTime(stop.time);
+
+        return new Interval(type, number, start.trackPointId, stop.trackPointId, location, tripStatistics);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the number of the interval within its type (starting with 1).
+     */
+    public int getNumber() {
+        return number;
+    }
+
+    public long getStartTrackPointId() {
+        return startTrackPointId;
+    }
+
+    public long getStopTrackPointId() {
+        return stopTrackPointId;
+    }
+
+    /**
+     * Gets the location at the end of the interval.
+     */
+    public Location getLocation() {
+        return location;
+    }
+
+    /**
+     * Gets the statistics of the interval.
+     * Only the distance, time and elevation gain values are set.
+     */
+    public TripStatistics getTripStatistics() {
+        return tripStatistics;
+    }
+}
@@ -0,0 +1,53 @@
+package de.dennisguse.opentracks.stats;
+
+import android.location.Location;
+
+/**
+ * The state of a track at a location: position and cumulative {@link TripStatistics} values.
+ * The statistics of an {@link Interval} are the difference between the boundaries at its start and its stop.
+ * Mutable, so detectors can keep a fixed number of instances.
+ */
+class IntervalBoundary {
+
+    long trackPointId = -1L;
+    long time;
+    double latitude;
+    double longitude;
+    double altitude;
+    double totalDistance;
+    long totalTime;
+    long movingTime;
+    double totalElevationGain;
+
+    void set(Location location, long trackPointId, TripStatistics tripStatistics) {
+        this.trackPointId = trackPointId;
+        this.time = location.getTime();
+        this.latitude = location.getLatitude();
+        this.longitude = location.getLongitude();
+        this.altitude = location.hasAltitude() ? location.getAltitude() : Double.NaN;
+        this.totalDistance = tripStatistics.getTotalDistance();
+        this.totalTime = tripStatistics.getTotalTime();
+        this.movingTime = tripStatistics.getMovingTime();
+        this.totalElevationGain = tripStatistics.getTotalElevationGain();
+    }
+
+    void set(IntervalBoundary other) {
+        this.trackPointId = other.trackPointId;
+        this.time = other.time;
+        this.latitude = other.latitude;
+        this.longitude = other.longitude;
+        this.altitude = other.altitude;
+        this.totalDistance = other.totalDistance;
+        this.totalTime = other.totalTime;
+        this.movingTime = other.movingTime;
+        this.totalElevationGain = other.totalElevationGain;
+    }
+
+    boolean isSet() {
+        return trackPointId != -1L;
+    }
+
+    void reset() {
+        trackPointId = -1L;
+    }
+}
@@ -0,0 +1,258 @@
+package de.dennisguse.opentracks.stats;
+
+import android.location.Location;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import de.dennisguse.opentracks.content.SensorDataSetLocation;
+import de.dennisguse.opentracks.content.sensor.SensorDataSet;
+import de.dennisguse.opentracks.util.LocationUtils;
+import de.dennisguse.opentracks.util.UnitConversions;
+
+/**
+ * Segments a track into work and rest intervals by detecting changes of the mean of a signal (speed, power or heart rate).
+ * <p>
+ * The signal is averaged into bins of {@link #BIN_DURATION}.
+ * The last 2 * {@link #WINDOW_BINS} bins form two adjacent windows; a change point is the boundary between them if their means differ significantly (Welch's t-statistic).
+ * The boundary with the highest score of a run of significant boundaries is used.
+ * A segment followed by a higher mean is a rest interval, a segment followed by a lower mean is a work interval.
+ * <p>
+ * Uses a fixed amount of memory independent of the length of the track.
+ */
+public class IntervalDetector {
+
+    public enum Signal {
+        SPEED {
+            @Override
+            float getValue(Location location) {
+                return location.hasSpeed() ? location.getSpeed() : Float.NaN;
+            }
+        },
+        POWER {
+            @Override
+            float getValue(Location location) {
+                SensorDataSet sensorDataSet = getSensorDataSet(location);
+                return sensorDataSet != null && sensorDataSet.hasPower() ? sensorDataSet.getPower() : Float.NaN;
+            }
+        },
+        HEART_RATE {
+            @Override
+            float getValue(Location location) {
+                SensorDataSet sensorDataSet = getSensorDataSet(location);
+                return sensorDataSet != null && sensorDataSet.hasHeartRate() ? sensorDataSet.getHeartRate() : Float.NaN;
+            }
+        };
+
+        /**
+         * @return the value or NaN if not available
+         */
+        abstract float getValue(Location location);
+
+        private static SensorDataSet getSensorDataSet(Location location) {
+            return location instanceof SensorDataSetLocation ? ((SensorDataSetLocation) location).getSensorDataSet() : null;
+        }
+    }
+
+    @VisibleForTesting
+    static final long BIN_DURATION = 5 * UnitConversions.ONE_SECOND;
+
+    /**
+     * The number of bins per window; also the minimal length of an interval.
+     */
+    @VisibleForTesting
+    static final int WINDOW_BINS = 6;
+
+    /**
+     * The minimal t-statistic of a change point.
+     */
+    private static final double MIN_SCORE = 4.0;
+
+    /**
+     * The minimal change of the mean relative to the higher mean.
+     */
+    private static final double MIN_RELATIVE_CHANGE = 0.2;
+
+    /**
+     * The minimal standard deviation relative to the higher mean; avoids that noise-free signals make every small change significant.
+     */
+    private static final double MIN_RELATIVE_DEVIATION = 0.02;
+
+    private final Signal signal;
+
+    // Ring buffer of the completed bins
+    private final double[] binMeans = new double[2 * WINDOW_BINS];
+    private final IntervalBoundary[] binStarts = new IntervalBoundary[2 * WINDOW_BINS];
+    private int binFirst = 0;
+    private int binCount = 0;
+
+    // The bin being filled
+    private final IntervalBoundary currentBinStart = new IntervalBoundary();
+    private double currentBinSum;
+    private int currentBinSamples = 0;
+
+    private final IntervalBoundary segmentStart = new IntervalBoundary();
+    private final IntervalBoundary last = new IntervalBoundary();
+
+    // The best change point of the current run of significant boundaries
+    private final IntervalBoundary candidate = new IntervalBoundary();
+    private double candidateScore;
+    private boolean candidateRising;
+    // Number of bins completed after the candidate's bin
+    private int candidateAge;
+
+    // Number of bins completed after the bin of the last change point
+    private int binsSinceChange = Integer.MAX_VALUE / 2;
+
+    private Interval.Type lastType;
+    private int workCount = 0;
+    private int restCount = 0;
+
+    public IntervalDetector(Signal signal) {
+        this.signal = signal;
+        for (int i = 0; i < binStarts.length; i++) {
+            binStarts[i] = new IntervalBoundary();
+        }
+    }
+
+    /**
+     * Adds a location.
+     * NOTE: Some of the locations represent pause/resume separator; they reset the windows.
+     *
+     * @param location       the location
+     * @param trackPointId   the id of the location's track point
+     * @param tripStatistics the statistics of the track including the location
+     * @return the intervals completed by the location (usually empty)
+     */
+    public List<Interval> addLocation(Location location, long trackPointId, TripStatistics tripStatistics) {
+        if (!LocationUtils.isValidLocation(location)) {
+            // A pause is no part of an interval; close a pending change point and start over.
+            List<Interval> intervals = candidate.isSet() ? Collections.singletonList(emitCandidate()) : Collections.<Interval>emptyList();
+            binCount = 0;
+            currentBinSamples = 0;
+            return intervals;
+        }
+
+        last.set(location, trackPointId, tripStatistics);
+        if (!segmentStart.isSet()) {
+            segmentStart.set(last);
+        }
+
+        float value = signal.getValue(location);
+        if (Float.isNaN(value)) {
+            return Collections.emptyList();
+        }
+
+        List<Interval> intervals = Collections.emptyList();
+        if (currentBinSamples > 0 && location.getTime() - currentBinStart.time >= BIN_DURATION) {
+            intervals = closeBin();
+        }
+        if (currentBinSamples == 0) {
+            currentBinStart.set(last);
+            currentBinSum = 0.0;
+        }
+        currentBinSum += value;
+        currentBinSamples++;
+        return intervals;
+    }
+
+    /**
+     * Completes the detection at the end of the track.
+     *
+     * @return the remaining intervals
+     */
+    public List<Interval> finish() {
+        List<Interval> intervals = new ArrayList<>();
+        if (candidate.isSet()) {
+            intervals.add(emitCandidate());
+        }
+        // The last segment is only an interval if there was a change before.
+        if (lastType != null && last.isSet() && last.time > segmentStart.time) {
+            intervals.add(createInterval(lastType == Interval.Type.WORK ? Interval.Type.REST : Interval.Type.WORK, segmentStart, last));
+            segmentStart.set(last);
+        }
+        return intervals;
+    }
+
+    private List<Interval> closeBin() {
+        int index;
+        if (binCount < binMeans.length) {
+            index = (binFirst + binCount) % binMeans.length;
+            binCount++;
+        } else {
+            index = binFirst;
+            binFirst = (binFirst + 1) % binMeans.length;
+        }
+        binMeans[index] = currentBinSum / currentBinSamples;
+        binStarts[index].set(currentBinStart);
+        currentBinSamples = 0;
+        binsSinceChange++;
+        if (candidate.isSet()) {
+            candidateAge++;
+        }
+
+        if (binCount < binMeans.length) {
+            return Collections.emptyList();
+        }
+
+        double leftMean = mean(0);
+        double rightMean = mean(WINDOW_BINS);
+        double scale = Math.max(Math.abs(leftMean), Math.abs(rightMean));
+        double deviation = Math.sqrt((variance(0, leftMean) + variance(WINDOW_BINS, rightMean)) / WINDOW_BINS);
+        double difference = rightMean - leftMean;
+        double score = scale > 0.0 ? Math.abs(difference) / Math.max(deviation, MIN_RELATIVE_DEVIATION * scale) : 0.0;
+
+        // The boundary bin was completed WINDOW_BINS - 1 bins ago.
+        boolean farEnough = binsSinceChange - (WINDOW_BINS - 1) >= WINDOW_BINS;
+        boolean significant = farEnough && score >= MIN_SCORE && Math.abs(difference) >= MIN_RELATIVE_CHANGE * scale;
+
+        if (significant) {
+            if (!candidate.isSet() || score > candidateScore) {
+                candidate.set(binStarts[(binFirst + WINDOW_BINS) % binMeans.length]);
+                candidateScore = score;
+                candidateRising = difference > 0;
+                candidateAge = WINDOW_BINS - 1;
+            }
+            return Collections.emptyList();
+        }
+        if (candidate.isSet()) {
+            return Collections.singletonList(emitCandidate());
+        }
+        return Collections.emptyList();
+    }
+
+    private Interval emitCandidate() {
+        // A segment followed by a rise is a rest interval.
+        Interval interval = createInterval(candidateRising ? Interval.Type.REST : Interval.Type.WORK, segmentStart, candidate);
+        segmentStart.set(candidate);
+        binsSinceChange = candidateAge;
+        candidate.reset();
+        return interval;
+    }
+
+    private Interval createInterval(Interval.Type type, IntervalBoundary start, IntervalBoundary stop) {
+        lastType = type;
+        int number = type == Interval.Type.WORK ? ++workCount : ++restCount;
+        return Interval.create(type, number, start, stop);
+    }
+
+    private double mean(int offset) {
+        double sum = 0.0;
+        for (int i = offset; i < offset + WINDOW_BINS; i++) {
+            sum += binMeans[(binFirst + i) % binMeans.length];
+        }
+        return sum / WINDOW_BINS;
+    }
+
+    private double variance(int offset, double mean) {
+        double sum = 0.0;
+        for (int i = offset; i < offset + WINDOW_BINS; i++) {
+            double delta = binMeans[(binFirst + i) % binMeans.length] - mean;
+            sum += delta * delta;
+        }
+        return sum / (WINDOW_BINS - 1);
+    }
+}
@@ -0,0 +1,178 @@
+package de.dennisguse.opentracks.stats;
+
+import android.content.Context;
+import android.location.Location;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.dennisguse.opentracks.R;
+import de.dennisguse.opentracks.content.ContentProviderUtils;
+import de.dennisguse.opentracks.content.ContentProviderUtils.LocationIterator;
+import de.dennisguse.opentracks.content.DescriptionGeneratorImpl;
+import de.dennisguse.opentracks.content.SensorDataSetLocation;
+import de.dennisguse.opentracks.content.Track;
+import de.dennisguse.opentracks.content.Waypoint;
+import de.dennisguse.opentracks.content.Waypoint.WaypointType;
+import de.dennisguse.opentracks.content.WaypointsColumns;
+import de.dennisguse.opentracks.content.sensor.SensorDataSet;
+
+/**
+ * Detects laps ({@link LapDetector}) and work/rest intervals ({@link IntervalDetector}) of a track and stores them as markers.
+ * The markers are of type {@link WaypointType#WAYPOINT} (so they do not affect the statistics markers) and are identified by their category.
+ * <p>
+ * Works on live tracks (locations are added while recording) and stored tracks ({@link #detect(Context, ContentProviderUtils, long, int)}).
+ * Uses a bounded amount of memory (besides the detected markers of a stored track).
+ */
+public class IntervalEngine {
+
+    private final LapDetector lapDetector = new LapDetector();
+    private final IntervalDetector intervalDetector;
+
+    /**
+     * @param signal the signal for the work/rest detection
+     */
+    public IntervalEngine(IntervalDetector.Signal signal) {
+        this.intervalDetector = new IntervalDetector(signal);
+    }
+
+    /**
+     * Adds a location.
+     *
+     * @param location       the location
+     * @param trackPointId   the id of the location's track point
+     * @param tripStatistics the statistics of the track including the location
+     * @return the detected laps and intervals (usually empty)
+     */
+    public List<Interval> addLocation(Location location, long trackPointId, TripStatistics tripStatistics) {
+        List<Interval> laps = lapDetector.addLocation(location, trackPointId, tripStatistics);
+        List<Interval> intervals = intervalDetector.addLocation(location, trackPointId, tripStatistics);
+        if (laps.isEmpty()) {
+            return intervals;
+        }
+        if (intervals.isEmpty()) {
+            return laps;
+        }
+        List<Interval> result = new ArrayList<>(laps);
+        result.addAll(intervals);
+        return result;
+    }
+
+    /**
+     * Completes the detection at the end of the track.
+     *
+     * @return the remaining intervals
+     */
+    public List<Interval> finish() {
+        return intervalDetector.finish();
+    }
+
+    /**
+     * Gets the signal for the work/rest detection: power if available, else speed if available, else heart rate if available, else speed.
+     */
+    public static IntervalDetector.Signal getSignal(boolean hasPower, boolean hasSpeed, boolean hasHeartRate) {
+        if (hasPower) {
+            return IntervalDetector.Signal.POWER;
+        }
+        if (!hasSpeed && hasHeartRate) {
+            return IntervalDetector.Signal.HEART_RATE;
+        }
+        return IntervalDetector.Signal.SPEED;
+    }
+
+    /**
+     * Gets the signal for the work/rest detection of a stored track.
+     */
+    public static IntervalDetector.Signal getSignal(Track track) {
+        SensorStatistics sensorStatistics = track.getSensorStatistics();
+        return getSignal(sensorStatistics.hasPower(), track.getTripStatistics().getMaxSpeed() > 0, sensorStatistics.hasHeartRate());
+    }
+
+    /**
+     * Gets the signal for the work/rest detection of a live track from its first location (i.e., from the sensors connected at that time).
+     */
+    public static IntervalDetector.Signal getSignal(Location location) {
+        SensorDataSet sensorDataSet = location instanceof SensorDataSetLocation ? ((SensorDataSetLocation) location).getSensorDataSet() : null;
+        return getSignal(sensorDataSet != null && sensorDataSet.hasPower(), location.hasSpeed(), sensorDataSet != null && sensorDataSet.hasHeartRate());
+    }
+
+    /**
+     * Detects the laps and intervals of a stored track and replaces the previously detected markers (in one transaction).
+     * Must not be called for the recording track.
+     *
+     * @param context                   the context
+     * @param contentProviderUtils      the content provider utils
+     * @param trackId                   the track id
+     * @param recordingDistanceInterval the recording distance interval
+     * @return the number of detected laps and intervals
+     */
+    public static int detect(Context context, ContentProviderUtils contentProviderUtils, long trackId, int recordingDistanceInterval) {
+        Track track = contentProviderUtils.getTrack(trackId);
+        if (track == null) {
+            return 0;
+        }
+
+        IntervalEngine intervalEngine = new IntervalEngine(getSignal(track));
+        TripStatisticsUpdater tripStatisticsUpdater = new TripStatisticsUpdater(track.getTripStatistics().getStartTime());
+        List<Waypoint> waypoints = new ArrayList<>();
+        try (LocationIterator locationIterator = contentProviderUtils.getTrackPointLocationIterator(trackId, -1L, false, ContentProviderUtils.DEFAULT_LOCATION_FACTORY)) {
+            while (locationIterator.hasNext()) {
+                Location location = locationIterator.next();
+                tripStatisticsUpdater.addLocation(location, recordingDistanceInterval);
+                for (Interval interval : intervalEngine.addLocation(location, locationIterator.getLocationId(), tripStatisticsUpdater.getTripStatistics())) {
+                    waypoints.add(createWaypoint(context, trackId, interval));
+                }
+            }
+        }
+        for (Interval interval : intervalEngine.finish()) {
+            waypoints.add(createWaypoint(context, trackId, interval));
+        }
+
+        String selection = WaypointsColumns.TRACKID + "=? AND " + WaypointsColumns.TYPE + "=? AND " + WaypointsColumns.CATEGORY + " IN (?,?,?)";
+        String[] selectionArgs = new String[]{Long.toString(trackId), Integer.toString(WaypointType.WAYPOINT.ordinal()),
+                getCategory(context, Interval.Type.LAP), getCategory(context, Interval.Type.WORK), getCategory(context, Interval.Type.REST)};
+        contentProviderUtils.replaceWaypoints(selection, selectionArgs, waypoints);
+        return waypoints.size();
+    }
+
+    /**
+     * Creates the marker of an interval.
+     *
+     * @param context  the context
+     * @param trackId  the track id
+     * @param interval the interval
+     */
+    public static Waypoint createWaypoint(Context context, long trackId, Interval interval) {
+        int nameId;
+        switch (interval.getType()) {
+            case LAP:
+                nameId = R.string.marker_lap_name_format;
+                break;
+            case WORK:
+                nameId = R.string.marker_interval_work_name_format;
+                break;
+            default:
+                nameId = R.string.marker_interval_rest_name_format;
+                break;
+        }
+        TripStatistics tripStatistics = interval.getTripStatistics();
+        return new Waypoint(context.getString(nameId, interval.getNumber()), new DescriptionGeneratorImpl(context).generateWaypointDescription(tripStatistics),
+                getCategory(context, interval.getType()), context.getString(R.string.marker_statistics_icon_url), trackId, WaypointType.WAYPOINT,
+                tripStatistics.getTotalDistance(), tripStatistics.getTotalTime(), interval.getStartTrackPointId(), interval.getStopTrackPointId(),
+                interval.getLocation(), tripStatistics, "");
+    }
+
+    /**
+     * Gets the marker category of an interval type.
+     */
+    private static String getCategory(Context context, Interval.Type type) {
+        switch (type) {
+            case LAP:
+                return context.getString(R.string.marker_category_lap);
+            case WORK:
+                return context.getString(R.string.marker_category_interval_work);
+            default:
+                return context.getString(R.string.marker_category_interval_rest);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package de.dennisguse.opentracks.stats;
+
+import android.location.Location;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import de.dennisguse.opentracks.util.GeodesyUtils;
+import de.dennisguse.opentracks.util.LocationUtils;
+
+/**
+ * Detects laps: the route passes the lap start point again in the same direction.
+ * <p>
+ * The lap start point is not known in advance (e.g., a warm-up before the first lap).
+ * Until the route crosses itself, the visited locations are stored in a spatial grid hash; every location only checks the neighbouring cells.
+ * The first crossing defines the lap start point; afterwards the grid is released and only the distance to the lap start point is checked.
+ * <p>
+ * The grid has a fixed capacity; if it is full, the cells visited longest ago are dropped.
+ */
+public class LapDetector {
+
+    /**
+     * Size of a grid cell (m).
+     */
+    @VisibleForTesting
+    static final double CELL_SIZE = 25.0;
+
+    /**
+     * Maximal distance (m) to the lap start point to complete a lap.
+     */
+    @VisibleForTesting
+    static final double LAP_RADIUS = 25.0;
+
+    /**
+     * Minimal distance (m) of a lap.
+     */
+    @VisibleForTesting
+    static final double MIN_LAP_DISTANCE = 200.0;
+
+    /**
+     * Maximal difference (degree) of the bearings at a crossing; rejects out-and-back routes.
+     */
+    private static final float MAX_BEARING_DIFFERENCE = 90f;
+
+    /**
+     * Minimal distance (m) between two locations to compute a bearing.
+     */
+    private static final double MIN_BEARING_DISTANCE = 3.0;
+
+    /**
+     * Maximal number of cells (power of 2).
+     */
+    @VisibleForTesting
+    static final int GRID_CAPACITY = 1 << 14;
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private static final double METERS_PER_DEGREE = GeodesyUtils.MEAN_EARTH_RADIUS * Math.PI / 180.0;
+
+    // Open addressing hash table; the last visit per cell.
+    private long[] cellKeys;
+    private IntervalBoundary[] cellBoundaries;
+    private float[] cellBearings;
+    private int cellCount = 0;
+    private double metersPerDegreeLongitude = Double.NaN;
+
+    private final IntervalBoundary current = new IntervalBoundary();
+    private final IntervalBoundary lapStart = new IntervalBoundary();
+    private double lapLatitude;
+    private double lapLongitude;
+    private float lapBearing;
+    private boolean hasLapStart = false;
+    private int lapCount = 0;
+
+    // The location the bearing is computed from
+    private double bearingLatitude = Double.NaN;
+    private double bearingLongitude;
+    private float bearing = Float.NaN;
+
+    public LapDetector() {
+        cellKeys = new long[GRID_CAPACITY];
+        Arrays.fill(cellKeys, EMPTY);
+        cellBoundaries = new IntervalBoundary[GRID_CAPACITY];
+        cellBearings = new float[GRID_CAPACITY];
+    }
+
+    /**
+     * Adds a location.
+     * NOTE: Some of the locations represent pause/resume separator.
+     *
+     * @param location       the location
+     * @param trackPointId   the id of the location's track point
+     * @param tripStatistics the statistics of the track including the location
+     * @return the completed lap (usually empty)
+     */
+    public List<Interval> addLocation(Location location, long trackPointId, TripStatistics tripStatistics) {
+        if (!LocationUtils.isValidLocation(location)) {
+            bearingLatitude = Double.NaN;
+            bearing = Float.NaN;
+            return Collections.emptyList();
+        }
+        updateBearing(location);
+        current.set(location, trackPointId, tripStatistics);
+
+        if (hasLapStart) {
+            if (current.totalDistance - lapStart.totalDistance >= MIN_LAP_DISTANCE
+                    && GeodesyUtils.distance(lapLatitude, lapLongitude, current.latitude, current.longitude) <= LAP_RADIUS
+                    && isSameDirection(lapBearing, bearing)) {
+                return Collections.singletonList(completeLap(lapStart));
+            }
+            return Collections.emptyList();
+        }
+
+        if (Double.isNaN(metersPerDegreeLongitude)) {
+            metersPerDegreeLongitude = METERS_PER_DEGREE * Math.max(Math.cos(Math.toRadians(current.latitude)), 0.01);
+        }
+        long cellX = (long) Math.floor(current.longitude * metersPerDegreeLongitude / CELL_SIZE);
+        long cellY = (long) Math.floor(current.latitude * METERS_PER_DEGREE / CELL_SIZE);
+
+        int crossing = findCrossing(cellX, cellY);
+        if (crossing != -1) {
+            IntervalBoundary start = cellBoundaries[crossing];
+            lapLatitude = start.latitude;
+            lapLongitude = start.longitude;
+            lapBearing = cellBearings[crossing];
+            hasLapStart = true;
+            Interval lap = completeLap(start);
+            // Not needed anymore
+            cellKeys = null;
+            cellBoundaries = null;
+            cellBearings = null;
+            return Collections.singletonList(lap);
+        }
+
+        put(getKey(cellX, cellY));
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns true if the lap start point was found.
+     */
+    public boolean hasLapStart() {
+        return hasLapStart;
+    }
+
+    private Interval completeLap(IntervalBoundary start) {
+        Interval lap = Interval.create(Interval.Type.LAP, ++lapCount, start, current);
+        lapStart.set(current);
+        return lap;
+    }
+
+    private void updateBearing(Location location) {
+        double latitude = location.getLatitude();
+        double longitude = location.getLongitude();
+        if (Double.isNaN(bearingLatitude)) {
+            bearingLatitude = latitude;
+            bearingLongitude = longitude;
+            return;
+        }
+        if (GeodesyUtils.distance(bearingLatitude, bearingLongitude, latitude, longitude) >= MIN_BEARING_DISTANCE) {
+            bearing = GeodesyUtils.bearing(bearingLatitude, bearingLongitude, latitude, longitude);
+            bearingLatitude = latitude;
+            bearingLongitude = longitude;
+        }
+    }
+
+    /**
+     * Finds the closest earlier visit in the neighbouring cells that completes a lap.
+     *
+     * @return the index of the cell or -1
+     */
+    private int findCrossing(long cellX, long cellY) {
+        int best = -1;
+        double bestDistance = LAP_RADIUS;
+        for (long x = cellX - 1; x <= cellX + 1; x++) {
+            for (long y = cellY - 1; y <= cellY + 1; y++) {
+                int index = find(getKey(x, y));
+                if (index == -1) {
+                    continue;
+                }
+                IntervalBoundary visit = cellBoundaries[index];
+                if (current.totalDistance - visit.totalDistance < MIN_LAP_DISTANCE || !isSameDirection(cellBearings[index], bearing)) {
+                    continue;
+                }
+                double distance = GeodesyUtils.distance(visit.latitude, visit.longitude, current.latitude, current.longitude);
+                if (distance <= bestDistance) {
+                    best = index;
+                    bestDistance = distance;
+                }
+            }
+        }
+        return best;
+    }
+
+    private static boolean isSameDirection(float bearing1, float bearing2) {
+        if (Float.isNaN(bearing1) || Float.isNaN(bearing2)) {
+            return true;
+        }
+        float difference = Math.abs(bearing1 - bearing2) % 360f;
+        return Math.min(difference, 360f - difference) <= MAX_BEARING_DIFFERENCE;
+    }
+
+    private static long getKey(long cellX, long cellY) {
+        return (cellX << 32) ^ (cellY & 0xffffffffL);
+    }
+
+    private static int getSlot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 40) & (GRID_CAPACITY - 1);
+    }
+
+    private int find(long key) {
+        for (int index = getSlot(key); ; index = (index + 1) & (GRID_CAPACITY - 1)) {
+            if (cellKeys[index] == EMPTY) {
+                return -1;
+            }
+            if (cellKeys[index] == key) {
+                return index;
+            }
+        }
+    }
+
+    private void put(long key) {
+        int index = getSlot(key);
+        while (cellKeys[index] != EMPTY && cellKeys[index] != key) {
+            index = (index + 1) & (GRID_CAPACITY - 1);
+        }
+        if (cellKeys[index] == EMPTY) {
+            cellKeys[index] = key;
+            if (cellBoundaries[index] == null) {
+                cellBoundaries[index] = new IntervalBoundary();
+            }
+            cellCount++;
+        }
+        cellBoundaries[index].set(current);
+        cellBearings[index] = bearing;
+
+        if (cellCount > GRID_CAPACITY / 2) {
+            evict();
+        }
+    }
+
+    /**
+     * Drops the older half of the cells (by distance of the visit).
+     */
+    private void evict() {
+        double minDistance = Double.MAX_VALUE;
+        for (int i = 0; i < GRID_CAPACITY; i++) {
+            if (cellKeys[i] != EMPTY) {
+                minDistance = Math.min(minDistance, cellBoundaries[i].totalDistance);
+            }
+        }
+        double threshold = (minDistance + current.totalDistance) / 2.0;
+
+        long[] oldKeys = cellKeys;
+        IntervalBoundary[] oldBoundaries = cellBoundaries;
+        float[] oldBearings = cellBearings;
+        cellKeys = new long[GRID_CAPACITY];
+        Arrays.fill(cellKeys, EMPTY);
+        cellBoundaries = new IntervalBoundary[GRID_CAPACITY];
+        cellBearings = new float[GRID_CAPACITY];
+        cellCount = 0;
+        for (int i = 0; i < GRID_CAPACITY; i++) {
+            if (oldKeys[i] == EMPTY || oldBoundaries[i].totalDistance < threshold) {
+                continue;
+            }
+            int index = getSlot(oldKeys[i]);
+            while (cellKeys[index] != EMPTY) {
+                index = (index + 1) & (GRID_CAPACITY - 1);
+            }
+            cellKeys[index] = oldKeys[i];
+            cellBoundaries[index] = oldBoundaries[i];
+            cellBearings[index] = oldBearings[i];
+            cellCount++;
+        }
+    }
+
+    @VisibleForTesting
+    int getCellCount() {
+        return cellCount;
+    }
+}
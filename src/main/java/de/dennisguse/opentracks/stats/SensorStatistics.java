@@ -0,0 +1,174 @@
+package de.dennisguse.opentracks.stats;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+import de.dennisguse.opentracks.util.UnitConversions;
+
+/**
+ * Statistical data about the sensor data (heart rate, cadence and power) of a trip.
+ * The data in this class should be filled out by {@link SensorStatisticsUpdater}.
+ */
+public class SensorStatistics {
+
+    public static final int NUM_HEART_RATE_ZONES = 5;
+
+    /**
+     * Lower bounds of the heart rate zones 2 to 5 as fraction of the maximal heart rate.
+     * Zone 1 contains everything below 60%.
+     */
+    static final double[] HEART_RATE_ZONE_LOWER_BOUNDS = {0.6, 0.7, 0.8, 0.9};
+
+    // Width of a cadence bucket (rpm); the last bucket is open ended.
+    public static final int CADENCE_BUCKET_SIZE = 20;
+    public static final int NUM_CADENCE_BUCKETS = 7;
+
+    // The time (ms) spent in each heart rate zone.
+    private final long[] heartRateZoneTime = new long[NUM_HEART_RATE_ZONES];
+    // The time (ms) spent in each cadence bucket.
+    private final long[] cadenceTime = new long[NUM_CADENCE_BUCKETS];
+    // The normalized power (W); NaN if no power data is available.
+    private double normalizedPower = Double.NaN;
+    // The heart rate drift (%), i.e., the decrease of output per heart beat from the first to the second half; NaN if not enough data.
+    private double heartRateDrift = Double.NaN;
+
+    public SensorStatistics() {
+    }
+
+    /**
+     * Copy constructor.
+     *
+     * @param other another statistics data object to copy from
+     */
+    public SensorStatistics(SensorStatistics other) {
+        System.arraycopy(other.heartRateZoneTime, 0, heartRateZoneTime, 0, NUM_HEART_RATE_ZONES);
+        System.arraycopy(other.cadenceTime, 0, cadenceTime, 0, NUM_CADENCE_BUCKETS);
+        normalizedPower = other.normalizedPower;
+        heartRateDrift = other.heartRateDrift;
+    }
+
+    /**
+     * Gets the heart rate zone (0-based) for a heart rate.
+     *
+     * @param heartRate    the heart rate (bpm)
+     * @param maxHeartRate the maximal heart rate (bpm)
+     */
+    public static int getHeartRateZone(double heartRate, double maxHeartRate) {
+        double fraction = heartRate / maxHeartRate;
+        int zone = 0;
+        while (zone < HEART_RATE_ZONE_LOWER_BOUNDS.length && fraction >= HEART_RATE_ZONE_LOWER_BOUNDS[zone]) {
+            zone++;
+        }
+        return zone;
+    }
+
+    /**
+     * Gets the cadence bucket for a cadence.
+     *
+     * @param cadence the cadence (rpm)
+     */
+    public static int getCadenceBucket(double cadence) {
+        return Math.min(NUM_CADENCE_BUCKETS - 1, Math.max(0, (int) (cadence / CADENCE_BUCKET_SIZE)));
+    }
+
+    /**
+     * Gets the time in milliseconds spent in a heart rate zone.
+     *
+     * @param zone the 0-based zone
+     */
+    public long getHeartRateZoneTime(int zone) {
+        return heartRateZoneTime[zone];
+    }
+
+    public void setHeartRateZoneTime(int zone, long time) {
+        heartRateZoneTime[zone] = time;
+    }
+
+    void addHeartRateZoneTime(int zone, long time) {
+        heartRateZoneTime[zone] += time;
+    }
+
+    /**
+     * Gets the time in milliseconds with a cadence in a bucket.
+     *
+     * @param bucket the bucket; see {@link #getCadenceBucket(double)}
+     */
+    public long getCadenceTime(int bucket) {
+        return cadenceTime[bucket];
+    }
+
+    public void setCadenceTime(int bucket, long time) {
+        cadenceTime[bucket] = time;
+    }
+
+    void addCadenceTime(int bucket, long time) {
+        cadenceTime[bucket] += time;
+    }
+
+    /**
+     * Gets the normalized power in watt; NaN if unknown.
+     */
+    public double getNormalizedPower() {
+        return normalizedPower;
+    }
+
+    public void setNormalizedPower(double normalizedPower) {
+        this.normalizedPower = normalizedPower;
+    }
+
+    /**
+     * Gets the heart rate drift in percent; NaN if unknown.
+     * A positive value means that the output (power or speed) per heart beat decreased from the first to the second half.
+     */
+    public double getHeartRateDrift() {
+        return heartRateDrift;
+    }
+
+    public void setHeartRateDrift(double heartRateDrift) {
+        this.heartRateDrift = heartRateDrift;
+    }
+
+    /**
+     * Gets the training load.
+     * Heart rate based (similar to Edwards' TRIMP): the minutes in each zone weighted by the zone number.
+     */
+    public double getTrainingLoad() {
+        double load = 0;
+        for (int i = 0; i < NUM_HEART_RATE_ZONES; i++) {
+            load += heartRateZoneTime[i] * UnitConversions.MS_TO_S * UnitConversions.S_TO_MIN * (i + 1);
+        }
+        return load;
+    }
+
+    public boolean hasHeartRate() {
+        for (long time : heartRateZoneTime) {
+            if (time > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean hasCadence() {
+        for (long time : cadenceTime) {
+            if (time > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean hasPower() {
+        return !Double.isNaN(normalizedPower);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "SensorStatistics { Heart rate zones: " + Arrays.toString(heartRateZoneTime)
+                + "; Cadence: " + Arrays.toString(cadenceTime)
+                + "; Normalized power: " + normalizedPower
+                + "; Heart rate drift: " + heartRateDrift + "}";
+    }
+}
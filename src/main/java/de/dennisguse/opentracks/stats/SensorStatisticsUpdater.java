@@ -0,0 +1,266 @@
+package de.dennisguse.opentracks.stats;
+
+import android.location.Location;
+
+import androidx.annotation.VisibleForTesting;
+
+import de.dennisguse.opentracks.content.SensorDataSetLocation;
+import de.dennisguse.opentracks.content.sensor.SensorDataSet;
+import de.dennisguse.opentracks.util.LocationUtils;
+import de.dennisguse.opentracks.util.UnitConversions;
+
+/**
+ * Updater for {@link SensorStatistics}.
+ * Computes time in heart rate zone, normalized power, cadence distribution and heart rate drift in a single pass over the locations of a track.
+ * Memory usage is constant and does not depend on the number of locations.
+ * NOTE: Some of the locations represent pause/resume separator.
+ */
+public class SensorStatisticsUpdater {
+
+    /**
+     * The window (s) of the rolling average used for normalized power.
+     */
+    @VisibleForTesting
+    static final int NORMALIZED_POWER_WINDOW = 30;
+
+    /**
+     * Sensor values are held until the next reading, but not longer than this (ms).
+     */
+    @VisibleForTesting
+    static final long MAX_SENSOR_DATA_GAP = 30 * UnitConversions.ONE_SECOND;
+
+    /**
+     * The number of buckets used to compute the heart rate drift.
+     * If all buckets are filled, neighbouring buckets are merged.
+     */
+    private static final int NUM_DRIFT_BUCKETS = 32;
+
+    /**
+     * The initial duration (ms) of a heart rate drift bucket.
+     */
+    private static final long DRIFT_BUCKET_DURATION_INITIAL = 30 * UnitConversions.ONE_SECOND;
+
+    /**
+     * The minimal duration (ms) with heart rate and output to compute the heart rate drift.
+     */
+    @VisibleForTesting
+    static final long MIN_DRIFT_DURATION = 10 * 60 * UnitConversions.ONE_SECOND;
+
+    private final double maxHeartRate;
+
+    private final SensorStatistics sensorStatistics = new SensorStatistics();
+
+    // The last sensor reading; the values are valid from lastTime till the next reading.
+    private long lastTime = -1L;
+    private float lastHeartRate = SensorDataSet.DATA_UNAVAILABLE;
+    private float lastCadence = SensorDataSet.DATA_UNAVAILABLE;
+    private float lastPower = SensorDataSet.DATA_UNAVAILABLE;
+    private float lastSpeed = Float.NaN;
+
+    // Normalized power: power resampled to 1 Hz; the last NORMALIZED_POWER_WINDOW samples.
+    private final double[] powerWindow = new double[NORMALIZED_POWER_WINDOW];
+    private int powerWindowIndex = 0;
+    private int powerWindowSize = 0;
+    private double powerWindowSum = 0;
+    // Remaining time (ms) less than a second that was not yet resampled.
+    private long powerRemainder = 0;
+    private double powerRollingAverageFourthSum = 0;
+    private long powerRollingAverageCount = 0;
+
+    // Heart rate drift: time weighted sums of heart rate and output (power or speed) per bucket.
+    private final double[] driftHeartRateSum = new double[NUM_DRIFT_BUCKETS];
+    private final double[] driftOutputSum = new double[NUM_DRIFT_BUCKETS];
+    private long driftBucketDuration = DRIFT_BUCKET_DURATION_INITIAL;
+    private long driftDuration = 0;
+    // If power was seen, drift is computed from power only; speed otherwise.
+    private boolean driftUsesPower = false;
+
+    /**
+     * Creates a new sensor statistics updater.
+     *
+     * @param maxHeartRate the maximal heart rate (bpm) used for the heart rate zones
+     */
+    public SensorStatisticsUpdater(int maxHeartRate) {
+        this.maxHeartRate = maxHeartRate;
+    }
+
+    /**
+     * Gets a snapshot of the sensor statistics.
+     */
+    public SensorStatistics getSensorStatistics() {
+        SensorStatistics stats = new SensorStatistics(sensorStatistics);
+        if (powerRollingAverageCount > 0) {
+            stats.setNormalizedPower(Math.pow(powerRollingAverageFourthSum / powerRollingAverageCount, 0.25));
+        }
+        stats.setHeartRateDrift(computeHeartRateDrift());
+        return stats;
+    }
+
+    /**
+     * Adds a location.
+     *
+     * @param location the location
+     */
+    public void addLocation(Location location) {
+        if (!LocationUtils.isValidLocation(location)) {
+            // Either pause or resume marker: nothing was recorded in between.
+            resetLastReading();
+            return;
+        }
+
+        long time = location.getTime();
+        if (lastTime != -1L) {
+            long duration = time - lastTime;
+            if (duration > 0) {
+                accumulate(Math.min(duration, MAX_SENSOR_DATA_GAP));
+            }
+        }
+
+        lastTime = time;
+        lastSpeed = location.hasSpeed() ? location.getSpeed() : Float.NaN;
+        SensorDataSet sensorDataSet = location instanceof SensorDataSetLocation ? ((SensorDataSetLocation) location).getSensorDataSet() : null;
+        if (sensorDataSet != null) {
+            lastHeartRate = sensorDataSet.hasHeartRate() ? sensorDataSet.getHeartRate() : SensorDataSet.DATA_UNAVAILABLE;
+            lastCadence = sensorDataSet.hasCadence() ? sensorDataSet.getCadence() : SensorDataSet.DATA_UNAVAILABLE;
+            lastPower = sensorDataSet.hasPower() ? sensorDataSet.getPower() : SensorDataSet.DATA_UNAVAILABLE;
+        } else {
+            lastHeartRate = SensorDataSet.DATA_UNAVAILABLE;
+            lastCadence = SensorDataSet.DATA_UNAVAILABLE;
+            lastPower = SensorDataSet.DATA_UNAVAILABLE;
+        }
+    }
+
+    private void resetLastReading() {
+        lastTime = -1L;
+        lastHeartRate = SensorDataSet.DATA_UNAVAILABLE;
+        lastCadence = SensorDataSet.DATA_UNAVAILABLE;
+        lastPower = SensorDataSet.DATA_UNAVAILABLE;
+        lastSpeed = Float.NaN;
+    }
+
+    /**
+     * Accounts the last reading for a duration.
+     *
+     * @param duration the duration in ms
+     */
+    private void accumulate(long duration) {
+        boolean hasHeartRate = !Float.isNaN(lastHeartRate) && lastHeartRate > 0;
+        if (hasHeartRate) {
+            sensorStatistics.addHeartRateZoneTime(SensorStatistics.getHeartRateZone(lastHeartRate, maxHeartRate), duration);
+        }
+        if (!Float.isNaN(lastCadence)) {
+            sensorStatistics.addCadenceTime(SensorStatistics.getCadenceBucket(lastCadence), duration);
+        }
+        if (!Float.isNaN(lastPower)) {
+            updatePower(lastPower, duration);
+        }
+
+        if (hasHeartRate) {
+            if (!Float.isNaN(lastPower)) {
+                if (!driftUsesPower) {
+                    // Power is more meaningful than speed; discard speed based data.
+                    resetDrift();
+                    driftUsesPower = true;
+                }
+                updateDrift(lastHeartRate, lastPower, duration);
+            } else if (!driftUsesPower && !Float.isNaN(lastSpeed) && lastSpeed > 0) {
+                updateDrift(lastHeartRate, lastSpeed, duration);
+            }
+        }
+    }
+
+    /**
+     * Resamples power to 1 Hz and updates the 30 s rolling average.
+     *
+     * @param power    the power (W)
+     * @param duration the duration (ms)
+     */
+    private void updatePower(double power, long duration) {
+        powerRemainder += duration;
+        while (powerRemainder >= UnitConversions.ONE_SECOND) {
+            powerRemainder -= UnitConversions.ONE_SECOND;
+
+            if (powerWindowSize == NORMALIZED_POWER_WINDOW) {
+                powerWindowSum -= powerWindow[powerWindowIndex];
+            } else {
+                powerWindowSize++;
+            }
+            powerWindow[powerWindowIndex] = power;
+            powerWindowSum += power;
+            powerWindowIndex = (powerWindowIndex + 1) % NORMALIZED_POWER_WINDOW;
+
+            if (powerWindowSize == NORMALIZED_POWER_WINDOW) {
+                double rollingAverage = powerWindowSum / NORMALIZED_POWER_WINDOW;
+                powerRollingAverageFourthSum += rollingAverage * rollingAverage * rollingAverage * rollingAverage;
+                powerRollingAverageCount++;
+            }
+        }
+    }
+
+    /**
+     * Adds heart rate and output to the drift buckets.
+     *
+     * @param heartRate the heart rate (bpm)
+     * @param output    the output (power or speed)
+     * @param duration  the duration (ms)
+     */
+    private void updateDrift(double heartRate, double output, long duration) {
+        int bucket = (int) (driftDuration / driftBucketDuration);
+        if (bucket >= NUM_DRIFT_BUCKETS) {
+            for (int i = 0; i < NUM_DRIFT_BUCKETS / 2; i++) {
+                driftHeartRateSum[i] = driftHeartRateSum[2 * i] + driftHeartRateSum[2 * i + 1];
+                driftOutputSum[i] = driftOutputSum[2 * i] + driftOutputSum[2 * i + 1];
+            }
+            for (int i = NUM_DRIFT_BUCKETS / 2; i < NUM_DRIFT_BUCKETS; i++) {
+                driftHeartRateSum[i] = 0;
+                driftOutputSum[i] = 0;
+            }
+            driftBucketDuration *= 2;
+            bucket = (int) (driftDuration / driftBucketDuration);
+        }
+        driftHeartRateSum[bucket] += heartRate * duration;
+        driftOutputSum[bucket] += output * duration;
+        driftDuration += duration;
+    }
+
+    private void resetDrift() {
+        for (int i = 0; i < NUM_DRIFT_BUCKETS; i++) {
+            driftHeartRateSum[i] = 0;
+            driftOutputSum[i] = 0;
+        }
+        driftBucketDuration = DRIFT_BUCKET_DURATION_INITIAL;
+        driftDuration = 0;
+    }
+
+    /**
+     * Computes the heart rate drift by comparing output per heart beat of the first and second half.
+     * Returns NaN if there is not enough data.
+     */
+    private double computeHeartRateDrift() {
+        if (driftDuration < MIN_DRIFT_DURATION) {
+            return Double.NaN;
+        }
+        int numBuckets = (int) ((driftDuration - 1) / driftBucketDuration) + 1;
+        int half = numBuckets / 2;
+
+        double firstHeartRate = 0;
+        double firstOutput = 0;
+        for (int i = 0; i < half; i++) {
+            firstHeartRate += driftHeartRateSum[i];
+            firstOutput += driftOutputSum[i];
+        }
+        double secondHeartRate = 0;
+        double secondOutput = 0;
+        for (int i = half; i < numBuckets; i++) {
+            secondHeartRate += driftHeartRateSum[i];
+            secondOutput += driftOutputSum[i];
+        }
+        if (firstHeartRate <= 0 || secondHeartRate <= 0 || firstOutput <= 0) {
+            return Double.NaN;
+        }
+
+        double firstEfficiency = firstOutput / firstHeartRate;
+        double secondEfficiency = secondOutput / secondHeartRate;
+        return (firstEfficiency - secondEfficiency) / firstEfficiency * 100;
+    }
+}
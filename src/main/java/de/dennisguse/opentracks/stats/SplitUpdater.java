@@ -0,0 +1,200 @@
+package de.dennisguse.opentracks.stats;
+
+import android.location.Location;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import de.dennisguse.opentracks.content.SensorDataSetLocation;
+import de.dennisguse.opentracks.content.Split;
+import de.dennisguse.opentracks.content.sensor.SensorDataSet;
+import de.dennisguse.opentracks.util.LocationUtils;
+import de.dennisguse.opentracks.util.UnitConversions;
+
+/**
+ * Computes the kilometer and mile splits of a track incrementally from the {@link TripStatistics} after each location.
+ * Completed splits are returned once and never change afterwards (append-only).
+ * The values at the split boundary are linearly interpolated between two locations.
+ * NOTE: Some of the locations represent pause/resume separator.
+ */
+public class SplitUpdater {
+
+    @VisibleForTesting
+    static final double KILOMETER = UnitConversions.KM_TO_M;
+    @VisibleForTesting
+    static final double MILE = 1.0 / UnitConversions.M_TO_MI;
+
+    /**
+     * Heart rate values are held until the next reading, but not longer than this (ms).
+     */
+    private static final long MAX_HEART_RATE_GAP = 30 * UnitConversions.ONE_SECOND;
+
+    private final Accumulator kilometers;
+    private final Accumulator miles;
+
+    // The trip statistics values of the previous location
+    private double previousDistance;
+    private long previousTotalTime;
+    private long previousMovingTime;
+    private double previousElevationGain;
+
+    private long lastHeartRateTime = -1L;
+    private float lastHeartRate = SensorDataSet.DATA_UNAVAILABLE;
+
+    /**
+     * Creates a split updater for a new track.
+     */
+    public SplitUpdater() {
+        this(Collections.<Split>emptyList(), Collections.<Split>emptyList());
+    }
+
+    /**
+     * Creates a split updater continuing after already completed splits (e.g., if a recording is restarted).
+     *
+     * @param kilometerSplits the completed kilometer splits
+     * @param mileSplits      the completed mile splits
+     */
+    public SplitUpdater(List<Split> kilometerSplits, List<Split> mileSplits) {
+        kilometers = new Accumulator(true, KILOMETER, kilometerSplits);
+        miles = new Accumulator(false, MILE, mileSplits);
+
+        // Continue from the end of the longest completed distance
+        Accumulator last = kilometers.startDistance >= miles.startDistance ? kilometers : miles;
+        previousDistance = last.startDistance;
+        previousTotalTime = last.startTotalTime;
+        previousMovingTime = last.startMovingTime;
+        previousElevationGain = last.startElevationGain;
+    }
+
+    /**
+     * Adds a location.
+     *
+     * @param location       the location
+     * @param tripStatistics the trip statistics of the track including the location
+     * @return the splits completed by the location; usually empty
+     */
+    public List<Split> addLocation(Location location, TripStatistics tripStatistics) {
+        updateHeartRate(location);
+
+        double distance = tripStatistics.getTotalDistance();
+        long totalTime = tripStatistics.getTotalTime();
+        long movingTime = tripStatistics.getMovingTime();
+        double elevationGain = tripStatistics.getTotalElevationGain();
+
+        List<Split> splits = completeSplits(kilometers, location.getTime(), distance, totalTime, movingTime, elevationGain, null);
+        splits = completeSplits(miles, location.getTime(), distance, totalTime, movingTime, elevationGain, splits);
+
+        previousDistance = distance;
+        previousTotalTime = totalTime;
+        previousMovingTime = movingTime;
+        previousElevationGain = elevationGain;
+
+        return splits != null ? splits : Collections.<Split>emptyList();
+    }
+
+    /**
+     * Completes the splits of an accumulator up to a distance.
+     *
+     * @param splits the list to add the completed splits to; can be null
+     * @return the list with the completed splits; null if there are none
+     */
+    private List<Split> completeSplits(Accumulator accumulator, long time, double distance, long totalTime, long movingTime, double elevationGain, List<Split> splits) {
+        while (distance >= accumulator.startDistance + accumulator.splitDistance) {
+            double boundary = accumulator.startDistance + accumulator.splitDistance;
+            double fraction = distance > previousDistance ? (boundary - previousDistance) / (distance - previousDistance) : 1.0;
+            fraction = Math.max(0.0, Math.min(1.0, fraction));
+
+            long boundaryTotalTime = previousTotalTime + Math.round(fraction * (totalTime - previousTotalTime));
+            long boundaryMovingTime = previousMovingTime + Math.round(fraction * (movingTime - previousMovingTime));
+            double boundaryElevationGain = previousElevationGain + fraction * (elevationGain - previousElevationGain);
+
+            Split split = new Split();
+            split.setMetric(accumulator.metric);
+            split.setNumber(accumulator.number + 1);
+            split.setDistance(accumulator.splitDistance);
+            split.setTotalTime(boundaryTotalTime - accumulator.startTotalTime);
+            split.setMovingTime(boundaryMovingTime - accumulator.startMovingTime);
+            split.setElevationGain(boundaryElevationGain - accumulator.startElevationGain);
+            if (accumulator.heartRateTime > 0) {
+                split.setAverageHeartRate((float) (accumulator.heartRateSum / accumulator.heartRateTime));
+            }
+            split.setStopTime(time);
+
+            if (splits == null) {
+                splits = new ArrayList<>();
+            }
+            splits.add(split);
+
+            accumulator.number++;
+            accumulator.startDistance = boundary;
+            accumulator.startTotalTime = boundaryTotalTime;
+            accumulator.startMovingTime = boundaryMovingTime;
+            accumulator.startElevationGain = boundaryElevationGain;
+            accumulator.heartRateSum = 0.0;
+            accumulator.heartRateTime = 0L;
+        }
+        return splits;
+    }
+
+    private void updateHeartRate(Location location) {
+        if (!LocationUtils.isValidLocation(location)) {
+            lastHeartRateTime = -1L;
+            lastHeartRate = SensorDataSet.DATA_UNAVAILABLE;
+            return;
+        }
+
+        long time = location.getTime();
+        if (lastHeartRateTime != -1L && !Float.isNaN(lastHeartRate)) {
+            long duration = Math.min(time - lastHeartRateTime, MAX_HEART_RATE_GAP);
+            if (duration > 0) {
+                kilometers.addHeartRate(lastHeartRate, duration);
+                miles.addHeartRate(lastHeartRate, duration);
+            }
+        }
+
+        SensorDataSet sensorDataSet = location instanceof SensorDataSetLocation ? ((SensorDataSetLocation) location).getSensorDataSet() : null;
+        lastHeartRate = sensorDataSet != null && sensorDataSet.hasHeartRate() ? sensorDataSet.getHeartRate() : SensorDataSet.DATA_UNAVAILABLE;
+        lastHeartRateTime = time;
+    }
+
+    /**
+     * The state of the current (not yet completed) split of one unit.
+     */
+    private static class Accumulator {
+        final boolean metric;
+        final double splitDistance;
+
+        // The number of completed splits
+        int number;
+
+        // The trip statistics values at the start of the current split
+        double startDistance;
+        long startTotalTime;
+        long startMovingTime;
+        double startElevationGain;
+
+        // Time weighted sum of the heart rate of the current split
+        double heartRateSum;
+        long heartRateTime;
+
+        Accumulator(boolean metric, double splitDistance, List<Split> splits) {
+            this.metric = metric;
+            this.splitDistance = splitDistance;
+            for (Split split : splits) {
+                number = Math.max(number, split.getNumber());
+                startDistance += split.getDistance();
+                startTotalTime += split.getTotalTime();
+                startMovingTime += split.getMovingTime();
+                startElevationGain += split.getElevationGain();
+            }
+        }
+
+        void addHeartRate(float heartRate, long duration) {
+            heartRateSum += heartRate * duration;
+            heartRateTime += duration;
+        }
+    }
+}
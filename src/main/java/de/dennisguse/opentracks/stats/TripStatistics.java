@@ -59,6 +59,15 @@ public class TripStatistics {
      * @param other another statistics data object to copy from
      */
     public TripStatistics(TripStatistics other) {
+        set(other);
+    }
+
+    /**
+     * Copies another statistics data object into this one.
+     *
+     * @param other another statistics data object to copy from
+     */
+    public void set(TripStatistics other) {
         startTime = other.startTime;
         stopTime = other.stopTime;
         totalDistance = other.totalDistance;
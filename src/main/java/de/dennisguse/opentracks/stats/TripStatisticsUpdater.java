@@ -21,6 +21,7 @@ import android.util.Log;
 
 import androidx.annotation.VisibleForTesting;
 
+import de.dennisguse.opentracks.util.GeodesyUtils;
 import de.dennisguse.opentracks.util.LocationUtils;
 
 import static de.dennisguse.opentracks.services.TrackRecordingService.MAX_NO_MOVEMENT_SPEED;
@@ -70,20 +71,31 @@ public class TripStatisticsUpdater {
     private final TripStatistics tripStatistics;
 
     // A buffer of the recent elevation readings (m)
-    private final DoubleBuffer elevationBuffer = new DoubleBuffer(ELEVATION_SMOOTHING_FACTOR);
+    private final DoubleBuffer elevationBuffer;
     // A buffer of the recent run readings (m) for calculating grade
-    private final DoubleBuffer runBuffer = new DoubleBuffer(RUN_SMOOTHING_FACTOR);
+    private final DoubleBuffer runBuffer;
     // A buffer of the recent grade calculations (%)
-    private final DoubleBuffer gradeBuffer = new DoubleBuffer(GRADE_SMOOTHING_FACTOR);
+    private final DoubleBuffer gradeBuffer;
     // A buffer of the recent speed readings (m/s) for calculating max speed
-    private final DoubleBuffer speedBuffer = new DoubleBuffer(SPEED_SMOOTHING_FACTOR);
+    private final DoubleBuffer speedBuffer;
+    // Caches the scale of the current latitude for distance computations
+    private final GeodesyUtils.LocalScale localScale;
 
     // The current segment's trip statistics
     private TripStatistics currentSegment;
-    // Current segment's last location.
-    private Location lastLocation;
+    // Current segment's last location; the values are kept instead of the Location, so track points can be added from columns.
+    private boolean hasLastLocation = false;
+    private long lastTime;
+    private double lastLatitude;
+    private double lastLongitude;
+    // NaN if not available
+    private float lastSpeed;
     // Current segment's last moving location
-    private Location lastMovingLocation;
+    private boolean hasLastMovingLocation = false;
+    private double lastMovingLatitude;
+    private double lastMovingLongitude;
+    // True if the last location is the last moving location
+    private boolean lastLocationIsMoving = false;
 
     /**
      * Creates a new trip statistics updater.
@@ -93,6 +105,45 @@ public class TripStatisticsUpdater {
     public TripStatisticsUpdater(long startTime) {
         tripStatistics = init(startTime);
         currentSegment = init(startTime);
+        elevationBuffer = new DoubleBuffer(ELEVATION_SMOOTHING_FACTOR);
+        runBuffer = new DoubleBuffer(RUN_SMOOTHING_FACTOR);
+        gradeBuffer = new DoubleBuffer(GRADE_SMOOTHING_FACTOR);
+        speedBuffer = new DoubleBuffer(SPEED_SMOOTHING_FACTOR);
+        localScale = new GeodesyUtils.LocalScale();
+    }
+
+    /**
+     * Copy constructor; the copy continues with the same state (e.g., to recompute a part of a track).
+     *
+     * @param other the other trip statistics updater
+     */
+    public TripStatisticsUpdater(TripStatisticsUpdater other) {
+        this(other.tripStatistics.getStartTime());
+        set(other);
+    }
+
+    /**
+     * Copies the state of another trip statistics updater into this one; unlike the copy constructor, does not allocate (e.g., for a reused checkpoint).
+     *
+     * @param other the other trip statistics updater
+     */
+    public void set(TripStatisticsUpdater other) {
+        tripStatistics.set(other.tripStatistics);
+        currentSegment.set(other.currentSegment);
+        elevationBuffer.set(other.elevationBuffer);
+        runBuffer.set(other.runBuffer);
+        gradeBuffer.set(other.gradeBuffer);
+        speedBuffer.set(other.speedBuffer);
+        localScale.set(other.localScale);
+        hasLastLocation = other.hasLastLocation;
+        lastTime = other.lastTime;
+        lastLatitude = other.lastLatitude;
+        lastLongitude = other.lastLongitude;
+        lastSpeed = other.lastSpeed;
+        hasLastMovingLocation = other.hasLastMovingLocation;
+        lastMovingLatitude = other.lastMovingLatitude;
+        lastMovingLongitude = other.lastMovingLongitude;
+        lastLocationIsMoving = other.lastLocationIsMoving;
     }
 
     public void updateTime(long time) {
@@ -110,6 +161,20 @@ public class TripStatisticsUpdater {
         return stats;
     }
 
+    /**
+     * Gets the track's total distance; like {@link #getTripStatistics()}, but without a snapshot (e.g., for every track point of a chart).
+     */
+    public double getTotalDistance() {
+        return tripStatistics.getTotalDistance() + currentSegment.getTotalDistance();
+    }
+
+    /**
+     * Gets the track's total time; like {@link #getTripStatistics()}, but without a snapshot.
+     */
+    public long getTotalTime() {
+        return tripStatistics.getTotalTime() + currentSegment.getTotalTime();
+    }
+
     /**
      * Adds a location.
      * TODO: This assume location has a valid time.
@@ -118,19 +183,36 @@ public class TripStatisticsUpdater {
      * @param minRecordingDistance the min recording distance
      */
     public void addLocation(Location location, int minRecordingDistance) {
+        addTrackPoint(location.getTime(), location.getLatitude(), location.getLongitude(),
+                location.hasAltitude() ? location.getAltitude() : Double.NaN,
+                location.hasSpeed() ? location.getSpeed() : Float.NaN, minRecordingDistance);
+    }
+
+    /**
+     * Adds a track point; like {@link #addLocation(Location, int)}, but from its values (e.g., the columns of a {@link de.dennisguse.opentracks.content.TrackPointCache.Snapshot}).
+     * So, no {@link Location} needs to be created per track point.
+     *
+     * @param time                 the time
+     * @param latitude             the latitude (invalid for pause/resume separators)
+     * @param longitude            the longitude
+     * @param altitude             the altitude or NaN if not available
+     * @param speed                the speed or NaN if not available
+     * @param minRecordingDistance the min recording distance
+     */
+    public void addTrackPoint(long time, double latitude, double longitude, double altitude, float speed, int minRecordingDistance) {
         // Always update time
-        updateTime(location.getTime());
-        if (!LocationUtils.isValidLocation(location)) {
+        updateTime(time);
+        if (!LocationUtils.isValidLocation(latitude, longitude)) {
             // Either pause or resume marker
-            if (location.getLatitude() == PAUSE_LATITUDE) {
-                if (lastLocation != null && lastMovingLocation != null && lastLocation != lastMovingLocation) {
-                    currentSegment.addTotalDistance(lastMovingLocation.distanceTo(lastLocation));
+            if (latitude == PAUSE_LATITUDE) {
+                if (hasLastLocation && hasLastMovingLocation && !lastLocationIsMoving) {
+                    currentSegment.addTotalDistance(localScale.distance(lastMovingLatitude, lastMovingLongitude, lastLatitude, lastLongitude));
                 }
                 tripStatistics.merge(currentSegment);
             }
-            currentSegment = init(location.getTime());
-            lastLocation = null;
-            lastMovingLocation = null;
+            currentSegment = init(time);
+            hasLastLocation = false;
+            hasLastMovingLocation = false;
             elevationBuffer.reset();
             runBuffer.reset();
             gradeBuffer.reset();
@@ -138,27 +220,27 @@ public class TripStatisticsUpdater {
             return;
         }
 
-        currentSegment.updateLatitudeExtremities(location.getLatitude());
-        currentSegment.updateLongitudeExtremities(location.getLongitude());
+        currentSegment.updateLatitudeExtremities(latitude);
+        currentSegment.updateLongitudeExtremities(longitude);
 
         //TODO Use Barometer to compute elevation gain.
-        double elevationDifference = location.hasAltitude() ? updateElevation(location.getAltitude()) : 0.0;
+        double elevationDifference = !Double.isNaN(altitude) ? updateElevation(altitude) : 0.0;
 
-        if (lastLocation == null || lastMovingLocation == null) {
-            lastLocation = location;
-            lastMovingLocation = location;
+        if (!hasLastLocation || !hasLastMovingLocation) {
+            setLastLocation(time, latitude, longitude, speed);
+            setLastMovingLocation(latitude, longitude);
             return;
         }
 
-        double movingDistance = lastMovingLocation.distanceTo(location);
-        if (movingDistance < minRecordingDistance && (!location.hasSpeed() || location.getSpeed() < MAX_NO_MOVEMENT_SPEED)) {
+        double movingDistance = localScale.distance(lastMovingLatitude, lastMovingLongitude, latitude, longitude);
+        if (movingDistance < minRecordingDistance && (Float.isNaN(speed) || speed < MAX_NO_MOVEMENT_SPEED)) {
             speedBuffer.reset();
-            lastLocation = location;
+            setLastLocation(time, latitude, longitude, speed);
             return;
         }
-        long movingTime = location.getTime() - lastLocation.getTime();
+        long movingTime = time - lastTime;
         if (movingTime < 0) {
-            lastLocation = location;
+            setLastLocation(time, latitude, longitude, speed);
             return;
         }
 
@@ -169,16 +251,32 @@ public class TripStatisticsUpdater {
         currentSegment.addMovingTime(movingTime);
 
         // Update grade
-        double run = lastLocation.distanceTo(location);
+        double run = localScale.distance(lastLatitude, lastLongitude, latitude, longitude);
         updateGrade(run, elevationDifference);
 
         // Update max speed
-        if (location.hasSpeed() && lastLocation.hasSpeed()) {
-            updateSpeed(location.getTime(), location.getSpeed(), lastLocation.getTime(), lastLocation.getSpeed());
+        if (!Float.isNaN(speed) && !Float.isNaN(lastSpeed)) {
+            updateSpeed(time, speed, lastTime, lastSpeed);
         }
 
-        lastLocation = location;
-        lastMovingLocation = location;
+        setLastLocation(time, latitude, longitude, speed);
+        setLastMovingLocation(latitude, longitude);
+    }
+
+    private void setLastLocation(long time, double latitude, double longitude, float speed) {
+        hasLastLocation = true;
+        lastTime = time;
+        lastLatitude = latitude;
+        lastLongitude = longitude;
+        lastSpeed = speed;
+        lastLocationIsMoving = false;
+    }
+
+    private void setLastMovingLocation(double latitude, double longitude) {
+        hasLastMovingLocation = true;
+        lastMovingLatitude = latitude;
+        lastMovingLongitude = longitude;
+        lastLocationIsMoving = true;
     }
 
     /**
@@ -50,6 +50,10 @@ public class FileUtils {
      * The pictures directory under the app's external storage directory.
      */
     private static final String PICTURES_DIR = "pictures";
+    /**
+     * The directory of the digital elevation model (SRTM/HGT tiles) under the app's external storage directory.
+     */
+    private static final String DEM_DIR = "dem";
 
     private FileUtils() {
     }
@@ -101,6 +105,10 @@ public class FileUtils {
         return new File(getPath(PICTURES_DIR, TRACK_PREFIX + trackId));
     }
 
+    public static File getDemDir() {
+        return new File(getPath(DEM_DIR));
+    }
+
     /**
      * Gets the display name for a path on the external storage.
      *
@@ -0,0 +1,240 @@
+package de.dennisguse.opentracks.util;
+
+/**
+ * Distance and bearing computations on primitive doubles (no {@link android.location.Location} objects needed).
+ * <p>
+ * Short distances (less than {@link #LOCAL_APPROXIMATION_MAX_DEGREES} and not close to the poles) are computed with an equirectangular approximation using the local radii of curvature of the WGS84 ellipsoid.
+ * Longer distances are computed with Vincenty's formula (like {@link android.location.Location#distanceTo(android.location.Location)}).
+ * The relative error against {@link android.location.Location#distanceTo(android.location.Location)} is below {@link #MAX_RELATIVE_ERROR}.
+ */
+public class GeodesyUtils {
+
+    // WGS84 ellipsoid
+    private static final double SEMI_MAJOR_AXIS = 6378137.0;
+    private static final double FLATTENING = 1 / 298.257223563;
+    private static final double SEMI_MINOR_AXIS = SEMI_MAJOR_AXIS * (1.0 - FLATTENING);
+    private static final double ECCENTRICITY_SQUARED = FLATTENING * (2.0 - FLATTENING);
+
+    /**
+     * Mean earth radius (m) for spherical computations.
+     */
+    public static final double MEAN_EARTH_RADIUS = 6371008.8;
+
+    /**
+     * Maximal difference in latitude and longitude (degree) for the local approximation.
+     */
+    static final double LOCAL_APPROXIMATION_MAX_DEGREES = 0.1;
+
+    /**
+     * Maximal absolute latitude (degree) for the local approximation; the longitude scale changes too fast close to the poles.
+     */
+    static final double LOCAL_APPROXIMATION_MAX_LATITUDE = 85.0;
+
+    /**
+     * The relative error of {@link #distance(double, double, double, double)} against Android's implementation.
+     */
+    public static final double MAX_RELATIVE_ERROR = 0.001;
+
+    /**
+     * The relative error of {@link #haversine(double, double, double, double)} (spherical earth) against Android's implementation.
+     */
+    public static final double MAX_RELATIVE_ERROR_HAVERSINE = 0.006;
+
+    private static final int VINCENTY_MAX_ITERATIONS = 20;
+    private static final double VINCENTY_TOLERANCE = 1.0e-12;
+
+    private GeodesyUtils() {
+    }
+
+    /**
+     * Computes the distance between two coordinates.
+     *
+     * @param latitude1  the latitude of the first coordinate (degree)
+     * @param longitude1 the longitude of the first coordinate (degree)
+     * @param latitude2  the latitude of the second coordinate (degree)
+     * @param longitude2 the longitude of the second coordinate (degree)
+     * @return the distance in m
+     */
+    public static double distance(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double deltaLongitude = normalizeLongitude(longitude2 - longitude1);
+        if (isLocal(latitude1, latitude2, deltaLongitude)) {
+            double latitude = (latitude1 + latitude2) * 0.5;
+            double sinLatitude = Math.sin(latitude * UnitConversions.DEG_TO_RAD);
+            double cosLatitude = Math.cos(latitude * UnitConversions.DEG_TO_RAD);
+            double w2 = 1.0 - ECCENTRICITY_SQUARED * sinLatitude * sinLatitude;
+            double w = Math.sqrt(w2);
+            double x = deltaLongitude * SEMI_MAJOR_AXIS / w * cosLatitude;
+            double y = (latitude2 - latitude1) * SEMI_MAJOR_AXIS * (1.0 - ECCENTRICITY_SQUARED) / (w2 * w);
+            return Math.sqrt(x * x + y * y) * UnitConversions.DEG_TO_RAD;
+        }
+        return vincenty(latitude1, longitude1, latitude2, longitude2);
+    }
+
+    /**
+     * Computes the distance between two coordinates on a sphere.
+     * Cheaper than {@link #distance(double, double, double, double)} for long distances, but less accurate (see {@link #MAX_RELATIVE_ERROR_HAVERSINE}).
+     *
+     * @return the distance in m
+     */
+    public static double haversine(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double phi1 = latitude1 * UnitConversions.DEG_TO_RAD;
+        double phi2 = latitude2 * UnitConversions.DEG_TO_RAD;
+        double sinDeltaPhi = Math.sin((phi2 - phi1) * 0.5);
+        double sinDeltaLambda = Math.sin((longitude2 - longitude1) * UnitConversions.DEG_TO_RAD * 0.5);
+        double a = sinDeltaPhi * sinDeltaPhi + Math.cos(phi1) * Math.cos(phi2) * sinDeltaLambda * sinDeltaLambda;
+        return 2.0 * MEAN_EARTH_RADIUS * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
+    /**
+     * Computes the distance between two coordinates on the WGS84 ellipsoid using Vincenty's inverse formula.
+     * Falls back to {@link #haversine(double, double, double, double)} if it does not converge (nearly antipodal coordinates).
+     *
+     * @return the distance in m
+     */
+    public static double vincenty(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double lambdaDelta = normalizeLongitude(longitude2 - longitude1) * UnitConversions.DEG_TO_RAD;
+        double u1 = Math.atan((1.0 - FLATTENING) * Math.tan(latitude1 * UnitConversions.DEG_TO_RAD));
+        double u2 = Math.atan((1.0 - FLATTENING) * Math.tan(latitude2 * UnitConversions.DEG_TO_RAD));
+        double sinU1 = Math.sin(u1);
+        double cosU1 = Math.cos(u1);
+        double sinU2 = Math.sin(u2);
+        double cosU2 = Math.cos(u2);
+
+        double lambda = lambdaDelta;
+        for (int i = 0; i < VINCENTY_MAX_ITERATIONS; i++) {
+            double sinLambda = Math.sin(lambda);
+            double cosLambda = Math.cos(lambda);
+            double t1 = cosU2 * sinLambda;
+            double t2 = cosU1 * sinU2 - sinU1 * cosU2 * cosLambda;
+            double sinSigma = Math.sqrt(t1 * t1 + t2 * t2);
+            if (sinSigma == 0.0) {
+                // Coincident points
+                return 0.0;
+            }
+            double cosSigma = sinU1 * sinU2 + cosU1 * cosU2 * cosLambda;
+            double sigma = Math.atan2(sinSigma, cosSigma);
+            double sinAlpha = cosU1 * cosU2 * sinLambda / sinSigma;
+            double cosSqAlpha = 1.0 - sinAlpha * sinAlpha;
+            // cos2SigmaM is 0 on the equator (cosSqAlpha = 0)
+            double cos2SigmaM = cosSqAlpha == 0.0 ? 0.0 : cosSigma - 2.0 * sinU1 * sinU2 / cosSqAlpha;
+            double c = FLATTENING / 16.0 * cosSqAlpha * (4.0 + FLATTENING * (4.0 - 3.0 * cosSqAlpha));
+
+            double lambdaPrevious = lambda;
+            lambda = lambdaDelta + (1.0 - c) * FLATTENING * sinAlpha * (sigma + c * sinSigma * (cos2SigmaM + c * cosSigma * (-1.0 + 2.0 * cos2SigmaM * cos2SigmaM)));
+
+            if (Math.abs(lambda - lambdaPrevious) < VINCENTY_TOLERANCE) {
+                double uSquared = cosSqAlpha * (SEMI_MAJOR_AXIS * SEMI_MAJOR_AXIS - SEMI_MINOR_AXIS * SEMI_MINOR_AXIS) / (SEMI_MINOR_AXIS * SEMI_MINOR_AXIS);
+                double a = 1.0 + uSquared / 16384.0 * (4096.0 + uSquared * (-768.0 + uSquared * (320.0 - 175.0 * uSquared)));
+                double b = uSquared / 1024.0 * (256.0 + uSquared * (-128.0 + uSquared * (74.0 - 47.0 * uSquared)));
+                double deltaSigma = b * sinSigma * (cos2SigmaM + b / 4.0 * (cosSigma * (-1.0 + 2.0 * cos2SigmaM * cos2SigmaM) - b / 6.0 * cos2SigmaM * (-3.0 + 4.0 * sinSigma * sinSigma) * (-3.0 + 4.0 * cos2SigmaM * cos2SigmaM)));
+                return SEMI_MINOR_AXIS * a * (sigma - deltaSigma);
+            }
+        }
+        return haversine(latitude1, longitude1, latitude2, longitude2);
+    }
+
+    /**
+     * Computes the initial bearing from the first to the second coordinate (on a sphere).
+     *
+     * @return the bearing in degrees east of true north (-180 to 180) like {@link android.location.Location#bearingTo(android.location.Location)}
+     */
+    public static float bearing(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double phi1 = latitude1 * UnitConversions.DEG_TO_RAD;
+        double phi2 = latitude2 * UnitConversions.DEG_TO_RAD;
+        double deltaLambda = normalizeLongitude(longitude2 - longitude1) * UnitConversions.DEG_TO_RAD;
+        double cosPhi2 = Math.cos(phi2);
+        double y = Math.sin(deltaLambda) * cosPhi2;
+        double x = Math.cos(phi1) * Math.sin(phi2) - Math.sin(phi1) * cosPhi2 * Math.cos(deltaLambda);
+        return (float) Math.toDegrees(Math.atan2(y, x));
+    }
+
+    private static boolean isLocal(double latitude1, double latitude2, double deltaLongitude) {
+        return Math.abs(latitude2 - latitude1) < LOCAL_APPROXIMATION_MAX_DEGREES && Math.abs(deltaLongitude) < LOCAL_APPROXIMATION_MAX_DEGREES
+                && Math.abs(latitude1) < LOCAL_APPROXIMATION_MAX_LATITUDE && Math.abs(latitude2) < LOCAL_APPROXIMATION_MAX_LATITUDE;
+    }
+
+    /**
+     * Normalizes a longitude difference to -180 to 180 degree.
+     */
+    private static double normalizeLongitude(double deltaLongitude) {
+        if (deltaLongitude > 180.0) {
+            return deltaLongitude - 360.0;
+        }
+        if (deltaLongitude < -180.0) {
+            return deltaLongitude + 360.0;
+        }
+        return deltaLongitude;
+    }
+
+    /**
+     * Computes distances from a moving reference coordinate.
+     * Caches the scale (meters per degree) of the reference latitude; it is only recomputed if the latitude changes by more than {@link #SCALE_UPDATE_DEGREES}.
+     * Not thread-safe.
+     */
+    public static class LocalScale {
+
+        /**
+         * Latitude change (degree) after which the cached scale is recomputed.
+         */
+        static final double SCALE_UPDATE_DEGREES = 0.001;
+
+        private double latitude = Double.NaN;
+        private double metersPerDegreeLatitude;
+        private double metersPerDegreeLongitude;
+
+        public LocalScale() {
+        }
+
+        /**
+         * Copy constructor; the copy computes the same distances.
+         *
+         * @param other the other local scale
+         */
+        public LocalScale(LocalScale other) {
+            set(other);
+        }
+
+        /**
+         * Copies another local scale into this one.
+         *
+         * @param other the other local scale
+         */
+        public void set(LocalScale other) {
+            latitude = other.latitude;
+            metersPerDegreeLatitude = other.metersPerDegreeLatitude;
+            metersPerDegreeLongitude = other.metersPerDegreeLongitude;
+        }
+
+        /**
+         * Computes the distance between two coordinates.
+         * Same accuracy as {@link GeodesyUtils#distance(double, double, double, double)}.
+         *
+         * @return the distance in m
+         */
+        public double distance(double latitude1, double longitude1, double latitude2, double longitude2) {
+            double deltaLatitude = latitude2 - latitude1;
+            double deltaLongitude = normalizeLongitude(longitude2 - longitude1);
+            if (!isLocal(latitude1, latitude2, deltaLongitude)) {
+                return vincenty(latitude1, longitude1, latitude2, longitude2);
+            }
+
+            updateScale((latitude1 + latitude2) * 0.5);
+            double x = deltaLongitude * metersPerDegreeLongitude;
+            double y = deltaLatitude * metersPerDegreeLatitude;
+            return Math.sqrt(x * x + y * y);
+        }
+
+        private void updateScale(double latitude) {
+            if (Math.abs(latitude - this.latitude) < SCALE_UPDATE_DEGREES) {
+                return;
+            }
+            this.latitude = latitude;
+            double sinLatitude = Math.sin(latitude * UnitConversions.DEG_TO_RAD);
+            double cosLatitude = Math.cos(latitude * UnitConversions.DEG_TO_RAD);
+            double w2 = 1.0 - ECCENTRICITY_SQUARED * sinLatitude * sinLatitude;
+            double w = Math.sqrt(w2);
+            metersPerDegreeLatitude = SEMI_MAJOR_AXIS * (1.0 - ECCENTRICITY_SQUARED) / (w2 * w) * UnitConversions.DEG_TO_RAD;
+            metersPerDegreeLongitude = SEMI_MAJOR_AXIS / w * cosLatitude * UnitConversions.DEG_TO_RAD;
+        }
+    }
+}
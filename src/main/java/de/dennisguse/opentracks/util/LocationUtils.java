@@ -49,7 +49,7 @@ public class LocationUtils {
      */
     private static double distance(final Location c0, final Location c1, final Location c2) {
         if (c1.equals(c2)) {
-            return c2.distanceTo(c0);
+            return GeodesyUtils.distance(c2.getLatitude(), c2.getLongitude(), c0.getLatitude(), c0.getLongitude());
         }
 
         final double s0lat = c0.getLatitude() * UnitConversions.DEG_TO_RAD;
@@ -65,22 +65,16 @@ public class LocationUtils {
                 / (s2s1lat * s2s1lat + s2s1lng * s2s1lng);
 
         if (u <= 0) {
-            return c0.distanceTo(c1);
+            return GeodesyUtils.distance(c0.getLatitude(), c0.getLongitude(), c1.getLatitude(), c1.getLongitude());
         }
 
         if (u >= 1) {
-            return c0.distanceTo(c2);
+            return GeodesyUtils.distance(c0.getLatitude(), c0.getLongitude(), c2.getLatitude(), c2.getLongitude());
         }
 
-        Location sa = new Location("");
-        sa.setLatitude(c0.getLatitude() - c1.getLatitude());
-        sa.setLongitude(c0.getLongitude() - c1.getLongitude());
-
-        Location sb = new Location("");
-        sb.setLatitude(u * (c2.getLatitude() - c1.getLatitude()));
-        sb.setLongitude(u * (c2.getLongitude() - c1.getLongitude()));
-
-        return sa.distanceTo(sb);
+        return GeodesyUtils.distance(
+                c0.getLatitude() - c1.getLatitude(), c0.getLongitude() - c1.getLongitude(),
+                u * (c2.getLatitude() - c1.getLatitude()), u * (c2.getLongitude() - c1.getLongitude()));
     }
 
     /**
@@ -165,9 +159,17 @@ public class LocationUtils {
      * @return true if the location is a valid location.
      */
     public static boolean isValidLocation(Location location) {
-        return location != null
-                && Math.abs(location.getLatitude()) <= 90
-                && Math.abs(location.getLongitude()) <= 180;
+        return location != null && isValidLocation(location.getLatitude(), location.getLongitude());
+    }
+
+    /**
+     * Returns true if a latitude and longitude are valid.
+     *
+     * @param latitude  the latitude
+     * @param longitude the longitude
+     */
+    public static boolean isValidLocation(double latitude, double longitude) {
+        return Math.abs(latitude) <= 90 && Math.abs(longitude) <= 180;
     }
 
     /**
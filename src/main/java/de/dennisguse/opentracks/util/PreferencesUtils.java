@@ -328,6 +328,21 @@ public class PreferencesUtils {
         return PreferencesUtils.getInt(context, R.string.max_recording_distance_key, MAX_RECORDING_DISTANCE);
     }
 
+    public static int getMaxHeartRate(Context context) {
+        final int MAX_HEART_RATE = Integer.parseInt(context.getResources().getString(R.string.settings_sensor_max_heart_rate_default));
+        return PreferencesUtils.getInt(context, R.string.settings_sensor_max_heart_rate_key, MAX_HEART_RATE);
+    }
+
+    public static String getElevationSource(Context context) {
+        final String ELEVATION_SOURCE = context.getString(R.string.elevation_source_default);
+        return getString(context, R.string.elevation_source_key, ELEVATION_SOURCE);
+    }
+
+    public static boolean shouldDetectIntervals(Context context) {
+        final boolean DETECT_INTERVALS = context.getResources().getBoolean(R.bool.detect_intervals_default);
+        return getBoolean(context, R.string.detect_intervals_key, DETECT_INTERVALS);
+    }
+
     public static int getMinRecordingInterval(Context context) {
         final int MIN_RECORDING_INTERVAL = Integer.parseInt(context.getResources().getString(R.string.min_recording_interval_default));
         return PreferencesUtils.getInt(context, R.string.min_recording_interval_key, MIN_RECORDING_INTERVAL);
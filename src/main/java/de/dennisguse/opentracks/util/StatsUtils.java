@@ -23,9 +23,13 @@ import android.view.View;
 import android.widget.Spinner;
 import android.widget.TextView;
 
+import java.util.List;
+
 import de.dennisguse.opentracks.R;
+import de.dennisguse.opentracks.content.Split;
 import de.dennisguse.opentracks.content.sensor.SensorDataSet;
 import de.dennisguse.opentracks.services.sensors.BluetoothRemoteSensorManager;
+import de.dennisguse.opentracks.stats.SensorStatistics;
 import de.dennisguse.opentracks.stats.TripStatistics;
 
 /**
@@ -137,6 +141,105 @@ public class StatsUtils {
         }
     }
 
+    /**
+     * Sets the sensor statistics values.
+     * Hides them if no heart rate, cadence or power was recorded.
+     *
+     * @param activity         the activity for finding views
+     * @param sensorStatistics the sensor statistics
+     */
+    public static void setSensorStatisticsValues(Activity activity, SensorStatistics sensorStatistics) {
+        boolean hasData = sensorStatistics != null && (sensorStatistics.hasHeartRate() || sensorStatistics.hasCadence() || sensorStatistics.hasPower());
+        activity.findViewById(R.id.stats_sensor_statistics_separator).setVisibility(hasData ? View.VISIBLE : View.GONE);
+        activity.findViewById(R.id.stats_sensor_statistics_container).setVisibility(hasData ? View.VISIBLE : View.GONE);
+        if (!hasData) {
+            return;
+        }
+        String unknown = activity.getString(R.string.value_unknown);
+
+        TextView normalizedPowerValue = activity.findViewById(R.id.stats_normalized_power_value);
+        normalizedPowerValue.setText(sensorStatistics.hasPower() ? activity.getString(R.string.sensor_state_power_value, Math.round(sensorStatistics.getNormalizedPower())) : unknown);
+
+        TextView trainingLoadValue = activity.findViewById(R.id.stats_training_load_value);
+        trainingLoadValue.setText(sensorStatistics.hasHeartRate() ? StringUtils.formatDecimal(sensorStatistics.getTrainingLoad(), 0) : unknown);
+
+        TextView heartRateDriftValue = activity.findViewById(R.id.stats_heart_rate_drift_value);
+        double heartRateDrift = sensorStatistics.getHeartRateDrift();
+        heartRateDriftValue.setText(Double.isNaN(heartRateDrift) ? unknown : StringUtils.formatDecimal(heartRateDrift, 1) + GRADE_PERCENTAGE);
+
+        int[] zoneLabelIds = {R.id.stats_heart_rate_zone_1_label, R.id.stats_heart_rate_zone_2_label, R.id.stats_heart_rate_zone_3_label, R.id.stats_heart_rate_zone_4_label, R.id.stats_heart_rate_zone_5_label};
+        int[] zoneValueIds = {R.id.stats_heart_rate_zone_1_value, R.id.stats_heart_rate_zone_2_value, R.id.stats_heart_rate_zone_3_value, R.id.stats_heart_rate_zone_4_value, R.id.stats_heart_rate_zone_5_value};
+        for (int i = 0; i < SensorStatistics.NUM_HEART_RATE_ZONES; i++) {
+            TextView zoneLabel = activity.findViewById(zoneLabelIds[i]);
+            zoneLabel.setText(activity.getString(R.string.stats_heart_rate_zone, i + 1));
+            TextView zoneValue = activity.findViewById(zoneValueIds[i]);
+            zoneValue.setText(sensorStatistics.hasHeartRate() ? StringUtils.formatElapsedTime(sensorStatistics.getHeartRateZoneTime(i)) : unknown);
+        }
+
+        StringBuilder cadenceDistribution = new StringBuilder();
+        if (sensorStatistics.hasCadence()) {
+            for (int i = 0; i < SensorStatistics.NUM_CADENCE_BUCKETS; i++) {
+                long time = sensorStatistics.getCadenceTime(i);
+                if (time == 0) {
+                    continue;
+                }
+                if (cadenceDistribution.length() > 0) {
+                    cadenceDistribution.append('\n');
+                }
+                int lower = i * SensorStatistics.CADENCE_BUCKET_SIZE;
+                if (i == SensorStatistics.NUM_CADENCE_BUCKETS - 1) {
+                    cadenceDistribution.append(activity.getString(R.string.stats_cadence_range_open, lower, StringUtils.formatElapsedTime(time)));
+                } else {
+                    cadenceDistribution.append(activity.getString(R.string.stats_cadence_range, lower, lower + SensorStatistics.CADENCE_BUCKET_SIZE - 1, StringUtils.formatElapsedTime(time)));
+                }
+            }
+        } else {
+            cadenceDistribution.append(unknown);
+        }
+        TextView cadenceDistributionValue = activity.findViewById(R.id.stats_cadence_distribution_value);
+        cadenceDistributionValue.setText(cadenceDistribution.toString());
+    }
+
+    /**
+     * Sets the completed splits.
+     * Hides them if there are none.
+     *
+     * @param activity the activity for finding views
+     * @param splits   the completed splits in the current unit (ordered by number)
+     */
+    public static void setSplitValues(Activity activity, List<Split> splits) {
+        boolean hasData = splits != null && !splits.isEmpty();
+        activity.findViewById(R.id.stats_splits_separator).setVisibility(hasData ? View.VISIBLE : View.GONE);
+        activity.findViewById(R.id.stats_splits_container).setVisibility(hasData ? View.VISIBLE : View.GONE);
+        if (!hasData) {
+            return;
+        }
+        boolean metricUnits = PreferencesUtils.isMetricUnits(activity);
+        boolean reportSpeed = PreferencesUtils.isReportSpeed(activity);
+
+        TextView splitsLabel = activity.findViewById(R.id.stats_splits_label);
+        splitsLabel.setText(metricUnits ? R.string.stats_splits_kilometer : R.string.stats_splits_mile);
+
+        StringBuilder splitValues = new StringBuilder();
+        for (Split split : splits) {
+            if (splitValues.length() > 0) {
+                splitValues.append('\n');
+            }
+            Pair<String, String> speedParts = StringUtils.getSpeedParts(activity, split.getAverageMovingSpeed(), metricUnits, reportSpeed);
+            Pair<String, String> elevationParts = StringUtils.formatElevation(activity, split.getElevationGain(), metricUnits);
+            String speed = speedParts.first + " " + speedParts.second;
+            String elevationGain = elevationParts.first + " " + elevationParts.second;
+            String movingTime = StringUtils.formatElapsedTime(split.getMovingTime());
+            if (split.hasAverageHeartRate()) {
+                splitValues.append(activity.getString(R.string.stats_split_heart_rate, split.getNumber(), movingTime, speed, elevationGain, Math.round(split.getAverageHeartRate())));
+            } else {
+                splitValues.append(activity.getString(R.string.stats_split, split.getNumber(), movingTime, speed, elevationGain));
+            }
+        }
+        TextView splitsValue = activity.findViewById(R.id.stats_splits_value);
+        splitsValue.setText(splitValues.toString());
+    }
+
     /**
      * Sets the total time value.
      *
@@ -22,13 +22,7 @@ import android.text.format.DateUtils;
 import android.util.Pair;
 
 import java.text.DecimalFormat;
-import java.text.ParsePosition;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.Locale;
-import java.util.TimeZone;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import de.dennisguse.opentracks.R;
 
@@ -42,14 +36,22 @@ public class StringUtils {
 
     private static final String COORDINATE_DEGREE = "\u00B0";
 
-    private static final SimpleDateFormat ISO_8601_DATE_TIME_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
-    private static final SimpleDateFormat ISO_8601_BASE = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.US);
-    private static final Pattern ISO_8601_EXTRAS = Pattern.compile("^(\\.\\d+)?(?:Z|([+-])(\\d{2}):(\\d{2}))?$");
+    /**
+     * The max length of an ISO 8601 date time formatted by {@link #formatDateTimeIso8601(long, char[], int)} (24 for the years 0 to 9999).
+     */
+    public static final int ISO_8601_DATE_TIME_MAX_LENGTH = 30;
 
-    static {
-        ISO_8601_DATE_TIME_FORMAT.setTimeZone(TimeZone.getTimeZone("UTC"));
-        ISO_8601_BASE.setTimeZone(TimeZone.getTimeZone("UTC"));
-    }
+    private static final long DAY_MS = 86400000L;
+
+    // The date of the last formatted day; immutable, so shared by all threads without locking.
+    private static volatile Iso8601Date iso8601Date = new Iso8601Date(0);
+
+    // Decimals of up to 15 digits are exactly represented as a double; so are the powers of ten up to 10^22.
+    private static final int MAX_EXACT_DIGITS = 15;
+    private static final int MAX_EXACT_POWER_OF_TEN = 22;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
 
 
     private StringUtils() {
@@ -73,7 +75,53 @@ public class StringUtils {
      * @param time_ms the time in milliseconds
      */
     public static String formatDateTimeIso8601(long time_ms) {
-        return ISO_8601_DATE_TIME_FORMAT.format(time_ms);
+        char[] chars = new char[ISO_8601_DATE_TIME_MAX_LENGTH];
+        return new String(chars, 0, formatDateTimeIso8601(time_ms, chars, 0));
+    }
+
+    /**
+     * Formats the time like {@link #formatDateTimeIso8601(long)} into a char array without creating objects (except once per day).
+     * Thread-safe.
+     *
+     * @param time_ms the time in milliseconds
+     * @param chars   the chars with at least {@link #ISO_8601_DATE_TIME_MAX_LENGTH} chars after start
+     * @param start   the index of the first char
+     * @return the index after the last char
+     */
+    public static int formatDateTimeIso8601(long time_ms, char[] chars, int start) {
+        int millisOfDay = getMillisOfDay(time_ms);
+        char[] date = getIso8601Date(time_ms).chars;
+        System.arraycopy(date, 0, chars, start, date.length);
+        int index = start + date.length;
+        index = formatDigits(millisOfDay / 3600000, 2, chars, index);
+        chars[index++] = ':';
+        index = formatDigits(millisOfDay / 60000 % 60, 2, chars, index);
+        chars[index++] = ':';
+        index = formatDigits(millisOfDay / 1000 % 60, 2, chars, index);
+        chars[index++] = '.';
+        index = formatDigits(millisOfDay % 1000, 3, chars, index);
+        chars[index++] = 'Z';
+        return index;
+    }
+
+    /**
+     * Appends the time like {@link #formatDateTimeIso8601(long)} to a {@link StringBuilder} without creating objects (except once per day).
+     * Thread-safe.
+     *
+     * @param time_ms       the time in milliseconds
+     * @param stringBuilder the string builder
+     */
+    public static void formatDateTimeIso8601(long time_ms, StringBuilder stringBuilder) {
+        int millisOfDay = getMillisOfDay(time_ms);
+        stringBuilder.append(getIso8601Date(time_ms).chars);
+        appendDigits(millisOfDay / 3600000, 2, stringBuilder);
+        stringBuilder.append(':');
+        appendDigits(millisOfDay / 60000 % 60, 2, stringBuilder);
+        stringBuilder.append(':');
+        appendDigits(millisOfDay / 1000 % 60, 2, stringBuilder);
+        stringBuilder.append('.');
+        appendDigits(millisOfDay % 1000, 3, stringBuilder);
+        stringBuilder.append('Z');
     }
 
     /**
@@ -266,61 +314,257 @@ public class StringUtils {
 
     /**
      * Gets the time, in milliseconds, from an XML date time string as defined at http://www.w3.org/TR/xmlschema-2/#dateTime
+     * Thread-safe; see {@link #getTime(char[], int, int)}.
      *
      * @param xmlDateTime the XML date time string
      */
-    //TODO Can this be replaced using java.time?
     public static long getTime(String xmlDateTime) {
-        // Parse the date time base
-        ParsePosition position = new ParsePosition(0);
-        Date date = ISO_8601_BASE.parse(xmlDateTime, position);
-        if (date == null) {
-            throw new IllegalArgumentException("Invalid XML dateTime value: " + xmlDateTime + " (at position " + position.getErrorIndex() + ")");
-        }
+        return getTime(xmlDateTime.toCharArray(), 0, xmlDateTime.length());
+    }
 
-        // Parse the date time extras
-        Matcher matcher = ISO_8601_EXTRAS.matcher(xmlDateTime.substring(position.getIndex()));
-        if (!matcher.matches()) {
-            // This will match even an empty string as all groups are optional. Thus a non-match means invalid content.
-            throw new IllegalArgumentException("Invalid XML dateTime value: " + xmlDateTime);
+    /**
+     * Gets the time, in milliseconds, from an XML date time as defined at http://www.w3.org/TR/xmlschema-2/#dateTime without creating objects.
+     * The fields need to have their full width (e.g., 2010-05-04T03:02:01.352+01:00); years may have more than four digits.
+     * Without a time zone, the time is in UTC; 24:00:00 is the end of the day.
+     * Surrounding whitespace is ignored.
+     * Thread-safe.
+     *
+     * @param chars  the chars
+     * @param start  the start of the XML date time
+     * @param length the length of the XML date time
+     */
+    public static long getTime(char[] chars, int start, int length) {
+        int from = start;
+        int end = start + length;
+        while (from < end && chars[from] <= ' ') {
+            from++;
         }
-
-        long time = date.getTime();
-
-        // Account for fractional seconds
-        String fractional = matcher.group(1);
-        if (fractional != null) {
-            // Regex ensures fractional part is in (0,1)
-            float fractionalSeconds = Float.parseFloat(fractional);
-            long fractionalMillis = Math.round(fractionalSeconds * UnitConversions.S_TO_MS);
-            time += fractionalMillis;
+        while (end > from && chars[end - 1] <= ' ') {
+            end--;
+        }
+        // yyyy-MM-ddTHH:mm:ss
+        int yearEnd = from;
+        while (yearEnd < end && chars[yearEnd] >= '0' && chars[yearEnd] <= '9') {
+            yearEnd++;
+        }
+        if (yearEnd - from < 4 || yearEnd - from > 9 || end - yearEnd < 15 || chars[yearEnd] != '-' || chars[yearEnd + 3] != '-' || chars[yearEnd + 6] != 'T' || chars[yearEnd + 9] != ':' || chars[yearEnd + 12] != ':') {
+            throw createInvalidTimeException(chars, start, length);
+        }
+        int year = parseDigits(chars, from, yearEnd - from);
+        int month = parseDigits(chars, yearEnd + 1, 2);
+        int day = parseDigits(chars, yearEnd + 4, 2);
+        int hour = parseDigits(chars, yearEnd + 7, 2);
+        int minute = parseDigits(chars, yearEnd + 10, 2);
+        int second = parseDigits(chars, yearEnd + 13, 2);
+        if (month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 24 || minute < 0 || minute > 59 || second < 0 || second > 60
+                || (hour == 24 && (minute != 0 || second != 0))) {
+            throw createInvalidTimeException(chars, start, length);
+        }
+        long time = (getDaysSinceEpoch(year, month, day) * 86400L + hour * 3600L + minute * 60L + second) * UnitConversions.S_TO_MS;
+
+        // Account for fractional seconds (rounded to milliseconds)
+        int index = yearEnd + 15;
+        if (index < end && chars[index] == '.') {
+            index++;
+            int fractionStart = index;
+            int millis = 0;
+            while (index < end && chars[index] >= '0' && chars[index] <= '9') {
+                int digit = chars[index] - '0';
+                if (index - fractionStart < 3) {
+                    millis = millis * 10 + digit;
+                } else if (index - fractionStart == 3 && digit >= 5) {
+                    millis++;
+                }
+                index++;
+            }
+            if (index == fractionStart) {
+                throw createInvalidTimeException(chars, start, length);
+            }
+            for (int i = index - fractionStart; i < 3; i++) {
+                millis *= 10;
+            }
+            if (hour == 24 && millis != 0) {
+                throw createInvalidTimeException(chars, start, length);
+            }
+            time += millis;
         }
 
         // Account for timezones
-        String sign = matcher.group(2);
-        String offsetHoursStr = matcher.group(3);
-        String offsetMinsStr = matcher.group(4);
-        if (sign != null && offsetHoursStr != null && offsetMinsStr != null) {
-            // Regex ensures sign is + or -
-            boolean plusSign = sign.equals("+");
-            int offsetHours = Integer.parseInt(offsetHoursStr);
-            int offsetMins = Integer.parseInt(offsetMinsStr);
-
-            // Regex ensures values are >= 0
-            if (offsetHours > 14 || offsetMins > 59) {
-                throw new IllegalArgumentException("Bad timezone: " + xmlDateTime);
+        if (index < end && chars[index] == 'Z') {
+            index++;
+        } else if (index < end && (chars[index] == '+' || chars[index] == '-')) {
+            if (end - index != 6 || chars[index + 3] != ':') {
+                throw createInvalidTimeException(chars, start, length);
+            }
+            int offsetHours = parseDigits(chars, index + 1, 2);
+            int offsetMins = parseDigits(chars, index + 4, 2);
+            if (offsetHours < 0 || offsetMins < 0 || offsetHours > 14 || offsetMins > 59) {
+                throw new IllegalArgumentException("Bad timezone: " + new String(chars, start, length));
             }
-
             long totalOffsetMillis = (offsetMins + offsetHours * 60L) * 60000L;
 
             // Convert to UTC
-            if (plusSign) {
-                time -= totalOffsetMillis;
+            time += chars[index] == '+' ? -totalOffsetMillis : totalOffsetMillis;
+            index += 6;
+        }
+        if (index != end) {
+            throw createInvalidTimeException(chars, start, length);
+        }
+        return time;
+    }
+
+    /**
+     * Parses a double like {@link Double#parseDouble(String)} without creating objects for decimals of up to 15 significant digits.
+     * These are exactly represented as a long and scaled by a single (correctly rounded) multiplication or division with an exact power of ten; so, the result is the same.
+     * Other values are parsed by {@link Double#parseDouble(String)}.
+     *
+     * @param chars  the chars
+     * @param start  the start of the value
+     * @param length the length of the value
+     * @throws NumberFormatException if the value is not a double
+     */
+    public static double parseDouble(char[] chars, int start, int length) {
+        int index = start;
+        int end = start + length;
+        while (index < end && chars[index] <= ' ') {
+            index++;
+        }
+        while (end > index && chars[end - 1] <= ' ') {
+            end--;
+        }
+        boolean negative = false;
+        if (index < end && (chars[index] == '-' || chars[index] == '+')) {
+            negative = chars[index] == '-';
+            index++;
+        }
+
+        long mantissa = 0;
+        int numDigits = 0;
+        int numSignificantDigits = 0;
+        int exponent = 0;
+        boolean decimalPoint = false;
+        for (; index < end; index++) {
+            char c = chars[index];
+            if (c >= '0' && c <= '9') {
+                numDigits++;
+                if (numSignificantDigits > 0 || c != '0') {
+                    if (numSignificantDigits == MAX_EXACT_DIGITS) {
+                        return Double.parseDouble(new String(chars, start, length));
+                    }
+                    mantissa = mantissa * 10 + (c - '0');
+                    numSignificantDigits++;
+                }
+                if (decimalPoint) {
+                    exponent--;
+                }
+            } else if (c == '.' && !decimalPoint) {
+                decimalPoint = true;
             } else {
-                time += totalOffsetMillis;
+                break;
             }
         }
-        return time;
+        if (index < end && numDigits > 0 && (chars[index] == 'e' || chars[index] == 'E')) {
+            index++;
+            boolean negativeExponent = false;
+            if (index < end && (chars[index] == '-' || chars[index] == '+')) {
+                negativeExponent = chars[index] == '-';
+                index++;
+            }
+            int exponentStart = index;
+            int explicitExponent = 0;
+            // More digits are out of the exact range anyway
+            while (index < end && index - exponentStart < 4 && chars[index] >= '0' && chars[index] <= '9') {
+                explicitExponent = explicitExponent * 10 + (chars[index] - '0');
+                index++;
+            }
+            if (index == exponentStart) {
+                return Double.parseDouble(new String(chars, start, length));
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+        if (index != end || numDigits == 0 || exponent < -MAX_EXACT_POWER_OF_TEN || exponent > MAX_EXACT_POWER_OF_TEN) {
+            // Other syntax (e.g., NaN, Infinity, hexadecimal) or invalid
+            return Double.parseDouble(new String(chars, start, length));
+        }
+
+        double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a fixed number of decimal digits.
+     *
+     * @return the value or -1 if not all are digits
+     */
+    private static int parseDigits(char[] chars, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            if (chars[i] < '0' || chars[i] > '9') {
+                return -1;
+            }
+            value = value * 10 + (chars[i] - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Gets the number of days since 1970-01-01 of a date in the proleptic Gregorian calendar.
+     * See http://howardhinnant.github.io/date_algorithms.html#days_from_civil
+     */
+    private static long getDaysSinceEpoch(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Gets the milliseconds since the start of the (UTC) day.
+     */
+    private static int getMillisOfDay(long time_ms) {
+        int millisOfDay = (int) (time_ms % DAY_MS);
+        return millisOfDay < 0 ? millisOfDay + (int) DAY_MS : millisOfDay;
+    }
+
+    /**
+     * Gets the date of the (UTC) day of a time; cached as consecutive times are usually of the same day.
+     */
+    private static Iso8601Date getIso8601Date(long time_ms) {
+        long day = (time_ms - getMillisOfDay(time_ms)) / DAY_MS;
+        Iso8601Date date = iso8601Date;
+        if (date.day != day) {
+            date = new Iso8601Date(day);
+            iso8601Date = date;
+        }
+        return date;
+    }
+
+    /**
+     * Formats a non-negative value with a fixed number of decimal digits (with leading zeros).
+     *
+     * @return the index after the last digit
+     */
+    private static int formatDigits(int value, int count, char[] chars, int start) {
+        for (int i = start + count - 1; i >= start; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return start + count;
+    }
+
+    /**
+     * Appends a non-negative value with a fixed number of decimal digits (with leading zeros).
+     */
+    private static void appendDigits(int value, int count, StringBuilder stringBuilder) {
+        for (int divisor = count == 3 ? 100 : 10; divisor > 0; divisor /= 10) {
+            stringBuilder.append((char) ('0' + value / divisor % 10));
+        }
+    }
+
+    private static IllegalArgumentException createInvalidTimeException(char[] chars, int start, int length) {
+        return new IllegalArgumentException("Invalid XML dateTime value: " + new String(chars, start, length));
     }
 
     /**
@@ -390,4 +634,35 @@ public class StringUtils {
         }
         return new Pair<>(value, unit);
     }
+
+    /**
+     * The ISO 8601 date of a day (i.e., "yyyy-MM-ddT").
+     */
+    private static class Iso8601Date {
+
+        // The days since 1970-01-01
+        final long day;
+        final char[] chars;
+
+        /**
+         * Computes the date in the proleptic Gregorian calendar.
+         * See http://howardhinnant.github.io/date_algorithms.html#civil_from_days
+         *
+         * @param day the days since 1970-01-01
+         */
+        Iso8601Date(long day) {
+            this.day = day;
+            long z = day + 719468;
+            long era = (z >= 0 ? z : z - 146096) / 146097;
+            long dayOfEra = z - era * 146097;
+            long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+            long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+            long monthIndex = (5 * dayOfYear + 2) / 153;
+            long dayOfMonth = dayOfYear - (153 * monthIndex + 2) / 5 + 1;
+            long month = monthIndex < 10 ? monthIndex + 3 : monthIndex - 9;
+            long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+            String sign = year < 0 ? "-" : "";
+            chars = String.format(Locale.US, "%s%04d-%02d-%02dT", sign, Math.abs(year), month, dayOfMonth).toCharArray();
+        }
+    }
 }